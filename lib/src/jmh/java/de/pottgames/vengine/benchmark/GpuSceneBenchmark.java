@@ -0,0 +1,140 @@
+package de.pottgames.vengine.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VK10;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.pottgames.vengine.core.ApplicationConfiguration;
+import de.pottgames.vengine.core.CommandRecorder;
+import de.pottgames.vengine.core.ComputeJob;
+import de.pottgames.vengine.core.GpuScene;
+import de.pottgames.vengine.core.Mesh;
+import de.pottgames.vengine.core.VertexLayout;
+import de.pottgames.vengine.core.VulkanInitializer;
+
+/**
+ * Compares the CPU time of a frame that culls and draws a grid of objects on the GPU with a frame that culls on the CPU and records one draw per visible
+ * object. Most of the grid is outside of the frustum. The GPU driven frame should stay flat as the object count grows, while the CPU driven frame grows
+ * linearly. Renders headless into a tiny target, so the frame time is dominated by the CPU work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GpuSceneBenchmark {
+    private static final float[] IDENTITY = { 1f, 0f, 0f, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f };
+    private static final float   RADIUS   = 0.01f;
+
+    @Param({ "1000", "10000", "100000" })
+    private int objectCount;
+
+    private VulkanInitializer vulkan;
+    private Mesh              mesh;
+    private GpuScene          scene;
+    private long              pipelineLayout;
+    private float[]           planes;
+    private float[]           positions;
+    private ComputeJob        cullJob;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final ApplicationConfiguration config = new ApplicationConfiguration();
+        config.setHeadless(true);
+        config.getWindowConfiguration().setWidth(1);
+        config.getWindowConfiguration().setHeight(1);
+
+        VulkanInitializer.create(MemoryUtil.NULL);
+        this.vulkan = VulkanInitializer.get();
+        this.vulkan.init(config, null);
+
+        // a single triangle, the default pipeline takes its positions from the vertex index
+        final ByteBuffer vertices = MemoryUtil.memAlloc(3 * 3 * Float.BYTES);
+        final ByteBuffer indices = MemoryUtil.memAlloc(3 * Short.BYTES);
+        vertices.asFloatBuffer().put(new float[] { 0f, -0.5f, 0f, 0.5f, 0.5f, 0f, -0.5f, 0.5f, 0f });
+        indices.putShort((short) 0).putShort((short) 1).putShort((short) 2).flip();
+        this.mesh = new Mesh(new VertexLayout().add(0, VK10.VK_FORMAT_R32G32B32_SFLOAT), vertices, indices, VK10.VK_INDEX_TYPE_UINT16);
+        while (!this.mesh.isReady()) {
+            this.vulkan.beginFrame();
+            this.vulkan.endFrame();
+        }
+        MemoryUtil.memFree(vertices);
+        MemoryUtil.memFree(indices);
+
+        // a square grid from -2 to 2 in x and y, so about a quarter of it is inside of clip space
+        this.scene = new GpuScene(this.mesh, this.objectCount);
+        this.positions = new float[this.objectCount * 2];
+        final int side = (int) Math.ceil(Math.sqrt(this.objectCount));
+        final float[] transform = GpuSceneBenchmark.IDENTITY.clone();
+        for (int i = 0; i < this.objectCount; i++) {
+            this.positions[i * 2] = -2f + 4f * (i % side) / side;
+            this.positions[i * 2 + 1] = -2f + 4f * (i / side) / side;
+            transform[12] = this.positions[i * 2];
+            transform[13] = this.positions[i * 2 + 1];
+            transform[14] = 0.5f;
+            this.scene.add(0, 3, 0, transform, 0f, 0f, 0f, GpuSceneBenchmark.RADIUS);
+        }
+        this.planes = GpuScene.frustumPlanes(GpuSceneBenchmark.IDENTITY, new float[24]);
+        this.pipelineLayout = this.vulkan.getDescriptorLayouts().getPipelineLayout(this.scene.getInstanceSetLayout());
+        this.cullJob = recorder -> this.scene.cull(recorder, this.planes);
+    }
+
+
+    @Benchmark
+    public void gpuDrivenFrame() {
+        final CommandRecorder recorder = this.vulkan.beginFrame(this.cullJob);
+        this.scene.draw(recorder, this.pipelineLayout, 0);
+        this.vulkan.endFrame();
+    }
+
+
+    @Benchmark
+    public void cpuDrivenFrame() {
+        final CommandRecorder recorder = this.vulkan.beginFrame();
+        recorder.bindVertexBuffer(this.mesh.getVertexBuffer(), 0L);
+        recorder.bindIndexBuffer(this.mesh.getIndexBuffer(), 0L, this.mesh.getIndexType());
+        for (int i = 0; i < this.objectCount; i++) {
+            if (this.isVisible(this.positions[i * 2], this.positions[i * 2 + 1], 0.5f)) {
+                recorder.drawIndexed(3, 1, 0, 0, i);
+            }
+        }
+        this.vulkan.endFrame();
+    }
+
+
+    private boolean isVisible(float x, float y, float z) {
+        for (int i = 0; i < 6; i++) {
+            final int plane = i * 4;
+            if (this.planes[plane] * x + this.planes[plane + 1] * y + this.planes[plane + 2] * z + this.planes[plane + 3] < -GpuSceneBenchmark.RADIUS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.vulkan.runWhenFramesComplete(this.scene::dispose);
+        this.vulkan.runWhenFramesComplete(this.mesh::dispose);
+        this.vulkan.dispose();
+    }
+
+}
@@ -0,0 +1,80 @@
+package de.pottgames.vengine.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.system.MemoryUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.pottgames.vengine.core.ApplicationConfiguration;
+import de.pottgames.vengine.core.CommandRecorder;
+import de.pottgames.vengine.core.ParallelRecordingJob;
+import de.pottgames.vengine.core.VulkanInitializer;
+
+/**
+ * Measures how the CPU time of a frame with many draw calls scales with the number of recording threads. Renders headless into a tiny target, so the GPU
+ * work is negligible and the frame time is dominated by command recording.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelRecordingBenchmark {
+    private static final int JOBS          = 64;
+    private static final int DRAWS_PER_JOB = 500;
+
+    @Param({ "1", "2", "4", "8" })
+    private int recordingThreads;
+
+    private VulkanInitializer          vulkan;
+    private final ParallelRecordingJob job = ParallelRecordingBenchmark::recordJob;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final ApplicationConfiguration config = new ApplicationConfiguration();
+        config.setHeadless(true);
+        config.setRecordingThreads(this.recordingThreads);
+        config.getWindowConfiguration().setWidth(1);
+        config.getWindowConfiguration().setHeight(1);
+
+        VulkanInitializer.create(MemoryUtil.NULL);
+        this.vulkan = VulkanInitializer.get();
+        this.vulkan.init(config, null);
+    }
+
+
+    @Benchmark
+    public void recordFrame() {
+        final CommandRecorder recorder = this.vulkan.beginFrame();
+        recorder.recordParallel(ParallelRecordingBenchmark.JOBS, this.job);
+        this.vulkan.endFrame();
+    }
+
+
+    private static void recordJob(CommandRecorder recorder, int jobIndex) {
+        for (int i = 0; i < ParallelRecordingBenchmark.DRAWS_PER_JOB; i++) {
+            recorder.draw(3, 1, 0, jobIndex);
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.vulkan.dispose();
+    }
+
+}
@@ -0,0 +1,81 @@
+package de.pottgames.vengine.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.system.MemoryUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.pottgames.vengine.core.ApplicationConfiguration;
+import de.pottgames.vengine.core.VulkanInitializer;
+
+/**
+ * Measures the engine startup, from instance creation to the first frame being ready, with an empty and with a warm pipeline cache file. Drivers that keep
+ * their own shader cache on disk, like NVIDIA's and Mesa's, shrink the difference, disable them to see the full cold cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+    @Param({ "cold", "warm" })
+    private String cache;
+
+    private Path cacheFile;
+
+
+    @Setup(Level.Trial)
+    public void createCacheFile() throws IOException {
+        this.cacheFile = Files.createTempFile("vengine-startup", ".cache");
+        Files.delete(this.cacheFile);
+        if ("warm".equals(this.cache)) {
+            this.startup();
+        }
+    }
+
+
+    @Setup(Level.Invocation)
+    public void resetCache() throws IOException {
+        if ("cold".equals(this.cache)) {
+            Files.deleteIfExists(this.cacheFile);
+        }
+    }
+
+
+    @Benchmark
+    public void startup() {
+        final ApplicationConfiguration config = new ApplicationConfiguration();
+        config.setHeadless(true);
+        config.setPipelineCacheFile(this.cacheFile);
+        config.getWindowConfiguration().setWidth(1);
+        config.getWindowConfiguration().setHeight(1);
+
+        VulkanInitializer.create(MemoryUtil.NULL);
+        final VulkanInitializer vulkan = VulkanInitializer.get();
+        vulkan.init(config, null);
+        vulkan.dispose();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void deleteCacheFile() throws IOException {
+        Files.deleteIfExists(this.cacheFile);
+    }
+
+}
@@ -5,7 +5,24 @@ public interface Application {
     void onCreate();
 
 
-    void onRender();
+    /**
+     * Called once per frame before {@link #onRender(CommandRecorder)}, outside of any render pass. With
+     * {@link ApplicationConfiguration#setAsyncCompute(boolean)} the work runs on a dedicated compute queue in parallel to the rendering, otherwise it's
+     * recorded at the start of the frame's command buffer. Either way everything the frame renders sees the results. Frames that record nothing don't submit
+     * compute work and don't wait for it.
+     *
+     * @param recorder records into the current frame's compute command buffer
+     */
+    default void onCompute(CommandRecorder recorder) {
+    }
+
+
+    /**
+     * Called once per frame while the frame's render pass is active.
+     *
+     * @param recorder records into the current frame's command buffer
+     */
+    void onRender(CommandRecorder recorder);
 
 
     void onResize();
@@ -1,8 +1,28 @@
 package de.pottgames.vengine.core;
 
+import java.nio.file.Path;
+
 public class ApplicationConfiguration {
-    private boolean             debugMode           = false;
-    private WindowConfiguration windowConfiguration = new WindowConfiguration();
+    private boolean             debugMode            = false;
+    private boolean             headless             = false;
+    private int                 framesInFlight       = 2;
+    private int                 recordingThreads     = 1;
+    private boolean             timelineSemaphores   = true;
+    private boolean             gpuProfiling         = false;
+    private boolean             bindless             = false;
+    private boolean             dynamicRendering     = false;
+    private DepthBuffer         depthBuffer          = DepthBuffer.NONE;
+    private int                 samples              = 1;
+    private boolean             asyncCompute         = false;
+    private long                stagingBufferSize    = 32L * 1024L * 1024L;
+    private long                dynamicGeometrySize  = 8L * 1024L * 1024L;
+    private long                uniformRingSize      = 4L * 1024L * 1024L;
+    private VertexLayout        vertexLayout;
+    private Path                pipelineCacheFile;
+    private boolean             shaderHotReload      = false;
+    private Path                shaderCacheDirectory;
+    private ReadbackListener    readbackListener;
+    private WindowConfiguration windowConfiguration  = new WindowConfiguration();
 
 
     public boolean isDebugMode() {
@@ -15,6 +35,318 @@ public class ApplicationConfiguration {
     }
 
 
+    public boolean isHeadless() {
+        return this.headless;
+    }
+
+
+    /**
+     * Enables the offscreen mode. No GLFW window and no surface are created, frames are rendered into device owned images sized by the width and height of
+     * the {@link WindowConfiguration}. As there is no window that could be closed, the engine asks {@link Application#canClose()} after every frame and stops
+     * as soon as it returns true.
+     *
+     * @param headless true to render offscreen
+     */
+    public void setHeadless(boolean headless) {
+        this.headless = headless;
+    }
+
+
+    public int getFramesInFlight() {
+        return this.framesInFlight;
+    }
+
+
+    /**
+     * Sets the number of frames the CPU may record ahead of the GPU. 1 gives the lowest input latency, 3 keeps a heavy CPU frame and the GPU fully overlapped.
+     * The value is clamped to the number of swap chain images. Use {@link VulkanInitializer#setFramesInFlight(int)} to change it at runtime.
+     *
+     * @param framesInFlight the number of frames in flight, at least 1
+     */
+    public void setFramesInFlight(int framesInFlight) {
+        if (framesInFlight < 1) {
+            throw new IllegalArgumentException("At least one frame must be in flight");
+        }
+        this.framesInFlight = framesInFlight;
+    }
+
+
+    public int getRecordingThreads() {
+        return this.recordingThreads;
+    }
+
+
+    /**
+     * Sets the number of threads that record command buffers, including the render thread. With more than one thread, draw work is recorded into secondary
+     * command buffers and {@link CommandRecorder#recordParallel(int, ParallelRecordingJob)} spreads jobs across all threads. Every thread gets its own command
+     * pool per frame in flight. With 1, the default, everything is recorded inline into the primary command buffer.
+     *
+     * @param recordingThreads the number of recording threads, at least 1
+     */
+    public void setRecordingThreads(int recordingThreads) {
+        if (recordingThreads < 1) {
+            throw new IllegalArgumentException("At least one recording thread is required");
+        }
+        this.recordingThreads = recordingThreads;
+    }
+
+
+    public boolean isTimelineSemaphores() {
+        return this.timelineSemaphores;
+    }
+
+
+    /**
+     * Enables the timeline semaphore backend for frame synchronization on Vulkan 1.2 devices. The progress of all frames is tracked by a single 64 bit counter
+     * that can be polled without blocking, see {@link VulkanInitializer#getCompletedFrameValue()}. Devices without timeline semaphores fall back to one fence
+     * per frame in flight.
+     *
+     * @param timelineSemaphores true to use timeline semaphores if the device supports them
+     */
+    public void setTimelineSemaphores(boolean timelineSemaphores) {
+        this.timelineSemaphores = timelineSemaphores;
+    }
+
+
+    public boolean isGpuProfiling() {
+        return this.gpuProfiling;
+    }
+
+
+    /**
+     * Enables GPU timestamp queries for the frame and the main render pass, see {@link VulkanInitializer#getGpuProfiler()}. It's ignored if the graphics queue
+     * doesn't support timestamps.
+     *
+     * @param gpuProfiling true to measure GPU times
+     */
+    public void setGpuProfiling(boolean gpuProfiling) {
+        this.gpuProfiling = gpuProfiling;
+    }
+
+
+    public boolean isBindless() {
+        return this.bindless;
+    }
+
+
+    /**
+     * Enables bindless resource access on devices with descriptor indexing, see {@link VulkanInitializer#getBindlessResources()}. Devices without it fall back
+     * to classic descriptor sets.
+     *
+     * @param bindless true to use bindless resources if the device supports them
+     */
+    public void setBindless(boolean bindless) {
+        this.bindless = bindless;
+    }
+
+
+    public boolean isDynamicRendering() {
+        return this.dynamicRendering;
+    }
+
+
+    /**
+     * Renders without render pass and framebuffer objects on devices with Vulkan 1.3 or VK_KHR_dynamic_rendering, which makes swap chain recreation cheaper.
+     * Other devices keep using render passes. Pipelines of the engine's rendering must be created from {@link VulkanInitializer#getPipelineState()} then.
+     *
+     * @param dynamicRendering true to use dynamic rendering if the device supports it
+     */
+    public void setDynamicRendering(boolean dynamicRendering) {
+        this.dynamicRendering = dynamicRendering;
+    }
+
+
+    public DepthBuffer getDepthBuffer() {
+        return this.depthBuffer;
+    }
+
+
+    /**
+     * Sets the depth buffer of the engine's rendering. The engine picks the first of the buffer's formats the device supports.
+     *
+     * @param depthBuffer the depth buffer
+     */
+    public void setDepthBuffer(DepthBuffer depthBuffer) {
+        this.depthBuffer = depthBuffer;
+    }
+
+
+    public int getSamples() {
+        return this.samples;
+    }
+
+
+    /**
+     * Sets the number of samples per pixel for multisample anti-aliasing. The samples are resolved into the swap chain image at the end of the frame. Devices
+     * that don't support the count use the highest count below. The default is 1, which disables multisampling.
+     *
+     * @param samples the number of samples, a power of two from 1 to 64
+     */
+    public void setSamples(int samples) {
+        if (samples < 1 || samples > 64 || Integer.bitCount(samples) != 1) {
+            throw new IllegalArgumentException("The sample count must be a power of two from 1 to 64: " + samples);
+        }
+        this.samples = samples;
+    }
+
+
+    public boolean isAsyncCompute() {
+        return this.asyncCompute;
+    }
+
+
+    /**
+     * Runs {@link Application#onCompute(CommandRecorder)} on a dedicated compute queue family, so the compute work of a frame overlaps the rendering of the
+     * previous one. Devices without a compute family separate from the graphics family record the work into the frame's command buffer instead. Buffers the
+     * compute work shares with the rendering must be created with {@link MemoryAllocator#createSharedBuffer(long, int, MemoryUsage)}.
+     *
+     * @param asyncCompute true to use an async compute queue if the device has one
+     */
+    public void setAsyncCompute(boolean asyncCompute) {
+        this.asyncCompute = asyncCompute;
+    }
+
+
+    public long getStagingBufferSize() {
+        return this.stagingBufferSize;
+    }
+
+
+    /**
+     * Sets the size of the staging ring buffer of the {@link UploadManager}. Uploads are split into pieces of at most this size, and uploads block once the
+     * copies that weren't completed by the GPU fill the ring. The default is 32 MiB.
+     *
+     * @param stagingBufferSize the size in bytes, at least 64 KiB and at most 2 GiB
+     */
+    public void setStagingBufferSize(long stagingBufferSize) {
+        if (stagingBufferSize < 64L * 1024L || stagingBufferSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The staging buffer size must be between 64 KiB and 2 GiB: " + stagingBufferSize);
+        }
+        this.stagingBufferSize = stagingBufferSize;
+    }
+
+
+    public long getDynamicGeometrySize() {
+        return this.dynamicGeometrySize;
+    }
+
+
+    /**
+     * Sets the size of the ring buffer for dynamic geometry, see {@link VulkanInitializer#getDynamicGeometry()}. It should hold the geometry of all frames in
+     * flight, otherwise writing waits for the GPU. The default is 8 MiB.
+     *
+     * @param dynamicGeometrySize the size in bytes, at least 64 KiB and at most 2 GiB
+     */
+    public void setDynamicGeometrySize(long dynamicGeometrySize) {
+        if (dynamicGeometrySize < 64L * 1024L || dynamicGeometrySize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The dynamic geometry size must be between 64 KiB and 2 GiB: " + dynamicGeometrySize);
+        }
+        this.dynamicGeometrySize = dynamicGeometrySize;
+    }
+
+
+    public long getUniformRingSize() {
+        return this.uniformRingSize;
+    }
+
+
+    /**
+     * Sets the size of the ring buffer for per object uniform data, see {@link VulkanInitializer#getUniformRing()}. Every block takes at least
+     * minUniformBufferOffsetAlignment bytes, often 256, so 4 MiB hold about 8000 objects for two frames in flight. The default is 4 MiB.
+     *
+     * @param uniformRingSize the size in bytes, at least 64 KiB and at most 2 GiB
+     */
+    public void setUniformRingSize(long uniformRingSize) {
+        if (uniformRingSize < 64L * 1024L || uniformRingSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The uniform ring size must be between 64 KiB and 2 GiB: " + uniformRingSize);
+        }
+        this.uniformRingSize = uniformRingSize;
+    }
+
+
+    public VertexLayout getVertexLayout() {
+        return this.vertexLayout;
+    }
+
+
+    /**
+     * Sets the vertex layout of the default graphics pipeline. Without a layout the pipeline has no vertex input and the shaders generate the vertices.
+     *
+     * @param vertexLayout the layout or null
+     */
+    public void setVertexLayout(VertexLayout vertexLayout) {
+        this.vertexLayout = vertexLayout;
+    }
+
+
+    public Path getPipelineCacheFile() {
+        return this.pipelineCacheFile;
+    }
+
+
+    /**
+     * Sets the file the pipeline cache is loaded from at startup and saved to on dispose, see {@link VulkanInitializer#getPipelineCache()}. Files written by
+     * another device or driver version are ignored.
+     *
+     * The default is null, so nothing is written to the working directory the game happens to be started from. Pick a per user location, like the
+     * directory of the save games.
+     *
+     * @param pipelineCacheFile the file or null to keep the cache in memory only
+     */
+    public void setPipelineCacheFile(Path pipelineCacheFile) {
+        this.pipelineCacheFile = pipelineCacheFile;
+    }
+
+
+    public boolean isShaderHotReload() {
+        return this.shaderHotReload;
+    }
+
+
+    /**
+     * Enables reloading shaders when their SPIR-V files change, see {@link ShaderCache}. Pipelines using a changed shader are rebuilt at the start of the next
+     * frame. Meant for development, it starts a file watcher thread.
+     *
+     * @param shaderHotReload true to watch the shader directories
+     */
+    public void setShaderHotReload(boolean shaderHotReload) {
+        this.shaderHotReload = shaderHotReload;
+    }
+
+
+    public Path getShaderCacheDirectory() {
+        return this.shaderCacheDirectory;
+    }
+
+
+    /**
+     * Sets the directory the {@link ShaderCompiler} stores compiled SPIR-V in. Shaders whose source, defines and compiler didn't change are read from it
+     * instead of being compiled again.
+     *
+     * Off by default, an application decides where it may write, for example next to its other per user caches.
+     *
+     * @param shaderCacheDirectory the directory or null to compile on every start
+     */
+    public void setShaderCacheDirectory(Path shaderCacheDirectory) {
+        this.shaderCacheDirectory = shaderCacheDirectory;
+    }
+
+
+    public ReadbackListener getReadbackListener() {
+        return this.readbackListener;
+    }
+
+
+    /**
+     * Sets the listener that receives the rendered frames in host memory. Only used in headless mode, no readback copies are recorded if the listener is null.
+     *
+     * @param readbackListener the listener or null to disable readback
+     */
+    public void setReadbackListener(ReadbackListener readbackListener) {
+        this.readbackListener = readbackListener;
+    }
+
+
     public WindowConfiguration getWindowConfiguration() {
         return this.windowConfiguration;
     }
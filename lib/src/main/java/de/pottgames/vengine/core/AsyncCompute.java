@@ -0,0 +1,191 @@
+package de.pottgames.vengine.core;
+
+import java.nio.LongBuffer;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkCommandBufferBeginInfo;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkMemoryBarrier;
+import org.lwjgl.vulkan.VkQueue;
+import org.lwjgl.vulkan.VkSemaphoreCreateInfo;
+import org.lwjgl.vulkan.VkSubmitInfo;
+
+/**
+ * Submits the compute work of every frame to a dedicated compute queue family, whose queues run in parallel to the graphics queue. Each frame in flight has
+ * its own command pool and a binary semaphore: the compute submission signals the semaphore and the frame's graphics submission waits for it before the
+ * stages that consume compute results. The compute work of a frame therefore overlaps the rendering of the previous frame.
+ *
+ * The graphics submission completes after the compute submission it waited for, so the frame's wait for its graphics submission also guarantees that the
+ * compute command pool can be reset.
+ *
+ * Buffers used on both queues must be created with {@link MemoryAllocator#createSharedBuffer(long, int, MemoryUsage)}. Every command buffer starts with a
+ * barrier that makes uploads visible whose futures completed, like the graphics queue does. As the compute work of the next frame may run while the current
+ * frame is still rendered, buffers written by the compute work need one copy per frame in flight, see {@link CommandRecorder#getFrameIndex()}.
+ */
+public class AsyncCompute implements Disposable {
+    /**
+     * The stages of the graphics queue that wait for the compute submission: indirect draws, vertex input, shaders and render graph dispatches.
+     */
+    static final int CONSUMER_STAGES = VK10.VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT | VK10.VK_PIPELINE_STAGE_VERTEX_INPUT_BIT
+            | VK10.VK_PIPELINE_STAGE_VERTEX_SHADER_BIT | VK10.VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT | VK10.VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT;
+
+    private final VkDevice device;
+    private final VkQueue  queue;
+    private final int      queueFamily;
+
+    // FRAMES
+    private long[]            commandPools;
+    private VkCommandBuffer[] commandBuffers;
+    private long[]            semaphores;
+
+    // PREALLOCATED STRUCTS
+    private final VkCommandBufferBeginInfo beginInfo;
+    private final VkMemoryBarrier.Buffer   uploadBarrier;
+    private final PointerBuffer            pCommandBuffer;
+    private final LongBuffer               pSignalSemaphore;
+    private final VkSubmitInfo             submitInfo;
+
+
+    /**
+     * Creates the submission structs. The per frame objects are created with {@link #createFrames(int)}.
+     *
+     * @param device the device
+     * @param queue a queue of the compute family
+     * @param queueFamily the compute family, different from the graphics family
+     */
+    AsyncCompute(VkDevice device, VkQueue queue, int queueFamily) {
+        this.device = device;
+        this.queue = queue;
+        this.queueFamily = queueFamily;
+
+        this.beginInfo = VkCommandBufferBeginInfo.calloc();
+        this.beginInfo.sType(VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+        this.beginInfo.flags(VK10.VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+
+        // the host observed the transfer fences, which made the copies available, they only have to be made visible
+        this.uploadBarrier = VkMemoryBarrier.calloc(1);
+        this.uploadBarrier.sType(VK10.VK_STRUCTURE_TYPE_MEMORY_BARRIER);
+        this.uploadBarrier.srcAccessMask(0);
+        this.uploadBarrier.dstAccessMask(VK10.VK_ACCESS_SHADER_READ_BIT | VK10.VK_ACCESS_UNIFORM_READ_BIT | VK10.VK_ACCESS_INDIRECT_COMMAND_READ_BIT);
+
+        this.pCommandBuffer = MemoryUtil.memAllocPointer(1);
+        this.pSignalSemaphore = MemoryUtil.memAllocLong(1);
+        this.submitInfo = VkSubmitInfo.calloc();
+        this.submitInfo.sType(VK10.VK_STRUCTURE_TYPE_SUBMIT_INFO);
+        this.submitInfo.pCommandBuffers(this.pCommandBuffer);
+        this.submitInfo.pSignalSemaphores(this.pSignalSemaphore);
+    }
+
+
+    void createFrames(int framesInFlight) {
+        this.commandPools = new long[framesInFlight];
+        this.commandBuffers = new VkCommandBuffer[framesInFlight];
+        this.semaphores = new long[framesInFlight];
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkSemaphoreCreateInfo semaphoreInfo = VkSemaphoreCreateInfo.calloc(stack);
+            semaphoreInfo.sType(VK10.VK_STRUCTURE_TYPE_SEMAPHORE_CREATE_INFO);
+            final LongBuffer pSemaphore = stack.mallocLong(1);
+
+            for (int i = 0; i < framesInFlight; i++) {
+                if (VK10.vkCreateSemaphore(this.device, semaphoreInfo, null, pSemaphore) != VK10.VK_SUCCESS) {
+                    throw new RuntimeException("Failed to create compute semaphore for the frame " + i);
+                }
+                this.semaphores[i] = pSemaphore.get(0);
+                this.commandPools[i] = VulkanUtils.createCommandPool(this.device, this.queueFamily, VK10.VK_COMMAND_POOL_CREATE_TRANSIENT_BIT);
+                this.commandBuffers[i] = VulkanUtils.allocateCommandBuffer(this.device, this.commandPools[i], VK10.VK_COMMAND_BUFFER_LEVEL_PRIMARY);
+            }
+        }
+    }
+
+
+    void disposeFrames() {
+        for (int i = 0; i < this.commandPools.length; i++) {
+            VK10.vkDestroyCommandPool(this.device, this.commandPools[i], null);
+            VK10.vkDestroySemaphore(this.device, this.semaphores[i], null);
+        }
+        this.commandPools = null;
+        this.commandBuffers = null;
+        this.semaphores = null;
+    }
+
+
+    /**
+     * Resets the frame's command pool and begins its command buffer. The frame's graphics submission must be complete.
+     *
+     * @param frameIndex the index of the frame in flight
+     * @return the command buffer to record the compute work into
+     */
+    VkCommandBuffer begin(int frameIndex) {
+        VK10.vkResetCommandPool(this.device, this.commandPools[frameIndex], 0);
+        final VkCommandBuffer commandBuffer = this.commandBuffers[frameIndex];
+        if (VK10.vkBeginCommandBuffer(commandBuffer, this.beginInfo) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to begin recording compute command buffer");
+        }
+        VK10.vkCmdPipelineBarrier(commandBuffer, VK10.VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT,
+                VK10.VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT | VK10.VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, 0, this.uploadBarrier, null, null);
+        return commandBuffer;
+    }
+
+
+    /**
+     * Ends the frame's command buffer and submits it. The frame's graphics submission must wait for the returned semaphore, so every signal is followed by
+     * exactly one wait.
+     *
+     * @param frameIndex the index of the frame in flight
+     * @return the semaphore the submission signals
+     */
+    long submit(int frameIndex) {
+        final VkCommandBuffer commandBuffer = this.commandBuffers[frameIndex];
+        if (VK10.vkEndCommandBuffer(commandBuffer) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to record compute command buffer");
+        }
+        this.pCommandBuffer.put(0, commandBuffer);
+        this.pSignalSemaphore.put(0, this.semaphores[frameIndex]);
+        if (VK10.vkQueueSubmit(this.queue, this.submitInfo, VK10.VK_NULL_HANDLE) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to submit compute command buffer");
+        }
+        return this.semaphores[frameIndex];
+    }
+
+
+    /**
+     * Ends the frame's command buffer without submitting it, for frames without compute work. The frame's graphics submission must not wait for the
+     * semaphore then.
+     *
+     * @param frameIndex the index of the frame in flight
+     */
+    void discard(int frameIndex) {
+        if (VK10.vkEndCommandBuffer(this.commandBuffers[frameIndex]) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to record compute command buffer");
+        }
+    }
+
+
+    /**
+     * Returns the index of the compute queue family, for example to transfer the ownership of exclusive resources.
+     *
+     * @return the queue family index
+     */
+    public int getQueueFamily() {
+        return this.queueFamily;
+    }
+
+
+    /**
+     * Frees the submission structs. The per frame objects must have been disposed with {@link #disposeFrames()}.
+     */
+    @Override
+    public void dispose() {
+        this.beginInfo.free();
+        this.uploadBarrier.free();
+        this.submitInfo.free();
+        MemoryUtil.memFree(this.pCommandBuffer);
+        MemoryUtil.memFree(this.pSignalSemaphore);
+    }
+
+}
@@ -0,0 +1,292 @@
+package de.pottgames.vengine.core;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VK12;
+import org.lwjgl.vulkan.VkDescriptorPoolCreateInfo;
+import org.lwjgl.vulkan.VkDescriptorPoolSize;
+import org.lwjgl.vulkan.VkDescriptorSetAllocateInfo;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutBinding;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutBindingFlagsCreateInfo;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutCreateInfo;
+import org.lwjgl.vulkan.VkDevice;
+
+/**
+ * One large descriptor set that holds all textures and storage buffers, so shaders address resources by an integer index instead of the engine binding a set
+ * per material. The set is bound once per frame, and adding or removing resources only writes single array elements, even while frames in flight use the
+ * set. Needs descriptor indexing, see {@link PhysicalDevice#isDescriptorIndexingSupported()}. Without it the engine falls back to classic descriptor sets from
+ * the {@link DescriptorAllocator}.
+ *
+ * Shaders declare the arrays without a size and index them with nonuniformEXT:
+ *
+ * <pre>
+ * #extension GL_EXT_nonuniform_qualifier : require
+ * layout(set = 0, binding = 0) uniform sampler2D textures[];
+ * layout(set = 0, binding = 1) readonly buffer Buffers { vec4 data[]; } buffers[];
+ *
+ * vec4 color = texture(textures[nonuniformEXT(textureIndex)], uv);
+ * </pre>
+ *
+ * Resources can be added and removed from any thread. Writes are applied before the next frame is submitted, so a resource can be used in the frame it was
+ * added in. Removed indices are reused once no frame in flight can use them anymore.
+ */
+public class BindlessResources implements Disposable {
+    public static final int TEXTURE_BINDING = 0;
+    public static final int BUFFER_BINDING  = 1;
+
+    private static final int MAX_TEXTURES = 16384;
+    private static final int MAX_BUFFERS  = 4096;
+
+    private final VkDevice           device;
+    private final Consumer<Runnable> destroyer;
+    private final DescriptorWriter   writer;
+    private final long               setLayout;
+    private final long               descriptorPool;
+    private final long               descriptorSet;
+    private final Slots              textures;
+    private final Slots              buffers;
+
+
+    /**
+     * Creates the descriptor set.
+     *
+     * @param device the device with descriptor indexing enabled
+     * @param physicalDevice the physical device the limits are taken from
+     * @param destroyer runs an action once no frame in flight uses the set's current content, see
+     *            {@link VulkanInitializer#runWhenFramesComplete(Runnable)}
+     */
+    BindlessResources(VkDevice device, PhysicalDevice physicalDevice, Consumer<Runnable> destroyer) {
+        this.device = device;
+        this.destroyer = destroyer;
+        this.writer = new DescriptorWriter(device);
+        this.textures = new Slots(Math.min(BindlessResources.MAX_TEXTURES, physicalDevice.getMaxBindlessTextures()));
+        this.buffers = new Slots(Math.min(BindlessResources.MAX_BUFFERS, physicalDevice.getMaxBindlessBuffers()));
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkDescriptorSetLayoutBinding.Buffer bindings = VkDescriptorSetLayoutBinding.calloc(2, stack);
+            final VkDescriptorSetLayoutBinding textureBinding = bindings.get(0);
+            textureBinding.binding(BindlessResources.TEXTURE_BINDING);
+            textureBinding.descriptorType(VK10.VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER);
+            textureBinding.descriptorCount(this.textures.capacity);
+            textureBinding.stageFlags(VK10.VK_SHADER_STAGE_ALL);
+            final VkDescriptorSetLayoutBinding bufferBinding = bindings.get(1);
+            bufferBinding.binding(BindlessResources.BUFFER_BINDING);
+            bufferBinding.descriptorType(VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER);
+            bufferBinding.descriptorCount(this.buffers.capacity);
+            bufferBinding.stageFlags(VK10.VK_SHADER_STAGE_ALL);
+
+            // unused elements don't need to be valid, and elements may be written while pending command buffers use other elements
+            final int flags = VK12.VK_DESCRIPTOR_BINDING_PARTIALLY_BOUND_BIT | VK12.VK_DESCRIPTOR_BINDING_UPDATE_AFTER_BIND_BIT
+                    | VK12.VK_DESCRIPTOR_BINDING_UPDATE_UNUSED_WHILE_PENDING_BIT;
+            final VkDescriptorSetLayoutBindingFlagsCreateInfo bindingFlags = VkDescriptorSetLayoutBindingFlagsCreateInfo.calloc(stack);
+            bindingFlags.sType(VK12.VK_STRUCTURE_TYPE_DESCRIPTOR_SET_LAYOUT_BINDING_FLAGS_CREATE_INFO);
+            bindingFlags.pBindingFlags(stack.ints(flags, flags));
+
+            final VkDescriptorSetLayoutCreateInfo layoutInfo = VkDescriptorSetLayoutCreateInfo.calloc(stack);
+            layoutInfo.sType(VK10.VK_STRUCTURE_TYPE_DESCRIPTOR_SET_LAYOUT_CREATE_INFO);
+            layoutInfo.pNext(bindingFlags);
+            layoutInfo.flags(VK12.VK_DESCRIPTOR_SET_LAYOUT_CREATE_UPDATE_AFTER_BIND_POOL_BIT);
+            layoutInfo.pBindings(bindings);
+
+            final LongBuffer pHandle = stack.mallocLong(1);
+            if (VK10.vkCreateDescriptorSetLayout(device, layoutInfo, null, pHandle) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create bindless descriptor set layout");
+            }
+            this.setLayout = pHandle.get(0);
+
+            final VkDescriptorPoolSize.Buffer poolSizes = VkDescriptorPoolSize.calloc(2, stack);
+            poolSizes.get(0).type(VK10.VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER);
+            poolSizes.get(0).descriptorCount(this.textures.capacity);
+            poolSizes.get(1).type(VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER);
+            poolSizes.get(1).descriptorCount(this.buffers.capacity);
+
+            final VkDescriptorPoolCreateInfo poolInfo = VkDescriptorPoolCreateInfo.calloc(stack);
+            poolInfo.sType(VK10.VK_STRUCTURE_TYPE_DESCRIPTOR_POOL_CREATE_INFO);
+            poolInfo.flags(VK12.VK_DESCRIPTOR_POOL_CREATE_UPDATE_AFTER_BIND_BIT);
+            poolInfo.maxSets(1);
+            poolInfo.pPoolSizes(poolSizes);
+
+            if (VK10.vkCreateDescriptorPool(device, poolInfo, null, pHandle) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create bindless descriptor pool");
+            }
+            this.descriptorPool = pHandle.get(0);
+
+            final VkDescriptorSetAllocateInfo allocateInfo = VkDescriptorSetAllocateInfo.calloc(stack);
+            allocateInfo.sType(VK10.VK_STRUCTURE_TYPE_DESCRIPTOR_SET_ALLOCATE_INFO);
+            allocateInfo.descriptorPool(this.descriptorPool);
+            allocateInfo.pSetLayouts(stack.longs(this.setLayout));
+
+            if (VK10.vkAllocateDescriptorSets(device, allocateInfo, pHandle) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to allocate bindless descriptor set");
+            }
+            this.descriptorSet = pHandle.get(0);
+        }
+    }
+
+
+    /**
+     * Adds a texture.
+     *
+     * @param imageView the image view, in {@link VK10#VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL} when it's sampled
+     * @param sampler the sampler
+     * @return the index of the texture in the textures array
+     * @throws IllegalStateException if all indices are in use
+     */
+    public synchronized int addTexture(long imageView, long sampler) {
+        final int index = this.textures.acquire("textures");
+        this.writer.writeImage(this.descriptorSet, BindlessResources.TEXTURE_BINDING, index, VK10.VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER, imageView, sampler,
+                VK10.VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL);
+        return index;
+    }
+
+
+    /**
+     * Adds a storage buffer.
+     *
+     * @param buffer the buffer, created with {@link VK10#VK_BUFFER_USAGE_STORAGE_BUFFER_BIT}
+     * @return the index of the buffer in the buffers array
+     * @throws IllegalStateException if all indices are in use
+     */
+    public synchronized int addBuffer(GpuBuffer buffer) {
+        final int index = this.buffers.acquire("buffers");
+        this.writer.writeBuffer(this.descriptorSet, BindlessResources.BUFFER_BINDING, index, VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, buffer, 0L,
+                VK10.VK_WHOLE_SIZE);
+        return index;
+    }
+
+
+    /**
+     * Removes a texture. Its index is reused once the frames in flight completed, the texture may be destroyed then as well.
+     *
+     * @param index the index returned by {@link #addTexture(long, long)}
+     */
+    public synchronized void removeTexture(int index) {
+        this.textures.release(index);
+    }
+
+
+    /**
+     * Removes a buffer. Its index is reused once the frames in flight completed, the buffer may be destroyed then as well.
+     *
+     * @param index the index returned by {@link #addBuffer(GpuBuffer)}
+     */
+    public synchronized void removeBuffer(int index) {
+        this.buffers.release(index);
+    }
+
+
+    /**
+     * Applies the pending writes and hands removed indices over to the frames in flight. Called on the render thread before a frame is submitted.
+     */
+    synchronized void update() {
+        this.writer.flush();
+        final int[] texturesToFree = this.textures.takeReleased();
+        final int[] buffersToFree = this.buffers.takeReleased();
+        if (texturesToFree != null || buffersToFree != null) {
+            this.destroyer.accept(() -> this.free(texturesToFree, buffersToFree));
+        }
+    }
+
+
+    private synchronized void free(int[] texturesToFree, int[] buffersToFree) {
+        this.textures.free(texturesToFree);
+        this.buffers.free(buffersToFree);
+    }
+
+
+    public long getSetLayout() {
+        return this.setLayout;
+    }
+
+
+    public long getDescriptorSet() {
+        return this.descriptorSet;
+    }
+
+
+    public int getTextureCapacity() {
+        return this.textures.capacity;
+    }
+
+
+    public int getBufferCapacity() {
+        return this.buffers.capacity;
+    }
+
+
+    /**
+     * Destroys the set and its layout. The device must be idle.
+     */
+    @Override
+    public void dispose() {
+        this.writer.dispose();
+        VK10.vkDestroyDescriptorPool(this.device, this.descriptorPool, null);
+        VK10.vkDestroyDescriptorSetLayout(this.device, this.setLayout, null);
+    }
+
+
+    /**
+     * Hands out the indices of one array. Indices are taken from a free stack, released indices wait in a second stack until the frames that may use them
+     * completed.
+     */
+    private static class Slots {
+        private final int capacity;
+        private int       next;
+        private int[]     free     = new int[64];
+        private int       freeCount;
+        private int[]     released = new int[16];
+        private int       releasedCount;
+
+
+        private Slots(int capacity) {
+            this.capacity = capacity;
+        }
+
+
+        private int acquire(String name) {
+            if (this.freeCount > 0) {
+                return this.free[--this.freeCount];
+            }
+            if (this.next == this.capacity) {
+                throw new IllegalStateException("All " + this.capacity + " bindless " + name + " are in use");
+            }
+            return this.next++;
+        }
+
+
+        private void release(int index) {
+            if (this.releasedCount == this.released.length) {
+                this.released = Arrays.copyOf(this.released, this.releasedCount * 2);
+            }
+            this.released[this.releasedCount++] = index;
+        }
+
+
+        private int[] takeReleased() {
+            if (this.releasedCount == 0) {
+                return null;
+            }
+            final int[] indices = Arrays.copyOf(this.released, this.releasedCount);
+            this.releasedCount = 0;
+            return indices;
+        }
+
+
+        private void free(int[] indices) {
+            if (indices == null) {
+                return;
+            }
+            if (this.freeCount + indices.length > this.free.length) {
+                this.free = Arrays.copyOf(this.free, Math.max(this.free.length * 2, this.freeCount + indices.length));
+            }
+            System.arraycopy(indices, 0, this.free, this.freeCount, indices.length);
+            this.freeCount += indices.length;
+        }
+
+    }
+
+}
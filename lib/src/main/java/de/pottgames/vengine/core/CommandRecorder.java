@@ -0,0 +1,369 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.KHRDrawIndirectCount;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkBufferCopy;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkMemoryBarrier;
+
+/**
+ * Records draw work into the command buffer of the current frame. It's handed to {@link Application#onRender(CommandRecorder)} while the frame's render pass
+ * is active and the default graphics pipeline is bound. With more than one recording thread, the command buffer is a secondary command buffer and work can be
+ * spread across threads with {@link #recordParallel(int, ParallelRecordingJob)}.
+ *
+ * Compute work is recorded outside of render passes, in {@link Application#onCompute(CommandRecorder)} or in render graph passes without attachments. Draw
+ * and dispatch methods must not be mixed up: dispatches inside a render pass and draws outside of one are invalid.
+ *
+ * The recorder is reused every frame and is only valid during the call it was handed to.
+ */
+public class CommandRecorder {
+    private final RecordingThreadPool threadPool;
+    private VkCommandBuffer           commandBuffer;
+    private int                       frameIndex;
+    private int                       imageIndex;
+    private int                       width;
+    private int                       height;
+    private boolean                   recorded;
+
+
+    /**
+     * Creates a recorder. Without a thread pool parallel jobs are recorded inline on the calling thread.
+     *
+     * @param threadPool the pool that records parallel jobs, may be null
+     */
+    CommandRecorder(RecordingThreadPool threadPool) {
+        this.threadPool = threadPool;
+    }
+
+
+    void begin(VkCommandBuffer commandBuffer, int frameIndex, int imageIndex, int width, int height) {
+        this.commandBuffer = commandBuffer;
+        this.frameIndex = frameIndex;
+        this.imageIndex = imageIndex;
+        this.width = width;
+        this.height = height;
+        this.recorded = false;
+    }
+
+
+    void end() {
+        this.commandBuffer = null;
+    }
+
+
+    /**
+     * Returns whether anything was recorded since {@link #begin(VkCommandBuffer, int, int, int, int)}. Handing out the raw command buffer counts as recording.
+     *
+     * @return true if the command buffer may contain commands
+     */
+    boolean hasRecorded() {
+        return this.recorded;
+    }
+
+
+    private VkCommandBuffer commands() {
+        this.recorded = true;
+        return this.commandBuffer;
+    }
+
+
+    public void bindPipeline(long pipeline) {
+        VK10.vkCmdBindPipeline(this.commands(), VK10.VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline);
+    }
+
+
+    /**
+     * Binds a descriptor set for the graphics pipelines.
+     *
+     * @param pipelineLayout the layout of the pipeline, see {@link DescriptorLayoutCache#getPipelineLayout(long...)}
+     * @param setIndex the set number
+     * @param descriptorSet the descriptor set
+     */
+    public void bindDescriptorSet(long pipelineLayout, int setIndex, long descriptorSet) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VK10.vkCmdBindDescriptorSets(this.commands(), VK10.VK_PIPELINE_BIND_POINT_GRAPHICS, pipelineLayout, setIndex, stack.longs(descriptorSet), null);
+        }
+    }
+
+
+    /**
+     * Binds a descriptor set with one dynamic buffer, like the set of the {@link UniformRing}.
+     *
+     * @param pipelineLayout the layout of the pipeline
+     * @param setIndex the set number
+     * @param descriptorSet the descriptor set
+     * @param dynamicOffset the offset added to the buffer's offset, see {@link UniformRing#allocate(int)}
+     */
+    public void bindDescriptorSet(long pipelineLayout, int setIndex, long descriptorSet, int dynamicOffset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VK10.vkCmdBindDescriptorSets(this.commands(), VK10.VK_PIPELINE_BIND_POINT_GRAPHICS, pipelineLayout, setIndex, stack.longs(descriptorSet),
+                    stack.ints(dynamicOffset));
+        }
+    }
+
+
+    /**
+     * Updates push constants. The pipeline layout must have a push constant block that covers the range, see
+     * {@link DescriptorLayoutCache#getPipelineLayout(java.util.List, int, int)}.
+     *
+     * @param pipelineLayout the layout of the pipeline
+     * @param stageFlags the VkShaderStageFlags the layout declared for the block
+     * @param offset the offset in the block in bytes, a multiple of 4
+     * @param data the values, from the buffer's position to its limit, a multiple of 4 bytes. Must be a direct buffer.
+     */
+    public void pushConstants(long pipelineLayout, int stageFlags, int offset, ByteBuffer data) {
+        VK10.vkCmdPushConstants(this.commands(), pipelineLayout, stageFlags, offset, data);
+    }
+
+
+    public void bindComputePipeline(long pipeline) {
+        VK10.vkCmdBindPipeline(this.commands(), VK10.VK_PIPELINE_BIND_POINT_COMPUTE, pipeline);
+    }
+
+
+    /**
+     * Binds a descriptor set for the compute pipelines. Compute and graphics bindings are independent of each other.
+     *
+     * @param pipelineLayout the layout of the pipeline
+     * @param setIndex the set number
+     * @param descriptorSet the descriptor set
+     */
+    public void bindComputeDescriptorSet(long pipelineLayout, int setIndex, long descriptorSet) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VK10.vkCmdBindDescriptorSets(this.commands(), VK10.VK_PIPELINE_BIND_POINT_COMPUTE, pipelineLayout, setIndex, stack.longs(descriptorSet), null);
+        }
+    }
+
+
+    /**
+     * Dispatches work groups of the bound compute pipeline. The number of invocations per group is declared in the shader.
+     *
+     * @param groupCountX the number of groups in x
+     * @param groupCountY the number of groups in y
+     * @param groupCountZ the number of groups in z
+     */
+    public void dispatch(int groupCountX, int groupCountY, int groupCountZ) {
+        VK10.vkCmdDispatch(this.commands(), groupCountX, groupCountY, groupCountZ);
+    }
+
+
+    /**
+     * Dispatches work groups with the group counts read from a buffer, for example counts written by an earlier dispatch.
+     *
+     * @param buffer the buffer created with {@link VK10#VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT}
+     * @param offset the offset of a VkDispatchIndirectCommand in bytes, a multiple of 4
+     */
+    public void dispatchIndirect(GpuBuffer buffer, long offset) {
+        VK10.vkCmdDispatchIndirect(this.commands(), buffer.getBuffer(), offset);
+    }
+
+
+    /**
+     * Copies a range between buffers. Must not be called inside a render pass.
+     *
+     * @param src the buffer created with {@link VK10#VK_BUFFER_USAGE_TRANSFER_SRC_BIT}
+     * @param srcOffset the offset in the source in bytes
+     * @param dst the buffer created with {@link VK10#VK_BUFFER_USAGE_TRANSFER_DST_BIT}
+     * @param dstOffset the offset in the destination in bytes
+     * @param size the number of bytes
+     */
+    public void copyBuffer(GpuBuffer src, long srcOffset, GpuBuffer dst, long dstOffset, long size) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkBufferCopy.Buffer region = VkBufferCopy.calloc(1, stack);
+            region.srcOffset(srcOffset);
+            region.dstOffset(dstOffset);
+            region.size(size);
+            VK10.vkCmdCopyBuffer(this.commands(), src.getBuffer(), dst.getBuffer(), region);
+        }
+    }
+
+
+    /**
+     * Fills a range of a buffer with a repeated 32 bit value, for example to reset counters. Must not be called inside a render pass.
+     *
+     * @param buffer the buffer created with {@link VK10#VK_BUFFER_USAGE_TRANSFER_DST_BIT}
+     * @param offset the offset in bytes, a multiple of 4
+     * @param size the number of bytes, a multiple of 4
+     * @param value the value
+     */
+    public void fillBuffer(GpuBuffer buffer, long offset, long size, int value) {
+        VK10.vkCmdFillBuffer(this.commands(), buffer.getBuffer(), offset, size, value);
+    }
+
+
+    /**
+     * Makes the writes of earlier commands visible to later commands, for example the output of one dispatch to the next one or to indirect draws. Must not
+     * be called inside a render pass.
+     *
+     * @param srcStages the VkPipelineStageFlags of the writes
+     * @param srcAccess the VkAccessFlags of the writes
+     * @param dstStages the VkPipelineStageFlags of the reads
+     * @param dstAccess the VkAccessFlags of the reads
+     */
+    public void memoryBarrier(int srcStages, int srcAccess, int dstStages, int dstAccess) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkMemoryBarrier.Buffer barrier = VkMemoryBarrier.calloc(1, stack);
+            barrier.sType(VK10.VK_STRUCTURE_TYPE_MEMORY_BARRIER);
+            barrier.srcAccessMask(srcAccess);
+            barrier.dstAccessMask(dstAccess);
+            VK10.vkCmdPipelineBarrier(this.commands(), srcStages, dstStages, 0, barrier, null, null);
+        }
+    }
+
+
+    public void draw(int vertexCount, int instanceCount, int firstVertex, int firstInstance) {
+        VK10.vkCmdDraw(this.commands(), vertexCount, instanceCount, firstVertex, firstInstance);
+    }
+
+
+    public void drawIndexed(int indexCount, int instanceCount, int firstIndex, int vertexOffset, int firstInstance) {
+        VK10.vkCmdDrawIndexed(this.commands(), indexCount, instanceCount, firstIndex, vertexOffset, firstInstance);
+    }
+
+
+    /**
+     * Draws with the parameters read from a buffer of VkDrawIndexedIndirectCommands, for example commands written by a compute shader. More than one draw
+     * needs {@link PhysicalDevice#isMultiDrawIndirectSupported()}.
+     *
+     * @param buffer the buffer created with {@link VK10#VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT}
+     * @param offset the offset of the first command in bytes, a multiple of 4
+     * @param drawCount the number of commands
+     * @param stride the distance between commands in bytes, at least 20 and a multiple of 4
+     */
+    public void drawIndexedIndirect(GpuBuffer buffer, long offset, int drawCount, int stride) {
+        VK10.vkCmdDrawIndexedIndirect(this.commands(), buffer.getBuffer(), offset, drawCount, stride);
+    }
+
+
+    /**
+     * Draws like {@link #drawIndexedIndirect(GpuBuffer, long, int, int)}, but reads the number of commands from a buffer too, so the GPU decides how many
+     * draws there are. Needs {@link PhysicalDevice#isDrawIndirectCountSupported()}.
+     *
+     * @param buffer the buffer of commands
+     * @param offset the offset of the first command in bytes, a multiple of 4
+     * @param countBuffer the buffer with the 32 bit draw count, created with {@link VK10#VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT}
+     * @param countOffset the offset of the count in bytes, a multiple of 4
+     * @param maxDrawCount the upper bound of the count
+     * @param stride the distance between commands in bytes, at least 20 and a multiple of 4
+     */
+    public void drawIndexedIndirectCount(GpuBuffer buffer, long offset, GpuBuffer countBuffer, long countOffset, int maxDrawCount, int stride) {
+        KHRDrawIndirectCount.vkCmdDrawIndexedIndirectCountKHR(this.commands(), buffer.getBuffer(), offset, countBuffer.getBuffer(), countOffset,
+                maxDrawCount, stride);
+    }
+
+
+    /**
+     * Binds a vertex buffer to binding 0, for example a range of {@link VulkanInitializer#getDynamicGeometry()}.
+     *
+     * @param buffer the vertex buffer
+     * @param offset the offset of the first vertex in bytes
+     */
+    public void bindVertexBuffer(GpuBuffer buffer, long offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VK10.vkCmdBindVertexBuffers(this.commands(), 0, stack.longs(buffer.getBuffer()), stack.longs(offset));
+        }
+    }
+
+
+    /**
+     * Binds an index buffer.
+     *
+     * @param buffer the index buffer
+     * @param offset the offset of the first index in bytes
+     * @param indexType {@link VK10#VK_INDEX_TYPE_UINT16} or {@link VK10#VK_INDEX_TYPE_UINT32}
+     */
+    public void bindIndexBuffer(GpuBuffer buffer, long offset, int indexType) {
+        VK10.vkCmdBindIndexBuffer(this.commands(), buffer.getBuffer(), offset, indexType);
+    }
+
+
+    /**
+     * Binds the buffers of the mesh and draws all of its vertices or indices. Meshes that are not uploaded yet are skipped.
+     *
+     * @param mesh the mesh
+     * @param instanceCount the number of instances
+     */
+    public void drawMesh(Mesh mesh, int instanceCount) {
+        if (!mesh.isReady()) {
+            return;
+        }
+        this.bindVertexBuffer(mesh.getVertexBuffer(), 0L);
+        if (mesh.getIndexBuffer() == null) {
+            this.draw(mesh.getVertexCount(), instanceCount, 0, 0);
+            return;
+        }
+        this.bindIndexBuffer(mesh.getIndexBuffer(), 0L, mesh.getIndexType());
+        this.drawIndexed(mesh.getIndexCount(), instanceCount, 0, 0, 0);
+    }
+
+
+    /**
+     * Records a batch of jobs on all recording threads, see {@link ApplicationConfiguration#setRecordingThreads(int)}. Each job gets its own secondary command
+     * buffer, so jobs should be coarse, like a few hundred draw calls each. The commands of all jobs are executed in job order, between the commands recorded
+     * by this recorder before and after the call. Without recording threads, or when called from within a job, the jobs run inline on the calling thread.
+     * If a job throws, none of the batch's commands are executed and the exception is rethrown once all threads stopped recording, the recorder stays usable.
+     *
+     * @param jobCount the number of jobs
+     * @param job the job
+     */
+    public void recordParallel(int jobCount, ParallelRecordingJob job) {
+        if (this.threadPool == null) {
+            for (int i = 0; i < jobCount; i++) {
+                job.record(this, i);
+            }
+            return;
+        }
+
+        try {
+            this.threadPool.recordParallel(job, jobCount);
+        } finally {
+            // the main thread continues in a new command buffer, after a failed batch as well
+            this.commandBuffer = this.threadPool.getMainBuffer();
+            this.recorded = true;
+        }
+    }
+
+
+    /**
+     * Returns the raw command buffer for anything the recorder doesn't cover. Don't end the render pass or the command buffer.
+     *
+     * @return the command buffer that is currently recorded, it changes with every call to recordParallel
+     */
+    public VkCommandBuffer getCommandBuffer() {
+        return this.commands();
+    }
+
+
+    /**
+     * Returns the index of the current frame in flight. Use it to pick per frame resources.
+     *
+     * @return the frame index
+     */
+    public int getFrameIndex() {
+        return this.frameIndex;
+    }
+
+
+    /**
+     * Returns the index of the swap chain image that is rendered to.
+     *
+     * @return the image index
+     */
+    public int getImageIndex() {
+        return this.imageIndex;
+    }
+
+
+    public int getWidth() {
+        return this.width;
+    }
+
+
+    public int getHeight() {
+        return this.height;
+    }
+
+}
@@ -0,0 +1,13 @@
+package de.pottgames.vengine.core;
+
+@FunctionalInterface
+public interface ComputeJob {
+
+    /**
+     * Records the compute work of a frame, outside of any render pass.
+     *
+     * @param recorder the recorder of the frame's compute command buffer, only valid during this call
+     */
+    void record(CommandRecorder recorder);
+
+}
@@ -0,0 +1,24 @@
+package de.pottgames.vengine.core;
+
+/**
+ * Describes a compute pipeline. States are compared by value, so equal states share one pipeline in the {@link PipelineStateCache}.
+ *
+ * The shader is referenced by its name in the {@link ShaderCache}, either a SPIR-V file or a name registered with
+ * {@link ShaderCache#getModule(String, byte[])}. Its entry point must be called main.
+ *
+ * @param computeShader the name of the compute shader
+ * @param layout the pipeline layout
+ */
+public record ComputePipelineState(String computeShader, long layout) {
+
+    /**
+     * Returns whether the pipeline uses the shader.
+     *
+     * @param name the name of the shader
+     * @return true if it's the compute shader
+     */
+    public boolean usesShader(String name) {
+        return name.equals(this.computeShader);
+    }
+
+}
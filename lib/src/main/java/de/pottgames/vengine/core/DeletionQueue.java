@@ -0,0 +1,67 @@
+package de.pottgames.vengine.core;
+
+import java.util.ArrayDeque;
+
+/**
+ * Defers the destruction of Vulkan objects until the GPU is done with them. Every entry is keyed to the submit value of the last frame that may use the
+ * object, see {@link VulkanInitializer#getCompletedFrameValue()}. Submit values only grow, so the queue is ordered by them and collecting stops at the first
+ * entry that is still in use.
+ *
+ * Entries can be added from any thread, pipelines that finish creation on a worker are destroyed through the queue. The actions run outside of the lock.
+ */
+class DeletionQueue {
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+
+    /**
+     * Adds an action that runs once the GPU completed the frame with the submit value.
+     *
+     * @param frameValue the submit value of the last frame that may use the object
+     * @param action the action that destroys the object
+     */
+    synchronized void add(long frameValue, Runnable action) {
+        this.entries.addLast(new Entry(frameValue, action));
+    }
+
+
+    synchronized boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+
+    /**
+     * Runs the actions of all entries whose frame completed.
+     *
+     * @param completedFrameValue the submit value of the last completed frame
+     */
+    void collect(long completedFrameValue) {
+        Entry entry;
+        while ((entry = this.poll(completedFrameValue)) != null) {
+            entry.action().run();
+        }
+    }
+
+
+    /**
+     * Runs all actions. The device must be idle.
+     */
+    void flush() {
+        Entry entry;
+        while ((entry = this.poll(Long.MAX_VALUE)) != null) {
+            entry.action().run();
+        }
+    }
+
+
+    private synchronized Entry poll(long completedFrameValue) {
+        if (this.entries.isEmpty() || this.entries.peekFirst().frameValue() > completedFrameValue) {
+            return null;
+        }
+        return this.entries.pollFirst();
+    }
+
+
+    private record Entry(long frameValue, Runnable action) {
+    }
+
+}
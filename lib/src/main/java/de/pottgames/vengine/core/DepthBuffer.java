@@ -0,0 +1,37 @@
+package de.pottgames.vengine.core;
+
+import org.lwjgl.vulkan.VK10;
+
+public enum DepthBuffer {
+    /**
+     * Renders without a depth buffer, the draw order alone decides what is visible.
+     */
+    NONE(),
+    /**
+     * Adds a depth buffer, so hidden fragments are rejected before they are shaded.
+     */
+    DEPTH(VK10.VK_FORMAT_D32_SFLOAT, VK10.VK_FORMAT_X8_D24_UNORM_PACK32, VK10.VK_FORMAT_D16_UNORM),
+    /**
+     * Adds a depth buffer with a stencil component.
+     */
+    DEPTH_STENCIL(VK10.VK_FORMAT_D24_UNORM_S8_UINT, VK10.VK_FORMAT_D32_SFLOAT_S8_UINT, VK10.VK_FORMAT_D16_UNORM_S8_UINT);
+
+
+    private final int[] formats;
+
+
+    DepthBuffer(int... formats) {
+        this.formats = formats;
+    }
+
+
+    /**
+     * Returns the formats that can hold the buffer, in the order of preference.
+     *
+     * @return the VkFormats, empty for {@link #NONE}
+     */
+    int[] getFormats() {
+        return this.formats;
+    }
+
+}
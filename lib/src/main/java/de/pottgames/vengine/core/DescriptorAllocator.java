@@ -0,0 +1,226 @@
+package de.pottgames.vengine.core;
+
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VK11;
+import org.lwjgl.vulkan.VkDescriptorPoolCreateInfo;
+import org.lwjgl.vulkan.VkDescriptorPoolSize;
+import org.lwjgl.vulkan.VkDescriptorSetAllocateInfo;
+import org.lwjgl.vulkan.VkDevice;
+
+/**
+ * Allocates descriptor sets that live for one frame. Sets are never freed one by one, instead every pool a frame allocated from is reset as a whole once the
+ * GPU completed the frame, which is a lot cheaper. Allocate the sets of a frame while it's recorded and write them with a {@link DescriptorWriter}.
+ *
+ * Pools are recycled and new pools grow in size, so after a few frames the allocator reaches a steady state where it creates no pools anymore. Allocation is
+ * synchronized, so parallel recording jobs can allocate as well.
+ *
+ * Every pool holds a fixed number of descriptors of each type per set. Layouts with other types, like acceleration structures, or with more descriptors of a
+ * type than the smallest pool holds can't be allocated here and are rejected.
+ */
+public class DescriptorAllocator implements Disposable {
+    private static final int INITIAL_SETS_PER_POOL = 64;
+    private static final int MAX_SETS_PER_POOL     = 4096;
+
+    // the number of descriptors of a type per set in a pool
+    private static final int[][] POOL_RATIOS = { { VK10.VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER, 2 }, { VK10.VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC, 1 },
+            { VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, 2 }, { VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER_DYNAMIC, 1 },
+            { VK10.VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER, 4 }, { VK10.VK_DESCRIPTOR_TYPE_SAMPLED_IMAGE, 2 }, { VK10.VK_DESCRIPTOR_TYPE_SAMPLER, 1 },
+            { VK10.VK_DESCRIPTOR_TYPE_STORAGE_IMAGE, 1 }, { VK10.VK_DESCRIPTOR_TYPE_INPUT_ATTACHMENT, 1 },
+            { VK10.VK_DESCRIPTOR_TYPE_UNIFORM_TEXEL_BUFFER, 1 }, { VK10.VK_DESCRIPTOR_TYPE_STORAGE_TEXEL_BUFFER, 1 } };
+
+    private final VkDevice              device;
+    private final DescriptorLayoutCache layouts;
+    private final List<Pool>            allPools    = new ArrayList<>();
+    private final List<Pool>            framePools  = new ArrayList<>();
+    private final ArrayDeque<Pool>      freePools   = new ArrayDeque<>();
+    private int                         setsPerPool = DescriptorAllocator.INITIAL_SETS_PER_POOL;
+    private long                        frameValue;
+
+    // FRAMES IN FLIGHT, the pools of submitted frames in submission order
+    private final ArrayDeque<Pool> usedPools = new ArrayDeque<>();
+
+
+    /**
+     * Creates the allocator.
+     *
+     * @param device the device
+     * @param layouts the cache the set layouts come from, used to explain failed allocations
+     */
+    DescriptorAllocator(VkDevice device, DescriptorLayoutCache layouts) {
+        this.device = device;
+        this.layouts = layouts;
+    }
+
+
+    /**
+     * Resets the pools of completed frames and starts allocating for a new frame.
+     *
+     * @param frameValue the submit value the new frame will have
+     * @param completedFrameValue the submit value of the last completed frame
+     */
+    synchronized void beginFrame(long frameValue, long completedFrameValue) {
+        while (!this.usedPools.isEmpty() && this.usedPools.peekFirst().frameValue <= completedFrameValue) {
+            final Pool pool = this.usedPools.pollFirst();
+            VK10.vkResetDescriptorPool(this.device, pool.handle, 0);
+            this.freePools.add(pool);
+        }
+        this.frameValue = frameValue;
+    }
+
+
+    /**
+     * Hands the pools of the frame over to the GPU. Called before the frame is submitted.
+     */
+    synchronized void endFrame() {
+        for (int i = 0; i < this.framePools.size(); i++) {
+            final Pool pool = this.framePools.get(i);
+            pool.frameValue = this.frameValue;
+            this.usedPools.add(pool);
+        }
+        this.framePools.clear();
+    }
+
+
+    /**
+     * Allocates a descriptor set for the current frame. The set may be used until the frame is submitted and is recycled once the frame completed.
+     *
+     * @param setLayout the descriptor set layout, see {@link DescriptorLayoutCache}
+     * @return the VkDescriptorSet
+     * @throws IllegalArgumentException if the pools can't hold a set of the layout
+     */
+    public synchronized long allocate(long setLayout) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkDescriptorSetAllocateInfo allocateInfo = VkDescriptorSetAllocateInfo.calloc(stack);
+            allocateInfo.sType(VK10.VK_STRUCTURE_TYPE_DESCRIPTOR_SET_ALLOCATE_INFO);
+            allocateInfo.pSetLayouts(stack.longs(setLayout));
+            final LongBuffer pSet = stack.mallocLong(1);
+
+            if (!this.framePools.isEmpty()) {
+                allocateInfo.descriptorPool(this.framePools.get(this.framePools.size() - 1).handle);
+                final int result = VK10.vkAllocateDescriptorSets(this.device, allocateInfo, pSet);
+                if (result == VK10.VK_SUCCESS) {
+                    return pSet.get(0);
+                }
+                if (result != VK11.VK_ERROR_OUT_OF_POOL_MEMORY && result != VK10.VK_ERROR_FRAGMENTED_POOL) {
+                    throw new RuntimeException("Failed to allocate descriptor set");
+                }
+            }
+
+            // the current pool is full, continue in the next one
+            final Pool pool = this.nextPool();
+            this.framePools.add(pool);
+            allocateInfo.descriptorPool(pool.handle);
+            if (VK10.vkAllocateDescriptorSets(this.device, allocateInfo, pSet) != VK10.VK_SUCCESS) {
+                // growing doesn't help a layout that no pool can hold
+                final List<DescriptorBinding> bindings = this.layouts.getBindings(setLayout);
+                if (bindings != null && !DescriptorAllocator.fitsPools(bindings)) {
+                    throw new IllegalArgumentException("Failed to allocate descriptor set, the per frame pools can't hold the layout " + bindings);
+                }
+                throw new RuntimeException("Failed to allocate descriptor set");
+            }
+            return pSet.get(0);
+        }
+    }
+
+
+    /**
+     * Checks whether a set with the bindings fits into every pool, even the smallest one.
+     *
+     * @param bindings the bindings of the set layout
+     * @return true if all types are pooled and no type needs more descriptors than the smallest pool holds
+     */
+    static boolean fitsPools(List<DescriptorBinding> bindings) {
+        final int[] counts = new int[DescriptorAllocator.POOL_RATIOS.length];
+        for (final DescriptorBinding binding : bindings) {
+            int ratio = 0;
+            while (ratio < counts.length && DescriptorAllocator.POOL_RATIOS[ratio][0] != binding.type()) {
+                ratio++;
+            }
+            if (ratio == counts.length) {
+                return false;
+            }
+            counts[ratio] += binding.count();
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > DescriptorAllocator.POOL_RATIOS[i][1] * DescriptorAllocator.INITIAL_SETS_PER_POOL) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private Pool nextPool() {
+        final Pool free = this.freePools.pollFirst();
+        if (free != null) {
+            return free;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkDescriptorPoolSize.Buffer poolSizes = VkDescriptorPoolSize.calloc(DescriptorAllocator.POOL_RATIOS.length, stack);
+            for (int i = 0; i < DescriptorAllocator.POOL_RATIOS.length; i++) {
+                final VkDescriptorPoolSize poolSize = poolSizes.get(i);
+                poolSize.type(DescriptorAllocator.POOL_RATIOS[i][0]);
+                poolSize.descriptorCount(DescriptorAllocator.POOL_RATIOS[i][1] * this.setsPerPool);
+            }
+
+            final VkDescriptorPoolCreateInfo createInfo = VkDescriptorPoolCreateInfo.calloc(stack);
+            createInfo.sType(VK10.VK_STRUCTURE_TYPE_DESCRIPTOR_POOL_CREATE_INFO);
+            createInfo.maxSets(this.setsPerPool);
+            createInfo.pPoolSizes(poolSizes);
+
+            final LongBuffer pPool = stack.mallocLong(1);
+            if (VK10.vkCreateDescriptorPool(this.device, createInfo, null, pPool) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create descriptor pool");
+            }
+
+            // a frame that needed another pool will likely need it again, bigger pools mean fewer pool switches
+            this.setsPerPool = Math.min(this.setsPerPool * 2, DescriptorAllocator.MAX_SETS_PER_POOL);
+            final Pool pool = new Pool(pPool.get(0));
+            this.allPools.add(pool);
+            return pool;
+        }
+    }
+
+
+    /**
+     * Returns the number of descriptor pools that were created so far.
+     *
+     * @return the number of pools
+     */
+    public synchronized int getPoolCount() {
+        return this.allPools.size();
+    }
+
+
+    /**
+     * Destroys all pools and with them all sets. The device must be idle.
+     */
+    @Override
+    public synchronized void dispose() {
+        this.allPools.forEach(pool -> VK10.vkDestroyDescriptorPool(this.device, pool.handle, null));
+        this.allPools.clear();
+        this.framePools.clear();
+        this.freePools.clear();
+        this.usedPools.clear();
+    }
+
+
+    private static class Pool {
+        private final long handle;
+        private long       frameValue;
+
+
+        private Pool(long handle) {
+            this.handle = handle;
+        }
+
+    }
+
+}
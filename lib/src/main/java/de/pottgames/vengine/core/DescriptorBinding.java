@@ -0,0 +1,17 @@
+package de.pottgames.vengine.core;
+
+/**
+ * One binding of a descriptor set layout, see {@link DescriptorLayoutCache}.
+ *
+ * @param binding the binding number
+ * @param type the VkDescriptorType
+ * @param count the number of descriptors, more than 1 for arrays
+ * @param stageFlags the VkShaderStageFlags of the shaders that access the binding
+ */
+public record DescriptorBinding(int binding, int type, int count, int stageFlags) {
+
+    public DescriptorBinding(int binding, int type, int stageFlags) {
+        this(binding, type, 1, stageFlags);
+    }
+
+}
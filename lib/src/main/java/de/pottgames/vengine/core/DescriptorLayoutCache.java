@@ -0,0 +1,164 @@
+package de.pottgames.vengine.core;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutBinding;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutCreateInfo;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkPipelineLayoutCreateInfo;
+import org.lwjgl.vulkan.VkPushConstantRange;
+
+/**
+ * Creates descriptor set layouts and pipeline layouts and keeps them for the lifetime of the device. Layouts are deduplicated by their signature, so asking for
+ * the same bindings twice returns the same layout, no matter in which order the bindings are listed. Equal handles also make pipeline layouts compatible, so
+ * sets stay bound when the pipeline changes.
+ */
+public class DescriptorLayoutCache implements Disposable {
+    private final VkDevice                           device;
+    private final Map<List<DescriptorBinding>, Long> setLayouts      = new HashMap<>();
+    private final Map<PipelineLayoutKey, Long>       pipelineLayouts = new HashMap<>();
+    private final Map<Long, List<DescriptorBinding>> bindings        = new HashMap<>();
+
+
+    DescriptorLayoutCache(VkDevice device) {
+        this.device = device;
+    }
+
+
+    public long getSetLayout(DescriptorBinding... bindings) {
+        return this.getSetLayout(List.of(bindings));
+    }
+
+
+    /**
+     * Returns the descriptor set layout with the bindings, creating it on first use.
+     *
+     * @param bindings the bindings
+     * @return the VkDescriptorSetLayout, owned by the cache
+     */
+    public synchronized long getSetLayout(List<DescriptorBinding> bindings) {
+        final List<DescriptorBinding> key = new ArrayList<>(bindings);
+        key.sort(Comparator.comparingInt(DescriptorBinding::binding));
+        final Long cached = this.setLayouts.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkDescriptorSetLayoutBinding.Buffer layoutBindings = VkDescriptorSetLayoutBinding.calloc(key.size(), stack);
+            for (int i = 0; i < key.size(); i++) {
+                final DescriptorBinding binding = key.get(i);
+                final VkDescriptorSetLayoutBinding layoutBinding = layoutBindings.get(i);
+                layoutBinding.binding(binding.binding());
+                layoutBinding.descriptorType(binding.type());
+                layoutBinding.descriptorCount(binding.count());
+                layoutBinding.stageFlags(binding.stageFlags());
+            }
+
+            final VkDescriptorSetLayoutCreateInfo createInfo = VkDescriptorSetLayoutCreateInfo.calloc(stack);
+            createInfo.sType(VK10.VK_STRUCTURE_TYPE_DESCRIPTOR_SET_LAYOUT_CREATE_INFO);
+            createInfo.pBindings(layoutBindings);
+
+            final LongBuffer pSetLayout = stack.mallocLong(1);
+            if (VK10.vkCreateDescriptorSetLayout(this.device, createInfo, null, pSetLayout) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create descriptor set layout");
+            }
+            this.setLayouts.put(List.copyOf(key), pSetLayout.get(0));
+            this.bindings.put(pSetLayout.get(0), List.copyOf(key));
+            return pSetLayout.get(0);
+        }
+    }
+
+
+    /**
+     * Returns the bindings a set layout of this cache was created with.
+     *
+     * @param setLayout the VkDescriptorSetLayout
+     * @return the bindings, or null if the layout wasn't created by this cache
+     */
+    synchronized List<DescriptorBinding> getBindings(long setLayout) {
+        return this.bindings.get(setLayout);
+    }
+
+
+    public long getPipelineLayout(long... setLayouts) {
+        final List<Long> list = new ArrayList<>(setLayouts.length);
+        for (final long setLayout : setLayouts) {
+            list.add(setLayout);
+        }
+        return this.getPipelineLayout(list);
+    }
+
+
+    public long getPipelineLayout(List<Long> setLayouts) {
+        return this.getPipelineLayout(setLayouts, 0, 0);
+    }
+
+
+    /**
+     * Returns the pipeline layout with the descriptor set layouts and a push constant block, creating it on first use.
+     *
+     * @param setLayouts the descriptor set layouts, in set order
+     * @param pushConstantStages the VkShaderStageFlags of the shaders that read the push constants, 0 without push constants
+     * @param pushConstantSize the size of the push constant block in bytes, a multiple of 4 and at most
+     *            {@link PhysicalDevice#getMaxPushConstantsSize()}
+     * @return the VkPipelineLayout, owned by the cache
+     */
+    public synchronized long getPipelineLayout(List<Long> setLayouts, int pushConstantStages, int pushConstantSize) {
+        final PipelineLayoutKey key = new PipelineLayoutKey(List.copyOf(setLayouts), pushConstantStages, pushConstantSize);
+        final Long cached = this.pipelineLayouts.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final LongBuffer pSetLayouts = stack.mallocLong(setLayouts.size());
+            for (int i = 0; i < setLayouts.size(); i++) {
+                pSetLayouts.put(i, setLayouts.get(i));
+            }
+
+            final VkPipelineLayoutCreateInfo createInfo = VkPipelineLayoutCreateInfo.calloc(stack);
+            createInfo.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_LAYOUT_CREATE_INFO);
+            createInfo.pSetLayouts(pSetLayouts);
+            if (pushConstantSize > 0) {
+                final VkPushConstantRange.Buffer pushConstantRange = VkPushConstantRange.calloc(1, stack);
+                pushConstantRange.stageFlags(pushConstantStages);
+                pushConstantRange.offset(0);
+                pushConstantRange.size(pushConstantSize);
+                createInfo.pPushConstantRanges(pushConstantRange);
+            }
+
+            final LongBuffer pPipelineLayout = stack.mallocLong(1);
+            if (VK10.vkCreatePipelineLayout(this.device, createInfo, null, pPipelineLayout) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create pipeline layout");
+            }
+            this.pipelineLayouts.put(key, pPipelineLayout.get(0));
+            return pPipelineLayout.get(0);
+        }
+    }
+
+
+    /**
+     * Destroys all layouts. The device must be idle.
+     */
+    @Override
+    public synchronized void dispose() {
+        this.pipelineLayouts.values().forEach(layout -> VK10.vkDestroyPipelineLayout(this.device, layout, null));
+        this.pipelineLayouts.clear();
+        this.setLayouts.values().forEach(layout -> VK10.vkDestroyDescriptorSetLayout(this.device, layout, null));
+        this.setLayouts.clear();
+        this.bindings.clear();
+    }
+
+
+    private record PipelineLayoutKey(List<Long> setLayouts, int pushConstantStages, int pushConstantSize) {
+    }
+
+}
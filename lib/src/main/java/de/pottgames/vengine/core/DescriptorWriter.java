@@ -0,0 +1,242 @@
+package de.pottgames.vengine.core;
+
+import java.util.Arrays;
+
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkDescriptorBufferInfo;
+import org.lwjgl.vulkan.VkDescriptorImageInfo;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkWriteDescriptorSet;
+
+/**
+ * Collects descriptor writes and applies them with a single vkUpdateDescriptorSets call. Writes to consecutive array elements of the same binding are merged
+ * into one VkWriteDescriptorSet. The pending writes are kept in arrays and the structs are reused, so writing doesn't allocate once the writer has grown to
+ * the largest batch.
+ *
+ * A writer isn't thread safe, use one per thread.
+ */
+public class DescriptorWriter implements Disposable {
+    private final VkDevice device;
+
+    // PENDING WRITES, one entry per merged VkWriteDescriptorSet
+    private int       writeCount;
+    private long[]    writeSets          = new long[16];
+    private int[]     writeBindings      = new int[16];
+    private int[]     writeArrayElements = new int[16];
+    private int[]     writeTypes         = new int[16];
+    private int[]     writeCounts        = new int[16];
+    private int[]     writeFirstInfos    = new int[16];
+    private boolean[] writeImages        = new boolean[16];
+
+    // PENDING DESCRIPTORS, buffer infos hold buffer, offset and range, image infos hold sampler, image view and layout
+    private int    bufferCount;
+    private long[] bufferInfos = new long[16 * 3];
+    private int    imageCount;
+    private long[] imageInfos  = new long[16 * 3];
+
+    // STRUCTS
+    private VkWriteDescriptorSet.Buffer   writes;
+    private VkDescriptorBufferInfo.Buffer bufferInfoStructs;
+    private VkDescriptorImageInfo.Buffer  imageInfoStructs;
+
+
+    /**
+     * Creates a writer for the engine's device.
+     */
+    public DescriptorWriter() {
+        this(VulkanInitializer.get().getDevice());
+    }
+
+
+    DescriptorWriter(VkDevice device) {
+        this.device = device;
+    }
+
+
+    /**
+     * Adds a buffer descriptor write.
+     *
+     * @param set the descriptor set
+     * @param binding the binding
+     * @param arrayElement the array element of the binding
+     * @param type the VkDescriptorType, a uniform or storage buffer type
+     * @param buffer the buffer
+     * @param offset the offset in bytes
+     * @param range the size in bytes or {@link VK10#VK_WHOLE_SIZE}
+     * @return this writer
+     */
+    public DescriptorWriter writeBuffer(long set, int binding, int arrayElement, int type, GpuBuffer buffer, long offset, long range) {
+        if (!this.merge(set, binding, arrayElement, type, false)) {
+            this.addWrite(set, binding, arrayElement, type, false, this.bufferCount);
+        }
+        if ((this.bufferCount + 1) * 3 > this.bufferInfos.length) {
+            this.bufferInfos = Arrays.copyOf(this.bufferInfos, this.bufferInfos.length * 2);
+        }
+        final int index = this.bufferCount * 3;
+        this.bufferInfos[index] = buffer.getBuffer();
+        this.bufferInfos[index + 1] = offset;
+        this.bufferInfos[index + 2] = range;
+        this.bufferCount++;
+        return this;
+    }
+
+
+    /**
+     * Adds an image descriptor write.
+     *
+     * @param set the descriptor set
+     * @param binding the binding
+     * @param arrayElement the array element of the binding
+     * @param type the VkDescriptorType, an image, sampler or input attachment type
+     * @param imageView the image view, ignored for samplers
+     * @param sampler the sampler, ignored for types without a sampler
+     * @param imageLayout the layout the image is in when it's accessed
+     * @return this writer
+     */
+    public DescriptorWriter writeImage(long set, int binding, int arrayElement, int type, long imageView, long sampler, int imageLayout) {
+        if (!this.merge(set, binding, arrayElement, type, true)) {
+            this.addWrite(set, binding, arrayElement, type, true, this.imageCount);
+        }
+        if ((this.imageCount + 1) * 3 > this.imageInfos.length) {
+            this.imageInfos = Arrays.copyOf(this.imageInfos, this.imageInfos.length * 2);
+        }
+        final int index = this.imageCount * 3;
+        this.imageInfos[index] = sampler;
+        this.imageInfos[index + 1] = imageView;
+        this.imageInfos[index + 2] = imageLayout;
+        this.imageCount++;
+        return this;
+    }
+
+
+    private boolean merge(long set, int binding, int arrayElement, int type, boolean image) {
+        if (this.writeCount == 0) {
+            return false;
+        }
+        final int last = this.writeCount - 1;
+        if (this.writeSets[last] != set || this.writeBindings[last] != binding || this.writeTypes[last] != type || this.writeImages[last] != image
+                || this.writeArrayElements[last] + this.writeCounts[last] != arrayElement) {
+            return false;
+        }
+        // the descriptors of a write must be consecutive infos, which holds as long as no other write came in between
+        this.writeCounts[last]++;
+        return true;
+    }
+
+
+    private void addWrite(long set, int binding, int arrayElement, int type, boolean image, int firstInfo) {
+        if (this.writeCount == this.writeSets.length) {
+            final int capacity = this.writeCount * 2;
+            this.writeSets = Arrays.copyOf(this.writeSets, capacity);
+            this.writeBindings = Arrays.copyOf(this.writeBindings, capacity);
+            this.writeArrayElements = Arrays.copyOf(this.writeArrayElements, capacity);
+            this.writeTypes = Arrays.copyOf(this.writeTypes, capacity);
+            this.writeCounts = Arrays.copyOf(this.writeCounts, capacity);
+            this.writeFirstInfos = Arrays.copyOf(this.writeFirstInfos, capacity);
+            this.writeImages = Arrays.copyOf(this.writeImages, capacity);
+        }
+        this.writeSets[this.writeCount] = set;
+        this.writeBindings[this.writeCount] = binding;
+        this.writeArrayElements[this.writeCount] = arrayElement;
+        this.writeTypes[this.writeCount] = type;
+        this.writeCounts[this.writeCount] = 1;
+        this.writeFirstInfos[this.writeCount] = firstInfo;
+        this.writeImages[this.writeCount] = image;
+        this.writeCount++;
+    }
+
+
+    /**
+     * Returns the number of VkWriteDescriptorSets the next {@link #flush()} submits.
+     *
+     * @return the number of merged writes
+     */
+    public int getPendingWriteCount() {
+        return this.writeCount;
+    }
+
+
+    /**
+     * Applies all pending writes with one vkUpdateDescriptorSets call.
+     */
+    public void flush() {
+        if (this.writeCount == 0) {
+            return;
+        }
+        this.ensureCapacity();
+
+        for (int i = 0; i < this.bufferCount; i++) {
+            final VkDescriptorBufferInfo info = this.bufferInfoStructs.get(i);
+            info.buffer(this.bufferInfos[i * 3]);
+            info.offset(this.bufferInfos[i * 3 + 1]);
+            info.range(this.bufferInfos[i * 3 + 2]);
+        }
+        for (int i = 0; i < this.imageCount; i++) {
+            final VkDescriptorImageInfo info = this.imageInfoStructs.get(i);
+            info.sampler(this.imageInfos[i * 3]);
+            info.imageView(this.imageInfos[i * 3 + 1]);
+            info.imageLayout((int) this.imageInfos[i * 3 + 2]);
+        }
+
+        for (int i = 0; i < this.writeCount; i++) {
+            final VkWriteDescriptorSet write = this.writes.get(i);
+            write.sType(VK10.VK_STRUCTURE_TYPE_WRITE_DESCRIPTOR_SET);
+            write.dstSet(this.writeSets[i]);
+            write.dstBinding(this.writeBindings[i]);
+            write.dstArrayElement(this.writeArrayElements[i]);
+            write.descriptorType(this.writeTypes[i]);
+            if (this.writeImages[i]) {
+                write.pBufferInfo(null);
+                write.pImageInfo(VkDescriptorImageInfo.create(this.imageInfoStructs.address(this.writeFirstInfos[i]), this.writeCounts[i]));
+            } else {
+                write.pImageInfo(null);
+                write.pBufferInfo(VkDescriptorBufferInfo.create(this.bufferInfoStructs.address(this.writeFirstInfos[i]), this.writeCounts[i]));
+            }
+            write.descriptorCount(this.writeCounts[i]);
+        }
+
+        this.writes.limit(this.writeCount);
+        VK10.vkUpdateDescriptorSets(this.device, this.writes, null);
+        this.writes.clear();
+
+        this.writeCount = 0;
+        this.bufferCount = 0;
+        this.imageCount = 0;
+    }
+
+
+    private void ensureCapacity() {
+        if (this.writes == null || this.writes.capacity() < this.writeCount) {
+            if (this.writes != null) {
+                this.writes.free();
+            }
+            this.writes = VkWriteDescriptorSet.calloc(this.writeSets.length);
+        }
+        if (this.bufferInfoStructs == null || this.bufferInfoStructs.capacity() < this.bufferCount) {
+            if (this.bufferInfoStructs != null) {
+                this.bufferInfoStructs.free();
+            }
+            this.bufferInfoStructs = VkDescriptorBufferInfo.calloc(this.bufferInfos.length / 3);
+        }
+        if (this.imageInfoStructs == null || this.imageInfoStructs.capacity() < this.imageCount) {
+            if (this.imageInfoStructs != null) {
+                this.imageInfoStructs.free();
+            }
+            this.imageInfoStructs = VkDescriptorImageInfo.calloc(this.imageInfos.length / 3);
+        }
+    }
+
+
+    /**
+     * Frees the structs. Pending writes are dropped.
+     */
+    @Override
+    public void dispose() {
+        if (this.writes != null) {
+            this.writes.free();
+            this.bufferInfoStructs.free();
+            this.imageInfoStructs.free();
+        }
+    }
+
+}
@@ -1,29 +1,63 @@
 package de.pottgames.vengine.core;
 
 import org.lwjgl.glfw.GLFW;
+import org.lwjgl.system.MemoryUtil;
 
 public class Engine {
 
     public Engine(ApplicationConfiguration config, Application app) {
         final WindowConfiguration windowConfig = config.getWindowConfiguration();
+        final boolean headless = config.isHeadless();
         boolean running = true;
 
         // SETUP
         final GlfwInitializer glfwInitializer = GlfwInitializer.get();
-        glfwInitializer.init();
-        final GlfwWindow window = new GlfwWindow(windowConfig);
-        VulkanInitializer.create(window.window);
+        GlfwWindow window = null;
+        if (!headless) {
+            glfwInitializer.init();
+            window = new GlfwWindow(windowConfig);
+        }
+        VulkanInitializer.create(headless ? MemoryUtil.NULL : window.window);
         final VulkanInitializer vulkanInitializer = VulkanInitializer.get();
-        vulkanInitializer.init(windowConfig.getTitle(), config.isDebugMode(), window, windowConfig.getSwapMode());
-        window.setResizeCallBack(vulkanInitializer);
+        vulkanInitializer.init(config, window);
+        final FramePacer pacer = FramePacer.get();
+        pacer.init(windowConfig);
+        final FrameTimings timings = FrameTimings.get();
+        long frameStart = System.nanoTime();
+        if (!headless) {
+            window.setResizeCallBack(vulkanInitializer);
+        }
 
         // APPLICATION HANDLING
         app.onCreate();
+        final ComputeJob computeJob = app::onCompute;
         while (running) {
-            GLFW.glfwPollEvents();
-            app.onRender();
-            vulkanInitializer.drawFrame(); // FIXME: remove later
-            if (window.shouldClose()) {
+            if (pacer.isLowLatency()) {
+                // sleep before input is sampled, not after present
+                pacer.sync();
+                vulkanInitializer.waitForFrame();
+            }
+            if (!headless) {
+                final long pollStart = System.nanoTime();
+                GLFW.glfwPollEvents();
+                timings.recordSince(FramePhase.POLL_EVENTS, pollStart);
+            }
+            final CommandRecorder recorder = vulkanInitializer.beginFrame(computeJob);
+            if (recorder != null) {
+                final long renderStart = System.nanoTime();
+                app.onRender(recorder);
+                timings.recordSince(FramePhase.RENDER, renderStart);
+                vulkanInitializer.endFrame();
+            }
+            if (!pacer.isLowLatency()) {
+                pacer.sync();
+            }
+            final long frameEnd = System.nanoTime();
+            timings.record(FramePhase.FRAME, frameEnd - frameStart);
+            frameStart = frameEnd;
+            if (headless) {
+                running = !app.canClose();
+            } else if (window.shouldClose()) {
                 if (app.canClose()) {
                     running = false;
                 } else {
@@ -34,9 +68,13 @@ public class Engine {
         app.onDispose();
 
         // SHUTDOWN
-        window.dispose();
+        if (!headless) {
+            window.dispose();
+        }
         vulkanInitializer.dispose();
-        glfwInitializer.dispose();
+        if (!headless) {
+            glfwInitializer.dispose();
+        }
     }
 
 }
@@ -1,25 +1,129 @@
 package de.pottgames.vengine.core;
 
+import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 
-import org.lwjgl.system.MemoryStack;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.KHRSwapchain;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VK12;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkPresentInfoKHR;
+import org.lwjgl.vulkan.VkSubmitInfo;
+import org.lwjgl.vulkan.VkTimelineSemaphoreSubmitInfo;
 
 /**
- * Wraps the needed sync objects for an in flight frame
+ * Wraps the needed sync objects for an in flight frame, the command pool the frame records into, and the submit and present structs that use them. The
+ * structs are allocated once and only patched every frame, so submitting a frame doesn't allocate anything.
  *
- * This frame's sync objects must be deleted manually
+ * With async compute the submission additionally waits for the semaphore of the frame's compute submission, see {@link #setComputeWait(long, int)}.
+ *
+ * Every submission of the frame gets a submit value. With the timeline semaphore backend the submission signals the value on the timeline semaphore, with the
+ * fence backend the value is only bookkeeping and the fence tells when it is reached.
+ *
+ * This frame's sync objects and command pool must be deleted manually, {@link #dispose()} only frees the preallocated structs.
  */
-public class Frame {
+public class Frame implements Disposable {
+
+    private final long            imageAvailableSemaphore;
+    private final long            renderFinishedSemaphore;
+    private final long            fence;
+    private final long            timelineSemaphore;
+    private final long            commandPool;
+    private final VkCommandBuffer commandBuffer;
+    private final int             presentWaits;
+    private long                  submitValue;
 
-    private final long imageAvailableSemaphore;
-    private final long renderFinishedSemaphore;
-    private final long fence;
+    // PREALLOCATED STRUCTS
+    private final LongBuffer                    pImageAvailableSemaphore;
+    private final LongBuffer                    pWaitSemaphores;
+    private final LongBuffer                    pRenderFinishedSemaphore;
+    private final LongBuffer                    pFence;
+    private final IntBuffer                     pWaitDstStageMask;
+    private final IntBuffer                     pImageIndex;
+    private final LongBuffer                    pSwapChain;
+    private final PointerBuffer                 pCommandBuffer;
+    private final LongBuffer                    pSignalSemaphores;
+    private final LongBuffer                    pWaitValues;
+    private final LongBuffer                    pSignalValues;
+    private final VkSubmitInfo                  submitInfo;
+    private final VkTimelineSemaphoreSubmitInfo timelineSubmitInfo;
+    private final VkPresentInfoKHR              presentInfo;
 
 
-    public Frame(long imageAvailableSemaphore, long renderFinishedSemaphore, long fence) {
+    /**
+     * Creates a new frame. Pass {@link VK10#VK_NULL_HANDLE} for both semaphores if the frame is never presented, the submit info will neither wait nor signal
+     * then.
+     *
+     * Pass a timeline semaphore to signal the submit value on it, the fence is not needed then.
+     *
+     * @param imageAvailableSemaphore the semaphore signaled when the swap chain image was acquired
+     * @param renderFinishedSemaphore the semaphore signaled when rendering finished
+     * @param fence the fence signaled when the frame's submission completed, or {@link VK10#VK_NULL_HANDLE} with a timeline semaphore
+     * @param timelineSemaphore the timeline semaphore the submit value is signaled on, or {@link VK10#VK_NULL_HANDLE} to use the fence
+     * @param commandPool the command pool that is reset every time the frame is reused
+     * @param commandBuffer the primary command buffer allocated from the pool
+     */
+    public Frame(long imageAvailableSemaphore, long renderFinishedSemaphore, long fence, long timelineSemaphore, long commandPool,
+            VkCommandBuffer commandBuffer) {
         this.imageAvailableSemaphore = imageAvailableSemaphore;
         this.renderFinishedSemaphore = renderFinishedSemaphore;
         this.fence = fence;
+        this.timelineSemaphore = timelineSemaphore;
+        this.commandPool = commandPool;
+        this.commandBuffer = commandBuffer;
+
+        this.pImageAvailableSemaphore = MemoryUtil.memAllocLong(1).put(0, imageAvailableSemaphore);
+        this.pRenderFinishedSemaphore = MemoryUtil.memAllocLong(1).put(0, renderFinishedSemaphore);
+        this.pFence = MemoryUtil.memAllocLong(1).put(0, fence);
+        // the image available semaphore and the compute semaphore
+        this.pWaitSemaphores = MemoryUtil.memAllocLong(2).put(0, imageAvailableSemaphore);
+        this.pWaitDstStageMask = MemoryUtil.memAllocInt(2).put(0, VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT);
+        this.pImageIndex = MemoryUtil.memAllocInt(1);
+        this.pSwapChain = MemoryUtil.memAllocLong(1);
+        this.pCommandBuffer = MemoryUtil.memAllocPointer(1).put(0, commandBuffer);
+        this.pSignalSemaphores = MemoryUtil.memAllocLong(2);
+        this.pWaitValues = MemoryUtil.memCallocLong(2);
+        this.pSignalValues = MemoryUtil.memCallocLong(2);
+
+        this.submitInfo = VkSubmitInfo.calloc();
+        this.submitInfo.sType(VK10.VK_STRUCTURE_TYPE_SUBMIT_INFO);
+        this.submitInfo.pCommandBuffers(this.pCommandBuffer);
+        this.submitInfo.pWaitSemaphores(this.pWaitSemaphores);
+        this.submitInfo.pWaitDstStageMask(this.pWaitDstStageMask);
+
+        this.presentInfo = VkPresentInfoKHR.calloc();
+        this.presentInfo.sType(KHRSwapchain.VK_STRUCTURE_TYPE_PRESENT_INFO_KHR);
+        this.presentInfo.swapchainCount(1);
+        this.presentInfo.pSwapchains(this.pSwapChain);
+        this.presentInfo.pImageIndices(this.pImageIndex);
+
+        this.presentWaits = imageAvailableSemaphore != VK10.VK_NULL_HANDLE ? 1 : 0;
+        this.submitInfo.waitSemaphoreCount(this.presentWaits);
+        if (imageAvailableSemaphore != VK10.VK_NULL_HANDLE) {
+            this.pSignalSemaphores.put(renderFinishedSemaphore);
+            this.presentInfo.pWaitSemaphores(this.pRenderFinishedSemaphore);
+        }
+
+        if (timelineSemaphore != VK10.VK_NULL_HANDLE) {
+            // the timeline is signaled last, the values of binary semaphores are ignored
+            final int timelineIndex = this.pSignalSemaphores.position();
+            this.pSignalSemaphores.put(timelineSemaphore);
+            this.pSignalValues.limit(timelineIndex + 1);
+            this.pWaitValues.limit(this.presentWaits);
+
+            this.timelineSubmitInfo = VkTimelineSemaphoreSubmitInfo.calloc();
+            this.timelineSubmitInfo.sType(VK12.VK_STRUCTURE_TYPE_TIMELINE_SEMAPHORE_SUBMIT_INFO);
+            this.timelineSubmitInfo.pWaitSemaphoreValues(this.pWaitValues);
+            this.timelineSubmitInfo.pSignalSemaphoreValues(this.pSignalValues);
+            this.submitInfo.pNext(this.timelineSubmitInfo);
+        } else {
+            this.timelineSubmitInfo = null;
+        }
+
+        this.pSignalSemaphores.flip();
+        this.submitInfo.pSignalSemaphores(this.pSignalSemaphores);
     }
 
 
@@ -29,7 +133,7 @@ public class Frame {
 
 
     public LongBuffer pImageAvailableSemaphore() {
-        return MemoryStack.stackGet().longs(this.imageAvailableSemaphore);
+        return this.pImageAvailableSemaphore;
     }
 
 
@@ -39,7 +143,7 @@ public class Frame {
 
 
     public LongBuffer pRenderFinishedSemaphore() {
-        return MemoryStack.stackGet().longs(this.renderFinishedSemaphore);
+        return this.pRenderFinishedSemaphore;
     }
 
 
@@ -49,7 +153,125 @@ public class Frame {
 
 
     public LongBuffer pFence() {
-        return MemoryStack.stackGet().longs(this.fence);
+        return this.pFence;
+    }
+
+
+    public long timelineSemaphore() {
+        return this.timelineSemaphore;
+    }
+
+
+    /**
+     * Returns the value of the frame's last submission. The frame can be reused once the GPU reached it.
+     *
+     * @return the submit value, 0 if the frame was never submitted
+     */
+    public long submitValue() {
+        return this.submitValue;
+    }
+
+
+    /**
+     * Sets the value of the next submission and patches it into the submit info.
+     *
+     * @param submitValue the submit value, larger than all values submitted before
+     */
+    public void setSubmitValue(long submitValue) {
+        this.submitValue = submitValue;
+        if (this.timelineSubmitInfo != null) {
+            this.pSignalValues.put(this.pSignalValues.limit() - 1, submitValue);
+        }
+    }
+
+
+    /**
+     * Lets the next submission wait for a binary semaphore in addition to the swap chain image, or removes that wait again. Only patches the preallocated
+     * submit info.
+     *
+     * @param semaphore the semaphore signaled by the frame's compute submission, or {@link VK10#VK_NULL_HANDLE} to not wait
+     * @param stages the VkPipelineStageFlags that wait
+     */
+    public void setComputeWait(long semaphore, int stages) {
+        final int waitCount = semaphore != VK10.VK_NULL_HANDLE ? this.presentWaits + 1 : this.presentWaits;
+        if (semaphore != VK10.VK_NULL_HANDLE) {
+            this.pWaitSemaphores.put(this.presentWaits, semaphore);
+            this.pWaitDstStageMask.put(this.presentWaits, stages);
+        }
+        this.submitInfo.waitSemaphoreCount(waitCount);
+        if (this.timelineSubmitInfo != null) {
+            // the values of binary semaphores are ignored, but there must be one per semaphore
+            this.pWaitValues.limit(waitCount);
+            this.timelineSubmitInfo.pWaitSemaphoreValues(this.pWaitValues);
+        }
+    }
+
+
+    public long commandPool() {
+        return this.commandPool;
+    }
+
+
+    public VkCommandBuffer commandBuffer() {
+        return this.commandBuffer;
+    }
+
+
+    /**
+     * The buffer vkAcquireNextImageKHR writes the image index to. It's also referenced by the present info.
+     *
+     * @return the image index buffer
+     */
+    public IntBuffer pImageIndex() {
+        return this.pImageIndex;
+    }
+
+
+    public int imageIndex() {
+        return this.pImageIndex.get(0);
+    }
+
+
+    /**
+     * Returns the preallocated submit info that executes the frame's command buffer.
+     *
+     * @return the submit info
+     */
+    public VkSubmitInfo submitInfo() {
+        return this.submitInfo;
+    }
+
+
+    /**
+     * Patches the preallocated present info with the swap chain to present to. The image index is the one last written to {@link #pImageIndex()}.
+     *
+     * @param swapChain the swap chain
+     * @return the present info
+     */
+    public VkPresentInfoKHR presentInfo(long swapChain) {
+        this.pSwapChain.put(0, swapChain);
+        return this.presentInfo;
+    }
+
+
+    @Override
+    public void dispose() {
+        this.submitInfo.free();
+        if (this.timelineSubmitInfo != null) {
+            this.timelineSubmitInfo.free();
+        }
+        this.presentInfo.free();
+        MemoryUtil.memFree(this.pImageAvailableSemaphore);
+        MemoryUtil.memFree(this.pWaitSemaphores);
+        MemoryUtil.memFree(this.pRenderFinishedSemaphore);
+        MemoryUtil.memFree(this.pFence);
+        MemoryUtil.memFree(this.pWaitDstStageMask);
+        MemoryUtil.memFree(this.pImageIndex);
+        MemoryUtil.memFree(this.pSwapChain);
+        MemoryUtil.memFree(this.pCommandBuffer);
+        MemoryUtil.memFree(this.pSignalSemaphores);
+        MemoryUtil.memFree(this.pWaitValues);
+        MemoryUtil.memFree(this.pSignalValues);
     }
 
 }
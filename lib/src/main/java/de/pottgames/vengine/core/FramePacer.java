@@ -0,0 +1,226 @@
+package de.pottgames.vengine.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limits the frame rate of the engine loop and keeps statistics about how precisely frames start on time. The waiter sleeps while the remaining time is larger
+ * than the worst sleep overshoot seen recently and spins for the rest, which keeps the CPU mostly idle and still hits the deadline within microseconds.
+ *
+ * Frames are scheduled on a fixed grid. If a frame starts more than one period late, the grid is moved instead of rendering the missed frames back to back.
+ *
+ * The pacer is driven by the render thread, all methods must be called from it.
+ */
+public class FramePacer {
+    private static final FramePacer instance = new FramePacer();
+
+    private static final long NANOS_IN_SECOND   = 1_000_000_000L;
+    private static final long SLEEP_STEP        = 1_000_000L;
+    private static final long INITIAL_OVERSHOOT = 500_000L;
+    private static final int  OVERSHOOT_DECAY   = 64;
+
+    private int     maxFramerate;
+    private boolean lowLatency;
+    private long    period;
+    private long    nextDeadline;
+    private long    sleepOvershoot  = FramePacer.INITIAL_OVERSHOOT;
+    private boolean timerFixStarted = false;
+
+    // STATS
+    private long pacedFrames;
+    private long missedDeadlines;
+    private long errorSum;
+    private long maxError;
+    private long lastFrameStart;
+    private long frameTimeSum;
+    private long maxFrameTime;
+
+
+    public static FramePacer get() {
+        return FramePacer.instance;
+    }
+
+
+    private FramePacer() {
+        // singleton
+    }
+
+
+    void init(WindowConfiguration config) {
+        this.lowLatency = config.isLowLatencyPacing();
+        this.setMaxFramerate(config.getMaxFramerate());
+        this.resetStats();
+    }
+
+
+    public int getMaxFramerate() {
+        return this.maxFramerate;
+    }
+
+
+    /**
+     * Changes the frame rate limit. The new limit applies from the next frame on.
+     *
+     * @param maxFramerate the maximum number of frames per second, 0 or less disables the limit
+     */
+    public void setMaxFramerate(int maxFramerate) {
+        this.maxFramerate = Math.max(0, maxFramerate);
+        this.period = maxFramerate > 0 ? FramePacer.NANOS_IN_SECOND / maxFramerate : 0L;
+        this.nextDeadline = System.nanoTime();
+        if (maxFramerate > 0 && !this.timerFixStarted) {
+            this.startTimerFix();
+        }
+    }
+
+
+    public boolean isLowLatency() {
+        return this.lowLatency;
+    }
+
+
+    /**
+     * Waits until the next frame is due. Without a frame rate limit it returns immediately and only updates the frame time statistics.
+     */
+    void sync() {
+        long now = System.nanoTime();
+
+        if (this.period > 0L) {
+            // sleep as long as the worst recent overshoot still fits into the remaining time
+            while (this.nextDeadline - now > this.sleepOvershoot + FramePacer.SLEEP_STEP) {
+                LockSupport.parkNanos(FramePacer.SLEEP_STEP);
+                final long after = System.nanoTime();
+                this.trackOvershoot(after - now - FramePacer.SLEEP_STEP);
+                now = after;
+            }
+            while (this.nextDeadline - now > 0L) {
+                Thread.onSpinWait();
+                now = System.nanoTime();
+            }
+
+            final long error = now - this.nextDeadline;
+            this.errorSum += error;
+            if (error > this.maxError) {
+                this.maxError = error;
+            }
+            if (error > this.period) {
+                // too late for the grid, drop the missed frames
+                this.missedDeadlines++;
+                this.nextDeadline = now + this.period;
+            } else {
+                this.nextDeadline += this.period;
+            }
+        }
+
+        if (this.pacedFrames > 0L) {
+            final long frameTime = now - this.lastFrameStart;
+            this.frameTimeSum += frameTime;
+            if (frameTime > this.maxFrameTime) {
+                this.maxFrameTime = frameTime;
+            }
+        }
+        this.lastFrameStart = now;
+        this.pacedFrames++;
+    }
+
+
+    private void trackOvershoot(long overshoot) {
+        if (overshoot > this.sleepOvershoot) {
+            this.sleepOvershoot = overshoot;
+        } else {
+            // slowly forget old spikes, so a single hiccup doesn't turn the waiter into a busy loop
+            this.sleepOvershoot -= (this.sleepOvershoot - Math.max(overshoot, 0L)) / FramePacer.OVERSHOOT_DECAY;
+        }
+    }
+
+
+    /**
+     * On Windows the sleep functions can be inaccurate by over 10ms. Running a separate sleeping daemon thread forces the high resolution system timer.
+     */
+    private void startTimerFix() {
+        this.timerFixStarted = true;
+        if (!System.getProperty("os.name").startsWith("Win")) {
+            return;
+        }
+
+        final Thread timerAccuracyThread = new Thread(() -> {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (final InterruptedException e) {
+                // the daemon thread dies with the application
+            }
+        });
+        timerAccuracyThread.setName("VEngine Timer");
+        timerAccuracyThread.setDaemon(true);
+        timerAccuracyThread.start();
+    }
+
+
+    public void resetStats() {
+        this.pacedFrames = 0L;
+        this.missedDeadlines = 0L;
+        this.errorSum = 0L;
+        this.maxError = 0L;
+        this.frameTimeSum = 0L;
+        this.maxFrameTime = 0L;
+    }
+
+
+    /**
+     * Returns the number of frames since the last reset.
+     *
+     * @return the frame count
+     */
+    public long getFrameCount() {
+        return this.pacedFrames;
+    }
+
+
+    /**
+     * Returns how many frames started more than one period after their deadline. Each of them moved the frame grid.
+     *
+     * @return the number of missed deadlines
+     */
+    public long getMissedDeadlines() {
+        return this.missedDeadlines;
+    }
+
+
+    /**
+     * Returns the average time frames started after their deadline. This is the pacing error of the waiter plus any time the loop itself ran late.
+     *
+     * @return the average pacing error in nanoseconds, 0 without a frame rate limit
+     */
+    public long getAverageError() {
+        return this.pacedFrames == 0L ? 0L : this.errorSum / this.pacedFrames;
+    }
+
+
+    /**
+     * Returns the largest time a frame started after its deadline.
+     *
+     * @return the maximum pacing error in nanoseconds, 0 without a frame rate limit
+     */
+    public long getMaxError() {
+        return this.maxError;
+    }
+
+
+    /**
+     * Returns the average time between the starts of two frames.
+     *
+     * @return the average frame time in nanoseconds
+     */
+    public long getAverageFrameTime() {
+        return this.pacedFrames < 2L ? 0L : this.frameTimeSum / (this.pacedFrames - 1L);
+    }
+
+
+    /**
+     * Returns the longest time between the starts of two frames.
+     *
+     * @return the maximum frame time in nanoseconds
+     */
+    public long getMaxFrameTime() {
+        return this.maxFrameTime;
+    }
+
+}
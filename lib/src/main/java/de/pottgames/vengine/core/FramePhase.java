@@ -0,0 +1,44 @@
+package de.pottgames.vengine.core;
+
+/**
+ * The phases of the engine loop that are timed by {@link FrameTimings}.
+ */
+public enum FramePhase {
+    /**
+     * The whole loop iteration, from the start of one frame to the start of the next one, including the frame rate limiter.
+     */
+    FRAME,
+    /**
+     * glfwPollEvents, including all window and input callbacks. Not recorded in headless mode.
+     */
+    POLL_EVENTS,
+    /**
+     * {@link Application#onCompute(CommandRecorder)}, including the submission to the async compute queue.
+     */
+    COMPUTE,
+    /**
+     * {@link Application#onRender(CommandRecorder)}.
+     */
+    RENDER,
+    /**
+     * Waiting for the GPU to release the frame in flight and the swap chain image, on fences or the timeline semaphore.
+     */
+    FRAME_WAIT,
+    /**
+     * vkAcquireNextImageKHR. Not recorded in headless mode.
+     */
+    ACQUIRE,
+    /**
+     * vkQueueSubmit of the frame's command buffer.
+     */
+    SUBMIT,
+    /**
+     * vkQueuePresentKHR. Not recorded in headless mode.
+     */
+    PRESENT,
+    /**
+     * Recreating the swap chain or rebuilding the frames in flight. Only recorded when it happens.
+     */
+    RECREATE;
+
+}
@@ -0,0 +1,129 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+/**
+ * A persistently mapped ring buffer for data that is written by the CPU every frame, like dynamic geometry. Every frame allocates ranges at the head, and the
+ * ranges of a frame are recycled once the GPU completed the frame. While the GPU reads the ranges of the previous frames, the CPU writes the next frame's
+ * ranges behind them, so writing never waits for the GPU as long as the ring holds all frames in flight.
+ *
+ * If a frame doesn't fit, the ring waits for the oldest frame that still uses it. A single frame larger than the ring is an error.
+ *
+ * Allocation is synchronized, so parallel recording jobs can allocate as well.
+ */
+public class FrameRingBuffer implements Disposable {
+    private final MemoryAllocator allocator;
+    private final GpuBuffer       buffer;
+    private final ByteBuffer      mapping;
+    private final RingAllocator   ring;
+
+
+    FrameRingBuffer(MemoryAllocator allocator, long capacity, int bufferUsage, LongConsumer frameWaiter) {
+        this(allocator, capacity, 0L, bufferUsage, frameWaiter);
+    }
+
+
+    /**
+     * Creates the ring buffer.
+     *
+     * @param allocator the allocator
+     * @param capacity the size in bytes, at most 2 GiB
+     * @param padding bytes after the ring that are never allocated, so descriptors with a fixed range stay inside the buffer at any offset
+     * @param bufferUsage the VkBufferUsageFlags
+     * @param frameWaiter blocks until the frame with the submit value completed, see {@link VulkanInitializer#waitForFrameValue(long)}
+     */
+    FrameRingBuffer(MemoryAllocator allocator, long capacity, long padding, int bufferUsage, LongConsumer frameWaiter) {
+        this.allocator = allocator;
+        this.buffer = allocator.createBuffer(capacity + padding, bufferUsage, MemoryUsage.DYNAMIC);
+        this.mapping = this.buffer.getMapping();
+        this.ring = new RingAllocator(capacity, frameWaiter);
+    }
+
+
+    /**
+     * Recycles the ranges of completed frames and starts allocating for a new frame.
+     *
+     * @param frameValue the submit value the new frame will have
+     * @param completedFrameValue the submit value of the last completed frame
+     */
+    synchronized void beginFrame(long frameValue, long completedFrameValue) {
+        this.ring.beginFrame(frameValue, completedFrameValue);
+    }
+
+
+    /**
+     * Flushes the frame's writes. Called before the frame is submitted.
+     */
+    synchronized void endFrame() {
+        if (this.ring.getFrameBytes() == 0L) {
+            return;
+        }
+
+        final long frameStart = this.ring.getFrameStart();
+        final long head = this.ring.getHead();
+        if (head > frameStart) {
+            this.allocator.flush(this.buffer, frameStart, head - frameStart);
+        } else {
+            // the frame wrapped around
+            this.allocator.flush(this.buffer, frameStart, this.ring.getCapacity() - frameStart);
+            if (head > 0L) {
+                this.allocator.flush(this.buffer, 0L, head);
+            }
+        }
+        this.ring.endFrame();
+    }
+
+
+    /**
+     * Allocates a range for the current frame, 16 byte aligned.
+     *
+     * @param size the size in bytes
+     * @return the offset of the range in the buffer
+     */
+    public long allocate(long size) {
+        return this.allocate(size, 16L);
+    }
+
+
+    /**
+     * Allocates a range for the current frame. The range may be written until the frame is submitted.
+     *
+     * @param size the size in bytes, 0 returns an empty range that takes no space
+     * @param alignment the alignment of the offset, a power of two
+     * @return the offset of the range in the buffer
+     */
+    public synchronized long allocate(long size, long alignment) {
+        return this.ring.allocate(size, alignment);
+    }
+
+
+    /**
+     * Returns the mapping of the whole buffer. Write the allocated ranges with absolute puts.
+     *
+     * @return the mapping
+     */
+    public ByteBuffer getMapping() {
+        return this.mapping;
+    }
+
+
+    public GpuBuffer getBuffer() {
+        return this.buffer;
+    }
+
+
+    public long getCapacity() {
+        return this.ring.getCapacity();
+    }
+
+
+    /**
+     * Destroys the buffer. The device must be idle.
+     */
+    @Override
+    public void dispose() {
+        this.allocator.destroyBuffer(this.buffer);
+    }
+
+}
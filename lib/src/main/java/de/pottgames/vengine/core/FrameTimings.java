@@ -0,0 +1,97 @@
+package de.pottgames.vengine.core;
+
+/**
+ * Times the phases of the engine loop, see {@link FramePhase}. Every phase records into its own {@link TimingHistogram}, which can be read from any thread
+ * while the loop is running. Recording is lock-free and doesn't allocate.
+ */
+public class FrameTimings {
+    private static final FrameTimings instance = new FrameTimings();
+
+    private final TimingHistogram[] histograms;
+
+
+    public static FrameTimings get() {
+        return FrameTimings.instance;
+    }
+
+
+    private FrameTimings() {
+        final FramePhase[] phases = FramePhase.values();
+        this.histograms = new TimingHistogram[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            this.histograms[i] = new TimingHistogram();
+        }
+    }
+
+
+    /**
+     * Records the time since the start of a phase.
+     *
+     * @param phase the phase
+     * @param startNanos the {@link System#nanoTime()} the phase started at
+     */
+    void recordSince(FramePhase phase, long startNanos) {
+        this.histograms[phase.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+
+    void record(FramePhase phase, long nanos) {
+        this.histograms[phase.ordinal()].record(nanos);
+    }
+
+
+    public TimingHistogram getHistogram(FramePhase phase) {
+        return this.histograms[phase.ordinal()];
+    }
+
+
+    public long getP50(FramePhase phase) {
+        return this.getHistogram(phase).getP50();
+    }
+
+
+    public long getP95(FramePhase phase) {
+        return this.getHistogram(phase).getP95();
+    }
+
+
+    public long getP99(FramePhase phase) {
+        return this.getHistogram(phase).getP99();
+    }
+
+
+    public long getMax(FramePhase phase) {
+        return this.getHistogram(phase).getMax();
+    }
+
+
+    /**
+     * Clears the histograms of all phases, for example after loading a level so the loading frames don't show up in the percentiles.
+     */
+    public void reset() {
+        for (final TimingHistogram histogram : this.histograms) {
+            histogram.reset();
+        }
+    }
+
+
+    /**
+     * Formats p50, p95, p99 and max of all phases that recorded anything, in milliseconds.
+     *
+     * @return a table with one phase per line
+     */
+    public String summary() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%-12s %8s %8s %8s %8s %8s%n", "phase", "count", "p50", "p95", "p99", "max"));
+        for (final FramePhase phase : FramePhase.values()) {
+            final TimingHistogram histogram = this.getHistogram(phase);
+            if (histogram.getCount() == 0L) {
+                continue;
+            }
+            builder.append(String.format("%-12s %8d %8.3f %8.3f %8.3f %8.3f%n", phase, histogram.getCount(), histogram.getP50() / 1e6, histogram.getP95() / 1e6,
+                    histogram.getP99() / 1e6, histogram.getMax() / 1e6));
+        }
+        return builder.toString();
+    }
+
+}
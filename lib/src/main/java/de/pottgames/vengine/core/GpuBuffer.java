@@ -0,0 +1,84 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A buffer sub-allocated by the {@link MemoryAllocator}. Destroy it with {@link MemoryAllocator#destroyBuffer(GpuBuffer)} once no frame in flight uses it.
+ */
+public class GpuBuffer {
+    private final long        buffer;
+    private final long        allocation;
+    private final long        size;
+    private final MemoryUsage usage;
+    private final ByteBuffer  mapping;
+    private final boolean     concurrent;
+
+
+    GpuBuffer(long buffer, long allocation, long size, MemoryUsage usage, ByteBuffer mapping) {
+        this(buffer, allocation, size, usage, mapping, false);
+    }
+
+
+    GpuBuffer(long buffer, long allocation, long size, MemoryUsage usage, ByteBuffer mapping, boolean concurrent) {
+        this.buffer = buffer;
+        this.allocation = allocation;
+        this.size = size;
+        this.usage = usage;
+        this.mapping = mapping;
+        this.concurrent = concurrent;
+    }
+
+
+    /**
+     * Returns the VkBuffer handle.
+     *
+     * @return the handle
+     */
+    public long getBuffer() {
+        return this.buffer;
+    }
+
+
+    long allocation() {
+        return this.allocation;
+    }
+
+
+    /**
+     * Returns the requested size of the buffer in bytes.
+     *
+     * @return the size
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+
+    public MemoryUsage getUsage() {
+        return this.usage;
+    }
+
+
+    /**
+     * Returns the persistent mapping of the buffer, see {@link MemoryUsage#isMapped()}. Writes must be flushed with
+     * {@link MemoryAllocator#flush(GpuBuffer, long, long)} and GPU writes invalidated with {@link MemoryAllocator#invalidate(GpuBuffer, long, long)}, both are
+     * free on coherent memory.
+     *
+     * @return the mapping or null if the buffer isn't mapped
+     */
+    public ByteBuffer getMapping() {
+        return this.mapping;
+    }
+
+
+    /**
+     * Returns whether the buffer was created with concurrent sharing, see {@link MemoryAllocator#createSharedBuffer(long, int, MemoryUsage)}. Concurrent
+     * buffers never change their queue family ownership.
+     *
+     * @return true if all of the engine's queue families may access the buffer
+     */
+    boolean isConcurrent() {
+        return this.concurrent;
+    }
+
+}
@@ -0,0 +1,52 @@
+package de.pottgames.vengine.core;
+
+/**
+ * An image sub-allocated by the {@link MemoryAllocator}. Destroy it with {@link MemoryAllocator#destroyImage(GpuImage)} once no frame in flight uses it.
+ */
+public class GpuImage {
+    private final long image;
+    private final long allocation;
+    private final int  format;
+    private final int  width;
+    private final int  height;
+
+
+    GpuImage(long image, long allocation, int format, int width, int height) {
+        this.image = image;
+        this.allocation = allocation;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+    }
+
+
+    /**
+     * Returns the VkImage handle.
+     *
+     * @return the handle
+     */
+    public long getImage() {
+        return this.image;
+    }
+
+
+    long allocation() {
+        return this.allocation;
+    }
+
+
+    public int getFormat() {
+        return this.format;
+    }
+
+
+    public int getWidth() {
+        return this.width;
+    }
+
+
+    public int getHeight() {
+        return this.height;
+    }
+
+}
@@ -0,0 +1,222 @@
+package de.pottgames.vengine.core;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkQueryPoolCreateInfo;
+
+/**
+ * Measures GPU time of scopes in a frame's command buffer with timestamp queries. The query pool is a ring with one slice per frame in flight. A slice is read
+ * when its frame in flight is reused, which is after the frame's fence or timeline value was waited for, so reading never stalls. Results are therefore
+ * frames in flight frames old.
+ *
+ * Every scope records into a {@link TimingHistogram}. The engine times the whole frame and the main render pass, further scopes can be registered with
+ * {@link #registerScope(String)}. Timestamps are written into the primary command buffer, so scopes can't be used inside parallel recording jobs.
+ */
+public class GpuProfiler implements Disposable {
+    public static final int MAX_SCOPES = 16;
+
+    /**
+     * The frame's whole primary command buffer.
+     */
+    public static final int FRAME_SCOPE       = 0;
+    /**
+     * The main render pass everything recorded in {@link Application#onRender(CommandRecorder)} ends up in.
+     */
+    public static final int RENDER_PASS_SCOPE = 1;
+
+    private final VkDevice              device;
+    private final float                 timestampPeriod;
+    private final long                  timestampMask;
+    private final List<String>          scopeNames = new ArrayList<>();
+    private final List<TimingHistogram> histograms = new ArrayList<>();
+    private final long[]                lastDurations;
+
+    // QUERY RING
+    private long        queryPool = VK10.VK_NULL_HANDLE;
+    private boolean[][] written;
+    private int         frameIndex;
+
+    // PREALLOCATED STRUCTS
+    private final LongBuffer results;
+
+
+    /**
+     * Creates the profiler. The query pool is created separately, per number of frames in flight.
+     *
+     * @param device the logical device
+     * @param timestampPeriod the nanoseconds per timestamp tick, see {@link PhysicalDevice#getTimestampPeriod()}
+     * @param timestampValidBits the number of valid bits of the queue's timestamps, 1 to 64
+     */
+    GpuProfiler(VkDevice device, float timestampPeriod, int timestampValidBits) {
+        this.device = device;
+        this.timestampPeriod = timestampPeriod;
+        this.timestampMask = timestampValidBits >= 64 ? -1L : (1L << timestampValidBits) - 1L;
+        this.lastDurations = new long[GpuProfiler.MAX_SCOPES];
+        // start and end timestamp, each followed by its availability
+        this.results = MemoryUtil.memAllocLong(4);
+
+        this.registerScope("frame");
+        this.registerScope("render pass");
+    }
+
+
+    /**
+     * Registers a new scope. Call it once at startup and keep the id.
+     *
+     * @param name the name of the scope
+     * @return the id of the scope
+     */
+    public int registerScope(String name) {
+        if (this.scopeNames.size() == GpuProfiler.MAX_SCOPES) {
+            throw new IllegalStateException("Only " + GpuProfiler.MAX_SCOPES + " GPU profiler scopes are supported");
+        }
+        this.scopeNames.add(name);
+        this.histograms.add(new TimingHistogram());
+        return this.scopeNames.size() - 1;
+    }
+
+
+    void createQueryPool(int framesInFlight) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkQueryPoolCreateInfo createInfo = VkQueryPoolCreateInfo.calloc(stack);
+            createInfo.sType(VK10.VK_STRUCTURE_TYPE_QUERY_POOL_CREATE_INFO);
+            createInfo.queryType(VK10.VK_QUERY_TYPE_TIMESTAMP);
+            createInfo.queryCount(framesInFlight * GpuProfiler.MAX_SCOPES * 2);
+
+            final LongBuffer pQueryPool = stack.mallocLong(1);
+            if (VK10.vkCreateQueryPool(this.device, createInfo, null, pQueryPool) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create timestamp query pool");
+            }
+            this.queryPool = pQueryPool.get(0);
+        }
+        this.written = new boolean[framesInFlight][GpuProfiler.MAX_SCOPES];
+    }
+
+
+    void disposeQueryPool() {
+        VK10.vkDestroyQueryPool(this.device, this.queryPool, null);
+        this.queryPool = VK10.VK_NULL_HANDLE;
+    }
+
+
+    /**
+     * Collects the results of the frame in flight's previous use and resets its slice of the ring. Must be recorded outside of a render pass, and the frame in
+     * flight must be complete.
+     */
+    void beginFrame(VkCommandBuffer commandBuffer, int frameIndex) {
+        this.frameIndex = frameIndex;
+        final boolean[] frameWritten = this.written[frameIndex];
+
+        for (int scope = 0; scope < this.scopeNames.size(); scope++) {
+            if (!frameWritten[scope]) {
+                continue;
+            }
+            frameWritten[scope] = false;
+
+            final int vkResult = VK10.vkGetQueryPoolResults(this.device, this.queryPool, this.firstQuery(frameIndex, scope), 2, this.results, 2 * Long.BYTES,
+                    VK10.VK_QUERY_RESULT_64_BIT | VK10.VK_QUERY_RESULT_WITH_AVAILABILITY_BIT);
+            if (vkResult != VK10.VK_SUCCESS || this.results.get(1) == 0L || this.results.get(3) == 0L) {
+                // a scope whose end wasn't written or that was dropped with a rebuild
+                continue;
+            }
+
+            final long ticks = this.results.get(2) - this.results.get(0) & this.timestampMask;
+            final long duration = (long) (ticks * (double) this.timestampPeriod);
+            this.lastDurations[scope] = duration;
+            this.histograms.get(scope).record(duration);
+        }
+
+        VK10.vkCmdResetQueryPool(commandBuffer, this.queryPool, this.firstQuery(frameIndex, 0), GpuProfiler.MAX_SCOPES * 2);
+    }
+
+
+    private int firstQuery(int frameIndex, int scope) {
+        return (frameIndex * GpuProfiler.MAX_SCOPES + scope) * 2;
+    }
+
+
+    /**
+     * Writes the start timestamp of a scope. Each scope can be measured once per frame.
+     *
+     * @param commandBuffer the frame's primary command buffer
+     * @param scope the scope id
+     */
+    public void begin(VkCommandBuffer commandBuffer, int scope) {
+        VK10.vkCmdWriteTimestamp(commandBuffer, VK10.VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, this.queryPool, this.firstQuery(this.frameIndex, scope));
+    }
+
+
+    /**
+     * Writes the end timestamp of a scope, after all previously recorded commands finished.
+     *
+     * @param commandBuffer the frame's primary command buffer
+     * @param scope the scope id
+     */
+    public void end(VkCommandBuffer commandBuffer, int scope) {
+        VK10.vkCmdWriteTimestamp(commandBuffer, VK10.VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, this.queryPool, this.firstQuery(this.frameIndex, scope) + 1);
+        this.written[this.frameIndex][scope] = true;
+    }
+
+
+    public int getScopeCount() {
+        return this.scopeNames.size();
+    }
+
+
+    public String getScopeName(int scope) {
+        return this.scopeNames.get(scope);
+    }
+
+
+    public TimingHistogram getHistogram(int scope) {
+        return this.histograms.get(scope);
+    }
+
+
+    /**
+     * Returns the last measured GPU time of the scope. It's frames in flight frames old.
+     *
+     * @param scope the scope id
+     * @return the duration in nanoseconds, 0 if the scope was never measured
+     */
+    public long getLastDuration(int scope) {
+        return this.lastDurations[scope];
+    }
+
+
+    /**
+     * Formats p50, p95, p99 and max of all scopes that measured anything, in milliseconds.
+     *
+     * @return a table with one scope per line
+     */
+    public String summary() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%-16s %8s %8s %8s %8s %8s%n", "gpu scope", "count", "p50", "p95", "p99", "max"));
+        for (int scope = 0; scope < this.scopeNames.size(); scope++) {
+            final TimingHistogram histogram = this.histograms.get(scope);
+            if (histogram.getCount() == 0L) {
+                continue;
+            }
+            builder.append(String.format("%-16s %8d %8.3f %8.3f %8.3f %8.3f%n", this.scopeNames.get(scope), histogram.getCount(), histogram.getP50() / 1e6,
+                    histogram.getP95() / 1e6, histogram.getP99() / 1e6, histogram.getMax() / 1e6));
+        }
+        return builder.toString();
+    }
+
+
+    /**
+     * Frees the preallocated structs. The query pool must be disposed separately.
+     */
+    @Override
+    public void dispose() {
+        MemoryUtil.memFree(this.results);
+    }
+
+}
@@ -0,0 +1,408 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VK10;
+
+/**
+ * GPU driven rendering of many objects that share the geometry of one mesh. The transforms and bounding spheres of all objects live in a storage buffer, and
+ * every frame a compute shader culls them against the view frustum and writes one VkDrawIndexedIndirectCommand per object plus the transforms of the visible
+ * instances. The whole scene is then drawn by a single indirect draw, so the CPU time of a frame doesn't grow with the number of objects.
+ *
+ * With multi draws and {@link PhysicalDevice#isDrawIndirectCountSupported()} the visible objects are compacted and the GPU reads the number of draws from
+ * a buffer. Otherwise every object keeps its draw and culled objects draw no instances. Without {@link PhysicalDevice#isMultiDrawIndirectSupported()} every
+ * object is drawn by its own indirect draw, which still skips the CPU side culling but not the draw calls. Scenes with more objects than
+ * {@link PhysicalDevice#getMaxDrawIndirectCount()} aren't compacted and split their multi draws, the count read from a buffer can't be split.
+ *
+ * Cull in {@link Application#onCompute(CommandRecorder)} and draw in {@link Application#onRender(CommandRecorder)} of the same frame, a frame that didn't
+ * cull draws nothing. The vertex shader
+ * reads the transform of the instance from the set of {@link #getInstanceSetLayout()}:
+ *
+ * <pre>
+ * layout(std430, set = 0, binding = 0) readonly buffer Instances { mat4 instances[]; };
+ * gl_Position = viewProjection * instances[gl_InstanceIndex] * vec4(position, 1.0);
+ * </pre>
+ *
+ * Changed objects are copied into the object buffer by the next cull, so changing a few objects per frame is cheap. The commands and instances are written
+ * once per frame in flight, which lets the culling of the next frame run on the async compute queue while the current frame is still drawn.
+ */
+public class GpuScene implements Disposable {
+    public static final int INSTANCE_BINDING = 0;
+
+    // the sizes of the std430 structs of the culling shader
+    static final int OBJECT_SIZE        = 96;
+    static final int COMMAND_SIZE       = 5 * Integer.BYTES;
+    static final int INSTANCE_SIZE      = 16 * Float.BYTES;
+    static final int PUSH_CONSTANT_SIZE = 6 * 4 * Float.BYTES + Integer.BYTES;
+
+    private static final String CULL_SHADER = "shaders/gpu_scene/cull.comp";
+    private static final int    GROUP_SIZE  = 64;
+
+    private final VulkanInitializer    vulkan;
+    private final MemoryAllocator      allocator;
+    private final DescriptorAllocator  descriptorAllocator;
+    private final DescriptorWriter     descriptorWriter;
+    private final PipelineStateCache   pipelines;
+    private final Mesh                 mesh;
+    private final int                  capacity;
+    private final boolean              compact;
+    private final boolean              multiDraw;
+    private final int                  maxDrawCount;
+    private final long                 cullSetLayout;
+    private final long                 instanceSetLayout;
+    private final long                 cullLayout;
+    private final ComputePipelineState cullState;
+
+    // OBJECTS, a copy of the object buffer, the range of changed objects is copied by the next cull
+    private final ByteBuffer objects;
+    private final GpuBuffer  objectBuffer;
+    private int              objectCount;
+    private int              changedFirst = Integer.MAX_VALUE;
+    private int              changedEnd;
+
+    // FRAMES IN FLIGHT, created the first time a frame index is culled
+    private GpuBuffer[] stagingBuffers  = new GpuBuffer[0];
+    private GpuBuffer[] commandBuffers  = new GpuBuffer[0];
+    private GpuBuffer[] instanceBuffers = new GpuBuffer[0];
+    private GpuBuffer[] countBuffers    = new GpuBuffer[0];
+    private int[]       drawCounts      = new int[0];
+    private long[]      instanceSets    = new long[0];
+    private long[]      cullFrames      = new long[0];
+
+    // PREALLOCATED STRUCTS
+    private final ByteBuffer pushConstants;
+
+
+    /**
+     * Creates an empty scene and its culling pipeline.
+     *
+     * @param mesh the indexed mesh that holds the geometry of all objects
+     * @param capacity the maximum number of objects
+     * @throws RuntimeException if the mesh has no indices or the device doesn't support indirect draws with a first instance
+     */
+    public GpuScene(Mesh mesh, int capacity) {
+        if (mesh.getIndexBuffer() == null) {
+            throw new RuntimeException("Failed to create GPU scene, the mesh has no index buffer");
+        }
+        final VulkanInitializer vulkan = VulkanInitializer.get();
+        final PhysicalDevice physicalDevice = vulkan.getPhysicalDevice();
+        if (!physicalDevice.isDrawIndirectFirstInstanceSupported()) {
+            throw new RuntimeException("Failed to create GPU scene, indirect draws can't select instances without drawIndirectFirstInstance");
+        }
+        this.vulkan = vulkan;
+        this.allocator = vulkan.getMemoryAllocator();
+        this.descriptorAllocator = vulkan.getDescriptorAllocator();
+        this.descriptorWriter = vulkan.getDescriptorWriter();
+        this.pipelines = vulkan.getPipelines();
+        this.mesh = mesh;
+        this.capacity = capacity;
+        this.multiDraw = physicalDevice.isMultiDrawIndirectSupported();
+        this.maxDrawCount = (int) Math.min(physicalDevice.getMaxDrawIndirectCount(), Integer.MAX_VALUE);
+        // the spec only guarantees 65535 draws per multi draw
+        this.compact = this.multiDraw && physicalDevice.isDrawIndirectCountSupported() && capacity <= this.maxDrawCount;
+
+        final DescriptorLayoutCache layouts = vulkan.getDescriptorLayouts();
+        this.cullSetLayout = layouts.getSetLayout(new DescriptorBinding(0, VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, VK10.VK_SHADER_STAGE_COMPUTE_BIT),
+                new DescriptorBinding(1, VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, VK10.VK_SHADER_STAGE_COMPUTE_BIT),
+                new DescriptorBinding(2, VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, VK10.VK_SHADER_STAGE_COMPUTE_BIT),
+                new DescriptorBinding(3, VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, VK10.VK_SHADER_STAGE_COMPUTE_BIT));
+        this.instanceSetLayout = layouts.getSetLayout(
+                new DescriptorBinding(GpuScene.INSTANCE_BINDING, VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, VK10.VK_SHADER_STAGE_VERTEX_BIT));
+        this.cullLayout = layouts.getPipelineLayout(List.of(this.cullSetLayout), VK10.VK_SHADER_STAGE_COMPUTE_BIT, GpuScene.PUSH_CONSTANT_SIZE);
+
+        // both variants are registered under their own name, so they don't replace each other's module
+        final String name = this.compact ? GpuScene.CULL_SHADER + "#compact" : GpuScene.CULL_SHADER;
+        final Map<String, String> defines = this.compact ? Map.of("COMPACT", "") : Map.of();
+        final byte[] spirv = vulkan.getShaderCompiler()
+                .compile(new ShaderCompiler.Variant(GpuScene.CULL_SHADER, ShaderCompiler.loadSource(GpuScene.CULL_SHADER), VK10.VK_SHADER_STAGE_COMPUTE_BIT,
+                        defines));
+        vulkan.getShaderCache().getModule(name, spirv);
+        this.cullState = new ComputePipelineState(name, this.cullLayout);
+
+        this.objects = MemoryUtil.memCalloc(capacity * GpuScene.OBJECT_SIZE);
+        this.objectBuffer = this.allocator.createBuffer((long) capacity * GpuScene.OBJECT_SIZE,
+                VK10.VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK10.VK_BUFFER_USAGE_TRANSFER_DST_BIT, MemoryUsage.GPU_ONLY);
+        this.pushConstants = MemoryUtil.memAlloc(GpuScene.PUSH_CONSTANT_SIZE);
+    }
+
+
+    /**
+     * Adds an object. It's culled and drawn from the next cull on.
+     *
+     * @param firstIndex the first index of the object's geometry in the mesh
+     * @param indexCount the number of indices
+     * @param vertexOffset the value added to the indices
+     * @param transform the column major model matrix, 16 floats
+     * @param centerX the x coordinate of the bounding sphere's center in model space
+     * @param centerY the y coordinate of the center
+     * @param centerZ the z coordinate of the center
+     * @param radius the radius of the bounding sphere in model space
+     * @return the index of the object
+     * @throws RuntimeException if the scene is full
+     */
+    public int add(int firstIndex, int indexCount, int vertexOffset, float[] transform, float centerX, float centerY, float centerZ, float radius) {
+        if (this.objectCount == this.capacity) {
+            throw new RuntimeException("Failed to add object, the scene holds at most " + this.capacity + " objects");
+        }
+        final int index = this.objectCount++;
+        final int offset = index * GpuScene.OBJECT_SIZE;
+        this.objects.putFloat(offset + 64, centerX);
+        this.objects.putFloat(offset + 68, centerY);
+        this.objects.putFloat(offset + 72, centerZ);
+        this.objects.putFloat(offset + 76, radius);
+        this.objects.putInt(offset + 80, indexCount);
+        this.objects.putInt(offset + 84, firstIndex);
+        this.objects.putInt(offset + 88, vertexOffset);
+        this.setTransform(index, transform);
+        return index;
+    }
+
+
+    /**
+     * Replaces the model matrix of an object.
+     *
+     * @param index the index of the object
+     * @param transform the column major model matrix, 16 floats
+     */
+    public void setTransform(int index, float[] transform) {
+        final int offset = index * GpuScene.OBJECT_SIZE;
+        for (int i = 0; i < 16; i++) {
+            this.objects.putFloat(offset + i * Float.BYTES, transform[i]);
+        }
+        this.changedFirst = Math.min(this.changedFirst, index);
+        this.changedEnd = Math.max(this.changedEnd, index + 1);
+    }
+
+
+    /**
+     * Removes all objects.
+     */
+    public void clear() {
+        this.objectCount = 0;
+        this.changedFirst = Integer.MAX_VALUE;
+        this.changedEnd = 0;
+    }
+
+
+    public int getObjectCount() {
+        return this.objectCount;
+    }
+
+
+    /**
+     * Culls the objects and writes the draw commands of the frame. Must be recorded outside of render passes, usually in
+     * {@link Application#onCompute(CommandRecorder)}, whose results the engine makes visible to the frame's draws.
+     *
+     * @param recorder the recorder of the frame
+     * @param frustumPlanes the 6 normalized frustum planes in world space with inward normals, 24 floats, see {@link #frustumPlanes(float[], float[])}
+     */
+    public void cull(CommandRecorder recorder, float[] frustumPlanes) {
+        final int frameIndex = recorder.getFrameIndex();
+        this.ensureFrame(frameIndex);
+        this.drawCounts[frameIndex] = this.objectCount;
+        this.instanceSets[frameIndex] = VK10.VK_NULL_HANDLE;
+        this.cullFrames[frameIndex] = this.vulkan.getSubmittedFrameValue() + 1L;
+        if (this.objectCount == 0) {
+            return;
+        }
+
+        // the frame's command, instance and count buffers were last read by the frame's previous submission, which completed
+        final boolean changed = this.changedEnd > this.changedFirst;
+        if (changed) {
+            // the previous culls must have read the objects before they are overwritten
+            recorder.memoryBarrier(VK10.VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, 0, VK10.VK_PIPELINE_STAGE_TRANSFER_BIT, 0);
+            this.copyChangedObjects(recorder, frameIndex);
+        }
+        if (this.compact) {
+            recorder.fillBuffer(this.countBuffers[frameIndex], 0L, Integer.BYTES, 0);
+        }
+        if (changed || this.compact) {
+            recorder.memoryBarrier(VK10.VK_PIPELINE_STAGE_TRANSFER_BIT, VK10.VK_ACCESS_TRANSFER_WRITE_BIT, VK10.VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT,
+                    VK10.VK_ACCESS_SHADER_READ_BIT | VK10.VK_ACCESS_SHADER_WRITE_BIT);
+        }
+
+        final long cullSet = this.descriptorAllocator.allocate(this.cullSetLayout);
+        final long instanceSet = this.descriptorAllocator.allocate(this.instanceSetLayout);
+        this.descriptorWriter.writeBuffer(cullSet, 0, 0, VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, this.objectBuffer, 0L, VK10.VK_WHOLE_SIZE)
+                .writeBuffer(cullSet, 1, 0, VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, this.commandBuffers[frameIndex], 0L, VK10.VK_WHOLE_SIZE)
+                .writeBuffer(cullSet, 2, 0, VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, this.instanceBuffers[frameIndex], 0L, VK10.VK_WHOLE_SIZE)
+                .writeBuffer(cullSet, 3, 0, VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, this.countBuffers[frameIndex], 0L, VK10.VK_WHOLE_SIZE)
+                .writeBuffer(instanceSet, GpuScene.INSTANCE_BINDING, 0, VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, this.instanceBuffers[frameIndex], 0L,
+                        VK10.VK_WHOLE_SIZE)
+                .flush();
+        this.instanceSets[frameIndex] = instanceSet;
+
+        for (int i = 0; i < 24; i++) {
+            this.pushConstants.putFloat(i * Float.BYTES, frustumPlanes[i]);
+        }
+        this.pushConstants.putInt(24 * Float.BYTES, this.objectCount);
+        recorder.bindComputePipeline(this.pipelines.get(this.cullState));
+        recorder.bindComputeDescriptorSet(this.cullLayout, 0, cullSet);
+        recorder.pushConstants(this.cullLayout, VK10.VK_SHADER_STAGE_COMPUTE_BIT, 0, this.pushConstants);
+        recorder.dispatch((this.objectCount + GpuScene.GROUP_SIZE - 1) / GpuScene.GROUP_SIZE, 1, 1);
+    }
+
+
+    private void copyChangedObjects(CommandRecorder recorder, int frameIndex) {
+        final int offset = this.changedFirst * GpuScene.OBJECT_SIZE;
+        final int size = (this.changedEnd - this.changedFirst) * GpuScene.OBJECT_SIZE;
+        GpuBuffer staging = this.stagingBuffers[frameIndex];
+        if (staging == null || staging.getSize() < size) {
+            // the frame's previous submission completed, nothing uses the old buffer anymore
+            if (staging != null) {
+                this.allocator.destroyBuffer(staging);
+            }
+            staging = this.allocator.createBuffer(size, VK10.VK_BUFFER_USAGE_TRANSFER_SRC_BIT, MemoryUsage.UPLOAD);
+            this.stagingBuffers[frameIndex] = staging;
+        }
+        staging.getMapping().put(0, this.objects, offset, size);
+        this.allocator.flush(staging, 0L, size);
+        recorder.copyBuffer(staging, 0L, this.objectBuffer, offset, size);
+        this.changedFirst = Integer.MAX_VALUE;
+        this.changedEnd = 0;
+    }
+
+
+    private void ensureFrame(int frameIndex) {
+        final int frames = this.commandBuffers.length;
+        if (frameIndex < frames) {
+            return;
+        }
+
+        this.stagingBuffers = Arrays.copyOf(this.stagingBuffers, frameIndex + 1);
+        this.commandBuffers = Arrays.copyOf(this.commandBuffers, frameIndex + 1);
+        this.instanceBuffers = Arrays.copyOf(this.instanceBuffers, frameIndex + 1);
+        this.countBuffers = Arrays.copyOf(this.countBuffers, frameIndex + 1);
+        this.drawCounts = Arrays.copyOf(this.drawCounts, frameIndex + 1);
+        this.instanceSets = Arrays.copyOf(this.instanceSets, frameIndex + 1);
+        this.cullFrames = Arrays.copyOf(this.cullFrames, frameIndex + 1);
+        // written by the compute queue and read by the graphics queue with async compute
+        for (int i = frames; i <= frameIndex; i++) {
+            this.commandBuffers[i] = this.allocator.createSharedBuffer((long) this.capacity * GpuScene.COMMAND_SIZE,
+                    VK10.VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK10.VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT, MemoryUsage.GPU_ONLY);
+            this.instanceBuffers[i] = this.allocator.createSharedBuffer((long) this.capacity * GpuScene.INSTANCE_SIZE,
+                    VK10.VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, MemoryUsage.GPU_ONLY);
+            this.countBuffers[i] = this.allocator.createSharedBuffer(Integer.BYTES,
+                    VK10.VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK10.VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT | VK10.VK_BUFFER_USAGE_TRANSFER_DST_BIT,
+                    MemoryUsage.GPU_ONLY);
+        }
+    }
+
+
+    /**
+     * Draws the objects the frame culled. Must be recorded inside the frame's render pass with a pipeline whose layout has the set of
+     * {@link #getInstanceSetLayout()} and whose vertex layout matches the mesh. Nothing is drawn if the frame didn't cull or the mesh isn't uploaded yet.
+     *
+     * @param recorder the recorder of the frame
+     * @param pipelineLayout the layout of the bound pipeline
+     * @param setIndex the set number of the instance set
+     */
+    public void draw(CommandRecorder recorder, long pipelineLayout, int setIndex) {
+        final int frameIndex = recorder.getFrameIndex();
+        if (frameIndex >= this.instanceSets.length || this.instanceSets[frameIndex] == VK10.VK_NULL_HANDLE || !this.mesh.isReady()) {
+            return;
+        }
+        // a frame that skipped the cull would bind the set of an earlier frame, whose descriptor pool was reset since
+        if (this.cullFrames[frameIndex] != this.vulkan.getSubmittedFrameValue() + 1L) {
+            return;
+        }
+
+        recorder.bindDescriptorSet(pipelineLayout, setIndex, this.instanceSets[frameIndex]);
+        recorder.bindVertexBuffer(this.mesh.getVertexBuffer(), 0L);
+        recorder.bindIndexBuffer(this.mesh.getIndexBuffer(), 0L, this.mesh.getIndexType());
+        final GpuBuffer commands = this.commandBuffers[frameIndex];
+        final int drawCount = this.drawCounts[frameIndex];
+        if (this.compact) {
+            recorder.drawIndexedIndirectCount(commands, 0L, this.countBuffers[frameIndex], 0L, drawCount, GpuScene.COMMAND_SIZE);
+        } else if (this.multiDraw) {
+            for (int first = 0; first < drawCount; first += this.maxDrawCount) {
+                recorder.drawIndexedIndirect(commands, (long) first * GpuScene.COMMAND_SIZE, Math.min(drawCount - first, this.maxDrawCount),
+                        GpuScene.COMMAND_SIZE);
+            }
+        } else {
+            for (int i = 0; i < drawCount; i++) {
+                recorder.drawIndexedIndirect(commands, (long) i * GpuScene.COMMAND_SIZE, 1, GpuScene.COMMAND_SIZE);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the layout of the set the vertex shader reads the instance transforms from, a storage buffer at {@link #INSTANCE_BINDING}.
+     *
+     * @return the VkDescriptorSetLayout, owned by the {@link DescriptorLayoutCache}
+     */
+    public long getInstanceSetLayout() {
+        return this.instanceSetLayout;
+    }
+
+
+    /**
+     * Returns whether the culled objects are compacted and the draw count is read from a buffer.
+     *
+     * @return true if the scene draws with a draw count buffer
+     */
+    public boolean isCompacting() {
+        return this.compact;
+    }
+
+
+    /**
+     * Extracts the frustum planes from a view projection matrix with Vulkan's clip space, whose depth range is 0 to 1. The planes are normalized and their
+     * normals point inside, in the order left, right, bottom, top, near, far.
+     *
+     * @param viewProjection the column major view projection matrix, 16 floats
+     * @param planes receives the planes as a, b, c, d with ax + by + cz + d = 0, 24 floats
+     * @return the planes
+     */
+    public static float[] frustumPlanes(float[] viewProjection, float[] planes) {
+        for (int i = 0; i < 6; i++) {
+            // left and right use the first row, bottom and top the second, near and far the third
+            final int row = i / 2;
+            final float sign = i % 2 == 0 ? 1f : -1f;
+            for (int column = 0; column < 4; column++) {
+                final float w = viewProjection[column * 4 + 3];
+                final float value = viewProjection[column * 4 + row];
+                if (i == 4) {
+                    // the near plane is z >= 0
+                    planes[i * 4 + column] = value;
+                } else {
+                    planes[i * 4 + column] = w + sign * value;
+                }
+            }
+            final float a = planes[i * 4];
+            final float b = planes[i * 4 + 1];
+            final float c = planes[i * 4 + 2];
+            final float length = (float) Math.sqrt(a * a + b * b + c * c);
+            for (int component = 0; component < 4; component++) {
+                planes[i * 4 + component] /= length;
+            }
+        }
+        return planes;
+    }
+
+
+    /**
+     * Destroys the buffers. Must not be called while frames in flight may still use the scene, see
+     * {@link VulkanInitializer#runWhenFramesComplete(Runnable)}.
+     */
+    @Override
+    public void dispose() {
+        for (int i = 0; i < this.commandBuffers.length; i++) {
+            if (this.stagingBuffers[i] != null) {
+                this.allocator.destroyBuffer(this.stagingBuffers[i]);
+            }
+            this.allocator.destroyBuffer(this.commandBuffers[i]);
+            this.allocator.destroyBuffer(this.instanceBuffers[i]);
+            this.allocator.destroyBuffer(this.countBuffers[i]);
+        }
+        this.allocator.destroyBuffer(this.objectBuffer);
+        MemoryUtil.memFree(this.objects);
+        MemoryUtil.memFree(this.pushConstants);
+    }
+
+}
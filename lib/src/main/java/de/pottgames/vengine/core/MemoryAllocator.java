@@ -0,0 +1,327 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.util.vma.Vma;
+import org.lwjgl.util.vma.VmaAllocationCreateInfo;
+import org.lwjgl.util.vma.VmaAllocationInfo;
+import org.lwjgl.util.vma.VmaAllocatorCreateInfo;
+import org.lwjgl.util.vma.VmaBudget;
+import org.lwjgl.util.vma.VmaStatInfo;
+import org.lwjgl.util.vma.VmaStats;
+import org.lwjgl.util.vma.VmaVulkanFunctions;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkBufferCreateInfo;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkImageCreateInfo;
+import org.lwjgl.vulkan.VkInstance;
+import org.lwjgl.vulkan.VkMemoryRequirements;
+import org.lwjgl.vulkan.VkPhysicalDeviceMemoryProperties;
+
+/**
+ * Allocates device memory for buffers and images with the Vulkan Memory Allocator. Resources are sub-allocated from large memory blocks, so the number of
+ * vkAllocateMemory calls stays far below maxMemoryAllocationCount no matter how many resources a scene has. The allocator is created together with the
+ * logical device and is internally synchronized, so it can be used from any thread.
+ */
+public class MemoryAllocator implements Disposable {
+    private final long  allocator;
+    private final int   heapCount;
+    private final int[] sharedQueueFamilies;
+
+
+    /**
+     * Creates the allocator.
+     *
+     * @param instance the instance
+     * @param device the device
+     * @param sharedQueueFamilies the distinct queue families that access shared buffers, see {@link #createSharedBuffer(long, int, MemoryUsage)}
+     */
+    MemoryAllocator(VkInstance instance, VkDevice device, int[] sharedQueueFamilies) {
+        this.sharedQueueFamilies = sharedQueueFamilies;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VmaVulkanFunctions vulkanFunctions = VmaVulkanFunctions.calloc(stack);
+            vulkanFunctions.set(instance, device);
+
+            final VmaAllocatorCreateInfo createInfo = VmaAllocatorCreateInfo.calloc(stack);
+            createInfo.instance(instance);
+            createInfo.physicalDevice(device.getPhysicalDevice());
+            createInfo.device(device);
+            createInfo.pVulkanFunctions(vulkanFunctions);
+            // the version both the instance and the device support, VMA uses core 1.1 functions where available
+            createInfo.vulkanApiVersion(device.getCapabilities().apiVersion);
+
+            final PointerBuffer pAllocator = stack.mallocPointer(1);
+            if (Vma.vmaCreateAllocator(createInfo, pAllocator) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create memory allocator");
+            }
+            this.allocator = pAllocator.get(0);
+
+            final VkPhysicalDeviceMemoryProperties memoryProperties = VkPhysicalDeviceMemoryProperties.calloc(stack);
+            VK10.vkGetPhysicalDeviceMemoryProperties(device.getPhysicalDevice(), memoryProperties);
+            this.heapCount = memoryProperties.memoryHeapCount();
+        }
+    }
+
+
+    /**
+     * Creates a buffer and binds it to sub-allocated memory.
+     *
+     * @param size the size in bytes
+     * @param bufferUsage the VkBufferUsageFlags
+     * @param memoryUsage how the buffer is accessed
+     * @return the buffer
+     */
+    public GpuBuffer createBuffer(long size, int bufferUsage, MemoryUsage memoryUsage) {
+        return this.createBuffer(size, bufferUsage, memoryUsage, false);
+    }
+
+
+    /**
+     * Creates a buffer that the graphics queue, the transfer queue and the async compute queue use without queue family ownership transfers, like the buffers
+     * {@link Application#onCompute(CommandRecorder)} hands to the rendering. Concurrent sharing may be slower, so it's only used with an async compute
+     * queue. Otherwise this is the same as {@link #createBuffer(long, int, MemoryUsage)}.
+     *
+     * @param size the size in bytes
+     * @param bufferUsage the VkBufferUsageFlags
+     * @param memoryUsage how the buffer is accessed
+     * @return the buffer
+     */
+    public GpuBuffer createSharedBuffer(long size, int bufferUsage, MemoryUsage memoryUsage) {
+        return this.createBuffer(size, bufferUsage, memoryUsage, this.sharedQueueFamilies.length > 1);
+    }
+
+
+    private GpuBuffer createBuffer(long size, int bufferUsage, MemoryUsage memoryUsage, boolean concurrent) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkBufferCreateInfo bufferInfo = VkBufferCreateInfo.calloc(stack);
+            bufferInfo.sType(VK10.VK_STRUCTURE_TYPE_BUFFER_CREATE_INFO);
+            bufferInfo.size(size);
+            bufferInfo.usage(bufferUsage);
+            if (concurrent) {
+                bufferInfo.sharingMode(VK10.VK_SHARING_MODE_CONCURRENT);
+                bufferInfo.pQueueFamilyIndices(stack.ints(this.sharedQueueFamilies));
+            } else {
+                bufferInfo.sharingMode(VK10.VK_SHARING_MODE_EXCLUSIVE);
+            }
+
+            final VmaAllocationCreateInfo allocationInfo = this.allocationCreateInfo(memoryUsage, stack);
+            final LongBuffer pBuffer = stack.mallocLong(1);
+            final PointerBuffer pAllocation = stack.mallocPointer(1);
+            final VmaAllocationInfo allocationResult = VmaAllocationInfo.calloc(stack);
+            if (Vma.vmaCreateBuffer(this.allocator, bufferInfo, allocationInfo, pBuffer, pAllocation, allocationResult) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to allocate " + size + " bytes of " + memoryUsage + " buffer memory");
+            }
+
+            ByteBuffer mapping = null;
+            if (allocationResult.pMappedData() != MemoryUtil.NULL) {
+                if (size > Integer.MAX_VALUE) {
+                    Vma.vmaDestroyBuffer(this.allocator, pBuffer.get(0), pAllocation.get(0));
+                    throw new IllegalArgumentException("Mapped buffers must not be larger than 2 GiB: " + size);
+                }
+                mapping = MemoryUtil.memByteBuffer(allocationResult.pMappedData(), (int) size);
+            }
+            return new GpuBuffer(pBuffer.get(0), pAllocation.get(0), size, memoryUsage, mapping, concurrent);
+        }
+    }
+
+
+    /**
+     * Creates an image and binds it to sub-allocated memory.
+     *
+     * @param createInfo the image create info
+     * @param memoryUsage how the image is accessed, usually {@link MemoryUsage#GPU_ONLY}
+     * @return the image
+     */
+    public GpuImage createImage(VkImageCreateInfo createInfo, MemoryUsage memoryUsage) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VmaAllocationCreateInfo allocationInfo = this.allocationCreateInfo(memoryUsage, stack);
+            final LongBuffer pImage = stack.mallocLong(1);
+            final PointerBuffer pAllocation = stack.mallocPointer(1);
+            if (Vma.vmaCreateImage(this.allocator, createInfo, allocationInfo, pImage, pAllocation, null) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to allocate " + memoryUsage + " image memory");
+            }
+            return new GpuImage(pImage.get(0), pAllocation.get(0), createInfo.format(), createInfo.extent().width(), createInfo.extent().height());
+        }
+    }
+
+
+    private VmaAllocationCreateInfo allocationCreateInfo(MemoryUsage memoryUsage, MemoryStack stack) {
+        final VmaAllocationCreateInfo allocationInfo = VmaAllocationCreateInfo.calloc(stack);
+        allocationInfo.usage(memoryUsage.vmaUsage());
+        allocationInfo.flags(memoryUsage.vmaFlags());
+        return allocationInfo;
+    }
+
+
+    /**
+     * Allocates memory without a resource, to bind several resources to it. Resources that are never used at the same time may share bytes.
+     *
+     * @param size the size in bytes
+     * @param alignment the largest alignment of the resources
+     * @param memoryTypeBits the memory types all resources support
+     * @param requiredFlags the VkMemoryPropertyFlags the memory type must have, usually {@link VK10#VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT}
+     * @return the VmaAllocation
+     */
+    long allocateMemory(long size, long alignment, int memoryTypeBits, int requiredFlags) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            // the struct is read only in LWJGL, it's usually filled by Vulkan
+            final VkMemoryRequirements requirements = VkMemoryRequirements.calloc(stack);
+            MemoryUtil.memPutLong(requirements.address() + VkMemoryRequirements.SIZE, size);
+            MemoryUtil.memPutLong(requirements.address() + VkMemoryRequirements.ALIGNMENT, alignment);
+            MemoryUtil.memPutInt(requirements.address() + VkMemoryRequirements.MEMORYTYPEBITS, memoryTypeBits);
+
+            // the AUTO usages need a resource to pick the memory type from, so the flags are explicit
+            final VmaAllocationCreateInfo allocationInfo = VmaAllocationCreateInfo.calloc(stack);
+            allocationInfo.usage(Vma.VMA_MEMORY_USAGE_UNKNOWN);
+            allocationInfo.requiredFlags(requiredFlags);
+            final PointerBuffer pAllocation = stack.mallocPointer(1);
+            if (Vma.vmaAllocateMemory(this.allocator, requirements, allocationInfo, pAllocation, null) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to allocate " + size + " bytes of image memory");
+            }
+            return pAllocation.get(0);
+        }
+    }
+
+
+    /**
+     * Binds an image to memory of {@link #allocateMemory(long, long, int, int)}.
+     *
+     * @param allocation the VmaAllocation
+     * @param offset the offset in the allocation, aligned to the image's requirements
+     * @param image the VkImage
+     */
+    void bindImageMemory(long allocation, long offset, long image) {
+        if (Vma.vmaBindImageMemory2(this.allocator, allocation, offset, image, MemoryUtil.NULL) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to bind image memory");
+        }
+    }
+
+
+    /**
+     * Frees memory of {@link #allocateMemory(long, long, int, int)}. The resources bound to it must be destroyed before.
+     *
+     * @param allocation the VmaAllocation
+     */
+    void freeMemory(long allocation) {
+        Vma.vmaFreeMemory(this.allocator, allocation);
+    }
+
+
+    /**
+     * Destroys the buffer and frees its memory. The GPU must not use the buffer anymore.
+     *
+     * @param buffer the buffer
+     */
+    public void destroyBuffer(GpuBuffer buffer) {
+        Vma.vmaDestroyBuffer(this.allocator, buffer.getBuffer(), buffer.allocation());
+    }
+
+
+    /**
+     * Destroys the image and frees its memory. The GPU must not use the image anymore.
+     *
+     * @param image the image
+     */
+    public void destroyImage(GpuImage image) {
+        Vma.vmaDestroyImage(this.allocator, image.getImage(), image.allocation());
+    }
+
+
+    /**
+     * Makes CPU writes to the buffer's mapping visible to the GPU. Does nothing on coherent memory.
+     *
+     * @param buffer the buffer
+     * @param offset the offset in bytes
+     * @param size the size in bytes or {@link VK10#VK_WHOLE_SIZE}
+     */
+    public void flush(GpuBuffer buffer, long offset, long size) {
+        Vma.vmaFlushAllocation(this.allocator, buffer.allocation(), offset, size);
+    }
+
+
+    /**
+     * Makes GPU writes to the buffer visible to the CPU through the mapping. Does nothing on coherent memory.
+     *
+     * @param buffer the buffer
+     * @param offset the offset in bytes
+     * @param size the size in bytes or {@link VK10#VK_WHOLE_SIZE}
+     */
+    public void invalidate(GpuBuffer buffer, long offset, long size) {
+        Vma.vmaInvalidateAllocation(this.allocator, buffer.allocation(), offset, size);
+    }
+
+
+    /**
+     * Calculates the statistics of all memory blocks. This walks every block and allocation, so it shouldn't be called every frame.
+     *
+     * @return the statistics
+     */
+    public Statistics getStatistics() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VmaStats stats = VmaStats.calloc(stack);
+            Vma.vmaCalculateStats(this.allocator, stats);
+            final VmaStatInfo total = stats.total();
+            return new Statistics(total.blockCount(), total.allocationCount(), total.usedBytes(), total.unusedBytes(), total.allocationSizeMax());
+        }
+    }
+
+
+    /**
+     * Returns how much memory of each heap is allocated. Cheap enough to be called every frame.
+     *
+     * @return one entry per memory heap
+     */
+    public List<HeapBudget> getHeapBudgets() {
+        final List<HeapBudget> result = new ArrayList<>(this.heapCount);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VmaBudget.Buffer budgets = VmaBudget.calloc(this.heapCount, stack);
+            Vma.vmaGetHeapBudgets(this.allocator, budgets);
+            for (int i = 0; i < this.heapCount; i++) {
+                final VmaBudget budget = budgets.get(i);
+                result.add(new HeapBudget(budget.blockBytes(), budget.allocationBytes(), budget.usage(), budget.budget()));
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Frees the allocator. All buffers and images must be destroyed before.
+     */
+    @Override
+    public void dispose() {
+        Vma.vmaDestroyAllocator(this.allocator);
+    }
+
+
+    /**
+     * The totals over all memory types.
+     *
+     * @param blockCount the number of vkAllocateMemory blocks
+     * @param allocationCount the number of buffers and images
+     * @param usedBytes the bytes occupied by buffers and images
+     * @param unusedBytes the bytes of the blocks not occupied by buffers and images
+     * @param largestAllocation the size of the largest allocation in bytes
+     */
+    public record Statistics(int blockCount, int allocationCount, long usedBytes, long unusedBytes, long largestAllocation) {
+    }
+
+
+    /**
+     * The memory usage of a heap.
+     *
+     * @param blockBytes the bytes allocated with vkAllocateMemory
+     * @param allocationBytes the bytes occupied by buffers and images
+     * @param usage the estimated bytes used by this process, the same as blockBytes without the memory budget extension
+     * @param budget the estimated bytes available to this process
+     */
+    public record HeapBudget(long blockBytes, long allocationBytes, long usage, long budget) {
+    }
+
+}
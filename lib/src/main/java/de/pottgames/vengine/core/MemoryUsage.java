@@ -0,0 +1,63 @@
+package de.pottgames.vengine.core;
+
+import org.lwjgl.util.vma.Vma;
+
+/**
+ * Describes how the CPU and the GPU access an allocation of the {@link MemoryAllocator}. The allocator picks the memory type from the hint and the resource's
+ * memory requirements.
+ */
+public enum MemoryUsage {
+    /**
+     * Only accessed by the GPU, for example static vertex buffers, textures and render targets. Prefers device local memory and is never mapped.
+     */
+    GPU_ONLY(Vma.VMA_MEMORY_USAGE_AUTO_PREFER_DEVICE, 0),
+    /**
+     * Written once by the CPU and copied to a {@link #GPU_ONLY} resource, for example staging buffers. Prefers host memory and is persistently mapped. Write
+     * it sequentially, reading it may be very slow.
+     */
+    UPLOAD(Vma.VMA_MEMORY_USAGE_AUTO_PREFER_HOST, Vma.VMA_ALLOCATION_CREATE_HOST_ACCESS_SEQUENTIAL_WRITE_BIT | Vma.VMA_ALLOCATION_CREATE_MAPPED_BIT),
+    /**
+     * Written by the GPU and read by the CPU, for example screenshots and query results. Prefers cached host memory and is persistently mapped.
+     */
+    READBACK(Vma.VMA_MEMORY_USAGE_AUTO, Vma.VMA_ALLOCATION_CREATE_HOST_ACCESS_RANDOM_BIT | Vma.VMA_ALLOCATION_CREATE_MAPPED_BIT),
+    /**
+     * Rewritten by the CPU every frame and read by the GPU directly, for example uniform and dynamic vertex buffers. Persistently mapped and device local if
+     * the device has host visible device memory. Write it sequentially.
+     */
+    DYNAMIC(Vma.VMA_MEMORY_USAGE_AUTO_PREFER_DEVICE, Vma.VMA_ALLOCATION_CREATE_HOST_ACCESS_SEQUENTIAL_WRITE_BIT | Vma.VMA_ALLOCATION_CREATE_MAPPED_BIT),
+    /**
+     * Attachments with VK_IMAGE_USAGE_TRANSIENT_ATTACHMENT_BIT that are only accessed within a render pass, for example multisampled color and depth images.
+     * Backed by lazily allocated memory, which tile based GPUs never commit. Only available if {@link PhysicalDevice#hasLazilyAllocatedMemory()}.
+     */
+    TRANSIENT(Vma.VMA_MEMORY_USAGE_GPU_LAZILY_ALLOCATED, 0);
+
+    private final int vmaUsage;
+    private final int vmaFlags;
+
+
+    MemoryUsage(int vmaUsage, int vmaFlags) {
+        this.vmaUsage = vmaUsage;
+        this.vmaFlags = vmaFlags;
+    }
+
+
+    int vmaUsage() {
+        return this.vmaUsage;
+    }
+
+
+    int vmaFlags() {
+        return this.vmaFlags;
+    }
+
+
+    /**
+     * Returns true if allocations with this usage are persistently mapped.
+     *
+     * @return true if mapped
+     */
+    public boolean isMapped() {
+        return (this.vmaFlags & Vma.VMA_ALLOCATION_CREATE_MAPPED_BIT) != 0;
+    }
+
+}
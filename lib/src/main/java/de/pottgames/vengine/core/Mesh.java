@@ -0,0 +1,137 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import org.lwjgl.vulkan.VK10;
+
+/**
+ * Static geometry in device local vertex and index buffers. The data is streamed in by the {@link UploadManager}, so creating a mesh doesn't block. Draw it
+ * with {@link CommandRecorder#drawMesh(Mesh, int)} once {@link #isReady()} returns true.
+ *
+ * The buffers are destroyed with {@link #dispose()}, which must not be called while frames in flight may still draw the mesh. Use
+ * {@link VulkanInitializer#runWhenFramesComplete(Runnable)}.
+ */
+public class Mesh implements Disposable {
+    private final MemoryAllocator         allocator;
+    private final GpuBuffer               vertexBuffer;
+    private final GpuBuffer               indexBuffer;
+    private final int                     vertexCount;
+    private final int                     indexCount;
+    private final int                     indexType;
+    private final CompletableFuture<Void> uploaded;
+
+
+    /**
+     * Creates a mesh without an index buffer.
+     *
+     * @param layout the vertex layout, only used to compute the vertex count
+     * @param vertices the vertex data, from position to limit
+     * @throws IllegalArgumentException if there are no vertices
+     */
+    public Mesh(VertexLayout layout, ByteBuffer vertices) {
+        this(layout, vertices, null, VK10.VK_INDEX_TYPE_UINT16);
+    }
+
+
+    /**
+     * Creates an indexed mesh.
+     *
+     * @param layout the vertex layout, only used to compute the vertex count
+     * @param vertices the vertex data, from position to limit
+     * @param indices the index data, from position to limit, or null to draw the vertices in order
+     * @param indexType {@link VK10#VK_INDEX_TYPE_UINT16} or {@link VK10#VK_INDEX_TYPE_UINT32}
+     * @throws IllegalArgumentException if there are no vertices, or an empty index buffer
+     */
+    public Mesh(VertexLayout layout, ByteBuffer vertices, ByteBuffer indices, int indexType) {
+        // Vulkan buffers can't be empty
+        if (!vertices.hasRemaining()) {
+            throw new IllegalArgumentException("A mesh needs at least one vertex");
+        }
+        if (indices != null && !indices.hasRemaining()) {
+            throw new IllegalArgumentException("A mesh needs at least one index, pass null to draw without indices");
+        }
+        final VulkanInitializer vulkan = VulkanInitializer.get();
+        this.allocator = vulkan.getMemoryAllocator();
+        final UploadManager uploadManager = vulkan.getUploadManager();
+
+        this.vertexCount = vertices.remaining() / layout.getStride();
+        this.vertexBuffer = this.allocator.createBuffer(vertices.remaining(), VK10.VK_BUFFER_USAGE_VERTEX_BUFFER_BIT | VK10.VK_BUFFER_USAGE_TRANSFER_DST_BIT,
+                MemoryUsage.GPU_ONLY);
+        final CompletableFuture<Void> vertexUpload = uploadManager.upload(vertices, this.vertexBuffer, 0L);
+
+        if (indices == null) {
+            this.indexBuffer = null;
+            this.indexCount = 0;
+            this.indexType = indexType;
+            this.uploaded = vertexUpload;
+            return;
+        }
+
+        this.indexType = indexType;
+        this.indexCount = indices.remaining() / (indexType == VK10.VK_INDEX_TYPE_UINT32 ? Integer.BYTES : Short.BYTES);
+        this.indexBuffer = this.allocator.createBuffer(indices.remaining(), VK10.VK_BUFFER_USAGE_INDEX_BUFFER_BIT | VK10.VK_BUFFER_USAGE_TRANSFER_DST_BIT,
+                MemoryUsage.GPU_ONLY);
+        this.uploaded = CompletableFuture.allOf(vertexUpload, uploadManager.upload(indices, this.indexBuffer, 0L));
+    }
+
+
+    /**
+     * Returns true once the data was uploaded and the mesh can be drawn.
+     *
+     * @return true if the mesh can be drawn
+     */
+    public boolean isReady() {
+        return this.uploaded.isDone();
+    }
+
+
+    /**
+     * Returns the future that completes when the mesh can be drawn.
+     *
+     * @return the upload future
+     */
+    public CompletableFuture<Void> getUploadFuture() {
+        return this.uploaded;
+    }
+
+
+    public GpuBuffer getVertexBuffer() {
+        return this.vertexBuffer;
+    }
+
+
+    /**
+     * Returns the index buffer.
+     *
+     * @return the index buffer or null if the mesh isn't indexed
+     */
+    public GpuBuffer getIndexBuffer() {
+        return this.indexBuffer;
+    }
+
+
+    public int getVertexCount() {
+        return this.vertexCount;
+    }
+
+
+    public int getIndexCount() {
+        return this.indexCount;
+    }
+
+
+    public int getIndexType() {
+        return this.indexType;
+    }
+
+
+    @Override
+    public void dispose() {
+        this.allocator.destroyBuffer(this.vertexBuffer);
+        if (this.indexBuffer != null) {
+            this.allocator.destroyBuffer(this.indexBuffer);
+        }
+    }
+
+}
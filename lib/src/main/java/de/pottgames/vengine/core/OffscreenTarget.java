@@ -0,0 +1,125 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkBufferImageCopy;
+import org.lwjgl.vulkan.VkBufferMemoryBarrier;
+import org.lwjgl.vulkan.VkCommandBuffer;
+
+/**
+ * Wraps a device owned color image that replaces a swap chain image in headless mode, together with the optional host visible buffer its content is copied
+ * to. The structs needed to record the copy are allocated once.
+ *
+ * This target's Vulkan objects must be deleted manually, {@link #dispose()} only frees the preallocated structs.
+ */
+class OffscreenTarget implements Disposable {
+    static final long NO_PENDING_FRAME = -1L;
+
+    private final long                         image;
+    private final long                         imageMemory;
+    private final long                         readbackBuffer;
+    private final long                         readbackMemory;
+    private final ByteBuffer                   readbackMapping;
+    private final VkBufferImageCopy.Buffer     readbackRegion;
+    private final VkBufferMemoryBarrier.Buffer readbackBarrier;
+    private long                               pendingFrame = OffscreenTarget.NO_PENDING_FRAME;
+
+
+    OffscreenTarget(long image, long imageMemory, int width, int height, long readbackBuffer, long readbackMemory, ByteBuffer readbackMapping) {
+        this.image = image;
+        this.imageMemory = imageMemory;
+        this.readbackBuffer = readbackBuffer;
+        this.readbackMemory = readbackMemory;
+        this.readbackMapping = readbackMapping;
+
+        if (readbackMapping == null) {
+            this.readbackRegion = null;
+            this.readbackBarrier = null;
+            return;
+        }
+
+        this.readbackRegion = VkBufferImageCopy.calloc(1);
+        this.readbackRegion.bufferOffset(0);
+        this.readbackRegion.bufferRowLength(0);
+        this.readbackRegion.bufferImageHeight(0);
+        this.readbackRegion.imageSubresource().aspectMask(VK10.VK_IMAGE_ASPECT_COLOR_BIT);
+        this.readbackRegion.imageSubresource().mipLevel(0);
+        this.readbackRegion.imageSubresource().baseArrayLayer(0);
+        this.readbackRegion.imageSubresource().layerCount(1);
+        this.readbackRegion.imageOffset().set(0, 0, 0);
+        this.readbackRegion.imageExtent().set(width, height, 1);
+
+        // make the copied data visible to the host once the frame's fence is signaled
+        this.readbackBarrier = VkBufferMemoryBarrier.calloc(1);
+        this.readbackBarrier.sType(VK10.VK_STRUCTURE_TYPE_BUFFER_MEMORY_BARRIER);
+        this.readbackBarrier.srcAccessMask(VK10.VK_ACCESS_TRANSFER_WRITE_BIT);
+        this.readbackBarrier.dstAccessMask(VK10.VK_ACCESS_HOST_READ_BIT);
+        this.readbackBarrier.srcQueueFamilyIndex(VK10.VK_QUEUE_FAMILY_IGNORED);
+        this.readbackBarrier.dstQueueFamilyIndex(VK10.VK_QUEUE_FAMILY_IGNORED);
+        this.readbackBarrier.buffer(readbackBuffer);
+        this.readbackBarrier.offset(0);
+        this.readbackBarrier.size(VK10.VK_WHOLE_SIZE);
+    }
+
+
+    /**
+     * Records the copy of the image into the readback buffer. The image must be in {@link VK10#VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL} layout.
+     *
+     * @param commandBuffer the command buffer to record into
+     */
+    void recordReadback(VkCommandBuffer commandBuffer) {
+        VK10.vkCmdCopyImageToBuffer(commandBuffer, this.image, VK10.VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL, this.readbackBuffer, this.readbackRegion);
+        VK10.vkCmdPipelineBarrier(commandBuffer, VK10.VK_PIPELINE_STAGE_TRANSFER_BIT, VK10.VK_PIPELINE_STAGE_HOST_BIT, 0, null, this.readbackBarrier, null);
+    }
+
+
+    long image() {
+        return this.image;
+    }
+
+
+    long imageMemory() {
+        return this.imageMemory;
+    }
+
+
+    boolean hasReadback() {
+        return this.readbackMapping != null;
+    }
+
+
+    long readbackBuffer() {
+        return this.readbackBuffer;
+    }
+
+
+    long readbackMemory() {
+        return this.readbackMemory;
+    }
+
+
+    ByteBuffer readbackMapping() {
+        return this.readbackMapping;
+    }
+
+
+    long pendingFrame() {
+        return this.pendingFrame;
+    }
+
+
+    void setPendingFrame(long pendingFrame) {
+        this.pendingFrame = pendingFrame;
+    }
+
+
+    @Override
+    public void dispose() {
+        if (this.readbackRegion != null) {
+            this.readbackRegion.free();
+            this.readbackBarrier.free();
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package de.pottgames.vengine.core;
+
+@FunctionalInterface
+public interface ParallelRecordingJob {
+
+    /**
+     * Records one job of a parallel batch. Jobs run concurrently on the recording threads, each into its own secondary command buffer that starts with the
+     * default graphics pipeline bound. The secondary command buffers are executed in job order.
+     *
+     * @param recorder the recorder of the job's secondary command buffer, only valid during this call
+     * @param jobIndex the index of the job, from 0 to the job count - 1
+     */
+    void record(CommandRecorder recorder, int jobIndex);
+
+}
@@ -1,9 +1,28 @@
 package de.pottgames.vengine.core;
 
+import java.nio.IntBuffer;
+
 import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.EXTDescriptorIndexing;
+import org.lwjgl.vulkan.KHRDrawIndirectCount;
+import org.lwjgl.vulkan.KHRDynamicRendering;
 import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VK11;
+import org.lwjgl.vulkan.VK12;
+import org.lwjgl.vulkan.VK13;
+import org.lwjgl.vulkan.VkExtensionProperties;
+import org.lwjgl.vulkan.VkFormatProperties;
 import org.lwjgl.vulkan.VkPhysicalDevice;
+import org.lwjgl.vulkan.VkPhysicalDeviceDescriptorIndexingFeatures;
+import org.lwjgl.vulkan.VkPhysicalDeviceDescriptorIndexingProperties;
+import org.lwjgl.vulkan.VkPhysicalDeviceDynamicRenderingFeatures;
+import org.lwjgl.vulkan.VkPhysicalDeviceFeatures;
+import org.lwjgl.vulkan.VkPhysicalDeviceFeatures2;
+import org.lwjgl.vulkan.VkPhysicalDeviceMemoryProperties;
 import org.lwjgl.vulkan.VkPhysicalDeviceProperties;
+import org.lwjgl.vulkan.VkPhysicalDeviceProperties2;
+import org.lwjgl.vulkan.VkPhysicalDeviceTimelineSemaphoreFeatures;
+import org.lwjgl.vulkan.VkQueueFamilyProperties;
 
 import de.pottgames.vengine.core.VulkanUtils.ApiVersion;
 
@@ -11,7 +30,32 @@ public class PhysicalDevice {
     private final VkPhysicalDevice device;
     private final String           name;
     private final int              vendorId;
+    private final int              deviceId;
+    private final byte[]           pipelineCacheUuid;
     private final ApiVersion       apiVersion;
+    private final boolean          timelineSemaphoreSupport;
+    private final float            timestampPeriod;
+    private final long             minUniformBufferOffsetAlignment;
+    private final long             maxUniformBufferRange;
+    private final int              maxPushConstantsSize;
+    private final int              framebufferSampleCounts;
+    private final boolean          lazilyAllocatedMemory;
+
+    // DESCRIPTOR INDEXING, core in Vulkan 1.2, an extension on 1.1
+    private final boolean descriptorIndexingSupport;
+    private final boolean descriptorIndexingExtension;
+    private final int     maxBindlessTextures;
+    private final int     maxBindlessBuffers;
+
+    // DYNAMIC RENDERING, core in Vulkan 1.3, an extension on 1.2
+    private final boolean dynamicRenderingSupport;
+    private final boolean dynamicRenderingExtension;
+
+    // INDIRECT DRAWS, the draw count is read from a buffer with VK_KHR_draw_indirect_count
+    private final boolean multiDrawIndirectSupport;
+    private final boolean drawIndirectFirstInstanceSupport;
+    private final boolean drawIndirectCountSupport;
+    private final long    maxDrawIndirectCount;
 
 
     public PhysicalDevice(VkPhysicalDevice device) {
@@ -22,7 +66,135 @@ public class PhysicalDevice {
             VK10.vkGetPhysicalDeviceProperties(device, pProperties);
             this.name = pProperties.deviceNameString();
             this.vendorId = pProperties.vendorID();
+            this.deviceId = pProperties.deviceID();
+            this.pipelineCacheUuid = new byte[VK10.VK_UUID_SIZE];
+            pProperties.pipelineCacheUUID().get(this.pipelineCacheUuid);
             this.apiVersion = VulkanUtils.decodeApiVersionNumber(pProperties.apiVersion());
+            this.timestampPeriod = pProperties.limits().timestampPeriod();
+            this.minUniformBufferOffsetAlignment = pProperties.limits().minUniformBufferOffsetAlignment();
+            this.maxUniformBufferRange = Integer.toUnsignedLong(pProperties.limits().maxUniformBufferRange());
+            this.maxPushConstantsSize = pProperties.limits().maxPushConstantsSize();
+            this.maxDrawIndirectCount = Integer.toUnsignedLong(pProperties.limits().maxDrawIndirectCount());
+            // the engine's color and depth attachments always use the same count
+            this.framebufferSampleCounts = pProperties.limits().framebufferColorSampleCounts() & pProperties.limits().framebufferDepthSampleCounts()
+                    & pProperties.limits().framebufferStencilSampleCounts();
+
+            final VkPhysicalDeviceMemoryProperties memoryProperties = VkPhysicalDeviceMemoryProperties.calloc(stack);
+            VK10.vkGetPhysicalDeviceMemoryProperties(device, memoryProperties);
+            boolean lazilyAllocated = false;
+            for (int i = 0; i < memoryProperties.memoryTypeCount(); i++) {
+                lazilyAllocated |= (memoryProperties.memoryTypes(i).propertyFlags() & VK10.VK_MEMORY_PROPERTY_LAZILY_ALLOCATED_BIT) != 0;
+            }
+            this.lazilyAllocatedMemory = lazilyAllocated;
+
+            final VkPhysicalDeviceFeatures coreFeatures = VkPhysicalDeviceFeatures.calloc(stack);
+            VK10.vkGetPhysicalDeviceFeatures(device, coreFeatures);
+            this.multiDrawIndirectSupport = coreFeatures.multiDrawIndirect();
+            this.drawIndirectFirstInstanceSupport = coreFeatures.drawIndirectFirstInstance();
+            // the core 1.2 feature is only in VkPhysicalDeviceVulkan12Features, which can't be chained next to the separate feature structs used here
+            this.drawIndirectCountSupport = PhysicalDevice.hasExtension(device, KHRDrawIndirectCount.VK_KHR_DRAW_INDIRECT_COUNT_EXTENSION_NAME);
+
+            // Vulkan 1.2 features can only be queried if both the instance and the device support 1.2
+            final boolean vulkan12 = device.getCapabilities().Vulkan12 && pProperties.apiVersion() >= VK12.VK_API_VERSION_1_2;
+            this.descriptorIndexingExtension = !vulkan12 && device.getCapabilities().Vulkan11 && pProperties.apiVersion() >= VK11.VK_API_VERSION_1_1
+                    && PhysicalDevice.hasExtension(device, EXTDescriptorIndexing.VK_EXT_DESCRIPTOR_INDEXING_EXTENSION_NAME);
+            // the extension depends on VK_KHR_depth_stencil_resolve and VK_KHR_create_renderpass2, both are core in 1.2
+            final boolean vulkan13 = device.getCapabilities().Vulkan13 && pProperties.apiVersion() >= VK13.VK_API_VERSION_1_3;
+            this.dynamicRenderingExtension = !vulkan13 && vulkan12
+                    && PhysicalDevice.hasExtension(device, KHRDynamicRendering.VK_KHR_DYNAMIC_RENDERING_EXTENSION_NAME);
+
+            final VkPhysicalDeviceTimelineSemaphoreFeatures timelineFeatures = VkPhysicalDeviceTimelineSemaphoreFeatures.calloc(stack);
+            timelineFeatures.sType(VK12.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_TIMELINE_SEMAPHORE_FEATURES);
+            final VkPhysicalDeviceDescriptorIndexingFeatures indexingFeatures = VkPhysicalDeviceDescriptorIndexingFeatures.calloc(stack);
+            indexingFeatures.sType(VK12.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_DESCRIPTOR_INDEXING_FEATURES);
+            final VkPhysicalDeviceDescriptorIndexingProperties indexingProperties = VkPhysicalDeviceDescriptorIndexingProperties.calloc(stack);
+            indexingProperties.sType(VK12.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_DESCRIPTOR_INDEXING_PROPERTIES);
+            final VkPhysicalDeviceDynamicRenderingFeatures renderingFeatures = VkPhysicalDeviceDynamicRenderingFeatures.calloc(stack);
+            renderingFeatures.sType(VK13.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_DYNAMIC_RENDERING_FEATURES);
+
+            if (vulkan12 || this.descriptorIndexingExtension) {
+                final VkPhysicalDeviceFeatures2 features = VkPhysicalDeviceFeatures2.calloc(stack);
+                features.sType(VK11.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_FEATURES_2);
+                features.pNext(indexingFeatures);
+                if (vulkan12) {
+                    indexingFeatures.pNext(timelineFeatures.address());
+                }
+                if (vulkan13 || this.dynamicRenderingExtension) {
+                    timelineFeatures.pNext(renderingFeatures.address());
+                }
+                VK11.vkGetPhysicalDeviceFeatures2(device, features);
+
+                final VkPhysicalDeviceProperties2 properties = VkPhysicalDeviceProperties2.calloc(stack);
+                properties.sType(VK11.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_PROPERTIES_2);
+                properties.pNext(indexingProperties);
+                VK11.vkGetPhysicalDeviceProperties2(device, properties);
+            }
+
+            this.timelineSemaphoreSupport = vulkan12 && timelineFeatures.timelineSemaphore();
+            this.descriptorIndexingSupport = PhysicalDevice.isBindlessCapable(indexingFeatures);
+            this.dynamicRenderingSupport = renderingFeatures.dynamicRendering();
+            // combined image samplers count against the sampler and the sampled image limits
+            this.maxBindlessTextures = Math.min(
+                    Math.min(indexingProperties.maxDescriptorSetUpdateAfterBindSampledImages(), indexingProperties.maxDescriptorSetUpdateAfterBindSamplers()),
+                    Math.min(indexingProperties.maxPerStageDescriptorUpdateAfterBindSampledImages(),
+                            indexingProperties.maxPerStageDescriptorUpdateAfterBindSamplers()));
+            this.maxBindlessBuffers = Math.min(indexingProperties.maxDescriptorSetUpdateAfterBindStorageBuffers(),
+                    indexingProperties.maxPerStageDescriptorUpdateAfterBindStorageBuffers());
+        }
+    }
+
+
+    /**
+     * Checks the features {@link BindlessResources} relies on: arrays of unknown size that are indexed with non uniform indices, only partially bound, and
+     * updated while command buffers that use other elements are pending.
+     */
+    private static boolean isBindlessCapable(VkPhysicalDeviceDescriptorIndexingFeatures features) {
+        return features.runtimeDescriptorArray() && features.descriptorBindingPartiallyBound() && features.descriptorBindingUpdateUnusedWhilePending()
+                && features.shaderSampledImageArrayNonUniformIndexing() && features.shaderStorageBufferArrayNonUniformIndexing()
+                && features.descriptorBindingSampledImageUpdateAfterBind() && features.descriptorBindingStorageBufferUpdateAfterBind();
+    }
+
+
+    /**
+     * Checks whether the device supports an extension.
+     *
+     * @param device the device
+     * @param extension the extension name
+     * @return true if the extension is supported
+     */
+    static boolean hasExtension(VkPhysicalDevice device, String extension) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final IntBuffer extensionCount = stack.ints(0);
+            VK10.vkEnumerateDeviceExtensionProperties(device, (String) null, extensionCount, null);
+            final VkExtensionProperties.Buffer extensions = VkExtensionProperties.malloc(extensionCount.get(0), stack);
+            VK10.vkEnumerateDeviceExtensionProperties(device, (String) null, extensionCount, extensions);
+            for (int i = 0; i < extensions.capacity(); i++) {
+                if (extension.equals(extensions.get(i).extensionNameString())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+
+    /**
+     * Returns the first format that supports the features with optimal tiling.
+     *
+     * @param candidates the VkFormats in the order of preference
+     * @param features the VkFormatFeatureFlags
+     * @return the format or VK_FORMAT_UNDEFINED if none of them is supported
+     */
+    public int findFormat(int[] candidates, int features) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkFormatProperties properties = VkFormatProperties.malloc(stack);
+            for (final int format : candidates) {
+                VK10.vkGetPhysicalDeviceFormatProperties(this.device, format, properties);
+                if ((properties.optimalTilingFeatures() & features) == features) {
+                    return format;
+                }
+            }
+            return VK10.VK_FORMAT_UNDEFINED;
         }
     }
 
@@ -42,6 +214,200 @@ public class PhysicalDevice {
     }
 
 
+    public int getDeviceId() {
+        return this.deviceId;
+    }
+
+
+    /**
+     * Returns the UUID that identifies compatible pipeline cache data, it changes with the driver version.
+     *
+     * @return a copy of the 16 byte UUID
+     */
+    public byte[] getPipelineCacheUuid() {
+        return this.pipelineCacheUuid.clone();
+    }
+
+
+    public boolean isTimelineSemaphoreSupported() {
+        return this.timelineSemaphoreSupport;
+    }
+
+
+    /**
+     * Returns whether the device supports the descriptor indexing features bindless resources need, either as Vulkan 1.2 core or with
+     * VK_EXT_descriptor_indexing.
+     *
+     * @return true if {@link BindlessResources} can be used
+     */
+    public boolean isDescriptorIndexingSupported() {
+        return this.descriptorIndexingSupport;
+    }
+
+
+    /**
+     * Returns whether descriptor indexing comes from VK_EXT_descriptor_indexing, which has to be enabled on the device then.
+     *
+     * @return true if the extension is needed
+     */
+    public boolean isDescriptorIndexingExtension() {
+        return this.descriptorIndexingExtension;
+    }
+
+
+    /**
+     * Returns the maximum number of combined image samplers in an update after bind set.
+     *
+     * @return the maximum number of bindless textures
+     */
+    public int getMaxBindlessTextures() {
+        return this.maxBindlessTextures;
+    }
+
+
+    /**
+     * Returns the maximum number of storage buffers in an update after bind set.
+     *
+     * @return the maximum number of bindless buffers
+     */
+    public int getMaxBindlessBuffers() {
+        return this.maxBindlessBuffers;
+    }
+
+
+    /**
+     * Returns whether the device can render without render pass and framebuffer objects, either as Vulkan 1.3 core or with VK_KHR_dynamic_rendering.
+     *
+     * @return true if dynamic rendering can be used
+     */
+    public boolean isDynamicRenderingSupported() {
+        return this.dynamicRenderingSupport;
+    }
+
+
+    /**
+     * Returns whether dynamic rendering comes from VK_KHR_dynamic_rendering, which has to be enabled on the device and whose commands have to be used then.
+     *
+     * @return true if the extension is needed
+     */
+    public boolean isDynamicRenderingExtension() {
+        return this.dynamicRenderingExtension;
+    }
+
+
+    /**
+     * Returns whether a single indirect draw command can execute more than one draw.
+     *
+     * @return true if the multiDrawIndirect feature can be enabled
+     */
+    public boolean isMultiDrawIndirectSupported() {
+        return this.multiDrawIndirectSupport;
+    }
+
+
+    /**
+     * Returns whether indirect draws may start at an instance other than 0, which lets every draw of a multi draw address its own instance data.
+     *
+     * @return true if the drawIndirectFirstInstance feature can be enabled
+     */
+    public boolean isDrawIndirectFirstInstanceSupported() {
+        return this.drawIndirectFirstInstanceSupport;
+    }
+
+
+    /**
+     * Returns whether indirect draws can read their draw count from a buffer, with VK_KHR_draw_indirect_count.
+     *
+     * @return true if the extension is supported
+     */
+    public boolean isDrawIndirectCountSupported() {
+        return this.drawIndirectCountSupport;
+    }
+
+
+    /**
+     * Returns the maximum number of draws of one indirect draw command, including the count read from a buffer. Devices with multi draws support at least
+     * 65535, others 1.
+     *
+     * @return the maximum draw count
+     */
+    public long getMaxDrawIndirectCount() {
+        return this.maxDrawIndirectCount;
+    }
+
+
+    /**
+     * Returns the number of nanoseconds it takes for a timestamp query value to be incremented by 1.
+     *
+     * @return the timestamp period
+     */
+    public float getTimestampPeriod() {
+        return this.timestampPeriod;
+    }
+
+
+    /**
+     * Returns the alignment of uniform buffer offsets, including dynamic offsets.
+     *
+     * @return the alignment in bytes, a power of two
+     */
+    public long getMinUniformBufferOffsetAlignment() {
+        return this.minUniformBufferOffsetAlignment;
+    }
+
+
+    public long getMaxUniformBufferRange() {
+        return this.maxUniformBufferRange;
+    }
+
+
+    /**
+     * Returns the size of the push constant block. Every device supports at least 128 bytes.
+     *
+     * @return the size in bytes
+     */
+    public int getMaxPushConstantsSize() {
+        return this.maxPushConstantsSize;
+    }
+
+
+    /**
+     * Returns the sample counts that color, depth and stencil attachments all support.
+     *
+     * @return the VkSampleCountFlags
+     */
+    public int getFramebufferSampleCounts() {
+        return this.framebufferSampleCounts;
+    }
+
+
+    /**
+     * Returns whether the device has lazily allocated memory, which tile based GPUs use for attachments that never leave the tile memory.
+     *
+     * @return true if {@link MemoryUsage#TRANSIENT} can be used
+     */
+    public boolean hasLazilyAllocatedMemory() {
+        return this.lazilyAllocatedMemory;
+    }
+
+
+    /**
+     * Returns the number of meaningful bits in timestamps written on queues of the family. 0 means the family doesn't support timestamps.
+     *
+     * @param queueFamily the queue family index
+     * @return the number of valid bits, 0 or 36 to 64
+     */
+    public int getTimestampValidBits(int queueFamily) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final IntBuffer queueFamilyCount = stack.ints(0);
+            VK10.vkGetPhysicalDeviceQueueFamilyProperties(this.device, queueFamilyCount, null);
+            final VkQueueFamilyProperties.Buffer queueFamilies = VkQueueFamilyProperties.malloc(queueFamilyCount.get(0), stack);
+            VK10.vkGetPhysicalDeviceQueueFamilyProperties(this.device, queueFamilyCount, queueFamilies);
+            return queueFamilies.get(queueFamily).timestampValidBits();
+        }
+    }
+
+
     public String getName() {
         return this.name;
     }
@@ -0,0 +1,179 @@
+package de.pottgames.vengine.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkPipelineCacheCreateInfo;
+
+/**
+ * A VkPipelineCache that is seeded from a file and written back to it, so pipelines compiled once are loaded from the driver's cache on the next start. The
+ * file is only used if its header matches the vendor ID, the device ID and the pipeline cache UUID of the device, which changes with the driver version.
+ * Otherwise the cache starts empty and the file is replaced on save.
+ *
+ * Pass {@link #getHandle()} to vkCreateGraphicsPipelines and vkCreateComputePipelines. The cache is internally synchronized by the driver.
+ */
+public class PipelineCache implements Disposable {
+    // headerSize, headerVersion, vendorID, deviceID and the UUID
+    static final int HEADER_SIZE = 4 * Integer.BYTES + VK10.VK_UUID_SIZE;
+
+    private final VkDevice device;
+    private final Path     file;
+    private final long     cache;
+    private final boolean  seeded;
+
+
+    /**
+     * Creates the cache.
+     *
+     * @param device the logical device
+     * @param physicalDevice the physical device the file is validated against
+     * @param file the cache file or null to keep the cache in memory only
+     */
+    PipelineCache(VkDevice device, PhysicalDevice physicalDevice, Path file) {
+        this.device = device;
+        this.file = file;
+
+        ByteBuffer initialData = null;
+        if (file != null && Files.isRegularFile(file)) {
+            try {
+                final byte[] bytes = Files.readAllBytes(file);
+                if (PipelineCache.isCompatible(ByteBuffer.wrap(bytes), physicalDevice.getVendorId(), physicalDevice.getDeviceId(),
+                        physicalDevice.getPipelineCacheUuid())) {
+                    initialData = MemoryUtil.memAlloc(bytes.length);
+                    initialData.put(bytes).flip();
+                }
+            } catch (final IOException e) {
+                // an unreadable cache is the same as no cache
+            }
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkPipelineCacheCreateInfo createInfo = VkPipelineCacheCreateInfo.calloc(stack);
+            createInfo.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_CACHE_CREATE_INFO);
+            createInfo.pInitialData(initialData);
+
+            final LongBuffer pCache = stack.mallocLong(1);
+            if (VK10.vkCreatePipelineCache(device, createInfo, null, pCache) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create pipeline cache");
+            }
+            this.cache = pCache.get(0);
+        } finally {
+            MemoryUtil.memFree(initialData);
+        }
+        this.seeded = initialData != null;
+    }
+
+
+    /**
+     * Checks the header of pipeline cache data. The header fields are little endian, like VkPipelineCacheHeaderVersionOne specifies.
+     *
+     * @param data the cache data, from position to limit
+     * @param vendorId the vendor ID of the device
+     * @param deviceId the device ID of the device
+     * @param uuid the pipeline cache UUID of the device
+     * @return true if the data was written by the same device and driver
+     */
+    static boolean isCompatible(ByteBuffer data, int vendorId, int deviceId, byte[] uuid) {
+        if (data.remaining() < PipelineCache.HEADER_SIZE) {
+            return false;
+        }
+        final ByteBuffer header = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        final int headerSize = header.getInt(0);
+        if (headerSize < PipelineCache.HEADER_SIZE || headerSize > header.remaining()) {
+            return false;
+        }
+        if (header.getInt(4) != VK10.VK_PIPELINE_CACHE_HEADER_VERSION_ONE || header.getInt(8) != vendorId || header.getInt(12) != deviceId) {
+            return false;
+        }
+        final byte[] dataUuid = new byte[VK10.VK_UUID_SIZE];
+        header.get(16, dataUuid);
+        return Arrays.equals(dataUuid, uuid);
+    }
+
+
+    /**
+     * Returns the VkPipelineCache handle.
+     *
+     * @return the handle
+     */
+    public long getHandle() {
+        return this.cache;
+    }
+
+
+    /**
+     * Returns true if the cache was seeded from a valid file.
+     *
+     * @return true if the file was used
+     */
+    public boolean isSeeded() {
+        return this.seeded;
+    }
+
+
+    /**
+     * Writes the cache to its file. The data is written to a temporary file next to it first and then moved over the old file, so a crash never leaves a
+     * truncated cache behind.
+     *
+     * @throws IOException if the file can't be written
+     */
+    public void save() throws IOException {
+        if (this.file == null) {
+            return;
+        }
+
+        final byte[] bytes;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final PointerBuffer pSize = stack.mallocPointer(1);
+            if (VK10.vkGetPipelineCacheData(this.device, this.cache, pSize, null) != VK10.VK_SUCCESS) {
+                throw new IOException("Failed to query the pipeline cache size");
+            }
+            final ByteBuffer data = MemoryUtil.memAlloc((int) pSize.get(0));
+            try {
+                if (VK10.vkGetPipelineCacheData(this.device, this.cache, pSize, data) != VK10.VK_SUCCESS) {
+                    throw new IOException("Failed to read the pipeline cache");
+                }
+                bytes = new byte[(int) pSize.get(0)];
+                data.get(0, bytes);
+            } finally {
+                MemoryUtil.memFree(data);
+            }
+        }
+
+        final Path directory = this.file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        final Path temporaryFile = Files.createTempFile(directory, this.file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporaryFile, bytes);
+            try {
+                Files.move(temporaryFile, this.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, this.file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+
+    /**
+     * Destroys the cache without saving it.
+     */
+    @Override
+    public void dispose() {
+        VK10.vkDestroyPipelineCache(this.device, this.cache, null);
+    }
+
+}
@@ -0,0 +1,158 @@
+package de.pottgames.vengine.core;
+
+import org.lwjgl.vulkan.VK10;
+
+/**
+ * Describes everything a graphics pipeline is built from. States are compared by value, so equal states share one pipeline in the
+ * {@link PipelineStateCache}. The viewport and the scissor are always dynamic and therefore not part of the state.
+ *
+ * Shaders are referenced by their name in the {@link ShaderCache}, either a SPIR-V file or a name registered with
+ * {@link ShaderCache#getModule(String, byte[])}. A {@link VertexLayout} must not be changed after it was used in a state.
+ *
+ * @param vertexShader the name of the vertex shader
+ * @param fragmentShader the name of the fragment shader
+ * @param vertexLayout the vertex layout, or null if the shaders generate the vertices
+ * @param topology the VkPrimitiveTopology
+ * @param polygonMode the VkPolygonMode
+ * @param cullMode the VkCullModeFlags
+ * @param frontFace the VkFrontFace
+ * @param blending true to blend the color with alpha
+ * @param depthTest true to test fragments against the depth buffer
+ * @param depthWrite true to write the depth of passing fragments
+ * @param depthCompareOp the VkCompareOp of the depth test
+ * @param samples the VkSampleCountFlagBits of the attachments
+ * @param renderPass the render pass the pipeline is used in, or VK_NULL_HANDLE for dynamic rendering
+ * @param subpass the subpass index
+ * @param colorFormat the VkFormat of the color attachment with dynamic rendering, VK_FORMAT_UNDEFINED with a render pass
+ * @param depthFormat the VkFormat of the depth attachment with dynamic rendering, VK_FORMAT_UNDEFINED with a render pass or without depth attachment
+ * @param layout the pipeline layout
+ */
+public record PipelineState(String vertexShader, String fragmentShader, VertexLayout vertexLayout, int topology, int polygonMode, int cullMode, int frontFace,
+        boolean blending, boolean depthTest, boolean depthWrite, int depthCompareOp, int samples, long renderPass, int subpass, int colorFormat, int depthFormat,
+        long layout) {
+
+    /**
+     * Creates the state of an opaque triangle list pipeline with back face culling, without depth test and multisampling.
+     *
+     * @param vertexShader the name of the vertex shader
+     * @param fragmentShader the name of the fragment shader
+     * @param vertexLayout the vertex layout, or null if the shaders generate the vertices
+     * @param renderPass the render pass the pipeline is used in, subpass 0
+     * @param layout the pipeline layout
+     */
+    public PipelineState(String vertexShader, String fragmentShader, VertexLayout vertexLayout, long renderPass, long layout) {
+        this(vertexShader, fragmentShader, vertexLayout, VK10.VK_PRIMITIVE_TOPOLOGY_TRIANGLE_LIST, VK10.VK_POLYGON_MODE_FILL, VK10.VK_CULL_MODE_BACK_BIT,
+                VK10.VK_FRONT_FACE_CLOCKWISE, false, false, false, VK10.VK_COMPARE_OP_LESS, VK10.VK_SAMPLE_COUNT_1_BIT, renderPass, 0,
+                VK10.VK_FORMAT_UNDEFINED, VK10.VK_FORMAT_UNDEFINED, layout);
+    }
+
+
+    public PipelineState withTopology(int topology) {
+        return new PipelineState(this.vertexShader, this.fragmentShader, this.vertexLayout, topology, this.polygonMode, this.cullMode, this.frontFace,
+                this.blending, this.depthTest, this.depthWrite, this.depthCompareOp, this.samples, this.renderPass, this.subpass, this.colorFormat,
+                this.depthFormat, this.layout);
+    }
+
+
+    public PipelineState withPolygonMode(int polygonMode) {
+        return new PipelineState(this.vertexShader, this.fragmentShader, this.vertexLayout, this.topology, polygonMode, this.cullMode, this.frontFace,
+                this.blending, this.depthTest, this.depthWrite, this.depthCompareOp, this.samples, this.renderPass, this.subpass, this.colorFormat,
+                this.depthFormat, this.layout);
+    }
+
+
+    public PipelineState withCulling(int cullMode, int frontFace) {
+        return new PipelineState(this.vertexShader, this.fragmentShader, this.vertexLayout, this.topology, this.polygonMode, cullMode, frontFace, this.blending,
+                this.depthTest, this.depthWrite, this.depthCompareOp, this.samples, this.renderPass, this.subpass, this.colorFormat, this.depthFormat,
+                this.layout);
+    }
+
+
+    public PipelineState withBlending(boolean blending) {
+        return new PipelineState(this.vertexShader, this.fragmentShader, this.vertexLayout, this.topology, this.polygonMode, this.cullMode, this.frontFace,
+                blending, this.depthTest, this.depthWrite, this.depthCompareOp, this.samples, this.renderPass, this.subpass, this.colorFormat, this.depthFormat,
+                this.layout);
+    }
+
+
+    /**
+     * Returns the state with a changed depth test. The attachments the pipeline is used with must have a depth attachment for the test to have an effect.
+     *
+     * @param depthTest true to test fragments against the depth buffer
+     * @param depthWrite true to write the depth of passing fragments
+     * @param depthCompareOp the VkCompareOp of the test
+     * @return the state
+     */
+    public PipelineState withDepth(boolean depthTest, boolean depthWrite, int depthCompareOp) {
+        return new PipelineState(this.vertexShader, this.fragmentShader, this.vertexLayout, this.topology, this.polygonMode, this.cullMode, this.frontFace,
+                this.blending, depthTest, depthWrite, depthCompareOp, this.samples, this.renderPass, this.subpass, this.colorFormat, this.depthFormat,
+                this.layout);
+    }
+
+
+    /**
+     * Returns the state for attachments with a different sample count.
+     *
+     * @param samples the VkSampleCountFlagBits of the attachments
+     * @return the state
+     */
+    public PipelineState withSamples(int samples) {
+        return new PipelineState(this.vertexShader, this.fragmentShader, this.vertexLayout, this.topology, this.polygonMode, this.cullMode, this.frontFace,
+                this.blending, this.depthTest, this.depthWrite, this.depthCompareOp, samples, this.renderPass, this.subpass, this.colorFormat,
+                this.depthFormat, this.layout);
+    }
+
+
+    public PipelineState withRenderPass(long renderPass, int subpass) {
+        return new PipelineState(this.vertexShader, this.fragmentShader, this.vertexLayout, this.topology, this.polygonMode, this.cullMode, this.frontFace,
+                this.blending, this.depthTest, this.depthWrite, this.depthCompareOp, this.samples, renderPass, subpass, VK10.VK_FORMAT_UNDEFINED,
+                VK10.VK_FORMAT_UNDEFINED, this.layout);
+    }
+
+
+    /**
+     * Returns the state for dynamic rendering into a single color attachment, without a render pass and without depth attachment.
+     *
+     * @param colorFormat the VkFormat of the color attachment
+     * @return the state
+     */
+    public PipelineState withDynamicRendering(int colorFormat) {
+        return this.withDynamicRendering(colorFormat, VK10.VK_FORMAT_UNDEFINED);
+    }
+
+
+    /**
+     * Returns the state for dynamic rendering into a single color attachment and a depth attachment, without a render pass.
+     *
+     * @param colorFormat the VkFormat of the color attachment
+     * @param depthFormat the VkFormat of the depth attachment, or VK_FORMAT_UNDEFINED
+     * @return the state
+     */
+    public PipelineState withDynamicRendering(int colorFormat, int depthFormat) {
+        return new PipelineState(this.vertexShader, this.fragmentShader, this.vertexLayout, this.topology, this.polygonMode, this.cullMode, this.frontFace,
+                this.blending, this.depthTest, this.depthWrite, this.depthCompareOp, this.samples, VK10.VK_NULL_HANDLE, 0, colorFormat, depthFormat,
+                this.layout);
+    }
+
+
+    /**
+     * Returns whether the pipeline is used with dynamic rendering instead of a render pass.
+     *
+     * @return true if there is no render pass
+     */
+    public boolean isDynamicRendering() {
+        return this.renderPass == VK10.VK_NULL_HANDLE;
+    }
+
+
+    /**
+     * Returns whether the pipeline uses the shader.
+     *
+     * @param name the name of the shader
+     * @return true if it's the vertex or the fragment shader
+     */
+    public boolean usesShader(String name) {
+        return name.equals(this.vertexShader) || name.equals(this.fragmentShader);
+    }
+
+}
@@ -0,0 +1,431 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VK13;
+import org.lwjgl.vulkan.VkComputePipelineCreateInfo;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkGraphicsPipelineCreateInfo;
+import org.lwjgl.vulkan.VkPipelineColorBlendAttachmentState;
+import org.lwjgl.vulkan.VkPipelineColorBlendStateCreateInfo;
+import org.lwjgl.vulkan.VkPipelineDepthStencilStateCreateInfo;
+import org.lwjgl.vulkan.VkPipelineDynamicStateCreateInfo;
+import org.lwjgl.vulkan.VkPipelineInputAssemblyStateCreateInfo;
+import org.lwjgl.vulkan.VkPipelineMultisampleStateCreateInfo;
+import org.lwjgl.vulkan.VkPipelineRasterizationStateCreateInfo;
+import org.lwjgl.vulkan.VkPipelineRenderingCreateInfo;
+import org.lwjgl.vulkan.VkPipelineShaderStageCreateInfo;
+import org.lwjgl.vulkan.VkPipelineVertexInputStateCreateInfo;
+import org.lwjgl.vulkan.VkPipelineViewportStateCreateInfo;
+
+/**
+ * Creates graphics pipelines from {@link PipelineState}s and compute pipelines from {@link ComputePipelineState}s and keeps them, so every unique state is
+ * only compiled once. The viewport and the scissor are dynamic, pipelines survive swap chain resizes.
+ *
+ * Pipelines can be created in the background with {@link #prepare(Collection)}, typically for all states of a level while it loads. Asking for a state that is
+ * still being created waits for it. All creation goes through the {@link PipelineCache}, so pipelines compiled in an earlier run are only loaded.
+ *
+ * When a shader is reloaded, the pipelines using it are dropped and created again on the next {@link #get(PipelineState)} or
+ * {@link #get(ComputePipelineState)}.
+ */
+public class PipelineStateCache implements Disposable {
+    private final VkDevice                                           device;
+    private final PipelineCache                                      pipelineCache;
+    private final ShaderCache                                        shaderCache;
+    private final Consumer<Runnable>                                 destroyer;
+    private final Map<PipelineState, CompletableFuture<Long>>        pipelines        = new ConcurrentHashMap<>();
+    private final Map<ComputePipelineState, CompletableFuture<Long>> computePipelines = new ConcurrentHashMap<>();
+    private final Set<CompletableFuture<Void>>                       evicting         = ConcurrentHashMap.newKeySet();
+    private final ExecutorService                                    executor;
+
+
+    /**
+     * Creates the cache.
+     *
+     * @param device the device
+     * @param pipelineCache the pipeline cache all pipelines are created with
+     * @param shaderCache the cache the shaders of the states are loaded from
+     * @param destroyer runs the destruction of a dropped pipeline once no frame in flight uses it, see
+     *            {@link VulkanInitializer#runWhenFramesComplete(Runnable)}
+     */
+    PipelineStateCache(VkDevice device, PipelineCache pipelineCache, ShaderCache shaderCache, Consumer<Runnable> destroyer) {
+        this.device = device;
+        this.pipelineCache = pipelineCache;
+        this.shaderCache = shaderCache;
+        this.destroyer = destroyer;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            final Thread thread = new Thread(runnable, "VEngine-PipelineBuilder-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        shaderCache.addReloadListener(this::onShaderReload);
+    }
+
+
+    /**
+     * Returns the pipeline of a state, creating it on the calling thread if it doesn't exist yet. Safe to call from recording jobs.
+     *
+     * @param state the state
+     * @return the VkPipeline, owned by the cache
+     * @throws RuntimeException if the pipeline can't be created
+     */
+    public long get(PipelineState state) {
+        CompletableFuture<Long> future = this.pipelines.get(state);
+        if (future == null) {
+            final CompletableFuture<Long> created = new CompletableFuture<>();
+            future = this.pipelines.putIfAbsent(state, created);
+            if (future == null) {
+                this.create(this.pipelines, state, created, this::createPipeline);
+                return created.join();
+            }
+        }
+        return future.join();
+    }
+
+
+    /**
+     * Returns the pipeline of a compute state, creating it on the calling thread if it doesn't exist yet. Safe to call from recording jobs.
+     *
+     * @param state the state
+     * @return the VkPipeline, owned by the cache
+     * @throws RuntimeException if the pipeline can't be created
+     */
+    public long get(ComputePipelineState state) {
+        CompletableFuture<Long> future = this.computePipelines.get(state);
+        if (future == null) {
+            final CompletableFuture<Long> created = new CompletableFuture<>();
+            future = this.computePipelines.putIfAbsent(state, created);
+            if (future == null) {
+                this.create(this.computePipelines, state, created, this::createComputePipeline);
+                return created.join();
+            }
+        }
+        return future.join();
+    }
+
+
+    /**
+     * Creates the pipelines of the states in parallel on background threads. States that are cached already are skipped.
+     *
+     * @param states the states
+     * @return a future that completes once all pipelines exist, or exceptionally if one of them can't be created
+     */
+    public CompletableFuture<Void> prepare(Collection<PipelineState> states) {
+        final List<CompletableFuture<Long>> futures = new ArrayList<>(states.size());
+        for (final PipelineState state : states) {
+            CompletableFuture<Long> future = this.pipelines.get(state);
+            if (future == null) {
+                final CompletableFuture<Long> created = new CompletableFuture<>();
+                future = this.pipelines.putIfAbsent(state, created);
+                if (future == null) {
+                    this.executor.execute(() -> this.create(this.pipelines, state, created, this::createPipeline));
+                    future = created;
+                }
+            }
+            futures.add(future);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+
+    /**
+     * Returns the number of cached graphics and compute pipelines, including those still being created.
+     *
+     * @return the number of pipelines
+     */
+    public int size() {
+        return this.pipelines.size() + this.computePipelines.size();
+    }
+
+
+    /**
+     * Drops the pipelines of a render pass, for example before the render pass is destroyed. They are destroyed once no frame in flight uses them.
+     * Pipelines that are still being created keep using the render pass, so it may only be destroyed by the action.
+     *
+     * @param renderPass the render pass
+     * @param action runs once the dropped pipelines finished creation, possibly on a builder thread, typically destroying the render pass
+     */
+    public void evict(long renderPass, Runnable action) {
+        this.track(this.evict(this.pipelines, state -> state.renderPass() == renderPass).thenRun(action));
+    }
+
+
+    /**
+     * Drops the pipelines that render dynamically into a color format, for example after the swap chain format changed.
+     *
+     * @param colorFormat the VkFormat of the color attachment
+     */
+    public void evictDynamicRendering(int colorFormat) {
+        this.evict(this.pipelines, state -> state.isDynamicRendering() && state.colorFormat() == colorFormat);
+    }
+
+
+    private <S> CompletableFuture<Void> evict(Map<S, CompletableFuture<Long>> pipelines, Predicate<S> filter) {
+        final List<CompletableFuture<Void>> evicted = new ArrayList<>();
+        final Iterator<Map.Entry<S, CompletableFuture<Long>>> iterator = pipelines.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<S, CompletableFuture<Long>> entry = iterator.next();
+            if (filter.test(entry.getKey())) {
+                iterator.remove();
+                // pipelines that are still being created are destroyed once they exist, waiting for them here could deadlock with a worker that loads
+                // its shaders while the render thread holds the shader cache, failed creations have nothing to destroy
+                final CompletableFuture<Void> destroyed = entry.getValue()
+                        .thenAccept(pipeline -> this.destroyer.accept(() -> VK10.vkDestroyPipeline(this.device, pipeline, null)));
+                this.track(destroyed);
+                evicted.add(destroyed.exceptionally(e -> null));
+            }
+        }
+        return CompletableFuture.allOf(evicted.toArray(new CompletableFuture<?>[0]));
+    }
+
+
+    /**
+     * Keeps a future that runs after a pipeline creation, so dispose can wait for it.
+     */
+    private void track(CompletableFuture<Void> future) {
+        if (!future.isDone()) {
+            this.evicting.add(future);
+            future.whenComplete((result, e) -> this.evicting.remove(future));
+        }
+    }
+
+
+    private void onShaderReload(Set<String> names) {
+        this.evict(this.pipelines, state -> names.stream().anyMatch(state::usesShader));
+        this.evict(this.computePipelines, state -> names.stream().anyMatch(state::usesShader));
+    }
+
+
+    private <S> void create(Map<S, CompletableFuture<Long>> pipelines, S state, CompletableFuture<Long> future, ToLongFunction<S> creator) {
+        try {
+            future.complete(creator.applyAsLong(state));
+        } catch (final RuntimeException e) {
+            // the next request tries again
+            pipelines.remove(state, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+
+    private long createPipeline(PipelineState state) {
+        // the modules are cached, creating further pipelines with the same shaders doesn't read the files again, a reload doesn't destroy them until the
+        // pipeline is created
+        final long vertShaderModule = this.shaderCache.acquire(state.vertexShader());
+        final long fragShaderModule;
+        try {
+            fragShaderModule = this.shaderCache.acquire(state.fragmentShader());
+        } catch (final RuntimeException e) {
+            this.shaderCache.release(vertShaderModule);
+            throw e;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final ByteBuffer entryPoint = stack.UTF8("main");
+
+            final VkPipelineShaderStageCreateInfo.Buffer shaderStages = VkPipelineShaderStageCreateInfo.calloc(2, stack);
+
+            final VkPipelineShaderStageCreateInfo vertShaderStageInfo = shaderStages.get(0);
+            vertShaderStageInfo.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_SHADER_STAGE_CREATE_INFO);
+            vertShaderStageInfo.stage(VK10.VK_SHADER_STAGE_VERTEX_BIT);
+            vertShaderStageInfo.module(vertShaderModule);
+            vertShaderStageInfo.pName(entryPoint);
+
+            final VkPipelineShaderStageCreateInfo fragShaderStageInfo = shaderStages.get(1);
+            fragShaderStageInfo.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_SHADER_STAGE_CREATE_INFO);
+            fragShaderStageInfo.stage(VK10.VK_SHADER_STAGE_FRAGMENT_BIT);
+            fragShaderStageInfo.module(fragShaderModule);
+            fragShaderStageInfo.pName(entryPoint);
+
+            // ===> VERTEX STAGE <===
+
+            final VkPipelineVertexInputStateCreateInfo vertexInputInfo = VkPipelineVertexInputStateCreateInfo.calloc(stack);
+            vertexInputInfo.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_VERTEX_INPUT_STATE_CREATE_INFO);
+            if (state.vertexLayout() != null) {
+                state.vertexLayout().fillVertexInputState(vertexInputInfo, stack);
+            }
+
+            // ===> ASSEMBLY STAGE <===
+
+            final VkPipelineInputAssemblyStateCreateInfo inputAssembly = VkPipelineInputAssemblyStateCreateInfo.calloc(stack);
+            inputAssembly.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_INPUT_ASSEMBLY_STATE_CREATE_INFO);
+            inputAssembly.topology(state.topology());
+            inputAssembly.primitiveRestartEnable(false);
+
+            // ===> VIEWPORT & SCISSOR
+
+            // both are dynamic, so the pipeline survives swap chain resizes
+            final VkPipelineViewportStateCreateInfo viewportState = VkPipelineViewportStateCreateInfo.calloc(stack);
+            viewportState.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_VIEWPORT_STATE_CREATE_INFO);
+            viewportState.viewportCount(1);
+            viewportState.scissorCount(1);
+
+            final VkPipelineDynamicStateCreateInfo dynamicState = VkPipelineDynamicStateCreateInfo.calloc(stack);
+            dynamicState.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_DYNAMIC_STATE_CREATE_INFO);
+            dynamicState.pDynamicStates(stack.ints(VK10.VK_DYNAMIC_STATE_VIEWPORT, VK10.VK_DYNAMIC_STATE_SCISSOR));
+
+            // ===> RASTERIZATION STAGE <===
+
+            final VkPipelineRasterizationStateCreateInfo rasterizer = VkPipelineRasterizationStateCreateInfo.calloc(stack);
+            rasterizer.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_RASTERIZATION_STATE_CREATE_INFO);
+            rasterizer.depthClampEnable(false);
+            rasterizer.rasterizerDiscardEnable(false);
+            rasterizer.polygonMode(state.polygonMode());
+            rasterizer.lineWidth(1.0f);
+            rasterizer.cullMode(state.cullMode());
+            rasterizer.frontFace(state.frontFace());
+            rasterizer.depthBiasEnable(false);
+
+            // ===> MULTISAMPLING <===
+
+            final VkPipelineMultisampleStateCreateInfo multisampling = VkPipelineMultisampleStateCreateInfo.calloc(stack);
+            multisampling.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_MULTISAMPLE_STATE_CREATE_INFO);
+            multisampling.sampleShadingEnable(false);
+            multisampling.rasterizationSamples(state.samples());
+
+            // ===> DEPTH TEST <===
+
+            // ignored if the subpass has no depth attachment
+            final VkPipelineDepthStencilStateCreateInfo depthStencil = VkPipelineDepthStencilStateCreateInfo.calloc(stack);
+            depthStencil.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_DEPTH_STENCIL_STATE_CREATE_INFO);
+            depthStencil.depthTestEnable(state.depthTest());
+            depthStencil.depthWriteEnable(state.depthWrite());
+            depthStencil.depthCompareOp(state.depthCompareOp());
+            depthStencil.depthBoundsTestEnable(false);
+            depthStencil.stencilTestEnable(false);
+
+            // ===> COLOR BLENDING <===
+
+            final VkPipelineColorBlendAttachmentState.Buffer colorBlendAttachment = VkPipelineColorBlendAttachmentState.calloc(1, stack);
+            colorBlendAttachment.colorWriteMask(
+                    VK10.VK_COLOR_COMPONENT_R_BIT | VK10.VK_COLOR_COMPONENT_G_BIT | VK10.VK_COLOR_COMPONENT_B_BIT | VK10.VK_COLOR_COMPONENT_A_BIT);
+            colorBlendAttachment.blendEnable(state.blending());
+            if (state.blending()) {
+                colorBlendAttachment.srcColorBlendFactor(VK10.VK_BLEND_FACTOR_SRC_ALPHA);
+                colorBlendAttachment.dstColorBlendFactor(VK10.VK_BLEND_FACTOR_ONE_MINUS_SRC_ALPHA);
+                colorBlendAttachment.colorBlendOp(VK10.VK_BLEND_OP_ADD);
+                colorBlendAttachment.srcAlphaBlendFactor(VK10.VK_BLEND_FACTOR_ONE);
+                colorBlendAttachment.dstAlphaBlendFactor(VK10.VK_BLEND_FACTOR_ONE_MINUS_SRC_ALPHA);
+                colorBlendAttachment.alphaBlendOp(VK10.VK_BLEND_OP_ADD);
+            }
+
+            final VkPipelineColorBlendStateCreateInfo colorBlending = VkPipelineColorBlendStateCreateInfo.calloc(stack);
+            colorBlending.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_COLOR_BLEND_STATE_CREATE_INFO);
+            colorBlending.logicOpEnable(false);
+            colorBlending.logicOp(VK10.VK_LOGIC_OP_COPY);
+            colorBlending.pAttachments(colorBlendAttachment);
+            colorBlending.blendConstants(stack.floats(0.0f, 0.0f, 0.0f, 0.0f));
+
+            final VkGraphicsPipelineCreateInfo.Buffer pipelineInfo = VkGraphicsPipelineCreateInfo.calloc(1, stack);
+            pipelineInfo.sType(VK10.VK_STRUCTURE_TYPE_GRAPHICS_PIPELINE_CREATE_INFO);
+            pipelineInfo.pStages(shaderStages);
+            pipelineInfo.pVertexInputState(vertexInputInfo);
+            pipelineInfo.pInputAssemblyState(inputAssembly);
+            pipelineInfo.pViewportState(viewportState);
+            pipelineInfo.pRasterizationState(rasterizer);
+            pipelineInfo.pMultisampleState(multisampling);
+            pipelineInfo.pDepthStencilState(depthStencil);
+            pipelineInfo.pColorBlendState(colorBlending);
+            pipelineInfo.pDynamicState(dynamicState);
+            pipelineInfo.layout(state.layout());
+            pipelineInfo.renderPass(state.renderPass());
+            pipelineInfo.subpass(state.subpass());
+            pipelineInfo.basePipelineHandle(VK10.VK_NULL_HANDLE);
+            pipelineInfo.basePipelineIndex(-1);
+
+            if (state.isDynamicRendering()) {
+                // without a render pass the attachment formats are part of the pipeline
+                final VkPipelineRenderingCreateInfo renderingInfo = VkPipelineRenderingCreateInfo.calloc(stack);
+                renderingInfo.sType(VK13.VK_STRUCTURE_TYPE_PIPELINE_RENDERING_CREATE_INFO);
+                renderingInfo.pColorAttachmentFormats(stack.ints(state.colorFormat()));
+                renderingInfo.depthAttachmentFormat(state.depthFormat());
+                if ((RenderGraph.aspectMask(state.depthFormat()) & VK10.VK_IMAGE_ASPECT_STENCIL_BIT) != 0) {
+                    renderingInfo.stencilAttachmentFormat(state.depthFormat());
+                }
+                pipelineInfo.pNext(renderingInfo.address());
+            }
+
+            final LongBuffer pGraphicsPipeline = stack.mallocLong(1);
+
+            // the pipeline cache is internally synchronized, pipelines can be created on many threads at once
+            if (VK10.vkCreateGraphicsPipelines(this.device, this.pipelineCache.getHandle(), pipelineInfo, null, pGraphicsPipeline) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create graphics pipeline");
+            }
+
+            return pGraphicsPipeline.get(0);
+        } finally {
+            this.shaderCache.release(vertShaderModule);
+            this.shaderCache.release(fragShaderModule);
+        }
+    }
+
+
+    private long createComputePipeline(ComputePipelineState state) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkComputePipelineCreateInfo.Buffer pipelineInfo = VkComputePipelineCreateInfo.calloc(1, stack);
+            pipelineInfo.sType(VK10.VK_STRUCTURE_TYPE_COMPUTE_PIPELINE_CREATE_INFO);
+            pipelineInfo.stage().sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_SHADER_STAGE_CREATE_INFO);
+            pipelineInfo.stage().stage(VK10.VK_SHADER_STAGE_COMPUTE_BIT);
+            final long module = this.shaderCache.acquire(state.computeShader());
+            pipelineInfo.stage().module(module);
+            pipelineInfo.stage().pName(stack.UTF8("main"));
+            pipelineInfo.layout(state.layout());
+            pipelineInfo.basePipelineHandle(VK10.VK_NULL_HANDLE);
+            pipelineInfo.basePipelineIndex(-1);
+
+            final LongBuffer pComputePipeline = stack.mallocLong(1);
+            try {
+                if (VK10.vkCreateComputePipelines(this.device, this.pipelineCache.getHandle(), pipelineInfo, null, pComputePipeline) != VK10.VK_SUCCESS) {
+                    throw new RuntimeException("Failed to create compute pipeline");
+                }
+            } finally {
+                this.shaderCache.release(module);
+            }
+
+            return pComputePipeline.get(0);
+        }
+    }
+
+
+    /**
+     * Destroys all pipelines. The device must be idle.
+     */
+    @Override
+    public void dispose() {
+        // pipelines that are still being created are waited for before the threads stop, evicted ones run their destruction first
+        this.evicting.forEach(future -> future.exceptionally(e -> null).join());
+        this.destroyAll(this.pipelines.values());
+        this.destroyAll(this.computePipelines.values());
+        this.pipelines.clear();
+        this.computePipelines.clear();
+        this.executor.shutdownNow();
+    }
+
+
+    private void destroyAll(Collection<CompletableFuture<Long>> futures) {
+        for (final CompletableFuture<Long> future : futures) {
+            final long pipeline = future.exceptionally(e -> VK10.VK_NULL_HANDLE).join();
+            if (pipeline != VK10.VK_NULL_HANDLE) {
+                VK10.vkDestroyPipeline(this.device, pipeline, null);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+
+@FunctionalInterface
+public interface ReadbackListener {
+
+    /**
+     * Called as soon as the GPU finished copying a headless frame into host memory. This happens asynchronously, usually a few frames after the frame was
+     * submitted.
+     *
+     * The pixels are tightly packed RGBA8 and the buffer is only valid for the duration of this call, copy the data if you need to keep it.
+     *
+     * @param frameNumber the number of the frame, starting at 0
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param pixels the mapped pixel data
+     */
+    void onReadback(long frameNumber, int width, int height, ByteBuffer pixels);
+
+}
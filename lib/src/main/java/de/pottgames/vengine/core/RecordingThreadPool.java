@@ -0,0 +1,364 @@
+package de.pottgames.vengine.core;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VK13;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkCommandBufferBeginInfo;
+import org.lwjgl.vulkan.VkCommandBufferInheritanceInfo;
+import org.lwjgl.vulkan.VkCommandBufferInheritanceRenderingInfo;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkRect2D;
+import org.lwjgl.vulkan.VkViewport;
+
+/**
+ * Records secondary command buffers on several threads. Every thread owns one command pool per frame in flight, so recording never needs a lock and the pools
+ * of a frame can be reset as a whole once its fence signaled. The thread that starts a batch takes part in it as the first recording thread.
+ *
+ * The main thread's own draw calls are recorded into secondary command buffers as well, because a subpass can either contain inline commands or execute
+ * secondary command buffers, but not both. All secondary command buffers are executed in recording order at the end of the frame.
+ */
+class RecordingThreadPool implements Disposable {
+    private static final int INITIAL_EXECUTE_CAPACITY = 64;
+
+    private final VkDevice        device;
+    private final int             queueFamily;
+    private final ThreadContext[] contexts;
+    private final Thread[]        workers;
+    private final Phaser          phaser;
+    private final AtomicInteger   nextJob = new AtomicInteger();
+    private volatile boolean      running = true;
+    private volatile Throwable    failure;
+
+    // PREALLOCATED STRUCTS
+    private final VkCommandBufferInheritanceInfo          inheritanceInfo;
+    private final VkCommandBufferInheritanceRenderingInfo renderingInfo;
+    private final IntBuffer                               colorFormats;
+    private final VkCommandBufferBeginInfo                beginInfo;
+    private PointerBuffer                                 executeList;
+    private int                                           executeCount;
+
+    // FRAME, written by the main thread while no batch is running
+    private int               frameIndex;
+    private int               imageIndex;
+    private int               width;
+    private int               height;
+    private long              pipeline;
+    private VkViewport.Buffer viewport;
+    private VkRect2D.Buffer   scissor;
+    private VkCommandBuffer   mainBuffer;
+
+    // BATCH, written by the main thread before the phaser advances
+    private ParallelRecordingJob job;
+    private int                  jobCount;
+    private int                  outputOffset;
+
+
+    /**
+     * Creates the pool and starts the worker threads.
+     *
+     * @param device the logical device
+     * @param queueFamily the queue family the secondary command buffers are submitted to
+     * @param threadCount the number of recording threads including the calling thread
+     */
+    RecordingThreadPool(VkDevice device, int queueFamily, int threadCount) {
+        this.device = device;
+        this.queueFamily = queueFamily;
+        this.contexts = new ThreadContext[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            this.contexts[i] = new ThreadContext();
+        }
+
+        this.inheritanceInfo = VkCommandBufferInheritanceInfo.calloc();
+        this.inheritanceInfo.sType(VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_INHERITANCE_INFO);
+        this.inheritanceInfo.subpass(0);
+        this.renderingInfo = VkCommandBufferInheritanceRenderingInfo.calloc();
+        this.renderingInfo.sType(VK13.VK_STRUCTURE_TYPE_COMMAND_BUFFER_INHERITANCE_RENDERING_INFO);
+        this.colorFormats = MemoryUtil.memAllocInt(1);
+        this.renderingInfo.pColorAttachmentFormats(this.colorFormats);
+        this.beginInfo = VkCommandBufferBeginInfo.calloc();
+        this.beginInfo.sType(VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+        this.beginInfo.flags(VK10.VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT | VK10.VK_COMMAND_BUFFER_USAGE_RENDER_PASS_CONTINUE_BIT);
+        this.beginInfo.pInheritanceInfo(this.inheritanceInfo);
+        this.executeList = MemoryUtil.memAllocPointer(RecordingThreadPool.INITIAL_EXECUTE_CAPACITY);
+
+        this.phaser = new Phaser(threadCount);
+        this.workers = new Thread[threadCount - 1];
+        for (int i = 0; i < this.workers.length; i++) {
+            final ThreadContext context = this.contexts[i + 1];
+            this.workers[i] = new Thread(() -> this.workerLoop(context), "VEngine Recorder " + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+
+    int getThreadCount() {
+        return this.contexts.length;
+    }
+
+
+    void createFramePools(int framesInFlight) {
+        for (final ThreadContext context : this.contexts) {
+            context.createPools(framesInFlight);
+        }
+    }
+
+
+    void disposeFramePools() {
+        for (final ThreadContext context : this.contexts) {
+            context.disposePools();
+        }
+    }
+
+
+    /**
+     * Sets the attachments the secondary command buffers render into when a frame is begun without a render pass.
+     *
+     * @param colorFormat the VkFormat of the color attachment
+     * @param depthFormat the VkFormat of the depth attachment or VK_FORMAT_UNDEFINED
+     * @param samples the VkSampleCountFlagBits of the attachments
+     */
+    void setRenderingFormat(int colorFormat, int depthFormat, int samples) {
+        this.colorFormats.put(0, colorFormat);
+        this.renderingInfo.depthAttachmentFormat(depthFormat);
+        this.renderingInfo.stencilAttachmentFormat(
+                (RenderGraph.aspectMask(depthFormat) & VK10.VK_IMAGE_ASPECT_STENCIL_BIT) != 0 ? depthFormat : VK10.VK_FORMAT_UNDEFINED);
+        this.renderingInfo.rasterizationSamples(samples);
+    }
+
+
+    /**
+     * Resets the pools of the frame and begins the main thread's first secondary command buffer. The frame's fence must be signaled.
+     *
+     * @return the main thread's secondary command buffer
+     */
+    VkCommandBuffer beginFrame(int frameIndex, int imageIndex, int width, int height, long renderPass, long framebuffer, long pipeline, VkViewport.Buffer viewport,
+            VkRect2D.Buffer scissor) {
+        this.frameIndex = frameIndex;
+        this.imageIndex = imageIndex;
+        this.width = width;
+        this.height = height;
+        this.pipeline = pipeline;
+        this.viewport = viewport;
+        this.scissor = scissor;
+        this.executeCount = 0;
+        this.inheritanceInfo.renderPass(renderPass);
+        this.inheritanceInfo.framebuffer(framebuffer);
+        // without a render pass the secondary command buffers continue a dynamic rendering instance
+        this.inheritanceInfo.pNext(renderPass == VK10.VK_NULL_HANDLE ? this.renderingInfo.address() : MemoryUtil.NULL);
+
+        for (final ThreadContext context : this.contexts) {
+            context.reset(frameIndex);
+        }
+
+        this.mainBuffer = this.beginSecondary(this.contexts[0]);
+        return this.mainBuffer;
+    }
+
+
+    /**
+     * Runs a batch of jobs on all recording threads. The main thread's current secondary command buffer is closed before and a new one is begun after the
+     * batch, so commands recorded around the batch keep their order. If a job fails, the command buffers of the batch are dropped from the frame and the
+     * failure is rethrown once all threads are done, the main thread's new command buffer is begun either way.
+     */
+    void recordParallel(ParallelRecordingJob job, int jobCount) {
+        this.endMainBuffer();
+        this.ensureExecuteCapacity(this.executeCount + jobCount + 1);
+
+        this.job = job;
+        this.jobCount = jobCount;
+        this.outputOffset = this.executeCount;
+        this.nextJob.set(0);
+
+        this.phaser.arriveAndAwaitAdvance(); // start the workers
+        this.runJobs(this.contexts[0]);
+        this.phaser.arriveAndAwaitAdvance(); // wait for the workers
+
+        this.job = null;
+        final Throwable cause = this.failure;
+        this.failure = null;
+        if (cause == null) {
+            this.executeCount += jobCount;
+        }
+
+        this.mainBuffer = this.beginSecondary(this.contexts[0]);
+        if (cause != null) {
+            throw new RuntimeException("Parallel recording failed", cause);
+        }
+    }
+
+
+    VkCommandBuffer getMainBuffer() {
+        return this.mainBuffer;
+    }
+
+
+    /**
+     * Ends the main thread's secondary command buffer and executes all secondary command buffers of the frame.
+     *
+     * @param primaryBuffer the frame's primary command buffer, inside the render pass
+     */
+    void endFrame(VkCommandBuffer primaryBuffer) {
+        this.endMainBuffer();
+        this.executeList.limit(this.executeCount);
+        VK10.vkCmdExecuteCommands(primaryBuffer, this.executeList);
+        this.executeList.clear();
+    }
+
+
+    private void endMainBuffer() {
+        if (VK10.vkEndCommandBuffer(this.mainBuffer) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to record command buffer");
+        }
+        this.ensureExecuteCapacity(this.executeCount + 1);
+        this.executeList.put(this.executeCount++, this.mainBuffer);
+    }
+
+
+    private void ensureExecuteCapacity(int capacity) {
+        if (this.executeList.capacity() < capacity) {
+            this.executeList = MemoryUtil.memRealloc(this.executeList, Math.max(capacity, this.executeList.capacity() * 2));
+        }
+    }
+
+
+    private VkCommandBuffer beginSecondary(ThreadContext context) {
+        final VkCommandBuffer commandBuffer = context.next(this.frameIndex);
+        if (VK10.vkBeginCommandBuffer(commandBuffer, this.beginInfo) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to begin recording command buffer");
+        }
+        // secondary command buffers don't inherit any state
+        VK10.vkCmdBindPipeline(commandBuffer, VK10.VK_PIPELINE_BIND_POINT_GRAPHICS, this.pipeline);
+        VK10.vkCmdSetViewport(commandBuffer, 0, this.viewport);
+        VK10.vkCmdSetScissor(commandBuffer, 0, this.scissor);
+        return commandBuffer;
+    }
+
+
+    private void workerLoop(ThreadContext context) {
+        while (true) {
+            this.phaser.arriveAndAwaitAdvance();
+            if (!this.running) {
+                return;
+            }
+            this.runJobs(context);
+            this.phaser.arriveAndAwaitAdvance();
+        }
+    }
+
+
+    private void runJobs(ThreadContext context) {
+        VkCommandBuffer recording = null;
+        try {
+            for (int i = this.nextJob.getAndIncrement(); i < this.jobCount; i = this.nextJob.getAndIncrement()) {
+                final VkCommandBuffer commandBuffer = this.beginSecondary(context);
+                recording = commandBuffer;
+                context.recorder.begin(commandBuffer, this.frameIndex, this.imageIndex, this.width, this.height);
+                this.job.record(context.recorder, i);
+                context.recorder.end();
+                recording = null;
+                if (VK10.vkEndCommandBuffer(commandBuffer) != VK10.VK_SUCCESS) {
+                    throw new RuntimeException("Failed to record command buffer");
+                }
+                this.executeList.put(this.outputOffset + i, commandBuffer);
+            }
+        } catch (final Throwable t) {
+            // the command buffer the job failed in is ended, so no buffer of the pool is left recording, and the other threads stop picking up jobs
+            this.nextJob.set(this.jobCount);
+            if (recording != null) {
+                context.recorder.end();
+                VK10.vkEndCommandBuffer(recording);
+            }
+            this.fail(t);
+        }
+    }
+
+
+    private synchronized void fail(Throwable t) {
+        if (this.failure == null) {
+            this.failure = t;
+        } else {
+            this.failure.addSuppressed(t);
+        }
+    }
+
+
+    /**
+     * Stops the worker threads and frees the preallocated structs. The frame pools must be disposed separately.
+     */
+    @Override
+    public void dispose() {
+        this.running = false;
+        this.phaser.arriveAndAwaitAdvance();
+        for (final Thread worker : this.workers) {
+            try {
+                worker.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.inheritanceInfo.free();
+        this.renderingInfo.free();
+        MemoryUtil.memFree(this.colorFormats);
+        this.beginInfo.free();
+        MemoryUtil.memFree(this.executeList);
+    }
+
+
+    private class ThreadContext {
+        // workers record inline into their secondary command buffers
+        private final CommandRecorder       recorder = new CommandRecorder(null);
+        private long[]                      pools;
+        private List<List<VkCommandBuffer>> buffers;
+        private int[]                       used;
+
+
+        private void createPools(int framesInFlight) {
+            this.pools = new long[framesInFlight];
+            this.buffers = new ArrayList<>(framesInFlight);
+            this.used = new int[framesInFlight];
+            for (int i = 0; i < framesInFlight; i++) {
+                this.pools[i] = VulkanUtils.createCommandPool(RecordingThreadPool.this.device, RecordingThreadPool.this.queueFamily,
+                        VK10.VK_COMMAND_POOL_CREATE_TRANSIENT_BIT);
+                this.buffers.add(new ArrayList<>());
+            }
+        }
+
+
+        private void disposePools() {
+            for (final long pool : this.pools) {
+                VK10.vkDestroyCommandPool(RecordingThreadPool.this.device, pool, null);
+            }
+            this.buffers.clear();
+        }
+
+
+        private void reset(int frameIndex) {
+            VK10.vkResetCommandPool(RecordingThreadPool.this.device, this.pools[frameIndex], 0);
+            this.used[frameIndex] = 0;
+        }
+
+
+        /**
+         * Returns the next unused secondary command buffer of the frame, command buffers are only allocated if all existing ones are in use.
+         */
+        private VkCommandBuffer next(int frameIndex) {
+            final List<VkCommandBuffer> frameBuffers = this.buffers.get(frameIndex);
+            if (this.used[frameIndex] == frameBuffers.size()) {
+                frameBuffers.add(VulkanUtils.allocateCommandBuffer(RecordingThreadPool.this.device, this.pools[frameIndex],
+                        VK10.VK_COMMAND_BUFFER_LEVEL_SECONDARY));
+            }
+            return frameBuffers.get(this.used[frameIndex]++);
+        }
+
+    }
+
+}
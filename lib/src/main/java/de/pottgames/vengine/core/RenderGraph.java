@@ -0,0 +1,1356 @@
+package de.pottgames.vengine.core;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkAttachmentDescription;
+import org.lwjgl.vulkan.VkAttachmentReference;
+import org.lwjgl.vulkan.VkBufferMemoryBarrier;
+import org.lwjgl.vulkan.VkClearValue;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkFramebufferCreateInfo;
+import org.lwjgl.vulkan.VkImageCreateInfo;
+import org.lwjgl.vulkan.VkImageMemoryBarrier;
+import org.lwjgl.vulkan.VkImageViewCreateInfo;
+import org.lwjgl.vulkan.VkMemoryRequirements;
+import org.lwjgl.vulkan.VkRect2D;
+import org.lwjgl.vulkan.VkRenderPassBeginInfo;
+import org.lwjgl.vulkan.VkRenderPassCreateInfo;
+import org.lwjgl.vulkan.VkSubpassDescription;
+import org.lwjgl.vulkan.VkViewport;
+
+/**
+ * A frame graph of passes that declare which images and buffers they read and write. The graph is declared once and compiled whenever it or the extent
+ * changes. Compiling
+ * <ul>
+ * <li>culls passes whose results no kept pass reads, passes that write imported resources or have side effects are always kept,</li>
+ * <li>derives the pipeline barriers and layout transitions from the declared accesses, a barrier is only recorded where a hazard exists,</li>
+ * <li>batches all barriers before a pass into one vkCmdPipelineBarrier call,</li>
+ * <li>places transient images in shared memory, images whose lifetimes don't overlap use the same bytes,</li>
+ * <li>creates a render pass and a framebuffer for every pass with attachments.</li>
+ * </ul>
+ *
+ * Passes run in the order they were added. Transient images are created by the graph and their content doesn't survive the frame. Imported resources are
+ * owned by the application and are in their external layout and access at the start and the end of every frame, which is how the graph's results reach the
+ * rest of the frame:
+ *
+ * <pre>
+ * final RenderGraph graph = new RenderGraph();
+ * final RenderGraph.Resource shadowMap = graph.createImage("shadow map", VK10.VK_FORMAT_D32_SFLOAT, 2048, 2048);
+ * final RenderGraph.Resource lit = graph.importImage("lit", image, view, format, width, height, VK10.VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL,
+ *         VK10.VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT, VK10.VK_ACCESS_SHADER_READ_BIT);
+ * graph.addPass("shadows").clearDepth(shadowMap, 1.0f).execute(recorder -&gt; ...);
+ * graph.addPass("lighting").readTexture(shadowMap, VK10.VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT).clearColor(lit, 0f, 0f, 0f, 1f).execute(recorder -&gt; ...);
+ * VulkanInitializer.get().setRenderGraph(graph);
+ * </pre>
+ *
+ * The engine records the graph at the start of every frame, before the frame's render pass. A graph must only be used from the render thread.
+ *
+ * Every compilation creates the transient images again, a changed extent is enough. Descriptor sets that reference their views must be written again, use a
+ * {@link RenderGraphCompileListener} or query {@link Resource#getImageView()} after every {@link #compile()}.
+ */
+public class RenderGraph implements Disposable {
+    private static final int WRITE_ACCESS = VK10.VK_ACCESS_SHADER_WRITE_BIT | VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT
+            | VK10.VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT | VK10.VK_ACCESS_TRANSFER_WRITE_BIT | VK10.VK_ACCESS_HOST_WRITE_BIT
+            | VK10.VK_ACCESS_MEMORY_WRITE_BIT;
+
+    private static final int NO_ATTACHMENT    = 0;
+    private static final int COLOR_ATTACHMENT = 1;
+    private static final int DEPTH_ATTACHMENT = 2;
+
+    private final CommandRecorder                  recorder  = new CommandRecorder(null);
+    private final List<RenderGraphCompileListener> listeners = new CopyOnWriteArrayList<>();
+    private VkDevice                               device;
+    private MemoryAllocator                        allocator;
+    private Consumer<Runnable>                     destroyer;
+
+    // DECLARATION
+    private final List<Resource> resources = new ArrayList<>();
+    private final List<Pass>     passes    = new ArrayList<>();
+    private int                  width     = 1;
+    private int                  height    = 1;
+    private boolean              dirty     = true;
+
+    // COMPILED
+    private final List<Pass>                     executedPasses  = new ArrayList<>();
+    private final List<Barrier>                  finalBarriers   = new ArrayList<>();
+    private final Map<List<AttachmentKey>, Long> renderPasses    = new HashMap<>();
+    private final List<Long>                     transientMemory = new ArrayList<>();
+    private BarrierBatch                         finalBatch;
+    private long                                 transientBytes;
+    private long                                 unaliasedBytes;
+
+    // EXECUTION
+    private VkViewport.Buffer viewport;
+    private VkRect2D.Buffer   scissor;
+
+
+    /**
+     * Creates an empty graph. The engine's device is looked up by the first compilation, a graph can be declared before the engine started.
+     */
+    public RenderGraph() {
+    }
+
+
+    /**
+     * Declares a transient image with the size of the graph's extent.
+     *
+     * @param name the name used in error messages
+     * @param format the VkFormat
+     * @return the image
+     */
+    public Resource createImage(String name, int format) {
+        return this.createImage(name, format, 1.0f);
+    }
+
+
+    /**
+     * Declares a transient image with a size relative to the graph's extent, like half resolution effects.
+     *
+     * @param name the name used in error messages
+     * @param format the VkFormat
+     * @param scale the factor the extent is scaled with
+     * @return the image
+     */
+    public Resource createImage(String name, int format, float scale) {
+        if (scale <= 0.0f) {
+            throw new IllegalArgumentException("The scale must be positive: " + scale);
+        }
+        final Resource resource = this.addResource(name, true, false);
+        resource.format = format;
+        resource.scale = scale;
+        return resource;
+    }
+
+
+    /**
+     * Declares a transient image with a fixed size, like shadow maps.
+     *
+     * @param name the name used in error messages
+     * @param format the VkFormat
+     * @param width the width in pixels
+     * @param height the height in pixels
+     * @return the image
+     */
+    public Resource createImage(String name, int format, int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("The size must be positive: " + width + "x" + height);
+        }
+        final Resource resource = this.addResource(name, true, false);
+        resource.format = format;
+        resource.fixedWidth = width;
+        resource.fixedHeight = height;
+        return resource;
+    }
+
+
+    /**
+     * Imports an image the application owns. The graph transitions it from the external state before its first use and back after its last use in a frame.
+     *
+     * @param name the name used in error messages
+     * @param image the VkImage
+     * @param imageView the VkImageView, used for attachments
+     * @param format the VkFormat
+     * @param width the width in pixels
+     * @param height the height in pixels
+     * @param layout the layout the image is in outside of the graph
+     * @param stages the VkPipelineStageFlags the image is accessed in outside of the graph
+     * @param access the VkAccessFlags of the accesses outside of the graph
+     * @return the image
+     */
+    public Resource importImage(String name, long image, long imageView, int format, int width, int height, int layout, int stages, int access) {
+        final Resource resource = this.addResource(name, true, true);
+        resource.image = image;
+        resource.imageView = imageView;
+        resource.format = format;
+        resource.width = width;
+        resource.height = height;
+        resource.externalLayout = layout;
+        resource.externalStages = stages;
+        resource.externalAccess = access;
+        return resource;
+    }
+
+
+    /**
+     * Imports a buffer the application owns, for example the indirect draw commands a compute pass writes.
+     *
+     * @param name the name used in error messages
+     * @param buffer the buffer
+     * @param stages the VkPipelineStageFlags the buffer is accessed in outside of the graph
+     * @param access the VkAccessFlags of the accesses outside of the graph
+     * @return the buffer
+     */
+    public Resource importBuffer(String name, GpuBuffer buffer, int stages, int access) {
+        final Resource resource = this.addResource(name, false, true);
+        resource.buffer = buffer.getBuffer();
+        resource.externalLayout = VK10.VK_IMAGE_LAYOUT_UNDEFINED;
+        resource.externalStages = stages;
+        resource.externalAccess = access;
+        return resource;
+    }
+
+
+    private Resource addResource(String name, boolean isImage, boolean imported) {
+        final Resource resource = new Resource(name, isImage, imported);
+        this.resources.add(resource);
+        this.dirty = true;
+        return resource;
+    }
+
+
+    /**
+     * Adds a pass that runs after all passes added before.
+     *
+     * @param name the name used in error messages
+     * @return the pass, declare its resources and its job on it
+     */
+    public Pass addPass(String name) {
+        final Pass pass = new Pass(name);
+        this.passes.add(pass);
+        this.dirty = true;
+        return pass;
+    }
+
+
+    /**
+     * Sets the size of the transient images without a fixed size. The engine sets the swap chain extent.
+     *
+     * @param width the width in pixels
+     * @param height the height in pixels
+     */
+    public void setExtent(int width, int height) {
+        if (width == this.width && height == this.height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        this.dirty = true;
+    }
+
+
+    /**
+     * Compiles the graph if it changed since the last compilation. Recording a frame compiles it as well, compile early to create the pipelines of the passes
+     * with {@link Pass#getRenderPass()}. The render pass of a pass stays the same as long as its attachments do. The transient images and their views don't,
+     * the compile listeners are notified.
+     */
+    public void compile() {
+        if (!this.dirty) {
+            return;
+        }
+        if (this.device == null) {
+            final VulkanInitializer vulkan = VulkanInitializer.get();
+            this.device = vulkan.getDevice();
+            this.allocator = vulkan.getMemoryAllocator();
+            this.destroyer = vulkan::runWhenFramesComplete;
+        }
+        this.release();
+        this.plan();
+        this.createTransientImages();
+        this.computeBarriers();
+        this.createPassObjects();
+        this.dirty = false;
+        for (final RenderGraphCompileListener listener : this.listeners) {
+            listener.onCompile(this);
+        }
+    }
+
+
+    public void addCompileListener(RenderGraphCompileListener listener) {
+        this.listeners.add(listener);
+    }
+
+
+    public void removeCompileListener(RenderGraphCompileListener listener) {
+        this.listeners.remove(listener);
+    }
+
+
+    /**
+     * Culls the passes and finds the lifetime and the usage of every resource.
+     */
+    void plan() {
+        // walk backwards, a pass is kept if a kept pass reads what it writes
+        final Set<Resource> needed = new HashSet<>();
+        for (int i = this.passes.size() - 1; i >= 0; i--) {
+            final Pass pass = this.passes.get(i);
+            boolean keep = pass.sideEffect;
+            for (final Access access : pass.accesses) {
+                if (access.write() && (access.resource().imported || needed.contains(access.resource()))) {
+                    keep = true;
+                }
+            }
+            pass.culled = !keep;
+            if (!keep) {
+                continue;
+            }
+            // a write that replaces the content ends the interest in the writers before
+            for (final Access access : pass.accesses) {
+                if (access.write() && !access.loads()) {
+                    needed.remove(access.resource());
+                }
+            }
+            for (final Access access : pass.accesses) {
+                if (!access.write() || access.loads()) {
+                    needed.add(access.resource());
+                }
+            }
+        }
+
+        for (final Resource resource : this.resources) {
+            resource.firstPass = -1;
+            resource.lastPass = -1;
+            resource.usage = 0;
+            resource.memoryGroup = -1;
+        }
+        this.executedPasses.clear();
+        for (final Pass pass : this.passes) {
+            if (pass.culled) {
+                continue;
+            }
+            final int index = this.executedPasses.size();
+            this.executedPasses.add(pass);
+            for (final Access access : pass.accesses) {
+                final Resource resource = access.resource();
+                if (resource.firstPass < 0) {
+                    resource.firstPass = index;
+                }
+                resource.lastPass = index;
+                resource.usage |= RenderGraph.imageUsage(access);
+            }
+        }
+    }
+
+
+    private static int imageUsage(Access access) {
+        if (access.attachment() == RenderGraph.COLOR_ATTACHMENT) {
+            return VK10.VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT;
+        }
+        if (access.attachment() == RenderGraph.DEPTH_ATTACHMENT) {
+            return VK10.VK_IMAGE_USAGE_DEPTH_STENCIL_ATTACHMENT_BIT;
+        }
+        if (access.layout() == VK10.VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL) {
+            return VK10.VK_IMAGE_USAGE_SAMPLED_BIT;
+        }
+        if (access.layout() == VK10.VK_IMAGE_LAYOUT_GENERAL) {
+            return VK10.VK_IMAGE_USAGE_STORAGE_BIT;
+        }
+        return 0;
+    }
+
+
+    /**
+     * Computes the barriers before every executed pass and the barriers that return imported resources to their external state.
+     */
+    void computeBarriers() {
+        this.carryPreviousFrame();
+        for (final Resource resource : this.resources) {
+            resource.resetState();
+        }
+
+        for (int i = 0; i < this.executedPasses.size(); i++) {
+            final Pass pass = this.executedPasses.get(i);
+            pass.barriers.clear();
+            for (final Access access : pass.accesses) {
+                final Resource resource = access.resource();
+                if (!resource.imported && resource.firstPass == i) {
+                    this.inheritAliases(resource);
+                }
+                final Barrier barrier = resource.access(access.stages(), access.access(), access.layout(), access.write(), access.write() && !access.loads());
+                if (barrier != null) {
+                    pass.barriers.add(barrier);
+                }
+            }
+        }
+
+        this.finalBarriers.clear();
+        for (final Resource resource : this.resources) {
+            if (!resource.imported || resource.firstPass < 0) {
+                continue;
+            }
+            final boolean transition = resource.isImage && resource.layout != resource.externalLayout;
+            if (transition || resource.written || (resource.externalAccess & RenderGraph.WRITE_ACCESS) != 0) {
+                this.finalBarriers.add(new Barrier(resource, RenderGraph.stagesOrTop(resource.writeStages | resource.readStages), resource.writeAccess,
+                        resource.externalStages, resource.externalAccess, resource.layout, resource.externalLayout));
+            }
+        }
+    }
+
+
+    /**
+     * Frames in flight share the transient resources and their memory, so the first access of a frame must wait for the accesses of the previous frame, like
+     * imported resources wait for their external accesses. The barriers are the same every frame, the previous frame made all accesses of this one.
+     */
+    private void carryPreviousFrame() {
+        for (final Resource resource : this.resources) {
+            resource.previousStages = 0;
+            resource.previousAccess = 0;
+        }
+        for (final Pass pass : this.executedPasses) {
+            for (final Access access : pass.accesses) {
+                final Resource resource = access.resource();
+                if (resource.imported) {
+                    continue;
+                }
+                // aliases wrote to the same memory
+                for (final Resource other : this.resources) {
+                    if (other == resource || !other.imported && other.memoryGroup >= 0 && other.memoryGroup == resource.memoryGroup) {
+                        other.previousStages |= access.stages();
+                        other.previousAccess |= access.access() & RenderGraph.WRITE_ACCESS;
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * An aliased image starts where the images that used its memory before stopped, its first barrier waits for them.
+     */
+    private void inheritAliases(Resource resource) {
+        if (resource.memoryGroup < 0) {
+            return;
+        }
+        for (final Resource other : this.resources) {
+            if (other == resource || other.memoryGroup != resource.memoryGroup || other.lastPass < 0 || other.lastPass >= resource.firstPass) {
+                continue;
+            }
+            if (other.offset < resource.offset + resource.size && resource.offset < other.offset + other.size) {
+                resource.writeStages |= other.writeStages | other.readStages;
+                resource.writeAccess |= other.writeAccess;
+            }
+        }
+    }
+
+
+    private static int stagesOrTop(int stages) {
+        return stages != 0 ? stages : VK10.VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT;
+    }
+
+
+    /**
+     * Places resources in one block of memory. Resources whose lifetimes overlap never share bytes, the others are packed first fit, largest first.
+     *
+     * @param sizes the sizes in bytes
+     * @param alignments the alignments, powers of two
+     * @param firstPasses the index of the first pass that uses each resource
+     * @param lastPasses the index of the last pass that uses each resource
+     * @return the offset of every resource, followed by the size of the block
+     */
+    static long[] placeAliased(long[] sizes, long[] alignments, int[] firstPasses, int[] lastPasses) {
+        final int count = sizes.length;
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> sizes[a] != sizes[b] ? Long.compare(sizes[b], sizes[a]) : Integer.compare(a, b));
+
+        final long[] offsets = new long[count + 1];
+        final List<Integer> placed = new ArrayList<>(count);
+        long blockSize = 0L;
+        for (final int resource : order) {
+            // the placed resources that are alive at the same time, by offset
+            final List<Integer> conflicts = new ArrayList<>();
+            for (final int other : placed) {
+                if (firstPasses[other] <= lastPasses[resource] && firstPasses[resource] <= lastPasses[other]) {
+                    conflicts.add(other);
+                }
+            }
+            conflicts.sort((a, b) -> Long.compare(offsets[a], offsets[b]));
+
+            long offset = 0L;
+            for (final int other : conflicts) {
+                offset = offset + alignments[resource] - 1L & -alignments[resource];
+                if (offset + sizes[resource] <= offsets[other]) {
+                    break;
+                }
+                offset = Math.max(offset, offsets[other] + sizes[other]);
+            }
+            offset = offset + alignments[resource] - 1L & -alignments[resource];
+
+            offsets[resource] = offset;
+            placed.add(resource);
+            blockSize = Math.max(blockSize, offset + sizes[resource]);
+        }
+        offsets[count] = blockSize;
+        return offsets;
+    }
+
+
+    private void createTransientImages() {
+        this.transientBytes = 0L;
+        this.unaliasedBytes = 0L;
+        final Map<Integer, List<Resource>> groups = new LinkedHashMap<>();
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkImageCreateInfo imageInfo = VkImageCreateInfo.calloc(stack);
+            imageInfo.sType(VK10.VK_STRUCTURE_TYPE_IMAGE_CREATE_INFO);
+            imageInfo.imageType(VK10.VK_IMAGE_TYPE_2D);
+            imageInfo.mipLevels(1);
+            imageInfo.arrayLayers(1);
+            imageInfo.samples(VK10.VK_SAMPLE_COUNT_1_BIT);
+            imageInfo.tiling(VK10.VK_IMAGE_TILING_OPTIMAL);
+            imageInfo.sharingMode(VK10.VK_SHARING_MODE_EXCLUSIVE);
+            imageInfo.initialLayout(VK10.VK_IMAGE_LAYOUT_UNDEFINED);
+            final LongBuffer pImage = stack.mallocLong(1);
+            final VkMemoryRequirements requirements = VkMemoryRequirements.malloc(stack);
+
+            for (final Resource resource : this.resources) {
+                if (resource.imported || resource.firstPass < 0) {
+                    continue;
+                }
+                resource.width = resource.fixedWidth > 0 ? resource.fixedWidth : Math.max(1, (int) (this.width * resource.scale));
+                resource.height = resource.fixedHeight > 0 ? resource.fixedHeight : Math.max(1, (int) (this.height * resource.scale));
+                imageInfo.format(resource.format);
+                imageInfo.extent().set(resource.width, resource.height, 1);
+                imageInfo.usage(resource.usage);
+                if (VK10.vkCreateImage(this.device, imageInfo, null, pImage) != VK10.VK_SUCCESS) {
+                    throw new RuntimeException("Failed to create render graph image " + resource.name);
+                }
+                resource.image = pImage.get(0);
+                VK10.vkGetImageMemoryRequirements(this.device, resource.image, requirements);
+                resource.size = requirements.size();
+                resource.alignment = requirements.alignment();
+                resource.memoryTypeBits = requirements.memoryTypeBits();
+                groups.computeIfAbsent(resource.memoryTypeBits, bits -> new ArrayList<>()).add(resource);
+                this.unaliasedBytes += resource.size;
+            }
+        }
+
+        // images can only share memory if they support the same memory types
+        for (final List<Resource> group : groups.values()) {
+            final int count = group.size();
+            final long[] sizes = new long[count];
+            final long[] alignments = new long[count];
+            final int[] firstPasses = new int[count];
+            final int[] lastPasses = new int[count];
+            long alignment = 1L;
+            for (int i = 0; i < count; i++) {
+                final Resource resource = group.get(i);
+                sizes[i] = resource.size;
+                alignments[i] = resource.alignment;
+                firstPasses[i] = resource.firstPass;
+                lastPasses[i] = resource.lastPass;
+                alignment = Math.max(alignment, resource.alignment);
+            }
+            final long[] offsets = RenderGraph.placeAliased(sizes, alignments, firstPasses, lastPasses);
+            final long memory = this.allocator.allocateMemory(offsets[count], alignment, group.get(0).memoryTypeBits, VK10.VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT);
+            this.transientMemory.add(memory);
+            this.transientBytes += offsets[count];
+
+            for (int i = 0; i < count; i++) {
+                final Resource resource = group.get(i);
+                resource.memoryGroup = this.transientMemory.size() - 1;
+                resource.offset = offsets[i];
+                this.allocator.bindImageMemory(memory, resource.offset, resource.image);
+                resource.imageView = this.createImageView(resource);
+            }
+        }
+    }
+
+
+    private long createImageView(Resource resource) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkImageViewCreateInfo createInfo = VkImageViewCreateInfo.calloc(stack);
+            createInfo.sType(VK10.VK_STRUCTURE_TYPE_IMAGE_VIEW_CREATE_INFO);
+            createInfo.image(resource.image);
+            createInfo.viewType(VK10.VK_IMAGE_VIEW_TYPE_2D);
+            createInfo.format(resource.format);
+            createInfo.subresourceRange().aspectMask(RenderGraph.aspectMask(resource.format));
+            createInfo.subresourceRange().baseMipLevel(0);
+            createInfo.subresourceRange().levelCount(1);
+            createInfo.subresourceRange().baseArrayLayer(0);
+            createInfo.subresourceRange().layerCount(1);
+
+            final LongBuffer pImageView = stack.mallocLong(1);
+            if (VK10.vkCreateImageView(this.device, createInfo, null, pImageView) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create render graph image view " + resource.name);
+            }
+            return pImageView.get(0);
+        }
+    }
+
+
+    static int aspectMask(int format) {
+        switch (format) {
+            case VK10.VK_FORMAT_D16_UNORM:
+            case VK10.VK_FORMAT_X8_D24_UNORM_PACK32:
+            case VK10.VK_FORMAT_D32_SFLOAT:
+                return VK10.VK_IMAGE_ASPECT_DEPTH_BIT;
+            case VK10.VK_FORMAT_S8_UINT:
+                return VK10.VK_IMAGE_ASPECT_STENCIL_BIT;
+            case VK10.VK_FORMAT_D16_UNORM_S8_UINT:
+            case VK10.VK_FORMAT_D24_UNORM_S8_UINT:
+            case VK10.VK_FORMAT_D32_SFLOAT_S8_UINT:
+                return VK10.VK_IMAGE_ASPECT_DEPTH_BIT | VK10.VK_IMAGE_ASPECT_STENCIL_BIT;
+            default:
+                return VK10.VK_IMAGE_ASPECT_COLOR_BIT;
+        }
+    }
+
+
+    private void createPassObjects() {
+        if (this.viewport == null) {
+            this.viewport = VkViewport.calloc(1);
+            this.scissor = VkRect2D.calloc(1);
+        }
+        for (int i = 0; i < this.executedPasses.size(); i++) {
+            final Pass pass = this.executedPasses.get(i);
+            pass.batch = pass.barriers.isEmpty() ? null : new BarrierBatch(pass.barriers);
+            if (pass.hasAttachments()) {
+                this.createRenderPass(pass, i);
+            }
+        }
+        this.finalBatch = this.finalBarriers.isEmpty() ? null : new BarrierBatch(this.finalBarriers);
+    }
+
+
+    private void createRenderPass(Pass pass, int index) {
+        final List<AttachmentKey> keys = new ArrayList<>();
+        final List<Access> attachments = new ArrayList<>();
+        for (final Access access : pass.accesses) {
+            if (access.attachment() == RenderGraph.NO_ATTACHMENT) {
+                continue;
+            }
+            final Resource resource = access.resource();
+            if (attachments.isEmpty()) {
+                pass.width = resource.width;
+                pass.height = resource.height;
+            } else if (resource.width != pass.width || resource.height != pass.height) {
+                throw new IllegalStateException("The attachments of pass " + pass.name + " differ in size");
+            }
+            final int loadOp;
+            if (access.clear() != null) {
+                loadOp = VK10.VK_ATTACHMENT_LOAD_OP_CLEAR;
+            } else if (!resource.imported && resource.firstPass == index) {
+                // a transient image has no content yet
+                loadOp = VK10.VK_ATTACHMENT_LOAD_OP_DONT_CARE;
+            } else {
+                loadOp = VK10.VK_ATTACHMENT_LOAD_OP_LOAD;
+            }
+            // nobody reads what a transient image holds after its last pass
+            final int storeOp = resource.imported || resource.lastPass > index ? VK10.VK_ATTACHMENT_STORE_OP_STORE : VK10.VK_ATTACHMENT_STORE_OP_DONT_CARE;
+            keys.add(new AttachmentKey(resource.format, access.attachment() == RenderGraph.DEPTH_ATTACHMENT, loadOp, storeOp, access.layout()));
+            attachments.add(access);
+        }
+
+        pass.renderPass = this.renderPasses.computeIfAbsent(keys, this::createRenderPass);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final LongBuffer pAttachments = stack.mallocLong(attachments.size());
+            for (int i = 0; i < attachments.size(); i++) {
+                pAttachments.put(i, attachments.get(i).resource().imageView);
+            }
+            final VkFramebufferCreateInfo framebufferInfo = VkFramebufferCreateInfo.calloc(stack);
+            framebufferInfo.sType(VK10.VK_STRUCTURE_TYPE_FRAMEBUFFER_CREATE_INFO);
+            framebufferInfo.renderPass(pass.renderPass);
+            framebufferInfo.pAttachments(pAttachments);
+            framebufferInfo.width(pass.width);
+            framebufferInfo.height(pass.height);
+            framebufferInfo.layers(1);
+
+            final LongBuffer pFramebuffer = stack.mallocLong(1);
+            if (VK10.vkCreateFramebuffer(this.device, framebufferInfo, null, pFramebuffer) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create framebuffer of pass " + pass.name);
+            }
+            pass.framebuffer = pFramebuffer.get(0);
+        }
+
+        pass.clearValues = VkClearValue.calloc(attachments.size());
+        for (int i = 0; i < attachments.size(); i++) {
+            final float[] clear = attachments.get(i).clear();
+            if (clear == null) {
+                continue;
+            }
+            if (attachments.get(i).attachment() == RenderGraph.DEPTH_ATTACHMENT) {
+                pass.clearValues.get(i).depthStencil().depth(clear[0]);
+                pass.clearValues.get(i).depthStencil().stencil(0);
+            } else {
+                pass.clearValues.get(i).color().float32(0, clear[0]).float32(1, clear[1]).float32(2, clear[2]).float32(3, clear[3]);
+            }
+        }
+        pass.beginInfo = VkRenderPassBeginInfo.calloc();
+        pass.beginInfo.sType(VK10.VK_STRUCTURE_TYPE_RENDER_PASS_BEGIN_INFO);
+        pass.beginInfo.renderPass(pass.renderPass);
+        pass.beginInfo.framebuffer(pass.framebuffer);
+        pass.beginInfo.renderArea().offset().set(0, 0);
+        pass.beginInfo.renderArea().extent().set(pass.width, pass.height);
+        pass.beginInfo.pClearValues(pass.clearValues);
+    }
+
+
+    private long createRenderPass(List<AttachmentKey> keys) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkAttachmentDescription.Buffer descriptions = VkAttachmentDescription.calloc(keys.size(), stack);
+            final VkAttachmentReference.Buffer colorRefs = VkAttachmentReference.calloc(keys.size(), stack);
+            VkAttachmentReference depthRef = null;
+            int colorCount = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                final AttachmentKey key = keys.get(i);
+                final boolean stencil = (RenderGraph.aspectMask(key.format()) & VK10.VK_IMAGE_ASPECT_STENCIL_BIT) != 0;
+                final VkAttachmentDescription description = descriptions.get(i);
+                description.format(key.format());
+                description.samples(VK10.VK_SAMPLE_COUNT_1_BIT);
+                description.loadOp(key.loadOp());
+                description.storeOp(key.storeOp());
+                description.stencilLoadOp(stencil ? key.loadOp() : VK10.VK_ATTACHMENT_LOAD_OP_DONT_CARE);
+                description.stencilStoreOp(stencil ? key.storeOp() : VK10.VK_ATTACHMENT_STORE_OP_DONT_CARE);
+                // the graph's barriers do the transitions, the render pass keeps the layout
+                description.initialLayout(key.layout());
+                description.finalLayout(key.layout());
+
+                if (key.depth()) {
+                    depthRef = VkAttachmentReference.calloc(stack);
+                    depthRef.attachment(i);
+                    depthRef.layout(key.layout());
+                } else {
+                    colorRefs.get(colorCount).attachment(i);
+                    colorRefs.get(colorCount).layout(key.layout());
+                    colorCount++;
+                }
+            }
+
+            final VkSubpassDescription.Buffer subpass = VkSubpassDescription.calloc(1, stack);
+            subpass.pipelineBindPoint(VK10.VK_PIPELINE_BIND_POINT_GRAPHICS);
+            subpass.colorAttachmentCount(colorCount);
+            subpass.pColorAttachments(colorRefs.limit(colorCount));
+            subpass.pDepthStencilAttachment(depthRef);
+
+            final VkRenderPassCreateInfo renderPassInfo = VkRenderPassCreateInfo.calloc(stack);
+            renderPassInfo.sType(VK10.VK_STRUCTURE_TYPE_RENDER_PASS_CREATE_INFO);
+            renderPassInfo.pAttachments(descriptions);
+            renderPassInfo.pSubpasses(subpass);
+
+            final LongBuffer pRenderPass = stack.mallocLong(1);
+            if (VK10.vkCreateRenderPass(this.device, renderPassInfo, null, pRenderPass) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create render graph render pass");
+            }
+            return pRenderPass.get(0);
+        }
+    }
+
+
+    /**
+     * Records all executed passes. Called by the engine at the start of the frame.
+     */
+    void execute(VkCommandBuffer commandBuffer, int frameIndex, int imageIndex) {
+        this.compile();
+        for (int i = 0; i < this.executedPasses.size(); i++) {
+            final Pass pass = this.executedPasses.get(i);
+            if (pass.batch != null) {
+                pass.batch.record(commandBuffer);
+            }
+            if (pass.renderPass != VK10.VK_NULL_HANDLE) {
+                VK10.vkCmdBeginRenderPass(commandBuffer, pass.beginInfo, VK10.VK_SUBPASS_CONTENTS_INLINE);
+                this.viewport.x(0.0f);
+                this.viewport.y(0.0f);
+                this.viewport.width(pass.width);
+                this.viewport.height(pass.height);
+                this.viewport.minDepth(0.0f);
+                this.viewport.maxDepth(1.0f);
+                this.scissor.offset().set(0, 0);
+                this.scissor.extent().set(pass.width, pass.height);
+                VK10.vkCmdSetViewport(commandBuffer, 0, this.viewport);
+                VK10.vkCmdSetScissor(commandBuffer, 0, this.scissor);
+            }
+            if (pass.job != null) {
+                this.recorder.begin(commandBuffer, frameIndex, imageIndex, pass.width, pass.height);
+                pass.job.record(this.recorder);
+                this.recorder.end();
+            }
+            if (pass.renderPass != VK10.VK_NULL_HANDLE) {
+                VK10.vkCmdEndRenderPass(commandBuffer);
+            }
+        }
+        if (this.finalBatch != null) {
+            this.finalBatch.record(commandBuffer);
+        }
+    }
+
+
+    /**
+     * Returns the memory the transient images occupy, after aliasing.
+     *
+     * @return the size in bytes
+     */
+    public long getTransientMemorySize() {
+        return this.transientBytes;
+    }
+
+
+    /**
+     * Returns the memory the transient images would occupy without aliasing.
+     *
+     * @return the size in bytes
+     */
+    public long getUnaliasedMemorySize() {
+        return this.unaliasedBytes;
+    }
+
+
+    /**
+     * Destroys everything the last compilation created, once no frame in flight uses it. Render passes are kept, pipelines may reference them.
+     */
+    private void release() {
+        final List<Long> framebuffers = new ArrayList<>();
+        for (final Pass pass : this.executedPasses) {
+            if (pass.batch != null) {
+                pass.batch.free();
+                pass.batch = null;
+            }
+            if (pass.beginInfo != null) {
+                pass.beginInfo.free();
+                pass.clearValues.free();
+                pass.beginInfo = null;
+                pass.clearValues = null;
+            }
+            if (pass.framebuffer != VK10.VK_NULL_HANDLE) {
+                framebuffers.add(pass.framebuffer);
+            }
+            pass.framebuffer = VK10.VK_NULL_HANDLE;
+            pass.renderPass = VK10.VK_NULL_HANDLE;
+        }
+        if (this.finalBatch != null) {
+            this.finalBatch.free();
+            this.finalBatch = null;
+        }
+
+        final List<long[]> images = new ArrayList<>();
+        for (final Resource resource : this.resources) {
+            if (!resource.imported && resource.image != VK10.VK_NULL_HANDLE) {
+                images.add(new long[] { resource.image, resource.imageView });
+                resource.image = VK10.VK_NULL_HANDLE;
+                resource.imageView = VK10.VK_NULL_HANDLE;
+            }
+        }
+        final List<Long> memory = new ArrayList<>(this.transientMemory);
+        this.transientMemory.clear();
+
+        if (framebuffers.isEmpty() && images.isEmpty() && memory.isEmpty()) {
+            return;
+        }
+        this.destroyer.accept(() -> {
+            framebuffers.forEach(framebuffer -> VK10.vkDestroyFramebuffer(this.device, framebuffer, null));
+            for (final long[] image : images) {
+                VK10.vkDestroyImageView(this.device, image[1], null);
+                VK10.vkDestroyImage(this.device, image[0], null);
+            }
+            memory.forEach(this.allocator::freeMemory);
+        });
+    }
+
+
+    /**
+     * Destroys the transient images, the framebuffers and the render passes once no frame in flight uses them. Imported resources are left alone.
+     */
+    @Override
+    public void dispose() {
+        this.release();
+        final List<Long> handles = new ArrayList<>(this.renderPasses.values());
+        this.renderPasses.clear();
+        if (!handles.isEmpty()) {
+            this.destroyer.accept(() -> handles.forEach(renderPass -> VK10.vkDestroyRenderPass(this.device, renderPass, null)));
+        }
+        if (this.viewport != null) {
+            this.viewport.free();
+            this.scissor.free();
+            this.viewport = null;
+            this.scissor = null;
+        }
+        this.dirty = true;
+    }
+
+
+    /**
+     * An image or a buffer of the graph. Transient images get their handles when the graph is compiled, and they may change with every compilation.
+     */
+    public class Resource {
+        private final String  name;
+        private final boolean isImage;
+        private final boolean imported;
+        private int           format;
+        private int           fixedWidth;
+        private int           fixedHeight;
+        private float         scale;
+        private long          image;
+        private long          imageView;
+        private long          buffer;
+        private int           externalLayout;
+        private int           externalStages;
+        private int           externalAccess;
+
+        // COMPILED
+        private int  width;
+        private int  height;
+        private int  usage;
+        private int  firstPass;
+        private int  lastPass;
+        private long size;
+        private long alignment;
+        private int  memoryTypeBits;
+        private int  memoryGroup;
+        private long offset;
+
+        // STATE while the barriers are computed, stages and access of the last write and the reads after it
+        private int     layout;
+        private int     writeStages;
+        private int     writeAccess;
+        private int     readStages;
+        private int     syncedStages;
+        private int     syncedAccess;
+        private boolean written;
+        private int     previousStages;
+        private int     previousAccess;
+
+
+        private Resource(String name, boolean isImage, boolean imported) {
+            this.name = name;
+            this.isImage = isImage;
+            this.imported = imported;
+        }
+
+
+        private void resetState() {
+            this.written = false;
+            this.syncedStages = 0;
+            this.syncedAccess = 0;
+            if (this.imported) {
+                // the external accesses of the previous frame
+                this.layout = this.externalLayout;
+                this.writeStages = this.externalStages;
+                this.writeAccess = this.externalAccess & RenderGraph.WRITE_ACCESS;
+                this.readStages = this.externalStages;
+            } else {
+                // the content doesn't survive the frame, but the accesses of the previous frame must be done
+                this.layout = VK10.VK_IMAGE_LAYOUT_UNDEFINED;
+                this.writeStages = this.previousStages;
+                this.writeAccess = this.previousAccess;
+                this.readStages = 0;
+            }
+        }
+
+
+        /**
+         * Moves the resource to the state of an access.
+         *
+         * @return the barrier the access needs, or null
+         */
+        private Barrier access(int stages, int access, int newLayout, boolean write, boolean discard) {
+            final boolean transition = this.isImage && newLayout != this.layout;
+            if (!write && !transition) {
+                final boolean synced = (stages & ~this.syncedStages) == 0 && (access & ~this.syncedAccess) == 0;
+                this.readStages |= stages;
+                if (synced || this.writeStages == 0) {
+                    // reads after reads need no barrier
+                    return null;
+                }
+                this.syncedStages |= stages;
+                this.syncedAccess |= access;
+                return new Barrier(this, this.writeStages, this.writeAccess, stages, access, this.layout, this.layout);
+            }
+
+            // writes and layout transitions wait for all accesses since the last write
+            final Barrier barrier = new Barrier(this, RenderGraph.stagesOrTop(this.writeStages | this.readStages), this.writeAccess, stages, access,
+                    discard ? VK10.VK_IMAGE_LAYOUT_UNDEFINED : this.layout, this.isImage ? newLayout : VK10.VK_IMAGE_LAYOUT_UNDEFINED);
+            this.layout = barrier.newLayout();
+            if (write) {
+                this.writeStages = stages;
+                this.writeAccess = access & RenderGraph.WRITE_ACCESS;
+                this.readStages = 0;
+                this.syncedStages = 0;
+                this.syncedAccess = 0;
+                this.written = true;
+            } else {
+                // the transition is visible to the stages of this access, later reads in other stages chain to it
+                this.writeStages = stages;
+                this.writeAccess = 0;
+                this.readStages = stages;
+                this.syncedStages = stages;
+                this.syncedAccess = access;
+            }
+            return barrier;
+        }
+
+
+        public String getName() {
+            return this.name;
+        }
+
+
+        public boolean isImported() {
+            return this.imported;
+        }
+
+
+        /**
+         * Returns the VkImage, transient images only have one while the graph is compiled.
+         *
+         * @return the image or {@link VK10#VK_NULL_HANDLE}
+         */
+        public long getImage() {
+            return this.image;
+        }
+
+
+        /**
+         * Returns the VkImageView to bind the image with, for example in a {@link DescriptorWriter}. The view of a transient image changes with every
+         * compilation of the graph, see {@link RenderGraphCompileListener}.
+         *
+         * @return the image view or {@link VK10#VK_NULL_HANDLE}
+         */
+        public long getImageView() {
+            return this.imageView;
+        }
+
+
+        public long getBuffer() {
+            return this.buffer;
+        }
+
+
+        public int getFormat() {
+            return this.format;
+        }
+
+
+        public int getWidth() {
+            return this.width;
+        }
+
+
+        public int getHeight() {
+            return this.height;
+        }
+
+    }
+
+
+    /**
+     * A pass of the graph. Declare every resource the pass accesses, each resource once.
+     */
+    public class Pass {
+        private final String       name;
+        private final List<Access> accesses = new ArrayList<>();
+        private RenderGraphJob     job;
+        private boolean            sideEffect;
+
+        // COMPILED
+        private boolean               culled;
+        private final List<Barrier>   barriers = new ArrayList<>();
+        private BarrierBatch          batch;
+        private long                  renderPass;
+        private long                  framebuffer;
+        private int                   width;
+        private int                   height;
+        private VkRenderPassBeginInfo beginInfo;
+        private VkClearValue.Buffer   clearValues;
+
+
+        private Pass(String name) {
+            this.name = name;
+        }
+
+
+        private Pass add(Resource resource, boolean isImage, int stages, int access, int layout, boolean write, boolean loads, int attachment, float[] clear) {
+            if (resource.isImage != isImage) {
+                throw new IllegalArgumentException(resource.name + " is not " + (isImage ? "an image" : "a buffer"));
+            }
+            for (final Access other : this.accesses) {
+                if (other.resource() == resource) {
+                    throw new IllegalArgumentException(resource.name + " is declared twice in pass " + this.name);
+                }
+            }
+            this.accesses.add(new Access(resource, stages, access, layout, write, loads, attachment, clear));
+            RenderGraph.this.dirty = true;
+            return this;
+        }
+
+
+        /**
+         * Renders to a color attachment and clears it first.
+         *
+         * @param image the image
+         * @param red the red component of the clear color
+         * @param green the green component of the clear color
+         * @param blue the blue component of the clear color
+         * @param alpha the alpha component of the clear color
+         * @return this pass
+         */
+        public Pass clearColor(Resource image, float red, float green, float blue, float alpha) {
+            return this.add(image, true, VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT, VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT,
+                    VK10.VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL, true, false, RenderGraph.COLOR_ATTACHMENT, new float[] { red, green, blue, alpha });
+        }
+
+
+        /**
+         * Renders to a color attachment on top of its content.
+         *
+         * @param image the image
+         * @return this pass
+         */
+        public Pass writeColor(Resource image) {
+            return this.add(image, true, VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT,
+                    VK10.VK_ACCESS_COLOR_ATTACHMENT_READ_BIT | VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT, VK10.VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL, true,
+                    true, RenderGraph.COLOR_ATTACHMENT, null);
+        }
+
+
+        /**
+         * Renders with a depth attachment and clears it first, the stencil is cleared to 0.
+         *
+         * @param image the image
+         * @param depth the clear depth
+         * @return this pass
+         */
+        public Pass clearDepth(Resource image, float depth) {
+            return this.add(image, true, VK10.VK_PIPELINE_STAGE_EARLY_FRAGMENT_TESTS_BIT | VK10.VK_PIPELINE_STAGE_LATE_FRAGMENT_TESTS_BIT,
+                    VK10.VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_READ_BIT | VK10.VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT,
+                    VK10.VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL, true, false, RenderGraph.DEPTH_ATTACHMENT, new float[] { depth });
+        }
+
+
+        /**
+         * Renders with a depth attachment and keeps its content.
+         *
+         * @param image the image
+         * @return this pass
+         */
+        public Pass writeDepth(Resource image) {
+            return this.add(image, true, VK10.VK_PIPELINE_STAGE_EARLY_FRAGMENT_TESTS_BIT | VK10.VK_PIPELINE_STAGE_LATE_FRAGMENT_TESTS_BIT,
+                    VK10.VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_READ_BIT | VK10.VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT,
+                    VK10.VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL, true, true, RenderGraph.DEPTH_ATTACHMENT, null);
+        }
+
+
+        /**
+         * Samples an image in shaders.
+         *
+         * @param image the image
+         * @param stages the VkPipelineStageFlags of the shaders that sample it
+         * @return this pass
+         */
+        public Pass readTexture(Resource image, int stages) {
+            return this.add(image, true, stages, VK10.VK_ACCESS_SHADER_READ_BIT, VK10.VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, false, false,
+                    RenderGraph.NO_ATTACHMENT, null);
+        }
+
+
+        public Pass readStorageImage(Resource image, int stages) {
+            return this.add(image, true, stages, VK10.VK_ACCESS_SHADER_READ_BIT, VK10.VK_IMAGE_LAYOUT_GENERAL, false, false, RenderGraph.NO_ATTACHMENT, null);
+        }
+
+
+        /**
+         * Writes a storage image in shaders. The content is kept, so the passes that wrote it before are kept as well.
+         *
+         * @param image the image
+         * @param stages the VkPipelineStageFlags of the shaders that write it
+         * @return this pass
+         */
+        public Pass writeStorageImage(Resource image, int stages) {
+            return this.add(image, true, stages, VK10.VK_ACCESS_SHADER_READ_BIT | VK10.VK_ACCESS_SHADER_WRITE_BIT, VK10.VK_IMAGE_LAYOUT_GENERAL, true, true,
+                    RenderGraph.NO_ATTACHMENT, null);
+        }
+
+
+        /**
+         * Reads a buffer.
+         *
+         * @param buffer the buffer
+         * @param stages the VkPipelineStageFlags of the reads, for example {@link VK10#VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT}
+         * @param access the VkAccessFlags of the reads, for example {@link VK10#VK_ACCESS_INDIRECT_COMMAND_READ_BIT}
+         * @return this pass
+         */
+        public Pass readBuffer(Resource buffer, int stages, int access) {
+            return this.add(buffer, false, stages, access, VK10.VK_IMAGE_LAYOUT_UNDEFINED, false, false, RenderGraph.NO_ATTACHMENT, null);
+        }
+
+
+        /**
+         * Writes a buffer. The content is kept, so the passes that wrote it before are kept as well.
+         *
+         * @param buffer the buffer
+         * @param stages the VkPipelineStageFlags of the writes
+         * @param access the VkAccessFlags of the writes
+         * @return this pass
+         */
+        public Pass writeBuffer(Resource buffer, int stages, int access) {
+            return this.add(buffer, false, stages, access, VK10.VK_IMAGE_LAYOUT_UNDEFINED, true, true, RenderGraph.NO_ATTACHMENT, null);
+        }
+
+
+        /**
+         * Keeps the pass even if nothing reads its results, for example because it writes to memory the graph doesn't know about.
+         *
+         * @return this pass
+         */
+        public Pass sideEffect() {
+            this.sideEffect = true;
+            RenderGraph.this.dirty = true;
+            return this;
+        }
+
+
+        /**
+         * Sets the job that records the pass' commands.
+         *
+         * @param job the job
+         * @return this pass
+         */
+        public Pass execute(RenderGraphJob job) {
+            this.job = job;
+            return this;
+        }
+
+
+        private boolean hasAttachments() {
+            for (final Access access : this.accesses) {
+                if (access.attachment() != RenderGraph.NO_ATTACHMENT) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+
+        public String getName() {
+            return this.name;
+        }
+
+
+        /**
+         * Returns whether the last compilation culled the pass.
+         *
+         * @return true if the pass doesn't run
+         */
+        public boolean isCulled() {
+            return this.culled;
+        }
+
+
+        /**
+         * Returns the render pass to create the pass' pipelines with, see {@link PipelineState#withRenderPass(long, int)}.
+         *
+         * @return the VkRenderPass, or {@link VK10#VK_NULL_HANDLE} if the pass has no attachments or the graph isn't compiled
+         */
+        public long getRenderPass() {
+            return this.renderPass;
+        }
+
+
+        List<Barrier> getBarriers() {
+            return this.barriers;
+        }
+
+    }
+
+
+    List<Barrier> getFinalBarriers() {
+        return this.finalBarriers;
+    }
+
+
+    private record Access(Resource resource, int stages, int access, int layout, boolean write, boolean loads, int attachment, float[] clear) {
+    }
+
+
+    private record AttachmentKey(int format, boolean depth, int loadOp, int storeOp, int layout) {
+    }
+
+
+    /**
+     * A barrier of one resource. The old and the new layout are equal for buffers and for images that keep their layout.
+     */
+    record Barrier(Resource resource, int srcStages, int srcAccess, int dstStages, int dstAccess, int oldLayout, int newLayout) {
+    }
+
+
+    /**
+     * The barriers of a pass boundary as one vkCmdPipelineBarrier call, built once per compilation.
+     */
+    private static class BarrierBatch {
+        private final int                          srcStages;
+        private final int                          dstStages;
+        private final VkImageMemoryBarrier.Buffer  imageBarriers;
+        private final VkBufferMemoryBarrier.Buffer bufferBarriers;
+
+
+        private BarrierBatch(List<Barrier> barriers) {
+            int src = 0;
+            int dst = 0;
+            int imageCount = 0;
+            for (final Barrier barrier : barriers) {
+                src |= barrier.srcStages();
+                dst |= barrier.dstStages();
+                if (barrier.resource().isImage) {
+                    imageCount++;
+                }
+            }
+            this.srcStages = src;
+            this.dstStages = dst;
+            this.imageBarriers = imageCount > 0 ? VkImageMemoryBarrier.calloc(imageCount) : null;
+            this.bufferBarriers = imageCount < barriers.size() ? VkBufferMemoryBarrier.calloc(barriers.size() - imageCount) : null;
+
+            int imageIndex = 0;
+            int bufferIndex = 0;
+            for (final Barrier barrier : barriers) {
+                final Resource resource = barrier.resource();
+                if (resource.isImage) {
+                    final VkImageMemoryBarrier imageBarrier = this.imageBarriers.get(imageIndex++);
+                    imageBarrier.sType(VK10.VK_STRUCTURE_TYPE_IMAGE_MEMORY_BARRIER);
+                    imageBarrier.srcAccessMask(barrier.srcAccess());
+                    imageBarrier.dstAccessMask(barrier.dstAccess());
+                    imageBarrier.oldLayout(barrier.oldLayout());
+                    imageBarrier.newLayout(barrier.newLayout());
+                    imageBarrier.srcQueueFamilyIndex(VK10.VK_QUEUE_FAMILY_IGNORED);
+                    imageBarrier.dstQueueFamilyIndex(VK10.VK_QUEUE_FAMILY_IGNORED);
+                    imageBarrier.image(resource.image);
+                    imageBarrier.subresourceRange().aspectMask(RenderGraph.aspectMask(resource.format));
+                    imageBarrier.subresourceRange().baseMipLevel(0);
+                    imageBarrier.subresourceRange().levelCount(1);
+                    imageBarrier.subresourceRange().baseArrayLayer(0);
+                    imageBarrier.subresourceRange().layerCount(1);
+                } else {
+                    final VkBufferMemoryBarrier bufferBarrier = this.bufferBarriers.get(bufferIndex++);
+                    bufferBarrier.sType(VK10.VK_STRUCTURE_TYPE_BUFFER_MEMORY_BARRIER);
+                    bufferBarrier.srcAccessMask(barrier.srcAccess());
+                    bufferBarrier.dstAccessMask(barrier.dstAccess());
+                    bufferBarrier.srcQueueFamilyIndex(VK10.VK_QUEUE_FAMILY_IGNORED);
+                    bufferBarrier.dstQueueFamilyIndex(VK10.VK_QUEUE_FAMILY_IGNORED);
+                    bufferBarrier.buffer(resource.buffer);
+                    bufferBarrier.offset(0L);
+                    bufferBarrier.size(VK10.VK_WHOLE_SIZE);
+                }
+            }
+        }
+
+
+        private void record(VkCommandBuffer commandBuffer) {
+            VK10.vkCmdPipelineBarrier(commandBuffer, this.srcStages, this.dstStages, 0, null, this.bufferBarriers, this.imageBarriers);
+        }
+
+
+        private void free() {
+            if (this.imageBarriers != null) {
+                this.imageBarriers.free();
+            }
+            if (this.bufferBarriers != null) {
+                this.bufferBarriers.free();
+            }
+        }
+
+    }
+
+}
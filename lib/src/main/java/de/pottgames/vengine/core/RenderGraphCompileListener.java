@@ -0,0 +1,15 @@
+package de.pottgames.vengine.core;
+
+@FunctionalInterface
+public interface RenderGraphCompileListener {
+
+    /**
+     * Called on the render thread after a render graph was compiled again, before any pass of the compilation runs. The transient images have new handles,
+     * the old ones are destroyed once no frame in flight uses them. Write the new views from {@link RenderGraph.Resource#getImageView()} into fresh descriptor
+     * sets here, sets of earlier frames may still be in use.
+     *
+     * @param graph the compiled graph
+     */
+    void onCompile(RenderGraph graph);
+
+}
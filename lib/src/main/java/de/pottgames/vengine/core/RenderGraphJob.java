@@ -0,0 +1,14 @@
+package de.pottgames.vengine.core;
+
+@FunctionalInterface
+public interface RenderGraphJob {
+
+    /**
+     * Records the commands of a render graph pass. Passes with attachments run inside their render pass with the viewport and the scissor set to the
+     * attachments' size, nothing is bound yet. The barriers for all resources the pass declared are already recorded.
+     *
+     * @param recorder the recorder of the frame's command buffer, only valid during this call
+     */
+    void record(CommandRecorder recorder);
+
+}
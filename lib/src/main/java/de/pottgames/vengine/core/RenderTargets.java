@@ -0,0 +1,146 @@
+package de.pottgames.vengine.core;
+
+import java.nio.LongBuffer;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkImageCreateInfo;
+import org.lwjgl.vulkan.VkImageViewCreateInfo;
+
+/**
+ * The multisampled color image and the depth image of the engine's rendering. Both are shared by all swap chain images, their content never outlives a frame:
+ * the multisampled image is resolved into the swap chain image and the depth image is cleared. They are created as transient attachments, which tile based
+ * GPUs keep in tile memory without committing any device memory if lazily allocated memory is available.
+ */
+class RenderTargets implements Disposable {
+    private final VkDevice        device;
+    private final MemoryAllocator allocator;
+    private final GpuImage        colorImage;
+    private final long            colorView;
+    private final GpuImage        depthImage;
+    private final long            depthView;
+
+
+    /**
+     * Creates the images.
+     *
+     * @param device the device
+     * @param allocator the allocator
+     * @param transientMemory true to allocate lazily allocated memory, see {@link PhysicalDevice#hasLazilyAllocatedMemory()}
+     * @param colorFormat the format of the swap chain images
+     * @param depthFormat the depth format or VK_FORMAT_UNDEFINED without depth buffer
+     * @param samples the VkSampleCountFlagBits, VK_SAMPLE_COUNT_1_BIT renders into the swap chain image directly
+     * @param width the width in pixels
+     * @param height the height in pixels
+     */
+    RenderTargets(VkDevice device, MemoryAllocator allocator, boolean transientMemory, int colorFormat, int depthFormat, int samples, int width, int height) {
+        this.device = device;
+        this.allocator = allocator;
+        final MemoryUsage memoryUsage = transientMemory ? MemoryUsage.TRANSIENT : MemoryUsage.GPU_ONLY;
+
+        if (samples != VK10.VK_SAMPLE_COUNT_1_BIT) {
+            this.colorImage = this.createImage(colorFormat, VK10.VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT, samples, width, height, memoryUsage);
+            this.colorView = this.createImageView(this.colorImage);
+        } else {
+            this.colorImage = null;
+            this.colorView = VK10.VK_NULL_HANDLE;
+        }
+        if (depthFormat != VK10.VK_FORMAT_UNDEFINED) {
+            this.depthImage = this.createImage(depthFormat, VK10.VK_IMAGE_USAGE_DEPTH_STENCIL_ATTACHMENT_BIT, samples, width, height, memoryUsage);
+            this.depthView = this.createImageView(this.depthImage);
+        } else {
+            this.depthImage = null;
+            this.depthView = VK10.VK_NULL_HANDLE;
+        }
+    }
+
+
+    private GpuImage createImage(int format, int usage, int samples, int width, int height, MemoryUsage memoryUsage) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkImageCreateInfo imageInfo = VkImageCreateInfo.calloc(stack);
+            imageInfo.sType(VK10.VK_STRUCTURE_TYPE_IMAGE_CREATE_INFO);
+            imageInfo.imageType(VK10.VK_IMAGE_TYPE_2D);
+            imageInfo.format(format);
+            imageInfo.extent().set(width, height, 1);
+            imageInfo.mipLevels(1);
+            imageInfo.arrayLayers(1);
+            imageInfo.samples(samples);
+            imageInfo.tiling(VK10.VK_IMAGE_TILING_OPTIMAL);
+            // the content is never loaded or stored, so the image doesn't need any backing memory outside of the render pass
+            imageInfo.usage(usage | VK10.VK_IMAGE_USAGE_TRANSIENT_ATTACHMENT_BIT);
+            imageInfo.sharingMode(VK10.VK_SHARING_MODE_EXCLUSIVE);
+            imageInfo.initialLayout(VK10.VK_IMAGE_LAYOUT_UNDEFINED);
+            return this.allocator.createImage(imageInfo, memoryUsage);
+        }
+    }
+
+
+    private long createImageView(GpuImage image) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkImageViewCreateInfo createInfo = VkImageViewCreateInfo.calloc(stack);
+            createInfo.sType(VK10.VK_STRUCTURE_TYPE_IMAGE_VIEW_CREATE_INFO);
+            createInfo.image(image.getImage());
+            createInfo.viewType(VK10.VK_IMAGE_VIEW_TYPE_2D);
+            createInfo.format(image.getFormat());
+            createInfo.subresourceRange().aspectMask(RenderGraph.aspectMask(image.getFormat()));
+            createInfo.subresourceRange().baseMipLevel(0);
+            createInfo.subresourceRange().levelCount(1);
+            createInfo.subresourceRange().baseArrayLayer(0);
+            createInfo.subresourceRange().layerCount(1);
+
+            final LongBuffer pImageView = stack.mallocLong(1);
+            if (VK10.vkCreateImageView(this.device, createInfo, null, pImageView) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create render target image view");
+            }
+            return pImageView.get(0);
+        }
+    }
+
+
+    /**
+     * Returns the multisampled color image.
+     *
+     * @return the image or null without multisampling
+     */
+    GpuImage getColorImage() {
+        return this.colorImage;
+    }
+
+
+    long getColorView() {
+        return this.colorView;
+    }
+
+
+    /**
+     * Returns the depth image.
+     *
+     * @return the image or null without depth buffer
+     */
+    GpuImage getDepthImage() {
+        return this.depthImage;
+    }
+
+
+    long getDepthView() {
+        return this.depthView;
+    }
+
+
+    /**
+     * Destroys the images. No frame in flight may use them anymore.
+     */
+    @Override
+    public void dispose() {
+        if (this.colorImage != null) {
+            VK10.vkDestroyImageView(this.device, this.colorView, null);
+            this.allocator.destroyImage(this.colorImage);
+        }
+        if (this.depthImage != null) {
+            VK10.vkDestroyImageView(this.device, this.depthView, null);
+            this.allocator.destroyImage(this.depthImage);
+        }
+    }
+
+}
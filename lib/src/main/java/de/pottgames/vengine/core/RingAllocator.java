@@ -0,0 +1,176 @@
+package de.pottgames.vengine.core;
+
+import java.util.function.LongConsumer;
+
+/**
+ * The offset bookkeeping of a {@link FrameRingBuffer}. Every frame allocates ranges at the head, the ranges of a frame are recycled once the GPU completed the
+ * frame. It only deals with offsets, the ring buffer owns the memory and synchronizes the calls.
+ */
+class RingAllocator {
+    private final long         capacity;
+    private final LongConsumer frameWaiter;
+
+    // RING, used counts all bytes from the oldest frame in use to the head, including padding and skipped bytes at the end
+    private long head;
+    private long used;
+    private long frameValue;
+    private long frameStart;
+    private long frameBytes;
+
+    // FRAMES IN FLIGHT, a queue of the submit values and byte counts of the frames that may still use the ring
+    private long[] markValues = new long[8];
+    private long[] markBytes  = new long[8];
+    private int    markFirst;
+    private int    markCount;
+
+
+    /**
+     * Creates the bookkeeping of an empty ring.
+     *
+     * @param capacity the size in bytes
+     * @param frameWaiter blocks until the frame with the submit value completed, called when a frame doesn't fit
+     */
+    RingAllocator(long capacity, LongConsumer frameWaiter) {
+        this.capacity = capacity;
+        this.frameWaiter = frameWaiter;
+    }
+
+
+    /**
+     * Recycles the ranges of completed frames and starts allocating for a new frame.
+     *
+     * @param frameValue the submit value the new frame will have
+     * @param completedFrameValue the submit value of the last completed frame
+     */
+    void beginFrame(long frameValue, long completedFrameValue) {
+        this.reclaim(completedFrameValue);
+        this.frameValue = frameValue;
+        this.frameStart = this.head;
+        this.frameBytes = 0L;
+    }
+
+
+    /**
+     * Remembers the frame's ranges until the frame completed.
+     */
+    void endFrame() {
+        if (this.frameBytes == 0L) {
+            return;
+        }
+
+        if (this.markCount == this.markValues.length) {
+            this.growMarks();
+        }
+        final int index = (this.markFirst + this.markCount) % this.markValues.length;
+        this.markValues[index] = this.frameValue;
+        this.markBytes[index] = this.frameBytes;
+        this.markCount++;
+    }
+
+
+    private void reclaim(long completedFrameValue) {
+        while (this.markCount > 0 && this.markValues[this.markFirst] <= completedFrameValue) {
+            this.used -= this.markBytes[this.markFirst];
+            this.markFirst = (this.markFirst + 1) % this.markValues.length;
+            this.markCount--;
+        }
+    }
+
+
+    private void growMarks() {
+        final long[] values = new long[this.markValues.length * 2];
+        final long[] bytes = new long[this.markValues.length * 2];
+        for (int i = 0; i < this.markCount; i++) {
+            values[i] = this.markValues[(this.markFirst + i) % this.markValues.length];
+            bytes[i] = this.markBytes[(this.markFirst + i) % this.markValues.length];
+        }
+        this.markValues = values;
+        this.markBytes = bytes;
+        this.markFirst = 0;
+    }
+
+
+    /**
+     * Allocates a range for the current frame. If it doesn't fit, the oldest frames are waited for. A single frame larger than the ring is an error.
+     *
+     * @param size the size in bytes, 0 returns an empty range that takes no space
+     * @param alignment the alignment of the offset, a power of two
+     * @return the offset of the range
+     */
+    long allocate(long size, long alignment) {
+        if (size == 0L) {
+            // an empty range fits anywhere, even into a full ring
+            return 0L;
+        }
+        while (true) {
+            if (this.used == 0L) {
+                // nothing is in use, start at the beginning to get the largest contiguous range
+                this.head = 0L;
+                this.frameStart = 0L;
+            }
+            final long tail = (this.head - this.used + this.capacity) % this.capacity;
+            final long aligned = this.head + alignment - 1L & -alignment;
+
+            if (this.used < this.capacity) {
+                if (this.head >= tail) {
+                    // the free space is the end of the ring and the start up to the tail
+                    if (aligned + size <= this.capacity) {
+                        return this.take(aligned, size, aligned - this.head + size);
+                    }
+                    if (size <= tail) {
+                        // the rest of the ring is skipped
+                        return this.take(0L, size, this.capacity - this.head + size);
+                    }
+                } else if (aligned + size <= tail) {
+                    return this.take(aligned, size, aligned - this.head + size);
+                }
+            }
+
+            if (this.markCount == 0) {
+                throw new IllegalStateException("The frame ring buffer of " + this.capacity + " bytes can't hold " + size + " more bytes in one frame");
+            }
+            // the ring is too small for the frames in flight, wait for the oldest one
+            final long oldestFrame = this.markValues[this.markFirst];
+            this.frameWaiter.accept(oldestFrame);
+            this.reclaim(oldestFrame);
+        }
+    }
+
+
+    private long take(long offset, long size, long consumed) {
+        this.head = (offset + size) % this.capacity;
+        this.used += consumed;
+        this.frameBytes += consumed;
+        return offset;
+    }
+
+
+    /**
+     * Returns the offset the current frame's ranges start at. If the head is at or before it, the frame wrapped around.
+     */
+    long getFrameStart() {
+        return this.frameStart;
+    }
+
+
+    /**
+     * Returns the offset after the last range allocated.
+     */
+    long getHead() {
+        return this.head;
+    }
+
+
+    /**
+     * Returns the bytes the current frame took so far, including padding and skipped bytes.
+     */
+    long getFrameBytes() {
+        return this.frameBytes;
+    }
+
+
+    long getCapacity() {
+        return this.capacity;
+    }
+
+}
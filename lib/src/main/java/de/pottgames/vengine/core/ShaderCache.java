@@ -0,0 +1,430 @@
+package de.pottgames.vengine.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkShaderModuleCreateInfo;
+
+/**
+ * Loads SPIR-V shaders and keeps their VkShaderModules. A shader is loaded by name, which is a path relative to the working directory or, if no such file
+ * exists, a classpath resource. Files are read in bulk into direct memory, and modules are shared by content hash, so identical SPIR-V under several names is
+ * only created once. Asking for a name again doesn't touch the disk.
+ *
+ * With hot reload, the directories of all shaders that were loaded from files are watched. When a file changes, the shader is reloaded at the start of the
+ * next frame and the {@link ShaderReloadListener}s are notified, so only the pipelines using it are rebuilt. A file that isn't valid SPIR-V, for example
+ * while the compiler is still writing it, keeps the old module.
+ */
+public class ShaderCache implements Disposable {
+    private static final int SPIRV_MAGIC = 0x07230203;
+
+    private final VkDevice                   device;
+    private final boolean                    hotReload;
+    private final Map<String, Shader>        shaders   = new HashMap<>();
+    private final Map<String, Module>        modules   = new HashMap<>();
+    private final List<ShaderReloadListener> listeners = new CopyOnWriteArrayList<>();
+
+    // HOT RELOAD
+    private WatchService                      watchService;
+    private Thread                            watchThread;
+    private final Set<Path>                   watchedDirectories = new HashSet<>();
+    private final ConcurrentLinkedQueue<Path> changedFiles       = new ConcurrentLinkedQueue<>();
+
+
+    ShaderCache(VkDevice device, boolean hotReload) {
+        this.device = device;
+        this.hotReload = hotReload;
+    }
+
+
+    /**
+     * Returns the module of a shader, loading it on first use.
+     *
+     * @param name the path relative to the working directory or the classpath
+     * @return the VkShaderModule, owned by the cache and valid until the shader is reloaded or replaced
+     * @throws UncheckedIOException if the shader can't be read or isn't SPIR-V
+     */
+    public synchronized long getModule(String name) {
+        final Shader shader = this.shaders.get(name);
+        if (shader != null) {
+            return this.modules.get(shader.hash()).module;
+        }
+
+        final Path file = ShaderCache.findFile(name);
+        final ByteBuffer code = file != null ? ShaderCache.read(file) : ShaderCache.readResource(name);
+        try {
+            if (!ShaderCache.isSpirv(code)) {
+                throw new UncheckedIOException(new IOException("Not a SPIR-V binary: " + name));
+            }
+            final String hash = ShaderCache.hash(code);
+            this.shaders.put(name, new Shader(file, hash));
+            final Module module = this.acquireModule(hash, code);
+            if (file != null && this.hotReload) {
+                this.watch(file.getParent());
+            }
+            return module.module;
+        } finally {
+            MemoryUtil.memFree(code);
+        }
+    }
+
+
+    /**
+     * Returns the module of a shader like {@link #getModule(String)} and keeps it alive until {@link #release(long)}, even if the shader is reloaded or
+     * replaced in the meantime. Modules returned by getModule are destroyed as soon as their shader changes, so pipelines created outside of the render
+     * thread must use this.
+     *
+     * @param name the path relative to the working directory or the classpath, or the name of compiled code
+     * @return the VkShaderModule, owned by the cache
+     * @throws UncheckedIOException if the shader can't be read or isn't SPIR-V
+     */
+    synchronized long acquire(String name) {
+        final long module = this.getModule(name);
+        this.modules.get(this.shaders.get(name).hash()).users++;
+        return module;
+    }
+
+
+    /**
+     * Releases a module returned by {@link #acquire(String)}. It's destroyed if its shader was reloaded or replaced since.
+     *
+     * @param module the VkShaderModule
+     */
+    synchronized void release(long module) {
+        for (final Map.Entry<String, Module> entry : this.modules.entrySet()) {
+            if (entry.getValue().module == module) {
+                this.releaseModule(entry.getKey());
+                return;
+            }
+        }
+        // the cache was disposed and destroyed the module already
+    }
+
+
+    /**
+     * Returns the module of SPIR-V code that was compiled at runtime, see {@link ShaderCompiler}. The code is registered under the name, replacing earlier code
+     * of the same name. Such shaders aren't watched.
+     *
+     * @param name the name of the shader
+     * @param spirv the SPIR-V code
+     * @return the VkShaderModule, owned by the cache
+     * @throws UncheckedIOException if the code isn't SPIR-V
+     */
+    public synchronized long getModule(String name, byte[] spirv) {
+        final ByteBuffer code = MemoryUtil.memAlloc(spirv.length);
+        try {
+            code.put(spirv).flip();
+            if (!ShaderCache.isSpirv(code)) {
+                throw new UncheckedIOException(new IOException("Not a SPIR-V binary: " + name));
+            }
+            final String hash = ShaderCache.hash(code);
+            final Shader previous = this.shaders.get(name);
+            if (previous != null && previous.hash().equals(hash)) {
+                return this.modules.get(hash).module;
+            }
+            final Module module = this.acquireModule(hash, code);
+            if (previous != null) {
+                this.releaseModule(previous.hash());
+            }
+            this.shaders.put(name, new Shader(null, hash));
+            return module.module;
+        } finally {
+            MemoryUtil.memFree(code);
+        }
+    }
+
+
+    public void addReloadListener(ShaderReloadListener listener) {
+        this.listeners.add(listener);
+    }
+
+
+    public void removeReloadListener(ShaderReloadListener listener) {
+        this.listeners.remove(listener);
+    }
+
+
+    private static Path findFile(String name) {
+        final Path path = Path.of(name);
+        if (Files.isRegularFile(path)) {
+            return path.toAbsolutePath().normalize();
+        }
+        // resources of exploded classpath directories are files as well, so they can be watched
+        final URL url = ShaderCache.class.getClassLoader().getResource(name);
+        if (url != null && "file".equals(url.getProtocol())) {
+            try {
+                return Path.of(url.toURI()).toAbsolutePath().normalize();
+            } catch (final URISyntaxException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+
+    private static ByteBuffer read(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer code = MemoryUtil.memAlloc((int) channel.size());
+            try {
+                while (code.hasRemaining() && channel.read(code) != -1) {
+                    // read until the buffer is full
+                }
+                return code.flip();
+            } catch (final IOException e) {
+                MemoryUtil.memFree(code);
+                throw e;
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to read shader " + file, e);
+        }
+    }
+
+
+    private static ByteBuffer readResource(String name) {
+        final InputStream stream = ShaderCache.class.getClassLoader().getResourceAsStream(name);
+        if (stream == null) {
+            throw new UncheckedIOException(new IOException("Shader not found: " + name));
+        }
+        ByteBuffer code = MemoryUtil.memAlloc(16 * 1024);
+        try (ReadableByteChannel channel = Channels.newChannel(stream)) {
+            while (channel.read(code) != -1) {
+                if (!code.hasRemaining()) {
+                    code = MemoryUtil.memRealloc(code, code.capacity() * 2);
+                }
+            }
+            return code.flip();
+        } catch (final IOException e) {
+            MemoryUtil.memFree(code);
+            throw new UncheckedIOException("Failed to read shader " + name, e);
+        }
+    }
+
+
+    private static boolean isSpirv(ByteBuffer code) {
+        return code.remaining() >= 20 && code.remaining() % 4 == 0 && code.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(code.position()) == ShaderCache.SPIRV_MAGIC;
+    }
+
+
+    private static String hash(ByteBuffer code) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(code.duplicate());
+            final StringBuilder builder = new StringBuilder();
+            for (final byte b : digest.digest()) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private Module acquireModule(String hash, ByteBuffer code) {
+        Module module = this.modules.get(hash);
+        if (module == null) {
+            module = new Module(this.createModule(code));
+            this.modules.put(hash, module);
+        }
+        module.users++;
+        return module;
+    }
+
+
+    private void releaseModule(String hash) {
+        final Module module = this.modules.get(hash);
+        module.users--;
+        if (module.users == 0) {
+            // pipelines don't need their modules after creation, pipelines that are still being created hold their own use
+            VK10.vkDestroyShaderModule(this.device, module.module, null);
+            this.modules.remove(hash);
+        }
+    }
+
+
+    private long createModule(ByteBuffer code) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkShaderModuleCreateInfo createInfo = VkShaderModuleCreateInfo.calloc(stack);
+            createInfo.sType(VK10.VK_STRUCTURE_TYPE_SHADER_MODULE_CREATE_INFO);
+            createInfo.pCode(code);
+
+            final LongBuffer pShaderModule = stack.mallocLong(1);
+            if (VK10.vkCreateShaderModule(this.device, createInfo, null, pShaderModule) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create shader module");
+            }
+            return pShaderModule.get(0);
+        }
+    }
+
+
+    private void watch(Path directory) {
+        if (!this.watchedDirectories.add(directory)) {
+            return;
+        }
+        try {
+            if (this.watchService == null) {
+                this.watchService = FileSystems.getDefault().newWatchService();
+                this.watchThread = new Thread(this::pollWatchService, "VEngine-ShaderWatcher");
+                this.watchThread.setDaemon(true);
+                this.watchThread.start();
+            }
+            directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (final IOException e) {
+            // the shader still works, it just isn't reloaded
+            System.err.println("Failed to watch shader directory " + directory + ": " + e.getMessage());
+        }
+    }
+
+
+    private void pollWatchService() {
+        try {
+            while (true) {
+                final WatchKey key = this.watchService.take();
+                final Path directory = (Path) key.watchable();
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path fileName) {
+                        this.changedFiles.add(directory.resolve(fileName));
+                    }
+                }
+                key.reset();
+            }
+        } catch (final InterruptedException | ClosedWatchServiceException e) {
+            // disposed
+        }
+    }
+
+
+    /**
+     * Reloads the shaders whose files changed and notifies the listeners. Called by the render thread at the start of every frame.
+     */
+    void processChanges() {
+        if (this.changedFiles.isEmpty()) {
+            return;
+        }
+
+        // editors and compilers often write a file several times, every file is reloaded once
+        final Set<Path> files = new HashSet<>();
+        Path changed;
+        while ((changed = this.changedFiles.poll()) != null) {
+            files.add(changed);
+        }
+
+        final Set<String> reloaded = new HashSet<>();
+        synchronized (this) {
+            for (final Map.Entry<String, Shader> entry : this.shaders.entrySet()) {
+                final Shader shader = entry.getValue();
+                if (shader.file() != null && files.contains(shader.file()) && this.reload(entry)) {
+                    reloaded.add(entry.getKey());
+                }
+            }
+        }
+
+        // the listeners may load further shaders and wait for pipeline workers that load shaders, so they are notified after the iteration and outside of
+        // the lock
+        if (reloaded.isEmpty()) {
+            return;
+        }
+        for (final ShaderReloadListener listener : this.listeners) {
+            listener.onShaderReload(reloaded);
+        }
+    }
+
+
+    private boolean reload(Map.Entry<String, Shader> entry) {
+        final Shader shader = entry.getValue();
+        final ByteBuffer code;
+        try {
+            code = ShaderCache.read(shader.file());
+        } catch (final UncheckedIOException e) {
+            return false;
+        }
+
+        try {
+            if (!ShaderCache.isSpirv(code)) {
+                return false;
+            }
+            final String hash = ShaderCache.hash(code);
+            if (hash.equals(shader.hash())) {
+                return false;
+            }
+            this.acquireModule(hash, code);
+            this.releaseModule(shader.hash());
+            entry.setValue(new Shader(shader.file(), hash));
+            return true;
+        } finally {
+            MemoryUtil.memFree(code);
+        }
+    }
+
+
+    /**
+     * Stops watching and destroys all modules. Pipelines created from them stay valid.
+     */
+    @Override
+    public synchronized void dispose() {
+        if (this.watchService != null) {
+            try {
+                this.watchService.close();
+            } catch (final IOException e) {
+                // the watcher thread is a daemon
+            }
+        }
+        this.modules.values().forEach(module -> VK10.vkDestroyShaderModule(this.device, module.module, null));
+        this.modules.clear();
+        this.shaders.clear();
+    }
+
+
+    /**
+     * A loaded shader.
+     *
+     * @param file the absolute file it was loaded from, or null for resources in jars
+     * @param hash the content hash of the current code
+     */
+    private record Shader(Path file, String hash) {
+    }
+
+
+    private static class Module {
+        private final long module;
+        private int        users;
+
+
+        private Module(long module) {
+            this.module = module;
+        }
+
+    }
+
+}
@@ -0,0 +1,313 @@
+package de.pottgames.vengine.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.lwjgl.Version;
+import org.lwjgl.util.shaderc.Shaderc;
+import org.lwjgl.vulkan.VK10;
+
+/**
+ * Compiles GLSL to SPIR-V at runtime with shaderc. Every result is stored in a content-addressed directory, keyed by the source, the defines, the stage and the
+ * compiler version, so a warm start reads the SPIR-V from disk and never loads the compiler. shaderc ships with LWJGL, so the LWJGL version identifies the
+ * compiler.
+ *
+ * Variants are compiled in parallel on a thread per core. Sources can't use #include, defines are the way to build permutations. Pass the result to
+ * {@link ShaderCache#getModule(String, byte[])}.
+ */
+public class ShaderCompiler implements Disposable {
+    private final Path            cacheDirectory;
+    private final ExecutorService executor;
+    private final AtomicInteger   compilations = new AtomicInteger();
+    // compilations share the read lock, dispose takes the write lock, so the compiler isn't released while it's in use
+    private final ReadWriteLock   lock         = new ReentrantReadWriteLock();
+    private long                  compiler;
+    private boolean               disposed;
+
+
+    /**
+     * Creates the compiler. The shaderc compiler itself is only created on the first cache miss.
+     *
+     * @param cacheDirectory the directory the SPIR-V is stored in, or null to compile every time
+     */
+    ShaderCompiler(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            final Thread thread = new Thread(runnable, "VEngine-ShaderCompiler-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Reads GLSL source from a file relative to the working directory or, if no such file exists, from the classpath.
+     *
+     * @param name the path of the source
+     * @return the source
+     * @throws UncheckedIOException if the source can't be read
+     */
+    public static String loadSource(String name) {
+        try {
+            final Path file = Path.of(name);
+            if (Files.isRegularFile(file)) {
+                return Files.readString(file);
+            }
+            try (InputStream stream = ShaderCompiler.class.getClassLoader().getResourceAsStream(name)) {
+                if (stream == null) {
+                    throw new IOException("Shader source not found: " + name);
+                }
+                return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Compiles a variant on the calling thread, or reads it from the cache.
+     *
+     * @param variant the variant
+     * @return the SPIR-V code
+     * @throws RuntimeException if the source doesn't compile, with the compiler's error message
+     * @throws IllegalStateException if the compiler was disposed and the variant isn't cached
+     */
+    public byte[] compile(Variant variant) {
+        final String key = ShaderCompiler.cacheKey(variant);
+        final Path cacheFile = this.cacheDirectory != null ? this.cacheDirectory.resolve(key.substring(0, 2)).resolve(key + ".spv") : null;
+        if (cacheFile != null && Files.isRegularFile(cacheFile)) {
+            try {
+                return Files.readAllBytes(cacheFile);
+            } catch (final IOException e) {
+                // compile it again
+            }
+        }
+
+        final byte[] spirv = this.compileSource(variant);
+        if (cacheFile != null) {
+            try {
+                ShaderCompiler.store(cacheFile, spirv);
+            } catch (final IOException e) {
+                // the variant is compiled again on the next start
+                System.err.println("Failed to store compiled shader " + variant.name() + ": " + e.getMessage());
+            }
+        }
+        return spirv;
+    }
+
+
+    /**
+     * Compiles a variant on the compiler threads.
+     *
+     * @param variant the variant
+     * @return the future SPIR-V code
+     */
+    public CompletableFuture<byte[]> compileAsync(Variant variant) {
+        return CompletableFuture.supplyAsync(() -> this.compile(variant), this.executor);
+    }
+
+
+    /**
+     * Compiles all variants in parallel and waits for them.
+     *
+     * @param variants the variants
+     * @return the SPIR-V code of every variant, in the same order
+     * @throws java.util.concurrent.CompletionException if a variant doesn't compile
+     */
+    public List<byte[]> compileAll(List<Variant> variants) {
+        final List<CompletableFuture<byte[]>> futures = new ArrayList<>(variants.size());
+        for (final Variant variant : variants) {
+            futures.add(this.compileAsync(variant));
+        }
+        final List<byte[]> result = new ArrayList<>(variants.size());
+        for (final CompletableFuture<byte[]> future : futures) {
+            result.add(future.join());
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns how often the compiler actually ran, cache hits are not counted.
+     *
+     * @return the number of compilations
+     */
+    public int getCompilationCount() {
+        return this.compilations.get();
+    }
+
+
+    private synchronized long compiler() {
+        if (this.compiler == 0L) {
+            this.compiler = Shaderc.shaderc_compiler_initialize();
+            if (this.compiler == 0L) {
+                throw new RuntimeException("Failed to initialize the shader compiler");
+            }
+        }
+        return this.compiler;
+    }
+
+
+    private byte[] compileSource(Variant variant) {
+        this.lock.readLock().lock();
+        try {
+            if (this.disposed) {
+                throw new IllegalStateException("The shader compiler was disposed");
+            }
+            return this.compileSource(variant, this.compiler());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+
+    private byte[] compileSource(Variant variant, long compiler) {
+        // a compiler can be used by many threads at once, the options can't
+        final long options = Shaderc.shaderc_compile_options_initialize();
+        try {
+            Shaderc.shaderc_compile_options_set_target_env(options, Shaderc.shaderc_target_env_vulkan, Shaderc.shaderc_env_version_vulkan_1_0);
+            Shaderc.shaderc_compile_options_set_optimization_level(options, Shaderc.shaderc_optimization_level_performance);
+            variant.defines().forEach((name, value) -> Shaderc.shaderc_compile_options_add_macro_definition(options, name, value));
+
+            final long result = Shaderc.shaderc_compile_into_spv(compiler, variant.source(), ShaderCompiler.shaderKind(variant.stage()), variant.name(), "main",
+                    options);
+            if (result == 0L) {
+                throw new RuntimeException("Failed to compile shader " + variant.name());
+            }
+            try {
+                if (Shaderc.shaderc_result_get_compilation_status(result) != Shaderc.shaderc_compilation_status_success) {
+                    throw new RuntimeException("Failed to compile shader " + variant.name() + ": " + Shaderc.shaderc_result_get_error_message(result));
+                }
+                final ByteBuffer bytes = Shaderc.shaderc_result_get_bytes(result);
+                final byte[] spirv = new byte[bytes.remaining()];
+                bytes.get(spirv);
+                this.compilations.incrementAndGet();
+                return spirv;
+            } finally {
+                Shaderc.shaderc_result_release(result);
+            }
+        } finally {
+            Shaderc.shaderc_compile_options_release(options);
+        }
+    }
+
+
+    private static int shaderKind(int stage) {
+        switch (stage) {
+            case VK10.VK_SHADER_STAGE_VERTEX_BIT:
+                return Shaderc.shaderc_glsl_vertex_shader;
+            case VK10.VK_SHADER_STAGE_FRAGMENT_BIT:
+                return Shaderc.shaderc_glsl_fragment_shader;
+            case VK10.VK_SHADER_STAGE_COMPUTE_BIT:
+                return Shaderc.shaderc_glsl_compute_shader;
+            case VK10.VK_SHADER_STAGE_GEOMETRY_BIT:
+                return Shaderc.shaderc_glsl_geometry_shader;
+            case VK10.VK_SHADER_STAGE_TESSELLATION_CONTROL_BIT:
+                return Shaderc.shaderc_glsl_tess_control_shader;
+            case VK10.VK_SHADER_STAGE_TESSELLATION_EVALUATION_BIT:
+                return Shaderc.shaderc_glsl_tess_evaluation_shader;
+            default:
+                throw new IllegalArgumentException("Unsupported shader stage: " + stage);
+        }
+    }
+
+
+    /**
+     * Hashes everything that influences the compiled code. The defines are sorted, so their order doesn't matter.
+     */
+    static String cacheKey(Variant variant) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final StringBuilder header = new StringBuilder();
+            header.append("lwjgl ").append(Version.getVersion()).append('\n');
+            header.append("stage ").append(variant.stage()).append('\n');
+            new TreeMap<>(variant.defines()).forEach((name, value) -> header.append("define ").append(name).append('=').append(value).append('\n'));
+            digest.update(header.toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(variant.source().getBytes(StandardCharsets.UTF_8));
+
+            final StringBuilder key = new StringBuilder();
+            for (final byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static void store(Path cacheFile, byte[] spirv) throws IOException {
+        final Path directory = cacheFile.getParent();
+        Files.createDirectories(directory);
+        final Path temporaryFile = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporaryFile, spirv);
+            try {
+                Files.move(temporaryFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+
+    /**
+     * Stops the compiler threads and releases the compiler. Waits for compilations that are running, later ones fail.
+     */
+    @Override
+    public void dispose() {
+        this.executor.shutdownNow();
+        this.lock.writeLock().lock();
+        try {
+            this.disposed = true;
+            if (this.compiler != 0L) {
+                Shaderc.shaderc_compiler_release(this.compiler);
+                this.compiler = 0L;
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * A shader permutation.
+     *
+     * @param name the name used in error messages, usually the source path
+     * @param source the GLSL source
+     * @param stage the VkShaderStageFlagBits of the shader
+     * @param defines the preprocessor defines, an empty value defines the name without a value
+     */
+    public record Variant(String name, String source, int stage, Map<String, String> defines) {
+
+        public Variant(String name, String source, int stage) {
+            this(name, source, stage, Map.of());
+        }
+
+    }
+
+}
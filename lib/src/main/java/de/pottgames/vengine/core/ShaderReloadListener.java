@@ -0,0 +1,17 @@
+package de.pottgames.vengine.core;
+
+import java.util.Set;
+
+@FunctionalInterface
+public interface ShaderReloadListener {
+
+    /**
+     * Called on the render thread at the start of a frame after watched shader files changed and their new modules were created. Rebuild the pipelines that
+     * use any of the shaders, {@link ShaderCache#getModule(String)} returns the new modules. All shaders reloaded in a frame are passed at once, so a
+     * pipeline whose stages changed together is rebuilt once.
+     *
+     * @param names the names the shaders were loaded with
+     */
+    void onShaderReload(Set<String> names);
+
+}
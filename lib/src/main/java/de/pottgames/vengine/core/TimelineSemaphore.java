@@ -0,0 +1,98 @@
+package de.pottgames.vengine.core;
+
+import java.nio.LongBuffer;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VK12;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkSemaphoreCreateInfo;
+import org.lwjgl.vulkan.VkSemaphoreTypeCreateInfo;
+import org.lwjgl.vulkan.VkSemaphoreWaitInfo;
+
+/**
+ * A Vulkan 1.2 timeline semaphore. Its payload is a 64 bit counter that only grows, so a single semaphore tracks the progress of any number of submissions
+ * and the CPU can check or wait for any of them. Waiting and polling use preallocated structs and don't allocate.
+ */
+class TimelineSemaphore implements Disposable {
+    private final VkDevice            device;
+    private final long                semaphore;
+    private final LongBuffer          pSemaphore;
+    private final LongBuffer          pValue;
+    private final VkSemaphoreWaitInfo waitInfo;
+
+
+    TimelineSemaphore(VkDevice device, long initialValue) {
+        this.device = device;
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkSemaphoreTypeCreateInfo typeInfo = VkSemaphoreTypeCreateInfo.calloc(stack);
+            typeInfo.sType(VK12.VK_STRUCTURE_TYPE_SEMAPHORE_TYPE_CREATE_INFO);
+            typeInfo.semaphoreType(VK12.VK_SEMAPHORE_TYPE_TIMELINE);
+            typeInfo.initialValue(initialValue);
+
+            final VkSemaphoreCreateInfo createInfo = VkSemaphoreCreateInfo.calloc(stack);
+            createInfo.sType(VK10.VK_STRUCTURE_TYPE_SEMAPHORE_CREATE_INFO);
+            createInfo.pNext(typeInfo);
+
+            final LongBuffer pTimeline = stack.mallocLong(1);
+            if (VK10.vkCreateSemaphore(device, createInfo, null, pTimeline) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create timeline semaphore");
+            }
+            this.semaphore = pTimeline.get(0);
+        }
+
+        this.pSemaphore = MemoryUtil.memAllocLong(1).put(0, this.semaphore);
+        this.pValue = MemoryUtil.memAllocLong(1);
+        this.waitInfo = VkSemaphoreWaitInfo.calloc();
+        this.waitInfo.sType(VK12.VK_STRUCTURE_TYPE_SEMAPHORE_WAIT_INFO);
+        this.waitInfo.semaphoreCount(1);
+        this.waitInfo.pSemaphores(this.pSemaphore);
+        this.waitInfo.pValues(this.pValue);
+    }
+
+
+    long semaphore() {
+        return this.semaphore;
+    }
+
+
+    /**
+     * Returns the current counter value without blocking.
+     *
+     * @return the counter value
+     */
+    long value() {
+        if (VK12.vkGetSemaphoreCounterValue(this.device, this.semaphore, this.pValue) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to query timeline semaphore");
+        }
+        return this.pValue.get(0);
+    }
+
+
+    /**
+     * Blocks until the counter reached the value.
+     *
+     * @param value the value to wait for
+     */
+    void await(long value) {
+        this.pValue.put(0, value);
+        if (VK12.vkWaitSemaphores(this.device, this.waitInfo, VulkanUtils.UINT64_MAX) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to wait for timeline semaphore");
+        }
+    }
+
+
+    /**
+     * Destroys the semaphore and frees the preallocated structs. The GPU must not use the semaphore anymore.
+     */
+    @Override
+    public void dispose() {
+        VK10.vkDestroySemaphore(this.device, this.semaphore, null);
+        this.waitInfo.free();
+        MemoryUtil.memFree(this.pSemaphore);
+        MemoryUtil.memFree(this.pValue);
+    }
+
+}
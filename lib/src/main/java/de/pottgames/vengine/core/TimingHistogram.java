@@ -0,0 +1,134 @@
+package de.pottgames.vengine.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with a fixed set of log-linear buckets. Every power of two range is split into 32 buckets, so a percentile is exact
+ * up to 63ns and off by less than 3.2% above. Recording is lock-free and doesn't allocate, so it's safe to call from the render loop while other threads
+ * read the percentiles.
+ *
+ * Percentiles are reported as the upper bound of the bucket they fall into, capped by the largest recorded value, so they never understate a duration.
+ */
+public class TimingHistogram {
+    private static final int SUB_BUCKET_BITS  = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << TimingHistogram.SUB_BUCKET_BITS;
+    // linear buckets for values below 2 * SUB_BUCKET_COUNT, SUB_BUCKET_COUNT buckets for every higher power of two up to 2^63
+    private static final int BUCKET_COUNT     = (63 - TimingHistogram.SUB_BUCKET_BITS + 1) * TimingHistogram.SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(TimingHistogram.BUCKET_COUNT);
+    private final AtomicLong      count   = new AtomicLong();
+    private final AtomicLong      max     = new AtomicLong();
+
+
+    TimingHistogram() {
+        // created by FrameTimings
+    }
+
+
+    /**
+     * Records a duration. Negative durations are recorded as 0.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    void record(long nanos) {
+        final long value = Math.max(nanos, 0L);
+        this.buckets.incrementAndGet(TimingHistogram.bucketIndex(value));
+        this.count.incrementAndGet();
+
+        long currentMax = this.max.get();
+        while (value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+            currentMax = this.max.get();
+        }
+    }
+
+
+    private static int bucketIndex(long value) {
+        if (value < 2 * TimingHistogram.SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - TimingHistogram.SUB_BUCKET_BITS;
+        return shift * TimingHistogram.SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+
+    private static long bucketUpperBound(int index) {
+        if (index < 2 * TimingHistogram.SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / TimingHistogram.SUB_BUCKET_COUNT - 1;
+        final long mantissa = index % TimingHistogram.SUB_BUCKET_COUNT + TimingHistogram.SUB_BUCKET_COUNT;
+        return (mantissa + 1L << shift) - 1L;
+    }
+
+
+    /**
+     * Returns the duration the given fraction of all recorded durations is less than or equal to. Recordings that happen during the call may or may not be
+     * included.
+     *
+     * @param percentile the percentile from 0 to 100
+     * @return the duration in nanoseconds, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100: " + percentile);
+        }
+        final long total = this.count.get();
+        if (total == 0L) {
+            return 0L;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0L;
+        for (int i = 0; i < TimingHistogram.BUCKET_COUNT; i++) {
+            seen += this.buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(TimingHistogram.bucketUpperBound(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+
+    public long getP50() {
+        return this.getPercentile(50.0);
+    }
+
+
+    public long getP95() {
+        return this.getPercentile(95.0);
+    }
+
+
+    public long getP99() {
+        return this.getPercentile(99.0);
+    }
+
+
+    /**
+     * Returns the largest recorded duration.
+     *
+     * @return the duration in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+
+    /**
+     * Clears the histogram. Durations recorded concurrently may be partially lost.
+     */
+    public void reset() {
+        for (int i = 0; i < TimingHistogram.BUCKET_COUNT; i++) {
+            this.buckets.set(i, 0L);
+        }
+        this.count.set(0L);
+        this.max.set(0L);
+    }
+
+}
@@ -0,0 +1,191 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.function.LongConsumer;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkDescriptorPoolCreateInfo;
+import org.lwjgl.vulkan.VkDescriptorPoolSize;
+import org.lwjgl.vulkan.VkDescriptorSetAllocateInfo;
+import org.lwjgl.vulkan.VkDevice;
+
+/**
+ * Per object uniform data without per object descriptor sets. All uniform blocks of a frame are written into a {@link FrameRingBuffer}, and a single
+ * descriptor set with a dynamic uniform buffer points at the ring. A draw selects its block with the dynamic offset of
+ * {@link CommandRecorder#bindDescriptorSet(long, int, long, int)}, so thousands of objects per frame need neither allocations nor descriptor writes.
+ *
+ * Shaders declare the block as a regular uniform block:
+ *
+ * <pre>
+ * layout(set = 1, binding = 0) uniform Object { mat4 model; vec4 color; } object;
+ * </pre>
+ *
+ * Small data that changes with every draw, like an object index, fits in push constants, see {@link CommandRecorder#pushConstants(long, int, int, ByteBuffer)}.
+ *
+ * Writing is synchronized, so parallel recording jobs can write as well.
+ */
+public class UniformRing implements Disposable {
+    public static final int BINDING = 0;
+
+    // the largest block a shader can see through the descriptor, the spec guarantees 16 KiB
+    private static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    private final VkDevice        device;
+    private final FrameRingBuffer ring;
+    private final long            alignment;
+    private final int             blockSize;
+    private final long            setLayout;
+    private final long            descriptorPool;
+    private final long            descriptorSet;
+
+
+    /**
+     * Creates the ring and its descriptor set.
+     *
+     * @param device the device
+     * @param physicalDevice the physical device the limits are taken from
+     * @param allocator the allocator
+     * @param layouts the cache the set layout is taken from
+     * @param capacity the size of the ring in bytes
+     * @param frameWaiter blocks until the frame with the submit value completed, see {@link VulkanInitializer#waitForFrameValue(long)}
+     */
+    UniformRing(VkDevice device, PhysicalDevice physicalDevice, MemoryAllocator allocator, DescriptorLayoutCache layouts, long capacity,
+            LongConsumer frameWaiter) {
+        this.device = device;
+        this.alignment = Math.max(physicalDevice.getMinUniformBufferOffsetAlignment(), 16L);
+        this.blockSize = (int) Math.min(UniformRing.MAX_BLOCK_SIZE, physicalDevice.getMaxUniformBufferRange());
+        // the descriptor range starts at every dynamic offset, the padding keeps it inside the buffer
+        this.ring = new FrameRingBuffer(allocator, capacity, this.blockSize, VK10.VK_BUFFER_USAGE_UNIFORM_BUFFER_BIT, frameWaiter);
+        this.setLayout = layouts.getSetLayout(new DescriptorBinding(UniformRing.BINDING, VK10.VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC, 1,
+                VK10.VK_SHADER_STAGE_ALL));
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkDescriptorPoolSize.Buffer poolSizes = VkDescriptorPoolSize.calloc(1, stack);
+            poolSizes.get(0).type(VK10.VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC);
+            poolSizes.get(0).descriptorCount(1);
+
+            final VkDescriptorPoolCreateInfo poolInfo = VkDescriptorPoolCreateInfo.calloc(stack);
+            poolInfo.sType(VK10.VK_STRUCTURE_TYPE_DESCRIPTOR_POOL_CREATE_INFO);
+            poolInfo.maxSets(1);
+            poolInfo.pPoolSizes(poolSizes);
+
+            final LongBuffer pHandle = stack.mallocLong(1);
+            if (VK10.vkCreateDescriptorPool(device, poolInfo, null, pHandle) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create uniform ring descriptor pool");
+            }
+            this.descriptorPool = pHandle.get(0);
+
+            final VkDescriptorSetAllocateInfo allocateInfo = VkDescriptorSetAllocateInfo.calloc(stack);
+            allocateInfo.sType(VK10.VK_STRUCTURE_TYPE_DESCRIPTOR_SET_ALLOCATE_INFO);
+            allocateInfo.descriptorPool(this.descriptorPool);
+            allocateInfo.pSetLayouts(stack.longs(this.setLayout));
+
+            if (VK10.vkAllocateDescriptorSets(device, allocateInfo, pHandle) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to allocate uniform ring descriptor set");
+            }
+            this.descriptorSet = pHandle.get(0);
+        }
+
+        // the set never changes, only the dynamic offset does
+        final DescriptorWriter writer = new DescriptorWriter(device);
+        writer.writeBuffer(this.descriptorSet, UniformRing.BINDING, 0, VK10.VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC, this.ring.getBuffer(), 0L, this.blockSize);
+        writer.flush();
+        writer.dispose();
+    }
+
+
+    void beginFrame(long frameValue, long completedFrameValue) {
+        this.ring.beginFrame(frameValue, completedFrameValue);
+    }
+
+
+    void endFrame() {
+        this.ring.endFrame();
+    }
+
+
+    /**
+     * Allocates a uniform block for the current frame. Write it through {@link #getMapping()} until the frame is submitted.
+     *
+     * @param size the size in bytes, at most {@link #getBlockSize()}
+     * @return the dynamic offset of the block
+     */
+    public int allocate(int size) {
+        if (size > this.blockSize) {
+            throw new IllegalArgumentException("A uniform block can't be larger than " + this.blockSize + " bytes: " + size);
+        }
+        return (int) this.ring.allocate(size, this.alignment);
+    }
+
+
+    /**
+     * Copies a uniform block into the ring.
+     *
+     * @param data the block, from its position to its limit. The position is not changed.
+     * @return the dynamic offset of the block
+     */
+    public int write(ByteBuffer data) {
+        final int offset = this.allocate(data.remaining());
+        MemoryUtil.memCopy(MemoryUtil.memAddress(data), MemoryUtil.memAddress(this.ring.getMapping(), offset), data.remaining());
+        return offset;
+    }
+
+
+    /**
+     * Returns the mapping of the whole ring. Write the allocated blocks with absolute puts.
+     *
+     * @return the mapping
+     */
+    public ByteBuffer getMapping() {
+        return this.ring.getMapping();
+    }
+
+
+    /**
+     * Returns the set layout with the dynamic uniform buffer at {@link #BINDING}, to build pipeline layouts with.
+     *
+     * @return the VkDescriptorSetLayout, owned by the {@link DescriptorLayoutCache}
+     */
+    public long getSetLayout() {
+        return this.setLayout;
+    }
+
+
+    public long getDescriptorSet() {
+        return this.descriptorSet;
+    }
+
+
+    /**
+     * Returns the size of the uniform block the shaders see at every offset. Blocks may be smaller.
+     *
+     * @return the size in bytes
+     */
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+
+    /**
+     * Returns the alignment of the dynamic offsets, at least minUniformBufferOffsetAlignment.
+     *
+     * @return the alignment in bytes
+     */
+    public long getAlignment() {
+        return this.alignment;
+    }
+
+
+    /**
+     * Destroys the ring and the descriptor set. The device must be idle.
+     */
+    @Override
+    public void dispose() {
+        VK10.vkDestroyDescriptorPool(this.device, this.descriptorPool, null);
+        this.ring.dispose();
+    }
+
+}
@@ -0,0 +1,372 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkBufferCopy;
+import org.lwjgl.vulkan.VkBufferMemoryBarrier;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkCommandBufferBeginInfo;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkFenceCreateInfo;
+import org.lwjgl.vulkan.VkMemoryBarrier;
+import org.lwjgl.vulkan.VkQueue;
+import org.lwjgl.vulkan.VkSubmitInfo;
+
+/**
+ * Uploads data into device local buffers without stalling the render loop. The data is copied into a persistently mapped staging ring buffer, and all copies
+ * requested during a frame are recorded into one command buffer that is submitted at the start of the next frame. The copies run on a dedicated transfer
+ * queue if the device has one, or on the graphics queue otherwise.
+ *
+ * The render thread polls the batch fences every frame. Once a batch completed, its staging range is reused and the buffers are handed to the graphics queue:
+ * with a dedicated transfer queue the queue family ownership is released on the transfer queue and acquired at the start of the current frame's command
+ * buffer, otherwise a memory barrier makes the copies visible. Then the futures complete. Everything recorded after that, on any thread, sees the data.
+ *
+ * Uploads can be requested from any thread. If the staging ring is full, other threads block until the render thread retired a batch, the render thread
+ * itself submits and waits for the oldest batch.
+ */
+public class UploadManager implements Disposable {
+    private static final int STAGING_ALIGNMENT = 16;
+
+    private final VkDevice        device;
+    private final MemoryAllocator allocator;
+    private final VkQueue         transferQueue;
+    private final int             transferFamily;
+    private final int             graphicsFamily;
+    private final Thread          renderThread;
+    private final long            commandPool;
+    private final GpuBuffer       staging;
+    private final long            stagingSize;
+    private final long            maxChunkSize;
+
+    // STAGING RING, the range from tail to head is used by the pending and the submitted batches
+    private long head;
+    private long tail;
+
+    // BATCHES
+    private final ArrayDeque<Batch> freeBatches      = new ArrayDeque<>();
+    private final ArrayDeque<Batch> submittedBatches = new ArrayDeque<>();
+    private final List<Batch>       completedBatches = new ArrayList<>();
+    private Batch                   pendingBatch;
+
+
+    UploadManager(VkDevice device, MemoryAllocator allocator, VkQueue transferQueue, int transferFamily, int graphicsFamily, long stagingSize) {
+        this.device = device;
+        this.allocator = allocator;
+        this.transferQueue = transferQueue;
+        this.transferFamily = transferFamily;
+        this.graphicsFamily = graphicsFamily;
+        this.renderThread = Thread.currentThread();
+        this.commandPool = VulkanUtils.createCommandPool(device, transferFamily, VK10.VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT);
+        this.staging = allocator.createBuffer(stagingSize, VK10.VK_BUFFER_USAGE_TRANSFER_SRC_BIT, MemoryUsage.UPLOAD);
+        this.stagingSize = stagingSize;
+        // reserve() rounds every chunk up to the alignment, a larger chunk would never fit
+        this.maxChunkSize = stagingSize & -UploadManager.STAGING_ALIGNMENT;
+        this.pendingBatch = this.obtainBatch();
+    }
+
+
+    /**
+     * Returns true if the copies run on a dedicated transfer queue.
+     *
+     * @return true if a dedicated transfer queue is used
+     */
+    public boolean hasTransferQueue() {
+        return this.transferFamily != this.graphicsFamily;
+    }
+
+
+    /**
+     * Copies the remaining bytes of the data into the destination buffer. The data is copied into the staging ring right away, so the data buffer can be
+     * reused when this method returns. Its position is not changed. Data larger than the staging ring is split into several copies.
+     *
+     * The destination must have been created with {@link VK10#VK_BUFFER_USAGE_TRANSFER_DST_BIT} and the range must not be used by frames in flight.
+     *
+     * @param data the data
+     * @param destination the destination buffer
+     * @param destinationOffset the offset in the destination buffer in bytes
+     * @return a future that completes when the data can be used by commands recorded afterwards, already completed if there is no data
+     */
+    public CompletableFuture<Void> upload(ByteBuffer data, GpuBuffer destination, long destinationOffset) {
+        final int size = data.remaining();
+        if (destinationOffset < 0L || destinationOffset + size > destination.getSize()) {
+            throw new IllegalArgumentException("The upload of " + size + " bytes at offset " + destinationOffset + " exceeds the buffer size of "
+                    + destination.getSize() + " bytes");
+        }
+        if (size == 0) {
+            // copies of 0 bytes are invalid
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (this) {
+            int copied = 0;
+            do {
+                final int chunkSize = (int) Math.min(size - copied, this.maxChunkSize);
+                final long stagingOffset = this.reserve(chunkSize);
+                this.staging.getMapping().put((int) stagingOffset, data, data.position() + copied, chunkSize);
+                // upload memory isn't necessarily coherent, the copy must see the bytes
+                this.allocator.flush(this.staging, stagingOffset, chunkSize);
+                this.pendingBatch.copies.add(new Copy(stagingOffset, destination.getBuffer(), destinationOffset + copied, chunkSize,
+                        destination.isConcurrent()));
+                copied += chunkSize;
+            } while (copied < size);
+            // batches complete in order, so the future belongs to the batch of the last chunk
+            this.pendingBatch.futures.add(future);
+        }
+        return future;
+    }
+
+
+    private long reserve(long size) {
+        final long alignedSize = (size + UploadManager.STAGING_ALIGNMENT - 1) & -UploadManager.STAGING_ALIGNMENT;
+        while (true) {
+            final boolean empty = this.submittedBatches.isEmpty() && this.pendingBatch.copies.isEmpty();
+            if (empty) {
+                this.head = 0L;
+                this.tail = 0L;
+            }
+
+            // with head == tail the ring is either empty or full
+            if (this.head > this.tail || empty) {
+                if (this.stagingSize - this.head >= alignedSize) {
+                    final long offset = this.head;
+                    this.head += alignedSize;
+                    return offset;
+                }
+                if (this.tail >= alignedSize) {
+                    // wrap around, the rest of the ring stays unused until the tail passes it
+                    this.head = alignedSize;
+                    return 0L;
+                }
+            } else if (this.head < this.tail && this.tail - this.head >= alignedSize) {
+                final long offset = this.head;
+                this.head += alignedSize;
+                return offset;
+            }
+
+            this.awaitSpace();
+        }
+    }
+
+
+    private void awaitSpace() {
+        if (Thread.currentThread() != this.renderThread) {
+            try {
+                this.wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for staging memory", e);
+            }
+            return;
+        }
+
+        // the render thread can't wait for itself, it stalls on the oldest batch instead
+        if (this.submittedBatches.isEmpty()) {
+            this.submitPending();
+        }
+        final Batch oldest = this.submittedBatches.pollFirst();
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VK10.vkWaitForFences(this.device, stack.longs(oldest.fence), true, VulkanUtils.UINT64_MAX);
+        }
+        this.retire(oldest);
+    }
+
+
+    /**
+     * Hands the completed batches to the graphics queue and submits the copies requested since the last call. Called by the render thread at the start of
+     * every frame, outside of a render pass.
+     *
+     * @param commandBuffer the frame's primary command buffer
+     */
+    synchronized void update(VkCommandBuffer commandBuffer) {
+        while (!this.submittedBatches.isEmpty() && VK10.vkGetFenceStatus(this.device, this.submittedBatches.peekFirst().fence) == VK10.VK_SUCCESS) {
+            this.retire(this.submittedBatches.pollFirst());
+        }
+        if (!this.completedBatches.isEmpty()) {
+            this.acquire(commandBuffer);
+        }
+        if (!this.pendingBatch.copies.isEmpty()) {
+            this.submitPending();
+        }
+    }
+
+
+    private void retire(Batch batch) {
+        this.tail = batch.stagingEnd;
+        this.completedBatches.add(batch);
+        this.notifyAll();
+    }
+
+
+    private void acquire(VkCommandBuffer commandBuffer) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            if (this.hasTransferQueue()) {
+                for (int i = 0; i < this.completedBatches.size(); i++) {
+                    final VkBufferMemoryBarrier.Buffer barriers = this.ownershipBarriers(this.completedBatches.get(i), stack);
+                    barriers.forEach(barrier -> {
+                        barrier.srcAccessMask(0);
+                        barrier.dstAccessMask(VK10.VK_ACCESS_MEMORY_READ_BIT);
+                    });
+                    VK10.vkCmdPipelineBarrier(commandBuffer, VK10.VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, VK10.VK_PIPELINE_STAGE_ALL_COMMANDS_BIT, 0, null, barriers,
+                            null);
+                }
+            } else {
+                // the copies ran earlier on the same queue
+                final VkMemoryBarrier.Buffer barrier = VkMemoryBarrier.calloc(1, stack);
+                barrier.sType(VK10.VK_STRUCTURE_TYPE_MEMORY_BARRIER);
+                barrier.srcAccessMask(VK10.VK_ACCESS_TRANSFER_WRITE_BIT);
+                barrier.dstAccessMask(VK10.VK_ACCESS_MEMORY_READ_BIT);
+                VK10.vkCmdPipelineBarrier(commandBuffer, VK10.VK_PIPELINE_STAGE_TRANSFER_BIT, VK10.VK_PIPELINE_STAGE_ALL_COMMANDS_BIT, 0, barrier, null, null);
+            }
+        }
+
+        for (int i = 0; i < this.completedBatches.size(); i++) {
+            final Batch batch = this.completedBatches.get(i);
+            batch.futures.forEach(future -> future.complete(null));
+            batch.copies.clear();
+            batch.futures.clear();
+            this.freeBatches.addLast(batch);
+        }
+        this.completedBatches.clear();
+    }
+
+
+    /**
+     * Creates the release or acquire barriers of a batch. Both must describe the same ranges.
+     */
+    private VkBufferMemoryBarrier.Buffer ownershipBarriers(Batch batch, MemoryStack stack) {
+        final VkBufferMemoryBarrier.Buffer barriers = VkBufferMemoryBarrier.calloc(batch.copies.size(), stack);
+        for (int i = 0; i < batch.copies.size(); i++) {
+            final Copy copy = batch.copies.get(i);
+            final VkBufferMemoryBarrier barrier = barriers.get(i);
+            barrier.sType(VK10.VK_STRUCTURE_TYPE_BUFFER_MEMORY_BARRIER);
+            // concurrent buffers are never owned by a family, for them the barriers only make the copies available and visible
+            barrier.srcQueueFamilyIndex(copy.concurrent() ? VK10.VK_QUEUE_FAMILY_IGNORED : this.transferFamily);
+            barrier.dstQueueFamilyIndex(copy.concurrent() ? VK10.VK_QUEUE_FAMILY_IGNORED : this.graphicsFamily);
+            barrier.buffer(copy.destination());
+            barrier.offset(copy.destinationOffset());
+            barrier.size(copy.size());
+        }
+        return barriers;
+    }
+
+
+    private void submitPending() {
+        final Batch batch = this.pendingBatch;
+        batch.stagingEnd = this.head;
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.calloc(stack);
+            beginInfo.sType(VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+            beginInfo.flags(VK10.VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+            if (VK10.vkBeginCommandBuffer(batch.commandBuffer, beginInfo) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to begin recording upload command buffer");
+            }
+
+            final VkBufferCopy.Buffer region = VkBufferCopy.calloc(1, stack);
+            for (int i = 0; i < batch.copies.size(); i++) {
+                final Copy copy = batch.copies.get(i);
+                region.srcOffset(copy.stagingOffset());
+                region.dstOffset(copy.destinationOffset());
+                region.size(copy.size());
+                VK10.vkCmdCopyBuffer(batch.commandBuffer, this.staging.getBuffer(), copy.destination(), region);
+            }
+
+            if (this.hasTransferQueue()) {
+                final VkBufferMemoryBarrier.Buffer barriers = this.ownershipBarriers(batch, stack);
+                barriers.forEach(barrier -> {
+                    barrier.srcAccessMask(VK10.VK_ACCESS_TRANSFER_WRITE_BIT);
+                    barrier.dstAccessMask(0);
+                });
+                VK10.vkCmdPipelineBarrier(batch.commandBuffer, VK10.VK_PIPELINE_STAGE_TRANSFER_BIT, VK10.VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, 0, null,
+                        barriers, null);
+            }
+
+            if (VK10.vkEndCommandBuffer(batch.commandBuffer) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to record upload command buffer");
+            }
+
+            final VkSubmitInfo submitInfo = VkSubmitInfo.calloc(stack);
+            submitInfo.sType(VK10.VK_STRUCTURE_TYPE_SUBMIT_INFO);
+            submitInfo.pCommandBuffers(stack.pointers(batch.commandBuffer));
+            VK10.vkResetFences(this.device, batch.fence);
+            if (VK10.vkQueueSubmit(this.transferQueue, submitInfo, batch.fence) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to submit upload command buffer");
+            }
+        }
+
+        this.submittedBatches.addLast(batch);
+        this.pendingBatch = this.obtainBatch();
+    }
+
+
+    private Batch obtainBatch() {
+        final Batch free = this.freeBatches.pollFirst();
+        if (free != null) {
+            return free;
+        }
+
+        final VkCommandBuffer commandBuffer = VulkanUtils.allocateCommandBuffer(this.device, this.commandPool, VK10.VK_COMMAND_BUFFER_LEVEL_PRIMARY);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkFenceCreateInfo fenceInfo = VkFenceCreateInfo.calloc(stack);
+            fenceInfo.sType(VK10.VK_STRUCTURE_TYPE_FENCE_CREATE_INFO);
+            final LongBuffer pFence = stack.mallocLong(1);
+            if (VK10.vkCreateFence(this.device, fenceInfo, null, pFence) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create upload fence");
+            }
+
+            return new Batch(commandBuffer, pFence.get(0));
+        }
+    }
+
+
+    /**
+     * Destroys the staging buffer, the command pool and the fences. The device must be idle. Futures of submitted copies complete, futures of copies that
+     * were never submitted complete exceptionally.
+     */
+    @Override
+    public synchronized void dispose() {
+        this.submittedBatches.forEach(batch -> batch.futures.forEach(future -> future.complete(null)));
+        this.completedBatches.forEach(batch -> batch.futures.forEach(future -> future.complete(null)));
+        this.pendingBatch.futures.forEach(future -> future.completeExceptionally(new IllegalStateException("The upload manager was disposed")));
+
+        this.freeBatches.addAll(this.submittedBatches);
+        this.freeBatches.addAll(this.completedBatches);
+        this.freeBatches.add(this.pendingBatch);
+        this.freeBatches.forEach(batch -> VK10.vkDestroyFence(this.device, batch.fence, null));
+        this.freeBatches.clear();
+        this.submittedBatches.clear();
+        this.completedBatches.clear();
+
+        VK10.vkDestroyCommandPool(this.device, this.commandPool, null);
+        this.allocator.destroyBuffer(this.staging);
+    }
+
+
+    private record Copy(long stagingOffset, long destination, long destinationOffset, long size, boolean concurrent) {
+    }
+
+
+    private static class Batch {
+        private final VkCommandBuffer               commandBuffer;
+        private final long                          fence;
+        private final List<Copy>                    copies  = new ArrayList<>();
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        private long                                stagingEnd;
+
+
+        private Batch(VkCommandBuffer commandBuffer, long fence) {
+            this.commandBuffer = commandBuffer;
+            this.fence = fence;
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+package de.pottgames.vengine.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkPipelineVertexInputStateCreateInfo;
+import org.lwjgl.vulkan.VkVertexInputAttributeDescription;
+import org.lwjgl.vulkan.VkVertexInputBindingDescription;
+
+/**
+ * Describes the interleaved vertex attributes of one vertex buffer binding. Attributes are tightly packed in the order they are added, the offsets and the
+ * stride are computed from their formats.
+ *
+ * <pre>
+ * VertexLayout layout = new VertexLayout().add(0, VK10.VK_FORMAT_R32G32B32_SFLOAT).add(1, VK10.VK_FORMAT_R32G32_SFLOAT);
+ * </pre>
+ *
+ * Layouts are compared by value, so pipelines with equal layouts are shared, see {@link PipelineState}.
+ */
+public class VertexLayout {
+    private final List<Attribute> attributes = new ArrayList<>();
+    private int                   stride;
+    private boolean               perInstance;
+
+
+    /**
+     * Appends an attribute.
+     *
+     * @param location the shader input location
+     * @param format the VkFormat, see {@link #formatSize(int)} for the supported ones
+     * @return this layout
+     */
+    public VertexLayout add(int location, int format) {
+        this.attributes.add(new Attribute(location, format, this.stride));
+        this.stride += VertexLayout.formatSize(format);
+        return this;
+    }
+
+
+    /**
+     * Appends unused bytes, for example to align the stride.
+     *
+     * @param bytes the number of bytes
+     * @return this layout
+     */
+    public VertexLayout skip(int bytes) {
+        this.stride += bytes;
+        return this;
+    }
+
+
+    /**
+     * Advances the attributes per instance instead of per vertex.
+     *
+     * @param perInstance true to step per instance
+     * @return this layout
+     */
+    public VertexLayout setPerInstance(boolean perInstance) {
+        this.perInstance = perInstance;
+        return this;
+    }
+
+
+    public int getStride() {
+        return this.stride;
+    }
+
+
+    public int getAttributeCount() {
+        return this.attributes.size();
+    }
+
+
+    /**
+     * Fills the vertex input state of a pipeline with this layout on binding 0.
+     *
+     * @param vertexInputInfo the vertex input state
+     * @param stack the stack the descriptions are allocated on
+     */
+    void fillVertexInputState(VkPipelineVertexInputStateCreateInfo vertexInputInfo, MemoryStack stack) {
+        final VkVertexInputBindingDescription.Buffer bindings = VkVertexInputBindingDescription.calloc(1, stack);
+        bindings.binding(0);
+        bindings.stride(this.stride);
+        bindings.inputRate(this.perInstance ? VK10.VK_VERTEX_INPUT_RATE_INSTANCE : VK10.VK_VERTEX_INPUT_RATE_VERTEX);
+
+        final VkVertexInputAttributeDescription.Buffer attributeDescriptions = VkVertexInputAttributeDescription.calloc(this.attributes.size(), stack);
+        for (int i = 0; i < this.attributes.size(); i++) {
+            final Attribute attribute = this.attributes.get(i);
+            final VkVertexInputAttributeDescription description = attributeDescriptions.get(i);
+            description.binding(0);
+            description.location(attribute.location());
+            description.format(attribute.format());
+            description.offset(attribute.offset());
+        }
+
+        vertexInputInfo.pVertexBindingDescriptions(bindings);
+        vertexInputInfo.pVertexAttributeDescriptions(attributeDescriptions);
+    }
+
+
+    /**
+     * Returns the size of a vertex attribute format in bytes.
+     *
+     * @param format the VkFormat
+     * @return the size in bytes
+     * @throws IllegalArgumentException if the format isn't a supported vertex format
+     */
+    public static int formatSize(int format) {
+        switch (format) {
+            case VK10.VK_FORMAT_R8G8B8A8_UNORM:
+            case VK10.VK_FORMAT_R8G8B8A8_SNORM:
+            case VK10.VK_FORMAT_R8G8B8A8_UINT:
+            case VK10.VK_FORMAT_R16G16_SFLOAT:
+            case VK10.VK_FORMAT_R16G16_UNORM:
+            case VK10.VK_FORMAT_R32_SFLOAT:
+            case VK10.VK_FORMAT_R32_SINT:
+            case VK10.VK_FORMAT_R32_UINT:
+            case VK10.VK_FORMAT_A2B10G10R10_SNORM_PACK32:
+                return 4;
+            case VK10.VK_FORMAT_R16G16B16A16_SFLOAT:
+            case VK10.VK_FORMAT_R16G16B16A16_UNORM:
+            case VK10.VK_FORMAT_R32G32_SFLOAT:
+            case VK10.VK_FORMAT_R32G32_SINT:
+            case VK10.VK_FORMAT_R32G32_UINT:
+                return 8;
+            case VK10.VK_FORMAT_R32G32B32_SFLOAT:
+            case VK10.VK_FORMAT_R32G32B32_SINT:
+            case VK10.VK_FORMAT_R32G32B32_UINT:
+                return 12;
+            case VK10.VK_FORMAT_R32G32B32A32_SFLOAT:
+            case VK10.VK_FORMAT_R32G32B32A32_SINT:
+            case VK10.VK_FORMAT_R32G32B32A32_UINT:
+                return 16;
+            default:
+                throw new IllegalArgumentException("Unsupported vertex attribute format: " + format);
+        }
+    }
+
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.attributes, this.stride, this.perInstance);
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof VertexLayout other)) {
+            return false;
+        }
+        return this.stride == other.stride && this.perInstance == other.perInstance && this.attributes.equals(other.attributes);
+    }
+
+
+    private record Attribute(int location, int format, int offset) {
+    }
+
+}
@@ -4,14 +4,11 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -21,19 +18,25 @@ import org.lwjgl.PointerBuffer;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.GLFWVulkan;
 import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 import org.lwjgl.system.Pointer;
 import org.lwjgl.vulkan.EXTDebugUtils;
+import org.lwjgl.vulkan.EXTDescriptorIndexing;
+import org.lwjgl.vulkan.KHRDrawIndirectCount;
+import org.lwjgl.vulkan.KHRDynamicRendering;
 import org.lwjgl.vulkan.KHRSurface;
 import org.lwjgl.vulkan.KHRSwapchain;
+import org.lwjgl.vulkan.VK;
 import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VK12;
+import org.lwjgl.vulkan.VK13;
 import org.lwjgl.vulkan.VkApplicationInfo;
 import org.lwjgl.vulkan.VkAttachmentDescription;
 import org.lwjgl.vulkan.VkAttachmentReference;
+import org.lwjgl.vulkan.VkBufferCreateInfo;
 import org.lwjgl.vulkan.VkClearValue;
 import org.lwjgl.vulkan.VkCommandBuffer;
-import org.lwjgl.vulkan.VkCommandBufferAllocateInfo;
 import org.lwjgl.vulkan.VkCommandBufferBeginInfo;
-import org.lwjgl.vulkan.VkCommandPoolCreateInfo;
 import org.lwjgl.vulkan.VkDebugUtilsMessengerCreateInfoEXT;
 import org.lwjgl.vulkan.VkDevice;
 import org.lwjgl.vulkan.VkDeviceCreateInfo;
@@ -42,31 +45,28 @@ import org.lwjgl.vulkan.VkExtensionProperties;
 import org.lwjgl.vulkan.VkExtent2D;
 import org.lwjgl.vulkan.VkFenceCreateInfo;
 import org.lwjgl.vulkan.VkFramebufferCreateInfo;
-import org.lwjgl.vulkan.VkGraphicsPipelineCreateInfo;
+import org.lwjgl.vulkan.VkImageCreateInfo;
+import org.lwjgl.vulkan.VkImageMemoryBarrier;
 import org.lwjgl.vulkan.VkImageViewCreateInfo;
 import org.lwjgl.vulkan.VkInstance;
 import org.lwjgl.vulkan.VkInstanceCreateInfo;
-import org.lwjgl.vulkan.VkOffset2D;
+import org.lwjgl.vulkan.VkMemoryAllocateInfo;
+import org.lwjgl.vulkan.VkMemoryBarrier;
+import org.lwjgl.vulkan.VkMemoryRequirements;
 import org.lwjgl.vulkan.VkPhysicalDevice;
+import org.lwjgl.vulkan.VkPhysicalDeviceDescriptorIndexingFeatures;
+import org.lwjgl.vulkan.VkPhysicalDeviceDynamicRenderingFeatures;
 import org.lwjgl.vulkan.VkPhysicalDeviceFeatures;
-import org.lwjgl.vulkan.VkPipelineColorBlendAttachmentState;
-import org.lwjgl.vulkan.VkPipelineColorBlendStateCreateInfo;
-import org.lwjgl.vulkan.VkPipelineInputAssemblyStateCreateInfo;
-import org.lwjgl.vulkan.VkPipelineLayoutCreateInfo;
-import org.lwjgl.vulkan.VkPipelineMultisampleStateCreateInfo;
-import org.lwjgl.vulkan.VkPipelineRasterizationStateCreateInfo;
-import org.lwjgl.vulkan.VkPipelineShaderStageCreateInfo;
-import org.lwjgl.vulkan.VkPipelineVertexInputStateCreateInfo;
-import org.lwjgl.vulkan.VkPipelineViewportStateCreateInfo;
-import org.lwjgl.vulkan.VkPresentInfoKHR;
+import org.lwjgl.vulkan.VkPhysicalDeviceMemoryProperties;
+import org.lwjgl.vulkan.VkPhysicalDeviceTimelineSemaphoreFeatures;
 import org.lwjgl.vulkan.VkQueue;
 import org.lwjgl.vulkan.VkQueueFamilyProperties;
 import org.lwjgl.vulkan.VkRect2D;
 import org.lwjgl.vulkan.VkRenderPassBeginInfo;
 import org.lwjgl.vulkan.VkRenderPassCreateInfo;
+import org.lwjgl.vulkan.VkRenderingAttachmentInfo;
+import org.lwjgl.vulkan.VkRenderingInfo;
 import org.lwjgl.vulkan.VkSemaphoreCreateInfo;
-import org.lwjgl.vulkan.VkShaderModuleCreateInfo;
-import org.lwjgl.vulkan.VkSubmitInfo;
 import org.lwjgl.vulkan.VkSubpassDependency;
 import org.lwjgl.vulkan.VkSubpassDescription;
 import org.lwjgl.vulkan.VkSurfaceCapabilitiesKHR;
@@ -81,13 +81,27 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
     private static VulkanInitializer instance;
 
     // CONFIG
-    private static final int  MAX_FRAMES_IN_FLIGHT = 2;
-    private static final long UINT64_MAX           = 0xFFFFFFFFFFFFFFFFL;
+    private int              desiredFramesInFlight;
+    private int              desiredSwapChainImageCount;
+    private volatile boolean frameConfigChanged;
 
     // VULKAN OBJECTS
     private VkInstance            vkInstance;
     private PhysicalDevice        physicalDevice;
     private VkDevice              device;
+    private MemoryAllocator       memoryAllocator;
+    private UploadManager         uploadManager;
+    private FrameRingBuffer       dynamicGeometry;
+    private UniformRing           uniformRing;
+    private PipelineCache         pipelineCache;
+    private ShaderCache           shaderCache;
+    private ShaderCompiler        shaderCompiler;
+    private PipelineStateCache    pipelines;
+    private DescriptorLayoutCache descriptorLayouts;
+    private DescriptorAllocator   descriptorAllocator;
+    private DescriptorWriter      descriptorWriter;
+    private BindlessResources     bindlessResources;
+    private RenderGraph           renderGraph;
     private long                  surface;
     private long                  swapChain;
     private List<Long>            swapChainImages;
@@ -97,32 +111,87 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
     private List<Long>            swapChainFramebuffers;
     private long                  pipelineLayout;
     private long                  renderPass;
+    private boolean               dynamicRendering;
+    private int                   depthFormat;
+    private int                   samples;
     private long                  graphicsPipeline;
-    private long                  commandPool;
-    private List<VkCommandBuffer> commandBuffers;
+    private List<OffscreenTarget> offscreenTargets;
+    private RenderTargets         renderTargets;
 
     // GLFW OBJECTS
     private final long window;
 
     // QUEUES
-    private VkQueue graphicsQueue;
-    private VkQueue presentQueue;
+    private VkQueue      graphicsQueue;
+    private VkQueue      presentQueue;
+    private VkQueue      transferQueue;
+    private int          transferFamily;
+    private AsyncCompute asyncCompute;
 
     // VALIDATION AND DEBUGGING
     private final Set<String> validationLayers = new HashSet<>();
     private long              debugMessenger   = -1L;
 
+    // SHADERS
+    private static final String VERTEX_SHADER   = "shaders/triangle/triangle_vert.spv";
+    private static final String FRAGMENT_SHADER = "shaders/triangle/triangle_frag.spv";
+
+    // ATTACHMENTS, the color attachment is always 0 and the resolve attachment is the last one
+    private static final int DEPTH_ATTACHMENT = 1;
+
     // EXTENSIONS
     private static final Set<String> DEVICE_EXTENSIONS = Stream.of(KHRSwapchain.VK_KHR_SWAPCHAIN_EXTENSION_NAME).collect(Collectors.toSet());
 
     // STATE
     private boolean             initialized = false;
     private List<Frame>         inFlightFrames;
-    private Map<Integer, Frame> imagesInFlight;
+    private long[]              imagesInFlight;
     private int                 currentFrame;
     private boolean             framebufferResize;
     private SwapMode            desiredSwapMode;
 
+    // FRAME SYNC, frames are numbered by submit values with both backends
+    private boolean             timelineSemaphores;
+    private boolean             bindless;
+    private TimelineSemaphore   frameTimeline;
+    private volatile long       submittedFrameValue;
+    private long                completedFrameValue;
+    private long                pendingFrameWait;
+    private final DeletionQueue deletionQueue = new DeletionQueue();
+
+    // TIMING
+    private final FrameTimings timings = FrameTimings.get();
+    private GpuProfiler        gpuProfiler;
+
+    // RECORDING
+    private int                      graphicsFamily;
+    private VertexLayout             vertexLayout;
+    private PipelineState            pipelineState;
+    private RecordingThreadPool      recordingThreadPool;
+    private CommandRecorder          recorder;
+    private CommandRecorder          computeRecorder;
+    private VkMemoryBarrier.Buffer   computeBarrier;
+    private VkCommandBufferBeginInfo commandBufferBeginInfo;
+    private VkRenderPassBeginInfo    renderPassBeginInfo;
+    private VkClearValue.Buffer      clearValues;
+    private VkViewport.Buffer        viewport;
+    private VkRect2D.Buffer          scissor;
+
+    // DYNAMIC RENDERING, the swap chain images are transitioned by barriers instead of the render pass
+    private VkRenderingInfo                  renderingInfo;
+    private VkRenderingAttachmentInfo.Buffer colorAttachment;
+    private VkRenderingAttachmentInfo        depthAttachment;
+    private VkImageMemoryBarrier.Buffer      attachmentBarriers;
+    private VkImageMemoryBarrier             presentedBarrier;
+    private VkImageMemoryBarrier.Buffer      finalBarrier;
+
+    // HEADLESS
+    private boolean          headless;
+    private ReadbackListener readbackListener;
+    private int              headlessWidth;
+    private int              headlessHeight;
+    private long             frameNumber;
+
 
     public static void create(long window) {
         VulkanInitializer.instance = new VulkanInitializer(window);
@@ -140,25 +209,107 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
     }
 
 
-    public void init(String title, boolean debugMode, GlfwWindow window, SwapMode desiredSwapMode) {
+    /**
+     * Initializes Vulkan.
+     *
+     * @param config the application configuration
+     * @param window the window to render to, null in headless mode
+     */
+    public void init(ApplicationConfiguration config, GlfwWindow window) {
         if (this.initialized) {
             throw new RuntimeException("Vulkan is already initialized");
         }
 
-        this.desiredSwapMode = desiredSwapMode;
-        this.createInstance(title, debugMode);
+        final WindowConfiguration windowConfig = config.getWindowConfiguration();
+        final boolean debugMode = config.isDebugMode();
+        this.headless = config.isHeadless();
+        this.readbackListener = config.getReadbackListener();
+        this.headlessWidth = windowConfig.getWidth();
+        this.headlessHeight = windowConfig.getHeight();
+        this.desiredSwapMode = windowConfig.getSwapMode();
+        this.vertexLayout = config.getVertexLayout();
+        this.desiredFramesInFlight = config.getFramesInFlight();
+        this.desiredSwapChainImageCount = windowConfig.getSwapChainImageCount();
+        this.createInstance(windowConfig.getTitle(), debugMode);
         if (debugMode) {
             this.setupDebugMessenger();
         }
-        this.createSurface(window.window);
+        if (!this.headless) {
+            this.createSurface(window.window);
+        }
         this.pickPhysicalDevice();
         if (debugMode) {
             System.out.println("Selected GPU: " + this.physicalDevice.getName());
             System.out.println("Supported API version: " + this.physicalDevice.getApiVersion().toString());
         }
-        this.createLogicalDevice(debugMode);
-        this.createCommandPool();
-        this.createSwapChainObjects(desiredSwapMode);
+        this.timelineSemaphores = config.isTimelineSemaphores() && this.physicalDevice.isTimelineSemaphoreSupported();
+        if (debugMode) {
+            System.out.println("Frame synchronization: " + (this.timelineSemaphores ? "timeline semaphore" : "fences"));
+        }
+        this.bindless = config.isBindless() && this.physicalDevice.isDescriptorIndexingSupported();
+        if (debugMode) {
+            System.out.println("Resource binding: " + (this.bindless ? "bindless" : "descriptor sets"));
+        }
+        this.dynamicRendering = config.isDynamicRendering() && this.physicalDevice.isDynamicRenderingSupported();
+        if (debugMode) {
+            System.out.println("Rendering: " + (this.dynamicRendering ? "dynamic rendering" : "render passes"));
+        }
+        this.samples = this.chooseSampleCount(config.getSamples());
+        this.depthFormat = this.chooseDepthFormat(config.getDepthBuffer());
+        if (debugMode) {
+            System.out.println("Attachments: " + this.samples + (this.samples == 1 ? " sample" : " samples") + ", depth format " + this.depthFormat);
+        }
+        final boolean asyncCompute = config.isAsyncCompute() && this.findQueueFamilies(this.physicalDevice.getDevice()).computeFamily != null;
+        if (debugMode) {
+            System.out.println("Compute: " + (asyncCompute ? "async compute queue" : "graphics queue"));
+        }
+        this.createLogicalDevice(debugMode, asyncCompute);
+        if (debugMode) {
+            System.out.println("Indirect draws: " + (this.physicalDevice.isDrawIndirectCountSupported() ? "draw count from buffer"
+                    : this.physicalDevice.isMultiDrawIndirectSupported() ? "multi draw" : "single draws"));
+        }
+        this.pipelineCache = new PipelineCache(this.device, this.physicalDevice, config.getPipelineCacheFile());
+        if (debugMode) {
+            System.out.println("Pipeline cache: " + (this.pipelineCache.isSeeded() ? "loaded from " + config.getPipelineCacheFile() : "empty"));
+        }
+        this.shaderCache = new ShaderCache(this.device, config.isShaderHotReload());
+        // the cache drops the pipelines of a reloaded shader before the engine asks for its pipeline again
+        this.pipelines = new PipelineStateCache(this.device, this.pipelineCache, this.shaderCache, this::runWhenFramesComplete);
+        this.shaderCache.addReloadListener(this::onShaderReload);
+        this.descriptorLayouts = new DescriptorLayoutCache(this.device);
+        this.descriptorAllocator = new DescriptorAllocator(this.device, this.descriptorLayouts);
+        this.descriptorWriter = new DescriptorWriter(this.device);
+        if (this.bindless) {
+            this.bindlessResources = new BindlessResources(this.device, this.physicalDevice, this::runWhenFramesComplete);
+        }
+        this.shaderCompiler = new ShaderCompiler(config.getShaderCacheDirectory());
+        if (this.timelineSemaphores) {
+            this.frameTimeline = new TimelineSemaphore(this.device, 0L);
+        }
+        if (config.getRecordingThreads() > 1) {
+            this.recordingThreadPool = new RecordingThreadPool(this.device, this.graphicsFamily, config.getRecordingThreads());
+        }
+        this.recorder = new CommandRecorder(this.recordingThreadPool);
+        // compute work is recorded inline, it's usually a handful of dispatches
+        this.computeRecorder = new CommandRecorder(null);
+        this.uploadManager = new UploadManager(this.device, this.memoryAllocator, this.transferQueue, this.transferFamily, this.graphicsFamily,
+                config.getStagingBufferSize());
+        this.dynamicGeometry = new FrameRingBuffer(this.memoryAllocator, config.getDynamicGeometrySize(),
+                VK10.VK_BUFFER_USAGE_VERTEX_BUFFER_BIT | VK10.VK_BUFFER_USAGE_INDEX_BUFFER_BIT, this::waitForFrameValue);
+        this.uniformRing = new UniformRing(this.device, this.physicalDevice, this.memoryAllocator, this.descriptorLayouts, config.getUniformRingSize(),
+                this::waitForFrameValue);
+        if (config.isGpuProfiling()) {
+            final int timestampValidBits = this.physicalDevice.getTimestampValidBits(this.graphicsFamily);
+            if (timestampValidBits > 0) {
+                this.gpuProfiler = new GpuProfiler(this.device, this.physicalDevice.getTimestampPeriod(), timestampValidBits);
+            } else if (debugMode) {
+                System.out.println("GPU profiling is not available, the graphics queue doesn't support timestamps");
+            }
+        }
+        this.createRecordingStructs();
+        // the default pipeline has no descriptors, its layout is shared with every other pipeline without descriptors
+        this.pipelineLayout = this.descriptorLayouts.getPipelineLayout();
+        this.createSwapChainObjects(this.desiredSwapMode);
         this.createSyncObjects();
 
         this.initialized = true;
@@ -171,18 +322,124 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
     }
 
 
+    /**
+     * Changes the number of frames the CPU may record ahead of the GPU. The change is applied at the start of the next frame by waiting for the device to
+     * become idle and rebuilding the swap chain and the frames in flight.
+     *
+     * @param framesInFlight the number of frames in flight, at least 1
+     */
+    public void setFramesInFlight(int framesInFlight) {
+        if (framesInFlight < 1) {
+            throw new IllegalArgumentException("At least one frame must be in flight");
+        }
+        this.desiredFramesInFlight = framesInFlight;
+        this.frameConfigChanged = true;
+    }
+
+
+    /**
+     * Returns the number of frames in flight that is actually used, which may be less than requested if the swap chain has fewer images.
+     *
+     * @return the number of frames in flight
+     */
+    public int getFramesInFlight() {
+        return this.inFlightFrames.size();
+    }
+
+
+    /**
+     * Changes the number of swap chain images. The change is applied at the start of the next frame by rebuilding the swap chain. The value is clamped against
+     * the surface capabilities.
+     *
+     * @param swapChainImageCount the number of images or 0 to use the driver's minimum plus one
+     */
+    public void setSwapChainImageCount(int swapChainImageCount) {
+        if (swapChainImageCount < 0) {
+            throw new IllegalArgumentException("The swap chain image count must not be negative");
+        }
+        this.desiredSwapChainImageCount = swapChainImageCount;
+        this.frameConfigChanged = true;
+    }
+
+
+    /**
+     * Returns the number of images the swap chain actually has. In headless mode this is the number of offscreen targets.
+     *
+     * @return the number of images
+     */
+    public int getSwapChainImageCount() {
+        return this.swapChainImages.size();
+    }
+
+
+    /**
+     * Applies a changed frame configuration by rebuilding everything that depends on the number of images and frames in flight.
+     */
+    private void rebuildFrames() {
+        final long start = System.nanoTime();
+        this.frameConfigChanged = false;
+        VK10.vkDeviceWaitIdle(this.device);
+        if (this.headless) {
+            this.offscreenTargets.forEach(this::deliverReadback);
+        }
+        this.disposeSwapChain();
+        this.disposeSyncObjects();
+        this.createSwapChainObjects(this.desiredSwapMode);
+        this.createSyncObjects();
+        this.timings.recordSince(FramePhase.RECREATE, start);
+    }
+
+
     private void createSwapChainObjects(SwapMode swapMode) {
-        this.createSwapChain(swapMode);
-        this.createImageViews();
-        this.createRenderPass();
-        try {
-            this.createGraphicsPipeline();
-        } catch (final IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+        if (this.headless) {
+            this.createOffscreenTargets();
+        } else {
+            this.createSwapChain(swapMode, VK10.VK_NULL_HANDLE);
         }
+        this.createImageViews();
+        this.createRenderTargets();
+        this.createRenderPassAndPipeline();
         this.createFrameBuffers();
-        this.createCommandBuffers();
+        this.updateRenderArea();
+    }
+
+
+    private void createRenderPassAndPipeline() {
+        if (this.dynamicRendering) {
+            // the pipelines know the attachment format instead of a render pass
+            if (this.recordingThreadPool != null) {
+                this.recordingThreadPool.setRenderingFormat(this.swapChainImageFormat, this.depthFormat, this.samples);
+            }
+        } else {
+            this.createRenderPass();
+        }
+        this.createGraphicsPipeline();
+    }
+
+
+    private void updateRenderArea() {
+        // the render area, viewport and scissor are patched here instead of every frame
+        this.renderPassBeginInfo.renderPass(this.renderPass);
+        this.renderPassBeginInfo.renderArea().offset().set(0, 0);
+        this.renderPassBeginInfo.renderArea().extent().set(this.swapChainExtent);
+        this.viewport.x(0.0f);
+        this.viewport.y(0.0f);
+        this.viewport.width(this.swapChainExtent.width());
+        this.viewport.height(this.swapChainExtent.height());
+        this.viewport.minDepth(0.0f);
+        this.viewport.maxDepth(1.0f);
+        this.scissor.offset().set(0, 0);
+        this.scissor.extent().set(this.swapChainExtent);
+        if (this.dynamicRendering) {
+            this.renderingInfo.renderArea().offset().set(0, 0);
+            this.renderingInfo.renderArea().extent().set(this.swapChainExtent);
+        }
+        if (this.renderGraph != null) {
+            this.renderGraph.setExtent(this.swapChainExtent.width(), this.swapChainExtent.height());
+        }
+
+        // the images are new, so none of them is in flight
+        this.imagesInFlight = new long[this.swapChainImages.size()];
     }
 
 
@@ -201,106 +458,208 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
             }
         }
 
-        VK10.vkDeviceWaitIdle(this.device);
-        this.disposeSwapChain();
-        this.createSwapChainObjects(swapMode);
-    }
-
-
-    private void createCommandPool() {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            final QueueFamilyIndices queueFamilyIndices = this.findQueueFamilies(this.physicalDevice.getDevice());
-
-            final VkCommandPoolCreateInfo poolInfo = VkCommandPoolCreateInfo.calloc(stack);
-            poolInfo.sType(VK10.VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO);
-            poolInfo.queueFamilyIndex(queueFamilyIndices.graphicsFamily);
-
-            final LongBuffer pCommandPool = stack.mallocLong(1);
-
-            if (VK10.vkCreateCommandPool(this.device, poolInfo, null, pCommandPool) != VK10.VK_SUCCESS) {
-                throw new RuntimeException("Failed to create command pool");
+        final long start = System.nanoTime();
+
+        // frames in flight may still use the old swap chain, everything that references its images is destroyed once they completed
+        final long lastFrameValue = this.submittedFrameValue;
+        final long oldSwapChain = this.swapChain;
+        final List<Long> oldFramebuffers = this.swapChainFramebuffers;
+        final List<Long> oldImageViews = this.swapChainImageViews;
+        final int oldImageFormat = this.swapChainImageFormat;
+        final RenderTargets oldRenderTargets = this.renderTargets;
+
+        this.createSwapChain(swapMode, oldSwapChain);
+        this.deletionQueue.add(lastFrameValue, () -> this.destroySwapChainImages(oldSwapChain, oldFramebuffers, oldImageViews));
+        this.deletionQueue.add(lastFrameValue, oldRenderTargets::dispose);
+        this.createRenderTargets();
+
+        // the render pass and the pipeline only depend on the format, the viewport and scissor are dynamic
+        if (this.swapChainImageFormat != oldImageFormat) {
+            if (this.dynamicRendering) {
+                this.pipelines.evictDynamicRendering(oldImageFormat);
+            } else {
+                final long oldRenderPass = this.renderPass;
+                this.pipelines.evict(oldRenderPass,
+                        () -> this.deletionQueue.add(lastFrameValue, () -> VK10.vkDestroyRenderPass(this.device, oldRenderPass, null)));
             }
-
-            this.commandPool = pCommandPool.get(0);
+            this.createRenderPassAndPipeline();
         }
-    }
-
-
-    private void createCommandBuffers() {
-        final int commandBuffersCount = this.swapChainFramebuffers.size();
 
-        this.commandBuffers = new ArrayList<>(commandBuffersCount);
+        this.createImageViews();
+        this.createFrameBuffers();
+        this.updateRenderArea();
 
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            final VkCommandBufferAllocateInfo allocInfo = VkCommandBufferAllocateInfo.calloc(stack);
-            allocInfo.sType(VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
-            allocInfo.commandPool(this.commandPool);
-            allocInfo.level(VK10.VK_COMMAND_BUFFER_LEVEL_PRIMARY);
-            allocInfo.commandBufferCount(commandBuffersCount);
+        // the new swap chain may have fewer images than frames are in flight, the frames can only be rebuilt while the device is idle
+        if (this.clampFramesInFlight() != this.inFlightFrames.size()) {
+            VK10.vkDeviceWaitIdle(this.device);
+            this.disposeSyncObjects();
+            this.createSyncObjects();
+        }
+        this.timings.recordSince(FramePhase.RECREATE, start);
+    }
 
-            final PointerBuffer pCommandBuffers = stack.mallocPointer(commandBuffersCount);
 
-            if (VK10.vkAllocateCommandBuffers(this.device, allocInfo, pCommandBuffers) != VK10.VK_SUCCESS) {
-                throw new RuntimeException("Failed to allocate command buffers");
-            }
+    /**
+     * Allocates the structs that are needed to begin a frame's command buffer and render pass, so recording doesn't allocate every frame.
+     */
+    private void createRecordingStructs() {
+        this.commandBufferBeginInfo = VkCommandBufferBeginInfo.calloc();
+        this.commandBufferBeginInfo.sType(VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+        this.commandBufferBeginInfo.flags(VK10.VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+
+        // compute work recorded into the frame's command buffer is followed by this barrier
+        this.computeBarrier = VkMemoryBarrier.calloc(1);
+        this.computeBarrier.sType(VK10.VK_STRUCTURE_TYPE_MEMORY_BARRIER);
+        this.computeBarrier.srcAccessMask(VK10.VK_ACCESS_SHADER_WRITE_BIT);
+        this.computeBarrier.dstAccessMask(VK10.VK_ACCESS_INDIRECT_COMMAND_READ_BIT | VK10.VK_ACCESS_INDEX_READ_BIT | VK10.VK_ACCESS_VERTEX_ATTRIBUTE_READ_BIT
+                | VK10.VK_ACCESS_UNIFORM_READ_BIT | VK10.VK_ACCESS_SHADER_READ_BIT);
+
+        // the resolve attachment isn't cleared, its value is ignored
+        this.clearValues = VkClearValue.calloc(this.attachmentCount());
+        this.clearValues.get(0).color().float32(0, 0.0f).float32(1, 0.0f).float32(2, 0.0f).float32(3, 1.0f);
+        if (this.depthFormat != VK10.VK_FORMAT_UNDEFINED) {
+            this.clearValues.get(VulkanInitializer.DEPTH_ATTACHMENT).depthStencil().depth(1.0f);
+            this.clearValues.get(VulkanInitializer.DEPTH_ATTACHMENT).depthStencil().stencil(0);
+        }
 
-            for (int i = 0; i < commandBuffersCount; i++) {
-                this.commandBuffers.add(new VkCommandBuffer(pCommandBuffers.get(i), this.device));
-            }
+        this.renderPassBeginInfo = VkRenderPassBeginInfo.calloc();
+        this.renderPassBeginInfo.sType(VK10.VK_STRUCTURE_TYPE_RENDER_PASS_BEGIN_INFO);
+        this.renderPassBeginInfo.pClearValues(this.clearValues);
 
-            final VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.calloc(stack);
-            beginInfo.sType(VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+        this.viewport = VkViewport.calloc(1);
+        this.scissor = VkRect2D.calloc(1);
 
-            final VkRenderPassBeginInfo renderPassInfo = VkRenderPassBeginInfo.calloc(stack);
-            renderPassInfo.sType(VK10.VK_STRUCTURE_TYPE_RENDER_PASS_BEGIN_INFO);
-            renderPassInfo.renderPass(this.renderPass);
-            final VkRect2D renderArea = VkRect2D.calloc(stack);
-            renderArea.offset(VkOffset2D.calloc(stack).set(0, 0));
-            renderArea.extent(this.swapChainExtent);
-            renderPassInfo.renderArea(renderArea);
-            final VkClearValue.Buffer clearValues = VkClearValue.calloc(1, stack);
-            clearValues.color().float32(stack.floats(0.0f, 0.0f, 0.0f, 1.0f));
-            renderPassInfo.pClearValues(clearValues);
+        if (this.dynamicRendering) {
+            this.createRenderingStructs();
+        }
+    }
 
-            for (int i = 0; i < commandBuffersCount; i++) {
 
-                final VkCommandBuffer commandBuffer = this.commandBuffers.get(i);
+    private void createRenderingStructs() {
+        final boolean multisampled = this.samples != VK10.VK_SAMPLE_COUNT_1_BIT;
+        final boolean depth = this.depthFormat != VK10.VK_FORMAT_UNDEFINED;
+
+        // with multisampling the color attachment is the multisampled image, which is resolved into the swap chain image
+        this.colorAttachment = VkRenderingAttachmentInfo.calloc(1);
+        this.colorAttachment.sType(VK13.VK_STRUCTURE_TYPE_RENDERING_ATTACHMENT_INFO);
+        this.colorAttachment.imageLayout(VK10.VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+        this.colorAttachment.loadOp(VK10.VK_ATTACHMENT_LOAD_OP_CLEAR);
+        this.colorAttachment.storeOp(multisampled ? VK10.VK_ATTACHMENT_STORE_OP_DONT_CARE : VK10.VK_ATTACHMENT_STORE_OP_STORE);
+        this.colorAttachment.clearValue(this.clearValues.get(0));
+        if (multisampled) {
+            this.colorAttachment.resolveMode(VK12.VK_RESOLVE_MODE_AVERAGE_BIT);
+            this.colorAttachment.resolveImageLayout(VK10.VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+        }
 
-                if (VK10.vkBeginCommandBuffer(commandBuffer, beginInfo) != VK10.VK_SUCCESS) {
-                    throw new RuntimeException("Failed to begin recording command buffer");
-                }
+        this.renderingInfo = VkRenderingInfo.calloc();
+        this.renderingInfo.sType(VK13.VK_STRUCTURE_TYPE_RENDERING_INFO);
+        this.renderingInfo.layerCount(1);
+        this.renderingInfo.pColorAttachments(this.colorAttachment);
+        // the flag matches the one the secondary command buffers are begun with
+        this.renderingInfo.flags(this.recordingThreadPool != null ? VK13.VK_RENDERING_CONTENTS_SECONDARY_COMMAND_BUFFERS_BIT : 0);
+
+        if (depth) {
+            this.depthAttachment = VkRenderingAttachmentInfo.calloc();
+            this.depthAttachment.sType(VK13.VK_STRUCTURE_TYPE_RENDERING_ATTACHMENT_INFO);
+            this.depthAttachment.imageLayout(VK10.VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL);
+            this.depthAttachment.loadOp(VK10.VK_ATTACHMENT_LOAD_OP_CLEAR);
+            this.depthAttachment.storeOp(VK10.VK_ATTACHMENT_STORE_OP_DONT_CARE);
+            this.depthAttachment.clearValue(this.clearValues.get(VulkanInitializer.DEPTH_ATTACHMENT));
+            this.renderingInfo.pDepthAttachment(this.depthAttachment);
+            if ((RenderGraph.aspectMask(this.depthFormat) & VK10.VK_IMAGE_ASPECT_STENCIL_BIT) != 0) {
+                this.renderingInfo.pStencilAttachment(this.depthAttachment);
+            }
+        }
 
-                renderPassInfo.framebuffer(this.swapChainFramebuffers.get(i));
+        // the old contents are cleared anyway, the transitions wait for the acquire semaphore and for the previous frame's use of the shared images
+        this.attachmentBarriers = VkImageMemoryBarrier.calloc(this.attachmentCount());
+        for (int i = 0; i < this.attachmentBarriers.capacity(); i++) {
+            final VkImageMemoryBarrier barrier = this.attachmentBarriers.get(i);
+            barrier.sType(VK10.VK_STRUCTURE_TYPE_IMAGE_MEMORY_BARRIER);
+            barrier.srcAccessMask(0);
+            barrier.dstAccessMask(VK10.VK_ACCESS_COLOR_ATTACHMENT_READ_BIT | VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
+            barrier.oldLayout(VK10.VK_IMAGE_LAYOUT_UNDEFINED);
+            barrier.newLayout(VK10.VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+            barrier.srcQueueFamilyIndex(VK10.VK_QUEUE_FAMILY_IGNORED);
+            barrier.dstQueueFamilyIndex(VK10.VK_QUEUE_FAMILY_IGNORED);
+            barrier.subresourceRange().aspectMask(VK10.VK_IMAGE_ASPECT_COLOR_BIT);
+            barrier.subresourceRange().levelCount(1);
+            barrier.subresourceRange().layerCount(1);
+        }
+        // the barriers are in attachment order, the swap chain image is the resolve attachment with multisampling
+        this.presentedBarrier = this.attachmentBarriers.get(multisampled ? this.attachmentCount() - 1 : 0);
+        if (multisampled) {
+            this.attachmentBarriers.get(0).srcAccessMask(VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
+        }
+        if (depth) {
+            final VkImageMemoryBarrier depthBarrier = this.attachmentBarriers.get(VulkanInitializer.DEPTH_ATTACHMENT);
+            depthBarrier.srcAccessMask(VK10.VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT);
+            depthBarrier.dstAccessMask(VK10.VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_READ_BIT | VK10.VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT);
+            depthBarrier.newLayout(VK10.VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL);
+            depthBarrier.subresourceRange().aspectMask(RenderGraph.aspectMask(this.depthFormat));
+        }
 
-                VK10.vkCmdBeginRenderPass(commandBuffer, renderPassInfo, VK10.VK_SUBPASS_CONTENTS_INLINE);
+        // offscreen targets are read back with a copy, swap chain images are presented
+        this.finalBarrier = VkImageMemoryBarrier.calloc(1);
+        this.finalBarrier.sType(VK10.VK_STRUCTURE_TYPE_IMAGE_MEMORY_BARRIER);
+        this.finalBarrier.srcAccessMask(VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
+        this.finalBarrier.dstAccessMask(this.headless ? VK10.VK_ACCESS_TRANSFER_READ_BIT : 0);
+        this.finalBarrier.oldLayout(VK10.VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+        this.finalBarrier.newLayout(this.headless ? VK10.VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL : KHRSwapchain.VK_IMAGE_LAYOUT_PRESENT_SRC_KHR);
+        this.finalBarrier.srcQueueFamilyIndex(VK10.VK_QUEUE_FAMILY_IGNORED);
+        this.finalBarrier.dstQueueFamilyIndex(VK10.VK_QUEUE_FAMILY_IGNORED);
+        this.finalBarrier.subresourceRange().aspectMask(VK10.VK_IMAGE_ASPECT_COLOR_BIT);
+        this.finalBarrier.subresourceRange().levelCount(1);
+        this.finalBarrier.subresourceRange().layerCount(1);
+    }
 
-                VK10.vkCmdBindPipeline(commandBuffer, VK10.VK_PIPELINE_BIND_POINT_GRAPHICS, this.graphicsPipeline);
 
-                VK10.vkCmdDraw(commandBuffer, 3, 1, 0, 0);
+    /**
+     * Returns the number of attachments: the color attachment, the depth attachment if there is a depth buffer and the resolve attachment if multisampling
+     * is used, in this order.
+     */
+    private int attachmentCount() {
+        return 1 + (this.depthFormat != VK10.VK_FORMAT_UNDEFINED ? 1 : 0) + (this.samples != VK10.VK_SAMPLE_COUNT_1_BIT ? 1 : 0);
+    }
 
-                VK10.vkCmdEndRenderPass(commandBuffer);
 
-                if (VK10.vkEndCommandBuffer(commandBuffer) != VK10.VK_SUCCESS) {
-                    throw new RuntimeException("Failed to record command buffer");
-                }
-
-            }
+    private void createRenderTargets() {
+        this.renderTargets = new RenderTargets(this.device, this.memoryAllocator, this.physicalDevice.hasLazilyAllocatedMemory(), this.swapChainImageFormat,
+                this.depthFormat, this.samples, this.swapChainExtent.width(), this.swapChainExtent.height());
+        if (!this.dynamicRendering) {
+            return;
+        }
 
+        // the shared images don't change per frame, only the swap chain image does
+        if (this.renderTargets.getColorImage() != null) {
+            this.colorAttachment.imageView(this.renderTargets.getColorView());
+            this.attachmentBarriers.get(0).image(this.renderTargets.getColorImage().getImage());
+        }
+        if (this.renderTargets.getDepthImage() != null) {
+            this.depthAttachment.imageView(this.renderTargets.getDepthView());
+            this.attachmentBarriers.get(VulkanInitializer.DEPTH_ATTACHMENT).image(this.renderTargets.getDepthImage().getImage());
         }
     }
 
 
     private void createRenderPass() {
+        final boolean multisampled = this.samples != VK10.VK_SAMPLE_COUNT_1_BIT;
+        final boolean depth = this.depthFormat != VK10.VK_FORMAT_UNDEFINED;
+        final int presentedLayout = this.headless ? VK10.VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL : KHRSwapchain.VK_IMAGE_LAYOUT_PRESENT_SRC_KHR;
+
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            final VkAttachmentDescription.Buffer colorAttachment = VkAttachmentDescription.calloc(1, stack);
+            final VkAttachmentDescription.Buffer attachments = VkAttachmentDescription.calloc(this.attachmentCount(), stack);
+
+            // the samples of a multisampled image are resolved at the end of the subpass and never stored
+            final VkAttachmentDescription colorAttachment = attachments.get(0);
             colorAttachment.format(this.swapChainImageFormat);
-            colorAttachment.samples(VK10.VK_SAMPLE_COUNT_1_BIT);
+            colorAttachment.samples(this.samples);
             colorAttachment.loadOp(VK10.VK_ATTACHMENT_LOAD_OP_CLEAR);
-            colorAttachment.storeOp(VK10.VK_ATTACHMENT_STORE_OP_STORE);
+            colorAttachment.storeOp(multisampled ? VK10.VK_ATTACHMENT_STORE_OP_DONT_CARE : VK10.VK_ATTACHMENT_STORE_OP_STORE);
             colorAttachment.stencilLoadOp(VK10.VK_ATTACHMENT_LOAD_OP_DONT_CARE);
             colorAttachment.stencilStoreOp(VK10.VK_ATTACHMENT_STORE_OP_DONT_CARE);
             colorAttachment.initialLayout(VK10.VK_IMAGE_LAYOUT_UNDEFINED);
-            colorAttachment.finalLayout(KHRSwapchain.VK_IMAGE_LAYOUT_PRESENT_SRC_KHR);
+            colorAttachment.finalLayout(multisampled ? VK10.VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL : presentedLayout);
 
             final VkAttachmentReference.Buffer colorAttachmentRef = VkAttachmentReference.calloc(1, stack);
             colorAttachmentRef.attachment(0);
@@ -311,17 +670,66 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
             subpass.colorAttachmentCount(1);
             subpass.pColorAttachments(colorAttachmentRef);
 
-            final VkSubpassDependency.Buffer dependency = VkSubpassDependency.calloc(1, stack);
+            if (depth) {
+                final VkAttachmentDescription depthAttachment = attachments.get(VulkanInitializer.DEPTH_ATTACHMENT);
+                depthAttachment.format(this.depthFormat);
+                depthAttachment.samples(this.samples);
+                depthAttachment.loadOp(VK10.VK_ATTACHMENT_LOAD_OP_CLEAR);
+                depthAttachment.storeOp(VK10.VK_ATTACHMENT_STORE_OP_DONT_CARE);
+                depthAttachment.stencilLoadOp(VK10.VK_ATTACHMENT_LOAD_OP_CLEAR);
+                depthAttachment.stencilStoreOp(VK10.VK_ATTACHMENT_STORE_OP_DONT_CARE);
+                depthAttachment.initialLayout(VK10.VK_IMAGE_LAYOUT_UNDEFINED);
+                depthAttachment.finalLayout(VK10.VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL);
+
+                final VkAttachmentReference depthAttachmentRef = VkAttachmentReference.calloc(stack);
+                depthAttachmentRef.attachment(VulkanInitializer.DEPTH_ATTACHMENT);
+                depthAttachmentRef.layout(VK10.VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL);
+                subpass.pDepthStencilAttachment(depthAttachmentRef);
+            }
+
+            if (multisampled) {
+                final int resolveIndex = attachments.capacity() - 1;
+                final VkAttachmentDescription resolveAttachment = attachments.get(resolveIndex);
+                resolveAttachment.format(this.swapChainImageFormat);
+                resolveAttachment.samples(VK10.VK_SAMPLE_COUNT_1_BIT);
+                resolveAttachment.loadOp(VK10.VK_ATTACHMENT_LOAD_OP_DONT_CARE);
+                resolveAttachment.storeOp(VK10.VK_ATTACHMENT_STORE_OP_STORE);
+                resolveAttachment.stencilLoadOp(VK10.VK_ATTACHMENT_LOAD_OP_DONT_CARE);
+                resolveAttachment.stencilStoreOp(VK10.VK_ATTACHMENT_STORE_OP_DONT_CARE);
+                resolveAttachment.initialLayout(VK10.VK_IMAGE_LAYOUT_UNDEFINED);
+                resolveAttachment.finalLayout(presentedLayout);
+
+                final VkAttachmentReference.Buffer resolveAttachmentRef = VkAttachmentReference.calloc(1, stack);
+                resolveAttachmentRef.attachment(resolveIndex);
+                resolveAttachmentRef.layout(VK10.VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+                subpass.pResolveAttachments(resolveAttachmentRef);
+            }
+
+            // the multisampled and the depth image are shared by the frames in flight, the previous frame must be done writing them
+            final VkSubpassDependency.Buffer dependency = VkSubpassDependency.calloc(this.headless ? 2 : 1, stack);
             dependency.srcSubpass(VK10.VK_SUBPASS_EXTERNAL);
             dependency.dstSubpass(0);
-            dependency.srcStageMask(VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT);
-            dependency.srcAccessMask(0);
-            dependency.dstStageMask(VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT);
-            dependency.dstAccessMask(VK10.VK_ACCESS_COLOR_ATTACHMENT_READ_BIT | VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
+            dependency.srcStageMask(VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT | (depth ? VK10.VK_PIPELINE_STAGE_LATE_FRAGMENT_TESTS_BIT : 0));
+            dependency.srcAccessMask(
+                    (multisampled ? VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT : 0) | (depth ? VK10.VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT : 0));
+            dependency.dstStageMask(VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT | (depth ? VK10.VK_PIPELINE_STAGE_EARLY_FRAGMENT_TESTS_BIT : 0));
+            dependency.dstAccessMask(VK10.VK_ACCESS_COLOR_ATTACHMENT_READ_BIT | VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT
+                    | (depth ? VK10.VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_READ_BIT | VK10.VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT : 0));
+
+            if (this.headless) {
+                // the readback copy must wait for the color writes and the final layout transition
+                final VkSubpassDependency readbackDependency = dependency.get(1);
+                readbackDependency.srcSubpass(0);
+                readbackDependency.dstSubpass(VK10.VK_SUBPASS_EXTERNAL);
+                readbackDependency.srcStageMask(VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT);
+                readbackDependency.srcAccessMask(VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
+                readbackDependency.dstStageMask(VK10.VK_PIPELINE_STAGE_TRANSFER_BIT);
+                readbackDependency.dstAccessMask(VK10.VK_ACCESS_TRANSFER_READ_BIT);
+            }
 
             final VkRenderPassCreateInfo renderPassInfo = VkRenderPassCreateInfo.calloc(stack);
             renderPassInfo.sType(VK10.VK_STRUCTURE_TYPE_RENDER_PASS_CREATE_INFO);
-            renderPassInfo.pAttachments(colorAttachment);
+            renderPassInfo.pAttachments(attachments);
             renderPassInfo.pSubpasses(subpass);
             renderPassInfo.pDependencies(dependency);
 
@@ -336,10 +744,41 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
     }
 
 
+    private int chooseSampleCount(int desiredSamples) {
+        // the flag bits have the value of their count, a count is supported if its bit is set
+        int samples = desiredSamples;
+        while (samples > VK10.VK_SAMPLE_COUNT_1_BIT && (this.physicalDevice.getFramebufferSampleCounts() & samples) == 0) {
+            samples >>>= 1;
+        }
+        return samples;
+    }
+
+
+    private int chooseDepthFormat(DepthBuffer depthBuffer) {
+        if (depthBuffer == DepthBuffer.NONE) {
+            return VK10.VK_FORMAT_UNDEFINED;
+        }
+        final int format = this.physicalDevice.findFormat(depthBuffer.getFormats(), VK10.VK_FORMAT_FEATURE_DEPTH_STENCIL_ATTACHMENT_BIT);
+        if (format == VK10.VK_FORMAT_UNDEFINED) {
+            throw new RuntimeException("Failed to find a supported " + depthBuffer + " format");
+        }
+        return format;
+    }
+
+
+    private int clampFramesInFlight() {
+        // more frames than images can't be in flight, offscreen targets are created per frame in flight anyway
+        return this.clamp(1, this.swapChainImages.size(), this.desiredFramesInFlight);
+    }
+
+
     private void createSyncObjects() {
+        final int framesInFlight = this.clampFramesInFlight();
 
-        this.inFlightFrames = new ArrayList<>(VulkanInitializer.MAX_FRAMES_IN_FLIGHT);
-        this.imagesInFlight = new HashMap<>(this.swapChainImages.size());
+        this.inFlightFrames = new ArrayList<>(framesInFlight);
+        this.currentFrame = 0;
+        // sync objects are only created while the device is idle
+        this.completedFrameValue = this.submittedFrameValue;
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
 
@@ -354,279 +793,654 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
             final LongBuffer pRenderFinishedSemaphore = stack.mallocLong(1);
             final LongBuffer pFence = stack.mallocLong(1);
 
-            for (int i = 0; i < VulkanInitializer.MAX_FRAMES_IN_FLIGHT; i++) {
+            // offscreen frames are never presented and don't need any semaphores
+            pImageAvailableSemaphore.put(0, VK10.VK_NULL_HANDLE);
+            pRenderFinishedSemaphore.put(0, VK10.VK_NULL_HANDLE);
+            // the timeline semaphore replaces the fences
+            pFence.put(0, VK10.VK_NULL_HANDLE);
+            final long timeline = this.frameTimeline != null ? this.frameTimeline.semaphore() : VK10.VK_NULL_HANDLE;
 
-                if (VK10.vkCreateSemaphore(this.device, semaphoreInfo, null, pImageAvailableSemaphore) != VK10.VK_SUCCESS
-                        || VK10.vkCreateSemaphore(this.device, semaphoreInfo, null, pRenderFinishedSemaphore) != VK10.VK_SUCCESS
-                        || VK10.vkCreateFence(this.device, fenceInfo, null, pFence) != VK10.VK_SUCCESS) {
+            for (int i = 0; i < framesInFlight; i++) {
+
+                if (!this.headless && (VK10.vkCreateSemaphore(this.device, semaphoreInfo, null, pImageAvailableSemaphore) != VK10.VK_SUCCESS
+                        || VK10.vkCreateSemaphore(this.device, semaphoreInfo, null, pRenderFinishedSemaphore) != VK10.VK_SUCCESS)
+                        || this.frameTimeline == null && VK10.vkCreateFence(this.device, fenceInfo, null, pFence) != VK10.VK_SUCCESS) {
 
                     throw new RuntimeException("Failed to create synchronization objects for the frame " + i);
                 }
 
-                this.inFlightFrames.add(new Frame(pImageAvailableSemaphore.get(0), pRenderFinishedSemaphore.get(0), pFence.get(0)));
+                // the pool is reset as a whole every frame, which is cheaper than resetting or reallocating single buffers
+                final long commandPool = VulkanUtils.createCommandPool(this.device, this.graphicsFamily, VK10.VK_COMMAND_POOL_CREATE_TRANSIENT_BIT);
+                final VkCommandBuffer commandBuffer = VulkanUtils.allocateCommandBuffer(this.device, commandPool, VK10.VK_COMMAND_BUFFER_LEVEL_PRIMARY);
+
+                this.inFlightFrames.add(
+                        new Frame(pImageAvailableSemaphore.get(0), pRenderFinishedSemaphore.get(0), pFence.get(0), timeline, commandPool, commandBuffer));
             }
 
         }
+
+        if (this.recordingThreadPool != null) {
+            this.recordingThreadPool.createFramePools(framesInFlight);
+        }
+        if (this.asyncCompute != null) {
+            this.asyncCompute.createFrames(framesInFlight);
+        }
+        if (this.gpuProfiler != null) {
+            this.gpuProfiler.createQueryPool(framesInFlight);
+        }
     }
 
 
-    public void drawFrame() {
+    /**
+     * Waits until the GPU finished the frame in flight that {@link #beginFrame()} reuses next. Calling it before polling input keeps the fence wait out of the
+     * input latency.
+     */
+    public void waitForFrame() {
+        final long start = System.nanoTime();
+        this.waitForFrameValue(this.inFlightFrames.get(this.currentFrame).submitValue());
+        // recorded together with the waits of the next beginFrame, so every frame gets one sample
+        this.pendingFrameWait += System.nanoTime() - start;
+    }
 
-        try (MemoryStack stack = MemoryStack.stackPush()) {
 
-            final Frame thisFrame = this.inFlightFrames.get(this.currentFrame);
+    /**
+     * Returns the GPU profiler that measures the frame and the main render pass.
+     *
+     * @return the profiler, or null if GPU profiling is disabled or not supported
+     */
+    public GpuProfiler getGpuProfiler() {
+        return this.gpuProfiler;
+    }
 
-            VK10.vkWaitForFences(this.device, thisFrame.pFence(), true, VulkanInitializer.UINT64_MAX);
 
-            final IntBuffer pImageIndex = stack.mallocInt(1);
+    /**
+     * Returns the async compute queue the compute work of every frame is submitted to.
+     *
+     * @return the async compute queue, or null if it's disabled or the device has no compute family without graphics
+     */
+    public AsyncCompute getAsyncCompute() {
+        return this.asyncCompute;
+    }
 
-            int vkResult = KHRSwapchain.vkAcquireNextImageKHR(this.device, this.swapChain, VulkanInitializer.UINT64_MAX, thisFrame.imageAvailableSemaphore(),
-                    VK10.VK_NULL_HANDLE, pImageIndex);
 
-            if (vkResult == KHRSwapchain.VK_ERROR_OUT_OF_DATE_KHR) {
-                this.recreateSwapChain(this.desiredSwapMode);
-                return;
-            }
+    /**
+     * Returns the physical device, for example to check optional features.
+     *
+     * @return the physical device the logical device was created on
+     */
+    public PhysicalDevice getPhysicalDevice() {
+        return this.physicalDevice;
+    }
 
-            final int imageIndex = pImageIndex.get(0);
 
-            if (this.imagesInFlight.containsKey(imageIndex)) {
-                VK10.vkWaitForFences(this.device, this.imagesInFlight.get(imageIndex).fence(), true, VulkanInitializer.UINT64_MAX);
-            }
+    public VkDevice getDevice() {
+        return this.device;
+    }
 
-            this.imagesInFlight.put(imageIndex, thisFrame);
 
-            final VkSubmitInfo submitInfo = VkSubmitInfo.calloc(stack);
-            submitInfo.sType(VK10.VK_STRUCTURE_TYPE_SUBMIT_INFO);
+    /**
+     * Returns the cache of descriptor set layouts and pipeline layouts.
+     *
+     * @return the layout cache
+     */
+    public DescriptorLayoutCache getDescriptorLayouts() {
+        return this.descriptorLayouts;
+    }
 
-            submitInfo.waitSemaphoreCount(1);
-            submitInfo.pWaitSemaphores(thisFrame.pImageAvailableSemaphore());
-            submitInfo.pWaitDstStageMask(stack.ints(VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT));
 
-            submitInfo.pSignalSemaphores(thisFrame.pRenderFinishedSemaphore());
+    /**
+     * Returns the allocator for descriptor sets that are used by the current frame only. Its pools are reset once the frame completed.
+     *
+     * @return the descriptor allocator
+     */
+    public DescriptorAllocator getDescriptorAllocator() {
+        return this.descriptorAllocator;
+    }
 
-            submitInfo.pCommandBuffers(stack.pointers(this.commandBuffers.get(imageIndex)));
 
-            VK10.vkResetFences(this.device, thisFrame.pFence());
+    /**
+     * Returns the descriptor writer of the render thread. Recording jobs on other threads create their own {@link DescriptorWriter}.
+     *
+     * @return the descriptor writer
+     */
+    public DescriptorWriter getDescriptorWriter() {
+        return this.descriptorWriter;
+    }
 
-            if (VK10.vkQueueSubmit(this.graphicsQueue, submitInfo, thisFrame.fence()) != VK10.VK_SUCCESS) {
-                throw new RuntimeException("Failed to submit draw command buffer");
-            }
 
-            final VkPresentInfoKHR presentInfo = VkPresentInfoKHR.calloc(stack);
-            presentInfo.sType(KHRSwapchain.VK_STRUCTURE_TYPE_PRESENT_INFO_KHR);
+    /**
+     * Returns the descriptor set that holds all textures and storage buffers for bindless access. It's only available if bindless mode was requested with
+     * {@link ApplicationConfiguration#setBindless(boolean)} and the device supports descriptor indexing. Otherwise, bind resources with classic descriptor
+     * sets from {@link #getDescriptorAllocator()}.
+     *
+     * @return the bindless resources or null
+     */
+    public BindlessResources getBindlessResources() {
+        return this.bindlessResources;
+    }
+
 
-            presentInfo.pWaitSemaphores(thisFrame.pRenderFinishedSemaphore());
+    /**
+     * Sets the render graph that is recorded at the start of every frame, before the frame's render pass. The graph's extent follows the swap chain. The
+     * application keeps ownership and disposes the graph.
+     *
+     * @param renderGraph the graph or null
+     */
+    public void setRenderGraph(RenderGraph renderGraph) {
+        this.renderGraph = renderGraph;
+        if (renderGraph != null) {
+            renderGraph.setExtent(this.swapChainExtent.width(), this.swapChainExtent.height());
+        }
+    }
 
-            presentInfo.swapchainCount(1);
-            presentInfo.pSwapchains(stack.longs(this.swapChain));
 
-            presentInfo.pImageIndices(pImageIndex);
+    public RenderGraph getRenderGraph() {
+        return this.renderGraph;
+    }
 
-            vkResult = KHRSwapchain.vkQueuePresentKHR(this.presentQueue, presentInfo);
 
-            if (vkResult == KHRSwapchain.VK_ERROR_OUT_OF_DATE_KHR || vkResult == KHRSwapchain.VK_SUBOPTIMAL_KHR || this.framebufferResize) {
-                this.framebufferResize = false;
-                this.recreateSwapChain(this.desiredSwapMode);
-            } else if (vkResult != VK10.VK_SUCCESS) {
-                throw new RuntimeException("Failed to present swap chain image");
-            }
+    /**
+     * Returns the allocator for buffers and images. Resources that are still in use can be destroyed with {@link #runWhenFramesComplete(Runnable)}, which
+     * also works in {@link Application#onDispose()}.
+     *
+     * @return the allocator
+     */
+    public MemoryAllocator getMemoryAllocator() {
+        return this.memoryAllocator;
+    }
 
-            this.currentFrame = (this.currentFrame + 1) % VulkanInitializer.MAX_FRAMES_IN_FLIGHT;
-        }
+
+    /**
+     * Returns the manager that streams data into device local buffers, on a dedicated transfer queue if the device has one.
+     *
+     * @return the upload manager
+     */
+    public UploadManager getUploadManager() {
+        return this.uploadManager;
     }
 
 
-    private void createFrameBuffers() {
-        this.swapChainFramebuffers = new ArrayList<>(this.swapChainImageViews.size());
+    /**
+     * Returns the ring buffer for vertices and indices that are written every frame. Allocate ranges while the frame is recorded, the ranges are recycled once
+     * the frame completed.
+     *
+     * @return the ring buffer, usable as vertex and index buffer
+     */
+    public FrameRingBuffer getDynamicGeometry() {
+        return this.dynamicGeometry;
+    }
 
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            final LongBuffer attachments = stack.mallocLong(1);
-            final LongBuffer pFramebuffer = stack.mallocLong(1);
 
-            // Lets allocate the create info struct once and just update the pAttachments field each iteration
-            final VkFramebufferCreateInfo framebufferInfo = VkFramebufferCreateInfo.calloc(stack);
-            framebufferInfo.sType(VK10.VK_STRUCTURE_TYPE_FRAMEBUFFER_CREATE_INFO);
-            framebufferInfo.renderPass(this.renderPass);
-            framebufferInfo.width(this.swapChainExtent.width());
-            framebufferInfo.height(this.swapChainExtent.height());
-            framebufferInfo.layers(1);
+    /**
+     * Returns the ring buffer for uniform data that is written every frame, addressed with dynamic offsets of one descriptor set.
+     *
+     * @return the uniform ring
+     */
+    public UniformRing getUniformRing() {
+        return this.uniformRing;
+    }
 
-            for (final long imageView : this.swapChainImageViews) {
 
-                attachments.put(0, imageView);
+    /**
+     * Returns the pipeline cache the engine creates its pipelines with. Use it for application pipelines as well, so they are loaded from disk on the next
+     * start.
+     *
+     * @return the pipeline cache
+     */
+    public PipelineCache getPipelineCache() {
+        return this.pipelineCache;
+    }
+
 
-                framebufferInfo.pAttachments(attachments);
+    /**
+     * Returns the cache that loads SPIR-V shaders and keeps their modules.
+     *
+     * @return the shader cache
+     */
+    public ShaderCache getShaderCache() {
+        return this.shaderCache;
+    }
 
-                if (VK10.vkCreateFramebuffer(this.device, framebufferInfo, null, pFramebuffer) != VK10.VK_SUCCESS) {
-                    throw new RuntimeException("Failed to create framebuffer");
-                }
 
-                this.swapChainFramebuffers.add(pFramebuffer.get(0));
+    /**
+     * Returns the compiler that turns GLSL into SPIR-V at runtime. Compiled shaders are cached on disk, see
+     * {@link ApplicationConfiguration#setShaderCacheDirectory(java.nio.file.Path)}.
+     *
+     * @return the shader compiler
+     */
+    public ShaderCompiler getShaderCompiler() {
+        return this.shaderCompiler;
+    }
+
+
+    /**
+     * Returns the cache that creates graphics pipelines from {@link PipelineState}s. Pipelines of the engine's render pass should be created from
+     * {@link #getPipelineState()}, so they are dropped with the render pass when the swap chain format changes.
+     *
+     * @return the pipeline state cache
+     */
+    public PipelineStateCache getPipelines() {
+        return this.pipelines;
+    }
+
+
+    /**
+     * Returns the state of the engine's default pipeline. Derive states from it to render into the engine's render pass with the same layout.
+     *
+     * @return the pipeline state
+     */
+    public PipelineState getPipelineState() {
+        return this.pipelineState;
+    }
+
+
+    /**
+     * Runs the action once the GPU completed all frames submitted so far and the frame that is currently recorded. Use it to destroy objects that may still
+     * be used by frames in flight without waiting for the device. The action runs on the render thread at the start of a later frame, or on dispose. Can be
+     * called from any thread.
+     *
+     * @param action the action, typically destroying Vulkan objects
+     */
+    public void runWhenFramesComplete(Runnable action) {
+        this.deletionQueue.add(this.submittedFrameValue + 1L, action);
+    }
+
+
+    /**
+     * Returns the submit value of the last submitted frame. Frames are numbered from 1 in submission order.
+     *
+     * @return the submit value
+     */
+    public long getSubmittedFrameValue() {
+        return this.submittedFrameValue;
+    }
+
+
+    /**
+     * Returns the submit value of the last frame the GPU completed, without blocking. Resources a frame used can be recycled or destroyed once this value
+     * reached the frame's value, which is {@link #getSubmittedFrameValue()} + 1 while the frame is recorded. The GPU completes frames in submission order.
+     *
+     * @return the submit value of the last completed frame
+     */
+    public long getCompletedFrameValue() {
+        if (this.frameTimeline != null) {
+            this.completedFrameValue = this.frameTimeline.value();
+        } else {
+            for (int i = 0; i < this.inFlightFrames.size(); i++) {
+                final Frame frame = this.inFlightFrames.get(i);
+                if (frame.submitValue() > this.completedFrameValue && VK10.vkGetFenceStatus(this.device, frame.fence()) == VK10.VK_SUCCESS) {
+                    this.completedFrameValue = frame.submitValue();
+                }
             }
         }
+        return this.completedFrameValue;
     }
 
 
-    private void createGraphicsPipeline() throws IOException {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            final byte[] vertexBytes = Files.readAllBytes(Path.of("shaders/triangle/triangle_vert.spv"));
-            final byte[] fragmentBytes = Files.readAllBytes(Path.of("shaders/triangle/triangle_frag.spv"));
-            // final ByteBuffer vertexShaderBuffer = ByteBuffer.wrap(vertexBytes);
-            // final ByteBuffer fragmentShaderBuffer = ByteBuffer.wrap(fragmentBytes);
-            final ByteBuffer vertexShaderBuffer = ByteBuffer.allocateDirect(vertexBytes.length);
-            final ByteBuffer fragmentShaderBuffer = ByteBuffer.allocateDirect(fragmentBytes.length);
-            for (final byte vertexByte : vertexBytes) {
-                vertexShaderBuffer.put(vertexByte);
-            }
-            for (final byte fragmentByte : fragmentBytes) {
-                fragmentShaderBuffer.put(fragmentByte);
-            }
-            vertexShaderBuffer.position(0);
-            fragmentShaderBuffer.position(0);
+    /**
+     * Blocks until the GPU completed the frame with the submit value.
+     *
+     * @param value the submit value of the frame
+     */
+    public void waitForFrameValue(long value) {
+        if (value <= this.completedFrameValue) {
+            return;
+        }
+        if (value > this.submittedFrameValue) {
+            throw new IllegalArgumentException("Frame " + value + " was not submitted yet");
+        }
 
-            final long vertShaderModule = this.createShaderModule(vertexShaderBuffer);
-            final long fragShaderModule = this.createShaderModule(fragmentShaderBuffer);
+        if (this.frameTimeline != null) {
+            this.frameTimeline.await(value);
+        } else {
+            for (int i = 0; i < this.inFlightFrames.size(); i++) {
+                final Frame frame = this.inFlightFrames.get(i);
+                if (frame.submitValue() == value) {
+                    VK10.vkWaitForFences(this.device, frame.pFence(), true, VulkanUtils.UINT64_MAX);
+                    break;
+                }
+            }
+            // if no frame has the value anymore, its frame was reused and waited for already
+        }
+        this.completedFrameValue = value;
+    }
 
-            final ByteBuffer entryPoint = stack.UTF8("main");
 
-            final VkPipelineShaderStageCreateInfo.Buffer shaderStages = VkPipelineShaderStageCreateInfo.calloc(2, stack);
+    /**
+     * Starts a new frame without compute work, see {@link #beginFrame(ComputeJob)}.
+     *
+     * @return the recorder for the frame's command buffer, or null if the swap chain was out of date and no frame was started
+     */
+    public CommandRecorder beginFrame() {
+        return this.beginFrame(null);
+    }
 
-            final VkPipelineShaderStageCreateInfo vertShaderStageInfo = shaderStages.get(0);
 
-            vertShaderStageInfo.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_SHADER_STAGE_CREATE_INFO);
-            vertShaderStageInfo.stage(VK10.VK_SHADER_STAGE_VERTEX_BIT);
-            vertShaderStageInfo.module(vertShaderModule);
-            vertShaderStageInfo.pName(entryPoint);
+    /**
+     * Starts a new frame: waits until the frame in flight is free, acquires a swap chain image, resets the frame's command pool, records the compute work and
+     * begins the render pass. The compute work is submitted to the async compute queue if there is one, see {@link ApplicationConfiguration#setAsyncCompute}.
+     * Everything the frame needs is preallocated per frame in flight, so neither this nor {@link #endFrame()} allocates in steady state.
+     *
+     * @param computeJob records the frame's compute work, may be null
+     * @return the recorder for the frame's command buffer, or null if the swap chain was out of date and no frame was started
+     */
+    public CommandRecorder beginFrame(ComputeJob computeJob) {
+        if (this.frameConfigChanged) {
+            this.rebuildFrames();
+        }
 
-            final VkPipelineShaderStageCreateInfo fragShaderStageInfo = shaderStages.get(1);
+        final Frame thisFrame = this.inFlightFrames.get(this.currentFrame);
 
-            fragShaderStageInfo.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_SHADER_STAGE_CREATE_INFO);
-            fragShaderStageInfo.stage(VK10.VK_SHADER_STAGE_FRAGMENT_BIT);
-            fragShaderStageInfo.module(fragShaderModule);
-            fragShaderStageInfo.pName(entryPoint);
+        long waitStart = System.nanoTime();
+        this.waitForFrameValue(thisFrame.submitValue());
+        long frameWait = this.pendingFrameWait + System.nanoTime() - waitStart;
+        this.pendingFrameWait = 0L;
+        if (!this.deletionQueue.isEmpty()) {
+            this.deletionQueue.collect(this.getCompletedFrameValue());
+        }
+        this.shaderCache.processChanges();
+
+        final int imageIndex;
+        if (this.headless) {
+            // one target per frame in flight, the fence above guarantees the target is idle
+            imageIndex = this.currentFrame;
+            thisFrame.pImageIndex().put(0, imageIndex);
+            this.deliverReadback(this.offscreenTargets.get(imageIndex));
+        } else {
+            final long acquireStart = System.nanoTime();
+            final int vkResult = KHRSwapchain.vkAcquireNextImageKHR(this.device, this.swapChain, VulkanUtils.UINT64_MAX,
+                    thisFrame.imageAvailableSemaphore(), VK10.VK_NULL_HANDLE, thisFrame.pImageIndex());
+            this.timings.recordSince(FramePhase.ACQUIRE, acquireStart);
 
-            // ===> VERTEX STAGE <===
+            if (vkResult == KHRSwapchain.VK_ERROR_OUT_OF_DATE_KHR) {
+                this.timings.record(FramePhase.FRAME_WAIT, frameWait);
+                this.recreateSwapChain(this.desiredSwapMode);
+                return null;
+            }
 
-            final VkPipelineVertexInputStateCreateInfo vertexInputInfo = VkPipelineVertexInputStateCreateInfo.calloc(stack);
-            vertexInputInfo.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_VERTEX_INPUT_STATE_CREATE_INFO);
+            imageIndex = thisFrame.imageIndex();
 
-            // ===> ASSEMBLY STAGE <===
+            // returns right away if the image was last used by this frame or an older one
+            waitStart = System.nanoTime();
+            this.waitForFrameValue(this.imagesInFlight[imageIndex]);
+            frameWait += System.nanoTime() - waitStart;
+        }
+        this.timings.record(FramePhase.FRAME_WAIT, frameWait);
 
-            final VkPipelineInputAssemblyStateCreateInfo inputAssembly = VkPipelineInputAssemblyStateCreateInfo.calloc(stack);
-            inputAssembly.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_INPUT_ASSEMBLY_STATE_CREATE_INFO);
-            inputAssembly.topology(VK10.VK_PRIMITIVE_TOPOLOGY_TRIANGLE_LIST);
-            inputAssembly.primitiveRestartEnable(false);
+        VK10.vkResetCommandPool(this.device, thisFrame.commandPool(), 0);
 
-            // ===> VIEWPORT & SCISSOR
+        final VkCommandBuffer commandBuffer = thisFrame.commandBuffer();
 
-            final VkViewport.Buffer viewport = VkViewport.calloc(1, stack);
-            viewport.x(0.0f);
-            viewport.y(0.0f);
-            viewport.width(this.swapChainExtent.width());
-            viewport.height(this.swapChainExtent.height());
-            viewport.minDepth(0.0f);
-            viewport.maxDepth(1.0f);
+        if (VK10.vkBeginCommandBuffer(commandBuffer, this.commandBufferBeginInfo) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to begin recording command buffer");
+        }
+        this.uploadManager.update(commandBuffer);
+        this.dynamicGeometry.beginFrame(this.submittedFrameValue + 1L, this.getCompletedFrameValue());
+        this.uniformRing.beginFrame(this.submittedFrameValue + 1L, this.getCompletedFrameValue());
+        this.descriptorAllocator.beginFrame(this.submittedFrameValue + 1L, this.getCompletedFrameValue());
+
+        if (this.gpuProfiler != null) {
+            this.gpuProfiler.beginFrame(commandBuffer, this.currentFrame);
+            this.gpuProfiler.begin(commandBuffer, GpuProfiler.FRAME_SCOPE);
+        }
+        this.recordCompute(computeJob, thisFrame, imageIndex);
+        if (this.renderGraph != null) {
+            this.renderGraph.execute(commandBuffer, this.currentFrame, imageIndex);
+        }
+        if (this.gpuProfiler != null) {
+            this.gpuProfiler.begin(commandBuffer, GpuProfiler.RENDER_PASS_SCOPE);
+        }
 
-            final VkRect2D.Buffer scissor = VkRect2D.calloc(1, stack);
-            scissor.offset(VkOffset2D.calloc(stack).set(0, 0));
-            scissor.extent(this.swapChainExtent);
+        final int width = this.swapChainExtent.width();
+        final int height = this.swapChainExtent.height();
+        final long framebuffer;
+        if (this.dynamicRendering) {
+            framebuffer = VK10.VK_NULL_HANDLE;
+            this.beginRendering(commandBuffer, imageIndex);
+        } else {
+            framebuffer = this.swapChainFramebuffers.get(imageIndex);
+            this.renderPassBeginInfo.framebuffer(framebuffer);
+            VK10.vkCmdBeginRenderPass(commandBuffer, this.renderPassBeginInfo,
+                    this.recordingThreadPool != null ? VK10.VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS : VK10.VK_SUBPASS_CONTENTS_INLINE);
+        }
 
-            final VkPipelineViewportStateCreateInfo viewportState = VkPipelineViewportStateCreateInfo.calloc(stack);
-            viewportState.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_VIEWPORT_STATE_CREATE_INFO);
-            viewportState.pViewports(viewport);
-            viewportState.pScissors(scissor);
+        if (this.recordingThreadPool != null) {
+            // all draw work goes into secondary command buffers, the primary one only executes them
+            final VkCommandBuffer secondaryBuffer = this.recordingThreadPool.beginFrame(this.currentFrame, imageIndex, width, height, this.renderPass,
+                    framebuffer, this.graphicsPipeline, this.viewport, this.scissor);
+            this.recorder.begin(secondaryBuffer, this.currentFrame, imageIndex, width, height);
+        } else {
+            VK10.vkCmdBindPipeline(commandBuffer, VK10.VK_PIPELINE_BIND_POINT_GRAPHICS, this.graphicsPipeline);
+            VK10.vkCmdSetViewport(commandBuffer, 0, this.viewport);
+            VK10.vkCmdSetScissor(commandBuffer, 0, this.scissor);
+            this.recorder.begin(commandBuffer, this.currentFrame, imageIndex, width, height);
+        }
+        return this.recorder;
+    }
 
-            // ===> RASTERIZATION STAGE <===
 
-            final VkPipelineRasterizationStateCreateInfo rasterizer = VkPipelineRasterizationStateCreateInfo.calloc(stack);
-            rasterizer.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_RASTERIZATION_STATE_CREATE_INFO);
-            rasterizer.depthClampEnable(false);
-            rasterizer.rasterizerDiscardEnable(false);
-            rasterizer.polygonMode(VK10.VK_POLYGON_MODE_FILL);
-            rasterizer.lineWidth(1.0f);
-            rasterizer.cullMode(VK10.VK_CULL_MODE_BACK_BIT);
-            rasterizer.frontFace(VK10.VK_FRONT_FACE_CLOCKWISE);
-            rasterizer.depthBiasEnable(false);
+    private void recordCompute(ComputeJob computeJob, Frame frame, int imageIndex) {
+        if (computeJob == null) {
+            frame.setComputeWait(VK10.VK_NULL_HANDLE, 0);
+            return;
+        }
 
-            // ===> MULTISAMPLING <===
+        final long start = System.nanoTime();
+        final int width = this.swapChainExtent.width();
+        final int height = this.swapChainExtent.height();
+        if (this.asyncCompute != null) {
+            this.computeRecorder.begin(this.asyncCompute.begin(this.currentFrame), this.currentFrame, imageIndex, width, height);
+            computeJob.record(this.computeRecorder);
+            this.computeRecorder.end();
+            if (this.computeRecorder.hasRecorded()) {
+                // the semaphore wait makes the results visible to the waiting stages
+                frame.setComputeWait(this.asyncCompute.submit(this.currentFrame), AsyncCompute.CONSUMER_STAGES);
+            } else {
+                // an empty submission would only make the graphics queue wait
+                this.asyncCompute.discard(this.currentFrame);
+                frame.setComputeWait(VK10.VK_NULL_HANDLE, 0);
+            }
+        } else {
+            this.computeRecorder.begin(frame.commandBuffer(), this.currentFrame, imageIndex, width, height);
+            computeJob.record(this.computeRecorder);
+            this.computeRecorder.end();
+            if (this.computeRecorder.hasRecorded()) {
+                VK10.vkCmdPipelineBarrier(frame.commandBuffer(), VK10.VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, AsyncCompute.CONSUMER_STAGES, 0,
+                        this.computeBarrier, null, null);
+            }
+        }
+        this.timings.recordSince(FramePhase.COMPUTE, start);
+    }
 
-            final VkPipelineMultisampleStateCreateInfo multisampling = VkPipelineMultisampleStateCreateInfo.calloc(stack);
-            multisampling.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_MULTISAMPLE_STATE_CREATE_INFO);
-            multisampling.sampleShadingEnable(false);
-            multisampling.rasterizationSamples(VK10.VK_SAMPLE_COUNT_1_BIT);
 
-            // ===> COLOR BLENDING <===
+    private void beginRendering(VkCommandBuffer commandBuffer, int imageIndex) {
+        final boolean depth = this.depthFormat != VK10.VK_FORMAT_UNDEFINED;
+        this.presentedBarrier.image(this.swapChainImages.get(imageIndex));
+        VK10.vkCmdPipelineBarrier(commandBuffer,
+                VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT | (depth ? VK10.VK_PIPELINE_STAGE_LATE_FRAGMENT_TESTS_BIT : 0),
+                VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT | (depth ? VK10.VK_PIPELINE_STAGE_EARLY_FRAGMENT_TESTS_BIT : 0), 0, null, null,
+                this.attachmentBarriers);
+        if (this.samples != VK10.VK_SAMPLE_COUNT_1_BIT) {
+            this.colorAttachment.resolveImageView(this.swapChainImageViews.get(imageIndex));
+        } else {
+            this.colorAttachment.imageView(this.swapChainImageViews.get(imageIndex));
+        }
+        if (this.physicalDevice.isDynamicRenderingExtension()) {
+            KHRDynamicRendering.vkCmdBeginRenderingKHR(commandBuffer, this.renderingInfo);
+        } else {
+            VK13.vkCmdBeginRendering(commandBuffer, this.renderingInfo);
+        }
+    }
 
-            final VkPipelineColorBlendAttachmentState.Buffer colorBlendAttachment = VkPipelineColorBlendAttachmentState.calloc(1, stack);
-            colorBlendAttachment.colorWriteMask(
-                    VK10.VK_COLOR_COMPONENT_R_BIT | VK10.VK_COLOR_COMPONENT_G_BIT | VK10.VK_COLOR_COMPONENT_B_BIT | VK10.VK_COLOR_COMPONENT_A_BIT);
-            colorBlendAttachment.blendEnable(false);
 
-            final VkPipelineColorBlendStateCreateInfo colorBlending = VkPipelineColorBlendStateCreateInfo.calloc(stack);
-            colorBlending.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_COLOR_BLEND_STATE_CREATE_INFO);
-            colorBlending.logicOpEnable(false);
-            colorBlending.logicOp(VK10.VK_LOGIC_OP_COPY);
-            colorBlending.pAttachments(colorBlendAttachment);
-            colorBlending.blendConstants(stack.floats(0.0f, 0.0f, 0.0f, 0.0f));
+    private void endRendering(VkCommandBuffer commandBuffer, int imageIndex) {
+        if (this.physicalDevice.isDynamicRenderingExtension()) {
+            KHRDynamicRendering.vkCmdEndRenderingKHR(commandBuffer);
+        } else {
+            VK13.vkCmdEndRendering(commandBuffer);
+        }
+        this.finalBarrier.image(this.swapChainImages.get(imageIndex));
+        VK10.vkCmdPipelineBarrier(commandBuffer, VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT,
+                this.headless ? VK10.VK_PIPELINE_STAGE_TRANSFER_BIT : VK10.VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, 0, null, null, this.finalBarrier);
+    }
 
-            // ===> PIPELINE LAYOUT CREATION <===
 
-            final VkPipelineLayoutCreateInfo pipelineLayoutInfo = VkPipelineLayoutCreateInfo.calloc(stack);
-            pipelineLayoutInfo.sType(VK10.VK_STRUCTURE_TYPE_PIPELINE_LAYOUT_CREATE_INFO);
+    /**
+     * Ends the render pass and the command buffer of the frame started by {@link #beginFrame()}, submits it and presents the image.
+     */
+    public void endFrame() {
+        final Frame thisFrame = this.inFlightFrames.get(this.currentFrame);
+        final VkCommandBuffer commandBuffer = thisFrame.commandBuffer();
+        final int imageIndex = thisFrame.imageIndex();
+        this.recorder.end();
 
-            final LongBuffer pPipelineLayout = stack.longs(VK10.VK_NULL_HANDLE);
+        if (this.recordingThreadPool != null) {
+            this.recordingThreadPool.endFrame(commandBuffer);
+        }
+        if (this.dynamicRendering) {
+            this.endRendering(commandBuffer, imageIndex);
+        } else {
+            VK10.vkCmdEndRenderPass(commandBuffer);
+        }
+        if (this.gpuProfiler != null) {
+            this.gpuProfiler.end(commandBuffer, GpuProfiler.RENDER_PASS_SCOPE);
+        }
 
-            if (VK10.vkCreatePipelineLayout(this.device, pipelineLayoutInfo, null, pPipelineLayout) != VK10.VK_SUCCESS) {
-                throw new RuntimeException("Failed to create pipeline layout");
+        OffscreenTarget target = null;
+        if (this.headless) {
+            target = this.offscreenTargets.get(imageIndex);
+            if (target.hasReadback()) {
+                target.recordReadback(commandBuffer);
             }
+        }
+
+        if (this.gpuProfiler != null) {
+            this.gpuProfiler.end(commandBuffer, GpuProfiler.FRAME_SCOPE);
+        }
+        if (VK10.vkEndCommandBuffer(commandBuffer) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to record command buffer");
+        }
+
+        this.dynamicGeometry.endFrame();
+        this.uniformRing.endFrame();
+        this.descriptorAllocator.endFrame();
+        if (this.bindlessResources != null) {
+            this.bindlessResources.update();
+        }
+        final long submitValue = this.submittedFrameValue + 1L;
+        thisFrame.setSubmitValue(submitValue);
+        if (this.frameTimeline == null) {
+            VK10.vkResetFences(this.device, thisFrame.pFence());
+        }
+
+        final long submitStart = System.nanoTime();
+        if (VK10.vkQueueSubmit(this.graphicsQueue, thisFrame.submitInfo(), thisFrame.fence()) != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to submit draw command buffer");
+        }
+        this.timings.recordSince(FramePhase.SUBMIT, submitStart);
+        this.submittedFrameValue = submitValue;
 
-            this.pipelineLayout = pPipelineLayout.get(0);
-
-            final VkGraphicsPipelineCreateInfo.Buffer pipelineInfo = VkGraphicsPipelineCreateInfo.calloc(1, stack);
-            pipelineInfo.sType(VK10.VK_STRUCTURE_TYPE_GRAPHICS_PIPELINE_CREATE_INFO);
-            pipelineInfo.pStages(shaderStages);
-            pipelineInfo.pVertexInputState(vertexInputInfo);
-            pipelineInfo.pInputAssemblyState(inputAssembly);
-            pipelineInfo.pViewportState(viewportState);
-            pipelineInfo.pRasterizationState(rasterizer);
-            pipelineInfo.pMultisampleState(multisampling);
-            pipelineInfo.pColorBlendState(colorBlending);
-            pipelineInfo.layout(this.pipelineLayout);
-            pipelineInfo.renderPass(this.renderPass);
-            pipelineInfo.subpass(0);
-            pipelineInfo.basePipelineHandle(VK10.VK_NULL_HANDLE);
-            pipelineInfo.basePipelineIndex(-1);
-
-            final LongBuffer pGraphicsPipeline = stack.mallocLong(1);
-
-            if (VK10.vkCreateGraphicsPipelines(this.device, VK10.VK_NULL_HANDLE, pipelineInfo, null, pGraphicsPipeline) != VK10.VK_SUCCESS) {
-                throw new RuntimeException("Failed to create graphics pipeline");
+        if (this.headless) {
+            if (target.hasReadback()) {
+                target.setPendingFrame(this.frameNumber);
             }
+            this.frameNumber++;
+            this.currentFrame = (this.currentFrame + 1) % this.inFlightFrames.size();
+            return;
+        }
+
+        this.imagesInFlight[imageIndex] = submitValue;
+        final long presentStart = System.nanoTime();
+        final int vkResult = KHRSwapchain.vkQueuePresentKHR(this.presentQueue, thisFrame.presentInfo(this.swapChain));
+        this.timings.recordSince(FramePhase.PRESENT, presentStart);
+
+        if (vkResult == KHRSwapchain.VK_ERROR_OUT_OF_DATE_KHR || vkResult == KHRSwapchain.VK_SUBOPTIMAL_KHR || this.framebufferResize) {
+            this.framebufferResize = false;
+            this.recreateSwapChain(this.desiredSwapMode);
+        } else if (vkResult != VK10.VK_SUCCESS) {
+            throw new RuntimeException("Failed to present swap chain image");
+        }
 
-            this.graphicsPipeline = pGraphicsPipeline.get(0);
+        this.currentFrame = (this.currentFrame + 1) % this.inFlightFrames.size();
+    }
 
-            // ===> RELEASE RESOURCES <===
 
-            VK10.vkDestroyShaderModule(this.device, vertShaderModule, null);
-            VK10.vkDestroyShaderModule(this.device, fragShaderModule, null);
+    /**
+     * Hands the finished readback of the target to the listener. The caller must make sure the GPU is done with the target.
+     */
+    private void deliverReadback(OffscreenTarget target) {
+        if (target.pendingFrame() == OffscreenTarget.NO_PENDING_FRAME) {
+            return;
         }
+
+        final ByteBuffer pixels = target.readbackMapping();
+        pixels.clear();
+        this.readbackListener.onReadback(target.pendingFrame(), this.swapChainExtent.width(), this.swapChainExtent.height(), pixels);
+        target.setPendingFrame(OffscreenTarget.NO_PENDING_FRAME);
     }
 
 
-    private long createShaderModule(ByteBuffer spirvCode) {
+    private void createFrameBuffers() {
+        if (this.dynamicRendering) {
+            // dynamic rendering renders into the image views directly
+            this.swapChainFramebuffers = Collections.emptyList();
+            return;
+        }
+        this.swapChainFramebuffers = new ArrayList<>(this.swapChainImageViews.size());
+
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            final VkShaderModuleCreateInfo createInfo = VkShaderModuleCreateInfo.calloc(stack);
-            createInfo.sType(VK10.VK_STRUCTURE_TYPE_SHADER_MODULE_CREATE_INFO);
-            createInfo.pCode(spirvCode);
+            // the shared images are the same in every framebuffer
+            final LongBuffer attachments = stack.mallocLong(this.attachmentCount());
+            final int imageViewIndex = this.samples != VK10.VK_SAMPLE_COUNT_1_BIT ? attachments.capacity() - 1 : 0;
+            if (this.samples != VK10.VK_SAMPLE_COUNT_1_BIT) {
+                attachments.put(0, this.renderTargets.getColorView());
+            }
+            if (this.depthFormat != VK10.VK_FORMAT_UNDEFINED) {
+                attachments.put(VulkanInitializer.DEPTH_ATTACHMENT, this.renderTargets.getDepthView());
+            }
+            final LongBuffer pFramebuffer = stack.mallocLong(1);
+
+            // Lets allocate the create info struct once and just update the pAttachments field each iteration
+            final VkFramebufferCreateInfo framebufferInfo = VkFramebufferCreateInfo.calloc(stack);
+            framebufferInfo.sType(VK10.VK_STRUCTURE_TYPE_FRAMEBUFFER_CREATE_INFO);
+            framebufferInfo.renderPass(this.renderPass);
+            framebufferInfo.width(this.swapChainExtent.width());
+            framebufferInfo.height(this.swapChainExtent.height());
+            framebufferInfo.layers(1);
+
+            for (final long imageView : this.swapChainImageViews) {
 
-            final LongBuffer pShaderModule = stack.mallocLong(1);
+                attachments.put(imageViewIndex, imageView);
 
-            if (VK10.vkCreateShaderModule(this.device, createInfo, null, pShaderModule) != VK10.VK_SUCCESS) {
-                throw new RuntimeException("Failed to create shader module");
+                framebufferInfo.pAttachments(attachments);
+
+                if (VK10.vkCreateFramebuffer(this.device, framebufferInfo, null, pFramebuffer) != VK10.VK_SUCCESS) {
+                    throw new RuntimeException("Failed to create framebuffer");
+                }
+
+                this.swapChainFramebuffers.add(pFramebuffer.get(0));
             }
+        }
+    }
 
-            return pShaderModule.get(0);
+
+    private void createGraphicsPipeline() {
+        this.pipelineState = new PipelineState(VulkanInitializer.VERTEX_SHADER, VulkanInitializer.FRAGMENT_SHADER, this.vertexLayout, this.renderPass,
+                this.pipelineLayout).withSamples(this.samples);
+        if (this.depthFormat != VK10.VK_FORMAT_UNDEFINED) {
+            this.pipelineState = this.pipelineState.withDepth(true, true, VK10.VK_COMPARE_OP_LESS);
+        }
+        if (this.dynamicRendering) {
+            this.pipelineState = this.pipelineState.withDynamicRendering(this.swapChainImageFormat, this.depthFormat);
+        }
+        this.graphicsPipeline = this.pipelines.get(this.pipelineState);
+    }
+
+
+    private void onShaderReload(Set<String> names) {
+        // the cache already dropped the old pipeline, it's destroyed once the frames in flight completed
+        if (names.stream().anyMatch(this.pipelineState::usesShader)) {
+            this.graphicsPipeline = this.pipelines.get(this.pipelineState);
         }
     }
 
@@ -639,7 +1453,8 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
             appInfo.applicationVersion(VK10.VK_MAKE_VERSION(1, 0, 0));
             appInfo.pEngineName(stack.UTF8Safe("VEngine"));
             appInfo.engineVersion(VK10.VK_MAKE_VERSION(0, 0, 1));
-            appInfo.apiVersion(VK10.VK_API_VERSION_1_0);
+            // 1.3 is requested where the loader supports it, so features like timeline semaphores and dynamic rendering can be used on capable devices
+            appInfo.apiVersion(Math.min(VK.getInstanceVersionSupported(), VK13.VK_API_VERSION_1_3));
 
             final VkInstanceCreateInfo createInfo = VkInstanceCreateInfo.calloc(stack);
             createInfo.sType(VK10.VK_STRUCTURE_TYPE_INSTANCE_CREATE_INFO);
@@ -699,10 +1514,14 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
     }
 
 
-    private void createLogicalDevice(boolean debugMode) {
+    private void createLogicalDevice(boolean debugMode, boolean asyncCompute) {
 
+        final int[] sharedQueueFamilies;
         try (MemoryStack stack = MemoryStack.stackPush()) {
             final QueueFamilyIndices indices = this.findQueueFamilies(this.physicalDevice.getDevice());
+            if (!asyncCompute) {
+                indices.computeFamily = null;
+            }
             final int[] uniqueQueueFamilies = indices.unique();
             final VkDeviceQueueCreateInfo.Buffer queueCreateInfos = VkDeviceQueueCreateInfo.calloc(uniqueQueueFamilies.length, stack);
 
@@ -713,13 +1532,57 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
                 queueCreateInfo.pQueuePriorities(stack.floats(1.0f));
             }
 
+            // indirect draw features cost nothing when unused, so they are enabled whenever the device has them
             final VkPhysicalDeviceFeatures deviceFeatures = VkPhysicalDeviceFeatures.calloc(stack);
+            deviceFeatures.multiDrawIndirect(this.physicalDevice.isMultiDrawIndirectSupported());
+            deviceFeatures.drawIndirectFirstInstance(this.physicalDevice.isDrawIndirectFirstInstanceSupported());
             final VkDeviceCreateInfo createInfo = VkDeviceCreateInfo.calloc(stack);
 
             createInfo.sType(VK10.VK_STRUCTURE_TYPE_DEVICE_CREATE_INFO);
             createInfo.pQueueCreateInfos(queueCreateInfos);
             createInfo.pEnabledFeatures(deviceFeatures);
-            createInfo.ppEnabledExtensionNames(this.asPointerBuffer(stack, VulkanInitializer.DEVICE_EXTENSIONS));
+
+            // optional features are chained in front of each other
+            long features = MemoryUtil.NULL;
+            if (this.timelineSemaphores) {
+                final VkPhysicalDeviceTimelineSemaphoreFeatures timelineFeatures = VkPhysicalDeviceTimelineSemaphoreFeatures.calloc(stack);
+                timelineFeatures.sType(VK12.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_TIMELINE_SEMAPHORE_FEATURES);
+                timelineFeatures.timelineSemaphore(true);
+                timelineFeatures.pNext(features);
+                features = timelineFeatures.address();
+            }
+            final Set<String> extensions = new HashSet<>(this.getRequiredDeviceExtensions());
+            if (this.bindless) {
+                final VkPhysicalDeviceDescriptorIndexingFeatures indexingFeatures = VkPhysicalDeviceDescriptorIndexingFeatures.calloc(stack);
+                indexingFeatures.sType(VK12.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_DESCRIPTOR_INDEXING_FEATURES);
+                indexingFeatures.runtimeDescriptorArray(true);
+                indexingFeatures.descriptorBindingPartiallyBound(true);
+                indexingFeatures.descriptorBindingUpdateUnusedWhilePending(true);
+                indexingFeatures.shaderSampledImageArrayNonUniformIndexing(true);
+                indexingFeatures.shaderStorageBufferArrayNonUniformIndexing(true);
+                indexingFeatures.descriptorBindingSampledImageUpdateAfterBind(true);
+                indexingFeatures.descriptorBindingStorageBufferUpdateAfterBind(true);
+                indexingFeatures.pNext(features);
+                features = indexingFeatures.address();
+                if (this.physicalDevice.isDescriptorIndexingExtension()) {
+                    extensions.add(EXTDescriptorIndexing.VK_EXT_DESCRIPTOR_INDEXING_EXTENSION_NAME);
+                }
+            }
+            if (this.dynamicRendering) {
+                final VkPhysicalDeviceDynamicRenderingFeatures renderingFeatures = VkPhysicalDeviceDynamicRenderingFeatures.calloc(stack);
+                renderingFeatures.sType(VK13.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_DYNAMIC_RENDERING_FEATURES);
+                renderingFeatures.dynamicRendering(true);
+                renderingFeatures.pNext(features);
+                features = renderingFeatures.address();
+                if (this.physicalDevice.isDynamicRenderingExtension()) {
+                    extensions.add(KHRDynamicRendering.VK_KHR_DYNAMIC_RENDERING_EXTENSION_NAME);
+                }
+            }
+            if (this.physicalDevice.isDrawIndirectCountSupported()) {
+                extensions.add(KHRDrawIndirectCount.VK_KHR_DRAW_INDIRECT_COUNT_EXTENSION_NAME);
+            }
+            createInfo.pNext(features);
+            createInfo.ppEnabledExtensionNames(this.asPointerBuffer(stack, extensions));
 
             if (debugMode) {
                 createInfo.ppEnabledLayerNames(this.asPointerBuffer(stack, this.validationLayers));
@@ -732,17 +1595,37 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
             }
 
             this.device = new VkDevice(pDevice.get(0), this.physicalDevice.getDevice(), createInfo);
+            this.graphicsFamily = indices.graphicsFamily;
 
             final PointerBuffer pQueue = stack.pointers(VK10.VK_NULL_HANDLE);
             VK10.vkGetDeviceQueue(this.device, indices.graphicsFamily, 0, pQueue);
             this.graphicsQueue = new VkQueue(pQueue.get(0), this.device);
             VK10.vkGetDeviceQueue(this.device, indices.presentFamily, 0, pQueue);
             this.presentQueue = new VkQueue(pQueue.get(0), this.device);
+            if (indices.transferFamily != null) {
+                VK10.vkGetDeviceQueue(this.device, indices.transferFamily, 0, pQueue);
+                this.transferQueue = new VkQueue(pQueue.get(0), this.device);
+                this.transferFamily = indices.transferFamily;
+            } else {
+                // uploads share the graphics queue
+                this.transferQueue = this.graphicsQueue;
+                this.transferFamily = indices.graphicsFamily;
+            }
+            if (indices.computeFamily != null) {
+                VK10.vkGetDeviceQueue(this.device, indices.computeFamily, 0, pQueue);
+                this.asyncCompute = new AsyncCompute(this.device, new VkQueue(pQueue.get(0), this.device), indices.computeFamily);
+                sharedQueueFamilies = IntStream.of(this.graphicsFamily, this.transferFamily, indices.computeFamily).distinct().toArray();
+            } else {
+                // without async compute the transfer queue hands its buffers over like for any other buffer
+                sharedQueueFamilies = new int[] { this.graphicsFamily };
+            }
         }
+
+        this.memoryAllocator = new MemoryAllocator(this.vkInstance, this.device, sharedQueueFamilies);
     }
 
 
-    private void createSwapChain(SwapMode desiredSwapMode) {
+    private void createSwapChain(SwapMode desiredSwapMode, long oldSwapChain) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             final SwapChainSupportDetails swapChainSupport = this.querySwapChainSupport(this.physicalDevice.getDevice(), stack);
 
@@ -750,8 +1633,12 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
             final SwapMode presentMode = this.chooseSwapPresentMode(swapChainSupport.presentModes, desiredSwapMode);
             final VkExtent2D extent = this.chooseSwapExtent(stack, swapChainSupport.capabilities);
 
-            final IntBuffer imageCount = stack.ints(swapChainSupport.capabilities.minImageCount() + 1);
+            final int minImageCount = swapChainSupport.capabilities.minImageCount();
+            final IntBuffer imageCount = stack.ints(this.desiredSwapChainImageCount > 0 ? this.desiredSwapChainImageCount : minImageCount + 1);
 
+            if (imageCount.get(0) < minImageCount) {
+                imageCount.put(0, minImageCount);
+            }
             if (swapChainSupport.capabilities.maxImageCount() > 0 && imageCount.get(0) > swapChainSupport.capabilities.maxImageCount()) {
                 imageCount.put(0, swapChainSupport.capabilities.maxImageCount());
             }
@@ -783,7 +1670,8 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
             createInfo.presentMode(presentMode.getVulkanId());
             createInfo.clipped(true);
 
-            createInfo.oldSwapchain(VK10.VK_NULL_HANDLE);
+            // the old swap chain is retired, its images that are already acquired can still be presented
+            createInfo.oldSwapchain(oldSwapChain);
 
             final LongBuffer pSwapChain = stack.longs(VK10.VK_NULL_HANDLE);
 
@@ -811,6 +1699,122 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
     }
 
 
+    private void createOffscreenTargets() {
+        final int width = this.headlessWidth;
+        final int height = this.headlessHeight;
+        final boolean readback = this.readbackListener != null;
+
+        this.swapChainImageFormat = VK10.VK_FORMAT_R8G8B8A8_UNORM;
+        this.swapChainExtent = VkExtent2D.create().set(width, height);
+        final int targetCount = this.desiredFramesInFlight;
+        this.swapChainImages = new ArrayList<>(targetCount);
+        this.offscreenTargets = new ArrayList<>(targetCount);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkImageCreateInfo imageInfo = VkImageCreateInfo.calloc(stack);
+            imageInfo.sType(VK10.VK_STRUCTURE_TYPE_IMAGE_CREATE_INFO);
+            imageInfo.imageType(VK10.VK_IMAGE_TYPE_2D);
+            imageInfo.format(this.swapChainImageFormat);
+            imageInfo.extent().set(width, height, 1);
+            imageInfo.mipLevels(1);
+            imageInfo.arrayLayers(1);
+            imageInfo.samples(VK10.VK_SAMPLE_COUNT_1_BIT);
+            imageInfo.tiling(VK10.VK_IMAGE_TILING_OPTIMAL);
+            imageInfo.usage(VK10.VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT | VK10.VK_IMAGE_USAGE_TRANSFER_SRC_BIT);
+            imageInfo.sharingMode(VK10.VK_SHARING_MODE_EXCLUSIVE);
+            imageInfo.initialLayout(VK10.VK_IMAGE_LAYOUT_UNDEFINED);
+
+            final VkBufferCreateInfo bufferInfo = VkBufferCreateInfo.calloc(stack);
+            bufferInfo.sType(VK10.VK_STRUCTURE_TYPE_BUFFER_CREATE_INFO);
+            bufferInfo.size((long) width * height * 4);
+            bufferInfo.usage(VK10.VK_BUFFER_USAGE_TRANSFER_DST_BIT);
+            bufferInfo.sharingMode(VK10.VK_SHARING_MODE_EXCLUSIVE);
+
+            final LongBuffer pImage = stack.mallocLong(1);
+            final LongBuffer pBuffer = stack.mallocLong(1);
+            final PointerBuffer pData = stack.mallocPointer(1);
+            final VkMemoryRequirements memRequirements = VkMemoryRequirements.malloc(stack);
+
+            for (int i = 0; i < targetCount; i++) {
+                if (VK10.vkCreateImage(this.device, imageInfo, null, pImage) != VK10.VK_SUCCESS) {
+                    throw new RuntimeException("Failed to create offscreen image");
+                }
+                final long image = pImage.get(0);
+                VK10.vkGetImageMemoryRequirements(this.device, image, memRequirements);
+                final long imageMemory = this.allocateMemory(memRequirements, VK10.VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0);
+                VK10.vkBindImageMemory(this.device, image, imageMemory, 0);
+
+                long readbackBuffer = VK10.VK_NULL_HANDLE;
+                long readbackMemory = VK10.VK_NULL_HANDLE;
+                ByteBuffer readbackMapping = null;
+                if (readback) {
+                    if (VK10.vkCreateBuffer(this.device, bufferInfo, null, pBuffer) != VK10.VK_SUCCESS) {
+                        throw new RuntimeException("Failed to create readback buffer");
+                    }
+                    readbackBuffer = pBuffer.get(0);
+                    VK10.vkGetBufferMemoryRequirements(this.device, readbackBuffer, memRequirements);
+                    // cached memory makes reading on the CPU a lot faster, but it's not available everywhere
+                    readbackMemory = this.allocateMemory(memRequirements, VK10.VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK10.VK_MEMORY_PROPERTY_HOST_COHERENT_BIT,
+                            VK10.VK_MEMORY_PROPERTY_HOST_CACHED_BIT);
+                    VK10.vkBindBufferMemory(this.device, readbackBuffer, readbackMemory, 0);
+                    if (VK10.vkMapMemory(this.device, readbackMemory, 0, VK10.VK_WHOLE_SIZE, 0, pData) != VK10.VK_SUCCESS) {
+                        throw new RuntimeException("Failed to map readback memory");
+                    }
+                    readbackMapping = MemoryUtil.memByteBuffer(pData.get(0), (int) bufferInfo.size());
+                }
+
+                this.swapChainImages.add(image);
+                this.offscreenTargets.add(new OffscreenTarget(image, imageMemory, width, height, readbackBuffer, readbackMemory, readbackMapping));
+            }
+        }
+    }
+
+
+    /**
+     * Allocates device memory that fits the requirements. Memory types that also have the preferred properties are picked first.
+     */
+    private long allocateMemory(VkMemoryRequirements requirements, int requiredProperties, int preferredProperties) {
+        int memoryType = this.findMemoryType(requirements.memoryTypeBits(), requiredProperties | preferredProperties);
+        if (memoryType < 0) {
+            memoryType = this.findMemoryType(requirements.memoryTypeBits(), requiredProperties);
+        }
+        if (memoryType < 0) {
+            throw new RuntimeException("Failed to find a suitable memory type");
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkMemoryAllocateInfo allocInfo = VkMemoryAllocateInfo.calloc(stack);
+            allocInfo.sType(VK10.VK_STRUCTURE_TYPE_MEMORY_ALLOCATE_INFO);
+            allocInfo.allocationSize(requirements.size());
+            allocInfo.memoryTypeIndex(memoryType);
+
+            final LongBuffer pMemory = stack.mallocLong(1);
+
+            if (VK10.vkAllocateMemory(this.device, allocInfo, null, pMemory) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to allocate device memory");
+            }
+
+            return pMemory.get(0);
+        }
+    }
+
+
+    private int findMemoryType(int typeFilter, int properties) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkPhysicalDeviceMemoryProperties memProperties = VkPhysicalDeviceMemoryProperties.malloc(stack);
+            VK10.vkGetPhysicalDeviceMemoryProperties(this.physicalDevice.getDevice(), memProperties);
+
+            for (int i = 0; i < memProperties.memoryTypeCount(); i++) {
+                if ((typeFilter & 1 << i) != 0 && (memProperties.memoryTypes(i).propertyFlags() & properties) == properties) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+
     private VkSurfaceFormatKHR chooseSwapSurfaceFormat(VkSurfaceFormatKHR.Buffer availableFormats) {
         return availableFormats.stream().filter(availableFormat -> availableFormat.format() == VK10.VK_FORMAT_B8G8R8_UNORM)
                 .filter(availableFormat -> availableFormat.colorSpace() == KHRSurface.VK_COLOR_SPACE_SRGB_NONLINEAR_KHR).findAny()
@@ -896,6 +1900,10 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
     private boolean isDeviceSuitable(VkPhysicalDevice device) {
         final QueueFamilyIndices indices = this.findQueueFamilies(device);
         final boolean extensionsSupported = this.checkDeviceExtensionSupport(device);
+        if (this.headless) {
+            return indices.isComplete() && extensionsSupported;
+        }
+
         boolean swapChainAdequate = false;
 
         if (extensionsSupported) {
@@ -916,11 +1924,17 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
             final VkExtensionProperties.Buffer availableExtensions = VkExtensionProperties.malloc(extensionCount.get(0), stack);
             VK10.vkEnumerateDeviceExtensionProperties(device, (String) null, extensionCount, availableExtensions);
             return availableExtensions.stream().map(VkExtensionProperties::extensionNameString).collect(Collectors.toSet())
-                    .containsAll(VulkanInitializer.DEVICE_EXTENSIONS);
+                    .containsAll(this.getRequiredDeviceExtensions());
         }
     }
 
 
+    private Set<String> getRequiredDeviceExtensions() {
+        // without a surface there is nothing to present to
+        return this.headless ? Collections.emptySet() : VulkanInitializer.DEVICE_EXTENSIONS;
+    }
+
+
     private SwapChainSupportDetails querySwapChainSupport(VkPhysicalDevice device, MemoryStack stack) {
         final SwapChainSupportDetails details = new SwapChainSupportDetails();
 
@@ -957,10 +1971,25 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
             VK10.vkGetPhysicalDeviceQueueFamilyProperties(device, queueFamilyCount, queueFamilies);
             final IntBuffer presentSupport = stack.ints(VK10.VK_FALSE);
 
-            for (int i = 0; i < queueFamilies.capacity() || !indices.isComplete(); i++) {
-                if ((queueFamilies.get(i).queueFlags() & VK10.VK_QUEUE_GRAPHICS_BIT) != 0) {
+            for (int i = 0; i < queueFamilies.capacity(); i++) {
+                final int queueFlags = queueFamilies.get(i).queueFlags();
+                if ((queueFlags & VK10.VK_QUEUE_GRAPHICS_BIT) != 0) {
                     indices.graphicsFamily = i;
                 }
+                // a family that can only transfer is usually backed by the DMA engines, which copy in parallel to rendering
+                if (indices.transferFamily == null && (queueFlags & VK10.VK_QUEUE_TRANSFER_BIT) != 0
+                        && (queueFlags & (VK10.VK_QUEUE_GRAPHICS_BIT | VK10.VK_QUEUE_COMPUTE_BIT)) == 0) {
+                    indices.transferFamily = i;
+                }
+                // a compute family without graphics is usually backed by the async compute engines, which run in parallel to rendering
+                if (indices.computeFamily == null && (queueFlags & VK10.VK_QUEUE_COMPUTE_BIT) != 0 && (queueFlags & VK10.VK_QUEUE_GRAPHICS_BIT) == 0) {
+                    indices.computeFamily = i;
+                }
+                if (this.headless) {
+                    // the graphics queue doubles as present queue, nothing is ever presented
+                    indices.presentFamily = indices.graphicsFamily;
+                    continue;
+                }
                 KHRSurface.vkGetPhysicalDeviceSurfaceSupportKHR(device, i, this.surface, presentSupport);
                 if (presentSupport.get(0) == VK10.VK_TRUE) {
                     indices.presentFamily = i;
@@ -973,6 +2002,15 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
 
 
     private PointerBuffer getRequiredExtensions(MemoryStack stack, boolean debugMode) {
+        if (this.headless) {
+            // GLFW is not initialized in headless mode and no surface extensions are needed
+            final PointerBuffer extensions = stack.mallocPointer(debugMode ? 1 : 0);
+            if (debugMode) {
+                extensions.put(stack.UTF8(EXTDebugUtils.VK_EXT_DEBUG_UTILS_EXTENSION_NAME));
+            }
+            return extensions.rewind();
+        }
+
         final PointerBuffer glfwExtensions = GLFWVulkan.glfwGetRequiredInstanceExtensions();
 
         if (debugMode) {
@@ -1027,36 +2065,131 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
     public void dispose() {
         // Wait for the device to complete all operations before release resources
         VK10.vkDeviceWaitIdle(this.device);
+        // evicted pipelines that are still being created are added to the deletion queue once they exist
+        this.pipelines.dispose();
+        this.deletionQueue.flush();
+        try {
+            this.pipelineCache.save();
+        } catch (final IOException e) {
+            // the next start compiles the pipelines again
+            System.err.println("Failed to save the pipeline cache: " + e.getMessage());
+        }
 
+        if (this.headless) {
+            this.offscreenTargets.forEach(this::deliverReadback);
+        }
         this.disposeSwapChain();
-        this.inFlightFrames.forEach(frame -> {
-            VK10.vkDestroySemaphore(this.device, frame.renderFinishedSemaphore(), null);
-            VK10.vkDestroySemaphore(this.device, frame.imageAvailableSemaphore(), null);
-            VK10.vkDestroyFence(this.device, frame.fence(), null);
-        });
-        this.imagesInFlight.clear();
-        VK10.vkDestroyCommandPool(this.device, this.commandPool, null);
+        this.disposeSyncObjects();
+        if (this.frameTimeline != null) {
+            this.frameTimeline.dispose();
+        }
+        if (this.gpuProfiler != null) {
+            this.gpuProfiler.dispose();
+        }
+        this.uploadManager.dispose();
+        this.dynamicGeometry.dispose();
+        this.uniformRing.dispose();
+        this.pipelineCache.dispose();
+        this.shaderCache.dispose();
+        this.shaderCompiler.dispose();
+        this.descriptorWriter.dispose();
+        if (this.bindlessResources != null) {
+            this.bindlessResources.dispose();
+        }
+        this.descriptorAllocator.dispose();
+        this.descriptorLayouts.dispose();
+        if (this.recordingThreadPool != null) {
+            this.recordingThreadPool.dispose();
+        }
+        if (this.asyncCompute != null) {
+            this.asyncCompute.dispose();
+        }
+        this.commandBufferBeginInfo.free();
+        this.computeBarrier.free();
+        this.renderPassBeginInfo.free();
+        this.clearValues.free();
+        this.viewport.free();
+        this.scissor.free();
+        if (this.renderingInfo != null) {
+            this.renderingInfo.free();
+            this.colorAttachment.free();
+            if (this.depthAttachment != null) {
+                this.depthAttachment.free();
+            }
+            this.attachmentBarriers.free();
+            this.finalBarrier.free();
+        }
+        this.memoryAllocator.dispose();
         VK10.vkDestroyDevice(this.device, null);
         if (this.debugMessenger != -1L) {
             Utils.destroyDebugUtilsMessengerEXT(this.vkInstance, this.debugMessenger, null);
         }
-        KHRSurface.vkDestroySurfaceKHR(this.vkInstance, this.surface, null);
+        if (!this.headless) {
+            KHRSurface.vkDestroySurfaceKHR(this.vkInstance, this.surface, null);
+        }
         VK10.vkDestroyInstance(this.vkInstance, null);
 
         this.initialized = false;
     }
 
 
+    private void disposeSyncObjects() {
+        this.inFlightFrames.forEach(frame -> {
+            VK10.vkDestroySemaphore(this.device, frame.renderFinishedSemaphore(), null);
+            VK10.vkDestroySemaphore(this.device, frame.imageAvailableSemaphore(), null);
+            VK10.vkDestroyFence(this.device, frame.fence(), null);
+            VK10.vkDestroyCommandPool(this.device, frame.commandPool(), null);
+            frame.dispose();
+        });
+        this.inFlightFrames.clear();
+        if (this.recordingThreadPool != null) {
+            this.recordingThreadPool.disposeFramePools();
+        }
+        if (this.asyncCompute != null) {
+            this.asyncCompute.disposeFrames();
+        }
+        if (this.gpuProfiler != null) {
+            this.gpuProfiler.disposeQueryPool();
+        }
+    }
+
+
     private void disposeSwapChain() {
-        this.swapChainFramebuffers.forEach(framebuffer -> VK10.vkDestroyFramebuffer(this.device, framebuffer, null));
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            VK10.vkFreeCommandBuffers(this.device, this.commandPool, this.asPointerBuffer(stack, this.commandBuffers));
+        // pipelines for dynamic rendering only depend on the format, they survive
+        if (!this.dynamicRendering) {
+            // the device is idle, only pipelines that are still being created use the render pass
+            final long renderPass = this.renderPass;
+            this.pipelines.evict(renderPass, () -> VK10.vkDestroyRenderPass(this.device, renderPass, null));
+        }
+        this.destroySwapChainImages(this.headless ? VK10.VK_NULL_HANDLE : this.swapChain, this.swapChainFramebuffers, this.swapChainImageViews);
+        this.renderTargets.dispose();
+        if (this.headless) {
+            this.disposeOffscreenTargets();
         }
-        VK10.vkDestroyPipeline(this.device, this.graphicsPipeline, null);
-        VK10.vkDestroyPipelineLayout(this.device, this.pipelineLayout, null);
-        VK10.vkDestroyRenderPass(this.device, this.renderPass, null);
-        this.swapChainImageViews.forEach(imageView -> VK10.vkDestroyImageView(this.device, imageView, null));
-        KHRSwapchain.vkDestroySwapchainKHR(this.device, this.swapChain, null);
+    }
+
+
+    private void destroySwapChainImages(long swapChain, List<Long> framebuffers, List<Long> imageViews) {
+        framebuffers.forEach(framebuffer -> VK10.vkDestroyFramebuffer(this.device, framebuffer, null));
+        imageViews.forEach(imageView -> VK10.vkDestroyImageView(this.device, imageView, null));
+        if (swapChain != VK10.VK_NULL_HANDLE) {
+            KHRSwapchain.vkDestroySwapchainKHR(this.device, swapChain, null);
+        }
+    }
+
+
+    private void disposeOffscreenTargets() {
+        for (final OffscreenTarget target : this.offscreenTargets) {
+            if (target.hasReadback()) {
+                VK10.vkUnmapMemory(this.device, target.readbackMemory());
+                VK10.vkDestroyBuffer(this.device, target.readbackBuffer(), null);
+                VK10.vkFreeMemory(this.device, target.readbackMemory(), null);
+            }
+            VK10.vkDestroyImage(this.device, target.image(), null);
+            VK10.vkFreeMemory(this.device, target.imageMemory(), null);
+            target.dispose();
+        }
+        this.offscreenTargets.clear();
     }
 
 
@@ -1064,6 +2197,10 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
         // We use Integer to use null as the empty value
         private Integer graphicsFamily;
         private Integer presentFamily;
+        // optional, null if the device has no dedicated transfer family
+        private Integer transferFamily;
+        // optional, null if the device has no compute family without graphics or async compute is disabled
+        private Integer computeFamily;
 
 
         private boolean isComplete() {
@@ -1072,7 +2209,14 @@ public class VulkanInitializer implements Disposable, ResizeCallBack {
 
 
         private int[] unique() {
-            return IntStream.of(this.graphicsFamily, this.presentFamily).distinct().toArray();
+            final IntStream.Builder families = IntStream.builder().add(this.graphicsFamily).add(this.presentFamily);
+            if (this.transferFamily != null) {
+                families.add(this.transferFamily);
+            }
+            if (this.computeFamily != null) {
+                families.add(this.computeFamily);
+            }
+            return families.build().distinct().toArray();
         }
 
 
@@ -1,7 +1,18 @@
 package de.pottgames.vengine.core;
 
+import java.nio.LongBuffer;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VK10;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkCommandBufferAllocateInfo;
+import org.lwjgl.vulkan.VkCommandPoolCreateInfo;
+import org.lwjgl.vulkan.VkDevice;
+
 public class VulkanUtils {
-    public static final int UINT32_MAX = 0xFFFFFFFF;
+    public static final int  UINT32_MAX = 0xFFFFFFFF;
+    public static final long UINT64_MAX = 0xFFFFFFFFFFFFFFFFL;
 
 
     public record ApiVersion(int major, int minor, int patch, int variant) {
@@ -29,4 +40,41 @@ public class VulkanUtils {
         return new ApiVersion(major, minor, patch, variant);
     }
 
+
+    public static long createCommandPool(VkDevice device, int queueFamily, int flags) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkCommandPoolCreateInfo poolInfo = VkCommandPoolCreateInfo.calloc(stack);
+            poolInfo.sType(VK10.VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO);
+            poolInfo.flags(flags);
+            poolInfo.queueFamilyIndex(queueFamily);
+
+            final LongBuffer pCommandPool = stack.mallocLong(1);
+
+            if (VK10.vkCreateCommandPool(device, poolInfo, null, pCommandPool) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to create command pool");
+            }
+
+            return pCommandPool.get(0);
+        }
+    }
+
+
+    public static VkCommandBuffer allocateCommandBuffer(VkDevice device, long commandPool, int level) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            final VkCommandBufferAllocateInfo allocInfo = VkCommandBufferAllocateInfo.calloc(stack);
+            allocInfo.sType(VK10.VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
+            allocInfo.commandPool(commandPool);
+            allocInfo.level(level);
+            allocInfo.commandBufferCount(1);
+
+            final PointerBuffer pCommandBuffer = stack.mallocPointer(1);
+
+            if (VK10.vkAllocateCommandBuffers(device, allocInfo, pCommandBuffer) != VK10.VK_SUCCESS) {
+                throw new RuntimeException("Failed to allocate command buffers");
+            }
+
+            return new VkCommandBuffer(pCommandBuffer.get(0), device);
+        }
+    }
+
 }
@@ -1,16 +1,18 @@
 package de.pottgames.vengine.core;
 
 public class WindowConfiguration {
-    private String   title        = "VEngine Application";
-    private int      width        = 800;
-    private int      height       = 600;
-    private boolean  visible      = true;
-    private boolean  resizable    = true;
-    private boolean  center       = true;
+    private String   title               = "VEngine Application";
+    private int      width               = 800;
+    private int      height              = 600;
+    private boolean  visible             = true;
+    private boolean  resizable           = true;
+    private boolean  center              = true;
     private int      posX;
     private int      posY;
-    private int      maxFramerate = 60;
-    private SwapMode swapMode     = SwapMode.VSYNC;
+    private int      maxFramerate        = 0;
+    private boolean  lowLatencyPacing    = false;
+    private SwapMode swapMode            = SwapMode.VSYNC;
+    private int      swapChainImageCount = 0;
 
 
     public String getTitle() {
@@ -98,11 +100,33 @@ public class WindowConfiguration {
     }
 
 
+    /**
+     * Limits the frame rate of the engine loop, on top of whatever the swap mode limits. Without a limit IMMEDIATE and TRIPLE_BUFFERING render as fast as
+     * possible. Off by default, so headless and benchmark runs aren't throttled. Use {@link FramePacer#setMaxFramerate(int)} to change it at runtime.
+     *
+     * @param framerate the maximum number of frames per second, 0 or less disables the limit
+     */
     public void setMaxFramerate(int framerate) {
         this.maxFramerate = framerate;
     }
 
 
+    public boolean isLowLatencyPacing() {
+        return this.lowLatencyPacing;
+    }
+
+
+    /**
+     * Moves the frame rate limiter's wait from the end of the frame to its start and additionally waits for the GPU to finish the frame in flight before
+     * events are polled. Input is sampled as late as possible, which lowers the input latency by up to a frame at the cost of less CPU and GPU overlap.
+     *
+     * @param lowLatencyPacing true to sample input right before recording
+     */
+    public void setLowLatencyPacing(boolean lowLatencyPacing) {
+        this.lowLatencyPacing = lowLatencyPacing;
+    }
+
+
     public SwapMode getSwapMode() {
         return this.swapMode;
     }
@@ -112,4 +136,23 @@ public class WindowConfiguration {
         this.swapMode = swapMode;
     }
 
+
+    public int getSwapChainImageCount() {
+        return this.swapChainImageCount;
+    }
+
+
+    /**
+     * Sets the number of swap chain images. The value is clamped against the surface capabilities. Use {@link VulkanInitializer#setSwapChainImageCount(int)}
+     * to change it at runtime.
+     *
+     * @param swapChainImageCount the number of images or 0 to use the driver's minimum plus one
+     */
+    public void setSwapChainImageCount(int swapChainImageCount) {
+        if (swapChainImageCount < 0) {
+            throw new IllegalArgumentException("The swap chain image count must not be negative");
+        }
+        this.swapChainImageCount = swapChainImageCount;
+    }
+
 }
@@ -0,0 +1,100 @@
+package de.pottgames.vengine.basic;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import de.pottgames.vengine.core.Application;
+import de.pottgames.vengine.core.ApplicationConfiguration;
+import de.pottgames.vengine.core.CommandRecorder;
+import de.pottgames.vengine.core.Engine;
+
+/**
+ * Renders headless frames and checks that the engine loop doesn't allocate on the Java heap once it's warmed up. Needs a Vulkan driver, a software driver
+ * like lavapipe is enough. The test is skipped if none is available.
+ *
+ * Only the headless path is covered. Windowed presentation, that is image acquisition, present and swap chain recreation, needs a display and isn't
+ * measured.
+ */
+public class DrawFrameAllocationTest implements Application {
+    private static final int WARMUP_FRAMES   = 500;
+    private static final int MEASURED_FRAMES = 2000;
+
+    private final ThreadMXBean threadBean;
+    private boolean            created;
+    private int                renderedFrames;
+    private long               allocatedAtStart;
+    private long               allocatedBytes;
+
+
+    public DrawFrameAllocationTest() {
+        this.threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+
+    @Test
+    public void drawFrameDoesNotAllocate() {
+        Assumptions.assumeTrue(this.threadBean.isThreadAllocatedMemorySupported(), "Thread allocation counters are not supported");
+        this.threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        final ApplicationConfiguration config = new ApplicationConfiguration();
+        config.setHeadless(true);
+        config.setReadbackListener(this::onReadback);
+
+        try {
+            new Engine(config, this);
+        } catch (final RuntimeException | LinkageError e) {
+            Assumptions.assumeTrue(this.created, "Vulkan is not available: " + e);
+            throw e;
+        }
+
+        Assertions.assertEquals(0L, this.allocatedBytes, "Bytes allocated during " + DrawFrameAllocationTest.MEASURED_FRAMES + " frames");
+    }
+
+
+    private void onReadback(long frameNumber, int width, int height, ByteBuffer pixels) {
+        // only registered so the readback path is part of the measured frames
+    }
+
+
+    @Override
+    public void onCreate() {
+        this.created = true;
+    }
+
+
+    @Override
+    public void onRender(CommandRecorder recorder) {
+        if (this.renderedFrames == DrawFrameAllocationTest.WARMUP_FRAMES) {
+            this.allocatedAtStart = this.threadBean.getCurrentThreadAllocatedBytes();
+        } else if (this.renderedFrames == DrawFrameAllocationTest.WARMUP_FRAMES + DrawFrameAllocationTest.MEASURED_FRAMES) {
+            this.allocatedBytes = this.threadBean.getCurrentThreadAllocatedBytes() - this.allocatedAtStart;
+        }
+        recorder.draw(3, 1, 0, 0);
+        this.renderedFrames++;
+    }
+
+
+    @Override
+    public void onResize() {
+        // there is no window to resize
+    }
+
+
+    @Override
+    public boolean canClose() {
+        return this.renderedFrames > DrawFrameAllocationTest.WARMUP_FRAMES + DrawFrameAllocationTest.MEASURED_FRAMES;
+    }
+
+
+    @Override
+    public void onDispose() {
+        // nothing to dispose
+    }
+
+}
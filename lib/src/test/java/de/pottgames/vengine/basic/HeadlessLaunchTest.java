@@ -0,0 +1,82 @@
+package de.pottgames.vengine.basic;
+
+import java.nio.ByteBuffer;
+
+import de.pottgames.vengine.core.Application;
+import de.pottgames.vengine.core.ApplicationConfiguration;
+import de.pottgames.vengine.core.CommandRecorder;
+import de.pottgames.vengine.core.Engine;
+import de.pottgames.vengine.core.FrameTimings;
+import de.pottgames.vengine.core.GpuProfiler;
+import de.pottgames.vengine.core.VulkanInitializer;
+import de.pottgames.vengine.core.WindowConfiguration;
+
+public class HeadlessLaunchTest implements Application {
+    private static final int FRAMES = 1000;
+
+    private int  renderedFrames;
+    private long startTime;
+
+
+    @Override
+    public void onCreate() {
+        this.startTime = System.nanoTime();
+    }
+
+
+    @Override
+    public void onRender(CommandRecorder recorder) {
+        recorder.draw(3, 1, 0, 0);
+        this.renderedFrames++;
+    }
+
+
+    @Override
+    public void onResize() {
+        // there is no window to resize
+    }
+
+
+    @Override
+    public boolean canClose() {
+        return this.renderedFrames >= HeadlessLaunchTest.FRAMES;
+    }
+
+
+    @Override
+    public void onDispose() {
+        final double seconds = (System.nanoTime() - this.startTime) / 1_000_000_000.0;
+        System.out.println("Rendered " + this.renderedFrames + " frames in " + seconds + "s (" + this.renderedFrames / seconds + " FPS)");
+        System.out.print(FrameTimings.get().summary());
+        final GpuProfiler gpuProfiler = VulkanInitializer.get().getGpuProfiler();
+        if (gpuProfiler != null) {
+            System.out.print(gpuProfiler.summary());
+        }
+    }
+
+
+    private static void onReadback(long frameNumber, int width, int height, ByteBuffer pixels) {
+        if (frameNumber % 100 == 0) {
+            // the center of the image is covered by the triangle
+            final int center = (height / 2 * width + width / 2) * 4;
+            System.out.println("Frame " + frameNumber + " center pixel: " + (pixels.get(center) & 0xFF) + ", " + (pixels.get(center + 1) & 0xFF) + ", "
+                    + (pixels.get(center + 2) & 0xFF));
+        }
+    }
+
+
+    public static void main(String[] args) {
+        final ApplicationConfiguration config = new ApplicationConfiguration();
+        config.setDebugMode(true);
+        config.setHeadless(true);
+        config.setGpuProfiling(true);
+        config.setReadbackListener(HeadlessLaunchTest::onReadback);
+        final WindowConfiguration windowConfig = config.getWindowConfiguration();
+        windowConfig.setWidth(640);
+        windowConfig.setHeight(480);
+        windowConfig.setTitle("VulkanHeadlessTest");
+
+        new Engine(config, new HeadlessLaunchTest());
+    }
+
+}
@@ -2,6 +2,7 @@ package de.pottgames.vengine.basic;
 
 import de.pottgames.vengine.core.Application;
 import de.pottgames.vengine.core.ApplicationConfiguration;
+import de.pottgames.vengine.core.CommandRecorder;
 import de.pottgames.vengine.core.Engine;
 import de.pottgames.vengine.core.WindowConfiguration;
 
@@ -16,9 +17,8 @@ public class LaunchTest implements Application {
 
 
     @Override
-    public void onRender() {
-        // TODO Auto-generated method stub
-
+    public void onRender(CommandRecorder recorder) {
+        recorder.draw(3, 1, 0, 0);
     }
 
 
@@ -0,0 +1,47 @@
+package de.pottgames.vengine.core;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.KHRAccelerationStructure;
+import org.lwjgl.vulkan.VK10;
+
+public class DescriptorAllocatorTest {
+    private static final int FRAGMENT = VK10.VK_SHADER_STAGE_FRAGMENT_BIT;
+
+
+    @Test
+    public void pooledTypesFit() {
+        Assertions.assertTrue(DescriptorAllocator.fitsPools(List.of(
+                new DescriptorBinding(0, VK10.VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER, DescriptorAllocatorTest.FRAGMENT),
+                new DescriptorBinding(1, VK10.VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER, 4, DescriptorAllocatorTest.FRAGMENT))));
+    }
+
+
+    @Test
+    public void texelBuffersFit() {
+        Assertions.assertTrue(DescriptorAllocator.fitsPools(List.of(
+                new DescriptorBinding(0, VK10.VK_DESCRIPTOR_TYPE_UNIFORM_TEXEL_BUFFER, DescriptorAllocatorTest.FRAGMENT),
+                new DescriptorBinding(1, VK10.VK_DESCRIPTOR_TYPE_STORAGE_TEXEL_BUFFER, DescriptorAllocatorTest.FRAGMENT))));
+    }
+
+
+    @Test
+    public void typesWithoutRatioAreRejected() {
+        Assertions.assertFalse(DescriptorAllocator.fitsPools(List.of(
+                new DescriptorBinding(0, KHRAccelerationStructure.VK_DESCRIPTOR_TYPE_ACCELERATION_STRUCTURE_KHR, DescriptorAllocatorTest.FRAGMENT))));
+    }
+
+
+    @Test
+    public void arraysLargerThanThePoolsAreRejected() {
+        // bindings of the same type add up
+        final List<DescriptorBinding> bindings = List.of(
+                new DescriptorBinding(0, VK10.VK_DESCRIPTOR_TYPE_STORAGE_IMAGE, 40, DescriptorAllocatorTest.FRAGMENT),
+                new DescriptorBinding(1, VK10.VK_DESCRIPTOR_TYPE_STORAGE_IMAGE, 40, DescriptorAllocatorTest.FRAGMENT));
+        Assertions.assertFalse(DescriptorAllocator.fitsPools(bindings));
+        Assertions.assertTrue(DescriptorAllocator.fitsPools(bindings.subList(0, 1)));
+    }
+
+}
@@ -0,0 +1,33 @@
+package de.pottgames.vengine.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VK10;
+
+public class DescriptorWriterTest {
+    private static final long SET         = 0x1000L;
+    private static final int  TYPE        = VK10.VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER;
+    private static final int  SHADER_READ = VK10.VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL;
+
+
+    @Test
+    public void consecutiveElementsAreMerged() {
+        final DescriptorWriter writer = new DescriptorWriter(null);
+        for (int i = 0; i < 100; i++) {
+            writer.writeImage(DescriptorWriterTest.SET, 0, i, DescriptorWriterTest.TYPE, 1L + i, 2L, DescriptorWriterTest.SHADER_READ);
+        }
+        Assertions.assertEquals(1, writer.getPendingWriteCount());
+    }
+
+
+    @Test
+    public void gapsAndOtherBindingsAreSeparateWrites() {
+        final DescriptorWriter writer = new DescriptorWriter(null);
+        writer.writeImage(DescriptorWriterTest.SET, 0, 0, DescriptorWriterTest.TYPE, 1L, 2L, DescriptorWriterTest.SHADER_READ);
+        writer.writeImage(DescriptorWriterTest.SET, 0, 2, DescriptorWriterTest.TYPE, 1L, 2L, DescriptorWriterTest.SHADER_READ);
+        writer.writeImage(DescriptorWriterTest.SET, 1, 3, DescriptorWriterTest.TYPE, 1L, 2L, DescriptorWriterTest.SHADER_READ);
+        writer.writeImage(DescriptorWriterTest.SET + 1L, 1, 4, DescriptorWriterTest.TYPE, 1L, 2L, DescriptorWriterTest.SHADER_READ);
+        Assertions.assertEquals(4, writer.getPendingWriteCount());
+    }
+
+}
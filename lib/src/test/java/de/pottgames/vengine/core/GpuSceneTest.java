@@ -0,0 +1,65 @@
+package de.pottgames.vengine.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GpuSceneTest {
+    private static final float[] IDENTITY = { 1f, 0f, 0f, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f };
+
+
+    @Test
+    public void identityPlanesBoundClipSpace() {
+        final float[] planes = GpuScene.frustumPlanes(GpuSceneTest.IDENTITY, new float[24]);
+
+        // left, right, bottom, top, near, far
+        Assertions.assertArrayEquals(new float[] { 1f, 0f, 0f, 1f }, this.plane(planes, 0), 1e-6f);
+        Assertions.assertArrayEquals(new float[] { -1f, 0f, 0f, 1f }, this.plane(planes, 1), 1e-6f);
+        Assertions.assertArrayEquals(new float[] { 0f, 1f, 0f, 1f }, this.plane(planes, 2), 1e-6f);
+        Assertions.assertArrayEquals(new float[] { 0f, -1f, 0f, 1f }, this.plane(planes, 3), 1e-6f);
+        Assertions.assertArrayEquals(new float[] { 0f, 0f, 1f, 0f }, this.plane(planes, 4), 1e-6f);
+        Assertions.assertArrayEquals(new float[] { 0f, 0f, -1f, 1f }, this.plane(planes, 5), 1e-6f);
+    }
+
+
+    @Test
+    public void planesAreNormalized() {
+        // scales x by 2 and moves the scene 3 units along z
+        final float[] matrix = GpuSceneTest.IDENTITY.clone();
+        matrix[0] = 2f;
+        matrix[14] = 3f;
+        final float[] planes = GpuScene.frustumPlanes(matrix, new float[24]);
+
+        for (int i = 0; i < 6; i++) {
+            final float[] plane = this.plane(planes, i);
+            Assertions.assertEquals(1f, (float) Math.sqrt(plane[0] * plane[0] + plane[1] * plane[1] + plane[2] * plane[2]), 1e-6f);
+        }
+        // x = 0.5 maps to the right edge of clip space
+        Assertions.assertEquals(0f, this.distance(this.plane(planes, 1), 0.5f, 0f, -3f), 1e-6f);
+        // z = -3 maps to the near plane
+        Assertions.assertEquals(0f, this.distance(this.plane(planes, 4), 0f, 0f, -3f), 1e-6f);
+    }
+
+
+    @Test
+    public void structSizesMatchTheCullingShader() {
+        // mat4, vec4 and four 32 bit values in std430
+        Assertions.assertEquals(16 * 4 + 4 * 4 + 4 * 4, GpuScene.OBJECT_SIZE);
+        // VkDrawIndexedIndirectCommand
+        Assertions.assertEquals(20, GpuScene.COMMAND_SIZE);
+        // six planes and the object count fit in the guaranteed 128 bytes
+        Assertions.assertTrue(GpuScene.PUSH_CONSTANT_SIZE <= 128);
+    }
+
+
+    private float[] plane(float[] planes, int index) {
+        final float[] plane = new float[4];
+        System.arraycopy(planes, index * 4, plane, 0, 4);
+        return plane;
+    }
+
+
+    private float distance(float[] plane, float x, float y, float z) {
+        return plane[0] * x + plane[1] * y + plane[2] * z + plane[3];
+    }
+
+}
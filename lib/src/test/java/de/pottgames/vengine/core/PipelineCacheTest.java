@@ -0,0 +1,77 @@
+package de.pottgames.vengine.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VK10;
+
+public class PipelineCacheTest {
+    private static final int    VENDOR_ID = 0x10DE;
+    private static final int    DEVICE_ID = 0x2484;
+    private static final byte[] UUID      = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+
+    // a header written by the device, followed by 64 bytes of cache data
+    private ByteBuffer data;
+
+
+    @BeforeEach
+    public void writeHeader() {
+        this.data = ByteBuffer.allocate(PipelineCache.HEADER_SIZE + 64).order(ByteOrder.LITTLE_ENDIAN);
+        this.data.putInt(PipelineCache.HEADER_SIZE);
+        this.data.putInt(VK10.VK_PIPELINE_CACHE_HEADER_VERSION_ONE);
+        this.data.putInt(PipelineCacheTest.VENDOR_ID);
+        this.data.putInt(PipelineCacheTest.DEVICE_ID);
+        this.data.put(PipelineCacheTest.UUID);
+        this.data.rewind();
+    }
+
+
+    private boolean isCompatible() {
+        return PipelineCache.isCompatible(this.data, PipelineCacheTest.VENDOR_ID, PipelineCacheTest.DEVICE_ID, PipelineCacheTest.UUID);
+    }
+
+
+    @Test
+    public void matchingHeaderIsCompatible() {
+        Assertions.assertTrue(this.isCompatible());
+    }
+
+
+    @Test
+    public void headerIsLittleEndian() {
+        this.data.order(ByteOrder.BIG_ENDIAN).putInt(8, PipelineCacheTest.VENDOR_ID).putInt(12, PipelineCacheTest.DEVICE_ID);
+        Assertions.assertFalse(this.isCompatible());
+    }
+
+
+    @Test
+    public void otherDeviceIsRejected() {
+        this.data.putInt(12, PipelineCacheTest.DEVICE_ID + 1);
+        Assertions.assertFalse(this.isCompatible());
+    }
+
+
+    @Test
+    public void otherDriverIsRejected() {
+        this.data.put(16 + 15, (byte) 0);
+        Assertions.assertFalse(this.isCompatible());
+    }
+
+
+    @Test
+    public void truncatedDataIsRejected() {
+        this.data.limit(PipelineCache.HEADER_SIZE - 1);
+        Assertions.assertFalse(this.isCompatible());
+    }
+
+
+    @Test
+    public void headerLargerThanTheDataIsRejected() {
+        this.data.putInt(0, PipelineCache.HEADER_SIZE + 65);
+        Assertions.assertFalse(this.isCompatible());
+    }
+
+}
@@ -0,0 +1,76 @@
+package de.pottgames.vengine.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VK10;
+
+public class PipelineStateTest {
+    private static final long RENDER_PASS = 0x1000L;
+    private static final long LAYOUT      = 0x2000L;
+
+    private PipelineState state;
+
+
+    @BeforeEach
+    public void createState() {
+        final VertexLayout layout = new VertexLayout().add(0, VK10.VK_FORMAT_R32G32B32_SFLOAT).add(1, VK10.VK_FORMAT_R32G32_SFLOAT);
+        this.state = new PipelineState("a.vert.spv", "a.frag.spv", layout, PipelineStateTest.RENDER_PASS, PipelineStateTest.LAYOUT);
+    }
+
+
+    @Test
+    public void equalStatesShareOneKey() {
+        final VertexLayout sameLayout = new VertexLayout().add(0, VK10.VK_FORMAT_R32G32B32_SFLOAT).add(1, VK10.VK_FORMAT_R32G32_SFLOAT);
+        final PipelineState second = new PipelineState("a.vert.spv", "a.frag.spv", sameLayout, PipelineStateTest.RENDER_PASS, PipelineStateTest.LAYOUT);
+        Assertions.assertEquals(this.state, second);
+        Assertions.assertEquals(this.state.hashCode(), second.hashCode());
+    }
+
+
+    @Test
+    public void changedStateIsDifferent() {
+        Assertions.assertNotEquals(this.state, this.state.withBlending(true));
+        Assertions.assertNotEquals(this.state, this.state.withTopology(VK10.VK_PRIMITIVE_TOPOLOGY_LINE_LIST));
+        Assertions.assertNotEquals(this.state, this.state.withRenderPass(PipelineStateTest.RENDER_PASS + 1L, 0));
+        Assertions.assertNotEquals(this.state, this.state.withDepth(true, true, VK10.VK_COMPARE_OP_LESS));
+        Assertions.assertNotEquals(this.state, this.state.withSamples(VK10.VK_SAMPLE_COUNT_4_BIT));
+        Assertions.assertNotEquals(this.state.withDynamicRendering(VK10.VK_FORMAT_B8G8R8A8_SRGB),
+                this.state.withDynamicRendering(VK10.VK_FORMAT_B8G8R8A8_SRGB, VK10.VK_FORMAT_D32_SFLOAT));
+        Assertions.assertNotEquals(this.state.withDynamicRendering(VK10.VK_FORMAT_B8G8R8A8_SRGB),
+                this.state.withDynamicRendering(VK10.VK_FORMAT_B8G8R8A8_UNORM));
+        final VertexLayout instanced = new VertexLayout().add(0, VK10.VK_FORMAT_R32G32B32_SFLOAT).add(1, VK10.VK_FORMAT_R32G32_SFLOAT).setPerInstance(true);
+        Assertions.assertNotEquals(this.state,
+                new PipelineState("a.vert.spv", "a.frag.spv", instanced, PipelineStateTest.RENDER_PASS, PipelineStateTest.LAYOUT));
+        Assertions.assertNotEquals(this.state, new PipelineState("a.vert.spv", "a.frag.spv", null, PipelineStateTest.RENDER_PASS, PipelineStateTest.LAYOUT));
+    }
+
+
+    @Test
+    public void dynamicRenderingHasNoRenderPass() {
+        final PipelineState dynamic = this.state.withDynamicRendering(VK10.VK_FORMAT_B8G8R8A8_SRGB);
+        Assertions.assertTrue(dynamic.isDynamicRendering());
+        Assertions.assertEquals(VK10.VK_NULL_HANDLE, dynamic.renderPass());
+        // going back to a render pass drops the format, so equal render pass states stay equal
+        Assertions.assertEquals(this.state, dynamic.withRenderPass(PipelineStateTest.RENDER_PASS, 0));
+    }
+
+
+    @Test
+    public void usesShader() {
+        Assertions.assertTrue(this.state.usesShader("a.vert.spv"));
+        Assertions.assertTrue(this.state.usesShader("a.frag.spv"));
+        Assertions.assertFalse(this.state.usesShader("b.frag.spv"));
+    }
+
+
+    @Test
+    public void computeStatesShareOneKey() {
+        final ComputePipelineState compute = new ComputePipelineState("cull.comp.spv", PipelineStateTest.LAYOUT);
+        Assertions.assertEquals(compute, new ComputePipelineState("cull.comp.spv", PipelineStateTest.LAYOUT));
+        Assertions.assertNotEquals(compute, new ComputePipelineState("cull.comp.spv", PipelineStateTest.LAYOUT + 1L));
+        Assertions.assertTrue(compute.usesShader("cull.comp.spv"));
+        Assertions.assertFalse(compute.usesShader("a.vert.spv"));
+    }
+
+}
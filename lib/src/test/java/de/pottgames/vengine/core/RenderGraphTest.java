@@ -0,0 +1,176 @@
+package de.pottgames.vengine.core;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VK10;
+
+public class RenderGraphTest {
+    private static final int FORMAT   = VK10.VK_FORMAT_R8G8B8A8_UNORM;
+    private static final int FRAGMENT = VK10.VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT;
+
+    private RenderGraph          graph;
+    private RenderGraph.Resource output;
+
+
+    @BeforeEach
+    public void createGraph() {
+        this.graph = new RenderGraph();
+        this.output = this.graph.importImage("output", 1L, 2L, RenderGraphTest.FORMAT, 64, 64, VK10.VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL,
+                RenderGraphTest.FRAGMENT, VK10.VK_ACCESS_SHADER_READ_BIT);
+    }
+
+
+    @Test
+    public void passesWithoutReadersAreCulled() {
+        final RenderGraph.Resource unused = this.graph.createImage("unused", RenderGraphTest.FORMAT);
+        final RenderGraph.Pass debug = this.graph.addPass("debug").clearColor(unused, 0f, 0f, 0f, 1f);
+        final RenderGraph.Pass main = this.graph.addPass("main").clearColor(this.output, 0f, 0f, 0f, 1f);
+        this.graph.plan();
+
+        Assertions.assertTrue(debug.isCulled());
+        Assertions.assertFalse(main.isCulled());
+    }
+
+
+    @Test
+    public void producersOfKeptPassesAreKept() {
+        final RenderGraph.Resource shadowMap = this.graph.createImage("shadow map", VK10.VK_FORMAT_D32_SFLOAT, 1024, 1024);
+        final RenderGraph.Pass shadows = this.graph.addPass("shadows").clearDepth(shadowMap, 1.0f);
+        final RenderGraph.Pass overwritten = this.graph.addPass("overwritten").clearColor(this.output, 1f, 0f, 0f, 1f).sideEffect();
+        final RenderGraph.Pass main = this.graph.addPass("main").readTexture(shadowMap, RenderGraphTest.FRAGMENT).clearColor(this.output, 0f, 0f, 0f, 1f);
+        this.graph.plan();
+
+        Assertions.assertFalse(shadows.isCulled());
+        Assertions.assertFalse(overwritten.isCulled());
+        Assertions.assertFalse(main.isCulled());
+    }
+
+
+    @Test
+    public void clearedWritesEndTheInterestInEarlierWriters() {
+        final RenderGraph.Resource color = this.graph.createImage("color", RenderGraphTest.FORMAT);
+        final RenderGraph.Pass first = this.graph.addPass("first").clearColor(color, 1f, 0f, 0f, 1f);
+        final RenderGraph.Pass second = this.graph.addPass("second").clearColor(color, 0f, 1f, 0f, 1f);
+        this.graph.addPass("main").readTexture(color, RenderGraphTest.FRAGMENT).clearColor(this.output, 0f, 0f, 0f, 1f);
+        this.graph.plan();
+
+        Assertions.assertTrue(first.isCulled());
+        Assertions.assertFalse(second.isCulled());
+    }
+
+
+    @Test
+    public void readsAfterReadsNeedNoBarrier() {
+        final RenderGraph.Resource color = this.graph.createImage("color", RenderGraphTest.FORMAT);
+        final RenderGraph.Resource first = this.graph.createImage("first", RenderGraphTest.FORMAT);
+        final RenderGraph.Pass producer = this.graph.addPass("producer").clearColor(color, 0f, 0f, 0f, 1f);
+        final RenderGraph.Pass reader = this.graph.addPass("reader").readTexture(color, RenderGraphTest.FRAGMENT).clearColor(first, 0f, 0f, 0f, 1f);
+        final RenderGraph.Pass main = this.graph.addPass("main").readTexture(color, RenderGraphTest.FRAGMENT).readTexture(first, RenderGraphTest.FRAGMENT)
+                .clearColor(this.output, 0f, 0f, 0f, 1f);
+        this.graph.plan();
+        this.graph.computeBarriers();
+
+        // the first use of a transient image transitions it from undefined
+        Assertions.assertEquals(1, producer.getBarriers().size());
+        Assertions.assertEquals(VK10.VK_IMAGE_LAYOUT_UNDEFINED, producer.getBarriers().get(0).oldLayout());
+
+        final List<RenderGraph.Barrier> readerBarriers = reader.getBarriers();
+        Assertions.assertEquals(2, readerBarriers.size());
+        final RenderGraph.Barrier toTexture = readerBarriers.get(0);
+        Assertions.assertEquals(VK10.VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL, toTexture.oldLayout());
+        Assertions.assertEquals(VK10.VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, toTexture.newLayout());
+        Assertions.assertEquals(VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT, toTexture.srcStages());
+        Assertions.assertEquals(VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT, toTexture.srcAccess());
+
+        // color is already readable in fragment shaders, only first and the output need barriers
+        for (final RenderGraph.Barrier barrier : main.getBarriers()) {
+            Assertions.assertNotSame(color, barrier.resource());
+        }
+        Assertions.assertEquals(2, main.getBarriers().size());
+    }
+
+
+    @Test
+    public void transientImagesWaitForThePreviousFrame() {
+        final RenderGraph.Resource color = this.graph.createImage("color", RenderGraphTest.FORMAT);
+        final RenderGraph.Pass producer = this.graph.addPass("producer").clearColor(color, 0f, 0f, 0f, 1f);
+        this.graph.addPass("main").readTexture(color, RenderGraphTest.FRAGMENT).clearColor(this.output, 0f, 0f, 0f, 1f);
+        this.graph.plan();
+        this.graph.computeBarriers();
+
+        // the next frame in flight clears the same image, after this frame wrote and read it
+        final RenderGraph.Barrier first = producer.getBarriers().get(0);
+        Assertions.assertEquals(VK10.VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT | RenderGraphTest.FRAGMENT, first.srcStages());
+        Assertions.assertEquals(VK10.VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT, first.srcAccess());
+        Assertions.assertEquals(VK10.VK_IMAGE_LAYOUT_UNDEFINED, first.oldLayout());
+    }
+
+
+    @Test
+    public void importedImagesReturnToTheirExternalState() {
+        final RenderGraph.Pass main = this.graph.addPass("main").clearColor(this.output, 0f, 0f, 0f, 1f);
+        this.graph.plan();
+        this.graph.computeBarriers();
+
+        final RenderGraph.Barrier first = main.getBarriers().get(0);
+        Assertions.assertEquals(RenderGraphTest.FRAGMENT, first.srcStages());
+        // a cleared image doesn't need its old content
+        Assertions.assertEquals(VK10.VK_IMAGE_LAYOUT_UNDEFINED, first.oldLayout());
+
+        Assertions.assertEquals(1, this.graph.getFinalBarriers().size());
+        final RenderGraph.Barrier last = this.graph.getFinalBarriers().get(0);
+        Assertions.assertEquals(VK10.VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL, last.oldLayout());
+        Assertions.assertEquals(VK10.VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, last.newLayout());
+        Assertions.assertEquals(VK10.VK_ACCESS_SHADER_READ_BIT, last.dstAccess());
+    }
+
+
+    @Test
+    public void bufferReadsWaitForWrites() {
+        final RenderGraph.Resource commands = this.graph.importBuffer("commands", new GpuBuffer(3L, 4L, 1024L, MemoryUsage.GPU_ONLY, null),
+                VK10.VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT, VK10.VK_ACCESS_INDIRECT_COMMAND_READ_BIT);
+        final RenderGraph.Pass cull = this.graph.addPass("cull").writeBuffer(commands, VK10.VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT,
+                VK10.VK_ACCESS_SHADER_WRITE_BIT);
+        final RenderGraph.Pass draw = this.graph.addPass("draw").readBuffer(commands, VK10.VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT,
+                VK10.VK_ACCESS_INDIRECT_COMMAND_READ_BIT).clearColor(this.output, 0f, 0f, 0f, 1f);
+        this.graph.plan();
+        this.graph.computeBarriers();
+
+        Assertions.assertFalse(cull.isCulled());
+        // the write waits for the indirect reads of the previous frame
+        Assertions.assertEquals(VK10.VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT, cull.getBarriers().get(0).srcStages());
+        final RenderGraph.Barrier read = draw.getBarriers().get(0);
+        Assertions.assertSame(commands, read.resource());
+        Assertions.assertEquals(VK10.VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, read.srcStages());
+        Assertions.assertEquals(VK10.VK_ACCESS_SHADER_WRITE_BIT, read.srcAccess());
+    }
+
+
+    @Test
+    public void disjointLifetimesShareMemory() {
+        final long[] offsets = RenderGraph.placeAliased(new long[] { 1000L, 1000L, 500L }, new long[] { 256L, 256L, 256L }, new int[] { 0, 2, 1 },
+                new int[] { 1, 3, 2 });
+        // 0 and 1 never live at the same time, 2 overlaps both
+        Assertions.assertEquals(offsets[0], offsets[1]);
+        Assertions.assertEquals(1024L, offsets[2]);
+        Assertions.assertEquals(1524L, offsets[3]);
+    }
+
+
+    @Test
+    public void overlappingLifetimesDontShareMemory() {
+        final long[] sizes = { 300L, 200L, 100L };
+        final long[] offsets = RenderGraph.placeAliased(sizes, new long[] { 64L, 64L, 64L }, new int[] { 0, 0, 0 }, new int[] { 1, 1, 1 });
+        for (int i = 0; i < sizes.length; i++) {
+            Assertions.assertEquals(0L, offsets[i] % 64L);
+            for (int j = i + 1; j < sizes.length; j++) {
+                Assertions.assertTrue(offsets[i] + sizes[i] <= offsets[j] || offsets[j] + sizes[j] <= offsets[i]);
+            }
+        }
+        Assertions.assertTrue(offsets[3] >= 600L);
+    }
+
+}
@@ -0,0 +1,134 @@
+package de.pottgames.vengine.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RingAllocatorTest {
+    private static final long CAPACITY = 1024L;
+
+    private final List<Long> waits = new ArrayList<>();
+    private RingAllocator    ring;
+
+
+    @BeforeEach
+    public void createRing() {
+        this.ring = new RingAllocator(RingAllocatorTest.CAPACITY, this.waits::add);
+    }
+
+
+    @Test
+    public void offsetsAreAligned() {
+        this.ring.beginFrame(1L, 0L);
+
+        Assertions.assertEquals(0L, this.ring.allocate(3L, 16L));
+        Assertions.assertEquals(16L, this.ring.allocate(5L, 16L));
+        Assertions.assertEquals(256L, this.ring.allocate(1L, 256L));
+        Assertions.assertEquals(260L, this.ring.allocate(4L, 4L));
+    }
+
+
+    @Test
+    public void completedFramesAreReclaimed() {
+        this.ring.beginFrame(1L, 0L);
+        Assertions.assertEquals(0L, this.ring.allocate(600L, 16L));
+        this.ring.endFrame();
+
+        // the first frame completed, so its range can be written again
+        this.ring.beginFrame(2L, 1L);
+        Assertions.assertEquals(0L, this.ring.allocate(600L, 16L));
+        Assertions.assertTrue(this.waits.isEmpty());
+    }
+
+
+    @Test
+    public void wrapAroundSkipsTheEndOfTheRing() {
+        this.ring.beginFrame(1L, 0L);
+        Assertions.assertEquals(0L, this.ring.allocate(400L, 16L));
+        this.ring.endFrame();
+        this.ring.beginFrame(2L, 0L);
+        Assertions.assertEquals(400L, this.ring.allocate(400L, 16L));
+        this.ring.endFrame();
+
+        // 224 bytes are left at the end, the range continues at the start that the first frame freed
+        this.ring.beginFrame(3L, 1L);
+        Assertions.assertEquals(0L, this.ring.allocate(300L, 16L));
+        // the second frame still uses 400 to 800
+        Assertions.assertEquals(304L, this.ring.allocate(96L, 16L));
+        Assertions.assertTrue(this.waits.isEmpty());
+    }
+
+
+    @Test
+    public void wrappedFrameEndsBeforeItsStart() {
+        this.ring.beginFrame(1L, 0L);
+        this.ring.allocate(400L, 16L);
+        this.ring.endFrame();
+        this.ring.beginFrame(2L, 0L);
+        this.ring.allocate(400L, 16L);
+        this.ring.endFrame();
+
+        this.ring.beginFrame(3L, 1L);
+        this.ring.allocate(100L, 16L);
+        Assertions.assertEquals(800L, this.ring.getFrameStart());
+        Assertions.assertEquals(900L, this.ring.getHead());
+        this.ring.allocate(200L, 16L);
+
+        // the ring buffer flushes the end of the ring and the start up to the head
+        Assertions.assertEquals(800L, this.ring.getFrameStart());
+        Assertions.assertEquals(200L, this.ring.getHead());
+        Assertions.assertEquals(424L, this.ring.getFrameBytes());
+    }
+
+
+    @Test
+    public void fullRingWaitsForTheOldestFrame() {
+        this.ring.beginFrame(1L, 0L);
+        this.ring.allocate(800L, 16L);
+        this.ring.endFrame();
+        this.ring.beginFrame(2L, 0L);
+        this.ring.allocate(100L, 16L);
+        this.ring.endFrame();
+
+        this.ring.beginFrame(3L, 0L);
+        Assertions.assertEquals(0L, this.ring.allocate(800L, 16L));
+        Assertions.assertEquals(List.of(1L), this.waits);
+    }
+
+
+    @Test
+    public void marksGrowWithManyFramesInFlight() {
+        for (long frame = 1L; frame <= 20L; frame++) {
+            this.ring.beginFrame(frame, 0L);
+            Assertions.assertEquals((frame - 1L) * 16L, this.ring.allocate(16L, 16L));
+            this.ring.endFrame();
+        }
+
+        // all frames completed, the ring starts over
+        this.ring.beginFrame(21L, 20L);
+        Assertions.assertEquals(0L, this.ring.allocate(RingAllocatorTest.CAPACITY, 16L));
+        Assertions.assertTrue(this.waits.isEmpty());
+    }
+
+
+    @Test
+    public void frameLargerThanTheRingFails() {
+        this.ring.beginFrame(1L, 0L);
+        this.ring.allocate(1000L, 16L);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> this.ring.allocate(100L, 16L));
+    }
+
+
+    @Test
+    public void emptyRangesTakeNoSpace() {
+        this.ring.beginFrame(1L, 0L);
+        Assertions.assertEquals(0L, this.ring.allocate(RingAllocatorTest.CAPACITY, 16L));
+
+        Assertions.assertEquals(0L, this.ring.allocate(0L, 16L));
+    }
+
+}
@@ -0,0 +1,95 @@
+package de.pottgames.vengine.core;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.lwjgl.vulkan.VK10;
+
+public class ShaderCompilerTest {
+    private static final String SOURCE   = "#version 450\nlayout(location = 0) out vec4 color;\nvoid main() { color = vec4(LIGHTS); }\n";
+
+
+    private static final int    FRAGMENT = VK10.VK_SHADER_STAGE_FRAGMENT_BIT;
+
+    private ShaderCompiler.Variant variant;
+
+
+    @BeforeEach
+    public void createVariant() {
+        this.variant = new ShaderCompiler.Variant("test.frag", ShaderCompilerTest.SOURCE, ShaderCompilerTest.FRAGMENT, Map.of("LIGHTS", "4.0"));
+    }
+
+
+    @Test
+    public void keyIsStable() {
+        final String key = ShaderCompiler.cacheKey(this.variant);
+        Assertions.assertEquals(64, key.length());
+        final ShaderCompiler.Variant same = new ShaderCompiler.Variant("test.frag", ShaderCompilerTest.SOURCE, ShaderCompilerTest.FRAGMENT,
+                Map.of("LIGHTS", "4.0"));
+        Assertions.assertEquals(key, ShaderCompiler.cacheKey(same));
+    }
+
+
+    @Test
+    public void defineOrderDoesNotMatter() {
+        final Map<String, String> first = new LinkedHashMap<>();
+        first.put("SHADOWS", "1");
+        first.put("LIGHTS", "4");
+        final Map<String, String> second = new LinkedHashMap<>();
+        second.put("LIGHTS", "4");
+        second.put("SHADOWS", "1");
+        Assertions.assertEquals(ShaderCompiler.cacheKey(new ShaderCompiler.Variant("test.frag", ShaderCompilerTest.SOURCE, ShaderCompilerTest.FRAGMENT, first)),
+                ShaderCompiler.cacheKey(new ShaderCompiler.Variant("test.frag", ShaderCompilerTest.SOURCE, ShaderCompilerTest.FRAGMENT, second)));
+    }
+
+
+    @Test
+    public void definesAndStageChangeTheKey() {
+        final ShaderCompiler.Variant moreLights = new ShaderCompiler.Variant("test.frag", ShaderCompilerTest.SOURCE, ShaderCompilerTest.FRAGMENT,
+                Map.of("LIGHTS", "8.0"));
+        final ShaderCompiler.Variant noDefines = new ShaderCompiler.Variant("test.frag", ShaderCompilerTest.SOURCE, ShaderCompilerTest.FRAGMENT);
+        final ShaderCompiler.Variant vertex = new ShaderCompiler.Variant("test.frag", ShaderCompilerTest.SOURCE, VK10.VK_SHADER_STAGE_VERTEX_BIT,
+                Map.of("LIGHTS", "4.0"));
+        final String key = ShaderCompiler.cacheKey(this.variant);
+        Assertions.assertNotEquals(key, ShaderCompiler.cacheKey(moreLights));
+        Assertions.assertNotEquals(key, ShaderCompiler.cacheKey(noDefines));
+        Assertions.assertNotEquals(key, ShaderCompiler.cacheKey(vertex));
+    }
+
+
+    @Test
+    public void variantsAreReadFromTheCache(@TempDir Path cacheDirectory) {
+        final ShaderCompiler compiler = new ShaderCompiler(cacheDirectory);
+        final byte[] spirv;
+        try {
+            spirv = compiler.compile(this.variant);
+        } catch (final LinkageError e) {
+            Assumptions.assumeTrue(false, "shaderc is not available: " + e);
+            throw e;
+        } finally {
+            compiler.dispose();
+        }
+        Assertions.assertEquals(1, compiler.getCompilationCount());
+
+        // a new compiler never loads shaderc for a cached variant, even after it was disposed
+        final ShaderCompiler warmCompiler = new ShaderCompiler(cacheDirectory);
+        warmCompiler.dispose();
+        Assertions.assertArrayEquals(spirv, warmCompiler.compile(this.variant));
+        Assertions.assertEquals(0, warmCompiler.getCompilationCount());
+    }
+
+
+    @Test
+    public void disposedCompilerFails(@TempDir Path cacheDirectory) {
+        final ShaderCompiler compiler = new ShaderCompiler(cacheDirectory);
+        compiler.dispose();
+        Assertions.assertThrows(IllegalStateException.class, () -> compiler.compile(this.variant));
+    }
+
+}
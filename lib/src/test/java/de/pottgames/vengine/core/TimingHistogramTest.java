@@ -0,0 +1,77 @@
+package de.pottgames.vengine.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TimingHistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        final TimingHistogram histogram = new TimingHistogram();
+        Assertions.assertEquals(0L, histogram.getP50());
+        Assertions.assertEquals(0L, histogram.getMax());
+        Assertions.assertEquals(0L, histogram.getCount());
+    }
+
+
+    @Test
+    public void smallValuesAreExact() {
+        final TimingHistogram histogram = new TimingHistogram();
+        for (int i = 1; i <= 60; i++) {
+            histogram.record(i);
+        }
+        Assertions.assertEquals(30L, histogram.getP50());
+        Assertions.assertEquals(57L, histogram.getP95());
+        Assertions.assertEquals(60L, histogram.getMax());
+    }
+
+
+    @Test
+    public void percentilesStayWithinBucketPrecision() {
+        final TimingHistogram histogram = new TimingHistogram();
+        // 1ms to 100ms in 1ms steps
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1_000_000L);
+        }
+
+        this.assertWithinPrecision(50_000_000L, histogram.getP50());
+        this.assertWithinPrecision(95_000_000L, histogram.getP95());
+        this.assertWithinPrecision(99_000_000L, histogram.getP99());
+        Assertions.assertEquals(100_000_000L, histogram.getMax());
+        Assertions.assertEquals(100_000_000L, histogram.getPercentile(100.0));
+    }
+
+
+    @Test
+    public void outliersShowUpInHighPercentilesOnly() {
+        final TimingHistogram histogram = new TimingHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(16_000_000L);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(50_000_000L);
+        }
+
+        this.assertWithinPrecision(16_000_000L, histogram.getP50());
+        this.assertWithinPrecision(16_000_000L, histogram.getP99());
+        Assertions.assertEquals(50_000_000L, histogram.getPercentile(99.5));
+    }
+
+
+    @Test
+    public void resetClearsEverything() {
+        final TimingHistogram histogram = new TimingHistogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5L);
+        histogram.reset();
+        Assertions.assertEquals(0L, histogram.getCount());
+        Assertions.assertEquals(0L, histogram.getP99());
+    }
+
+
+    private void assertWithinPrecision(long expected, long actual) {
+        // percentiles report the bucket's upper bound, so they are never smaller than the value
+        Assertions.assertTrue(actual >= expected && actual <= expected + expected / 32, "expected about " + expected + " but was " + actual);
+    }
+
+}